@@ -69,3 +69,11 @@ CREATE TABLE "certificates" (
     "data"             BYTEA,
     "expires"          TIMESTAMPTZ
 );
+
+CREATE INDEX "nonces_expires" ON "nonces" ("expires");
+CREATE INDEX "orders_expires" ON "orders" ("expires");
+CREATE INDEX "order_identifiers_order_id" ON "order_identifiers" ("order_id");
+CREATE INDEX "order_authorizations_order_id" ON "order_authorizations" ("order_id");
+CREATE INDEX "authorizations_expires" ON "authorizations" ("expires");
+CREATE INDEX "authorization_challenges_authz_id" ON "authorization_challenges" ("authz_id");
+CREATE INDEX "certificates_expires" ON "certificates" ("expires");
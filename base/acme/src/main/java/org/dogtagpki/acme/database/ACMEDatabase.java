@@ -7,6 +7,7 @@ package org.dogtagpki.acme.database;
 
 import java.util.Collection;
 import java.util.Date;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.lang3.NotImplementedException;
 import org.dogtagpki.acme.ACMEAccount;
@@ -23,6 +24,8 @@ public abstract class ACMEDatabase {
 
     protected ACMEDatabaseConfig config;
 
+    protected Collection<ACMEDatabaseListener> listeners = new CopyOnWriteArrayList<>();
+
     public ACMEDatabaseConfig getConfig() {
         return config;
     }
@@ -37,6 +40,26 @@ public abstract class ACMEDatabase {
     public void close() throws Exception {
     }
 
+    public void addListener(ACMEDatabaseListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ACMEDatabaseListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void notifyRecordUpdated(String id) {
+        for (ACMEDatabaseListener listener : listeners) {
+            listener.recordUpdated(id);
+        }
+    }
+
+    public void notifyRecordsUpdated() {
+        for (ACMEDatabaseListener listener : listeners) {
+            listener.recordsUpdated();
+        }
+    }
+
     public Boolean getEnabled() throws Exception {
         return null;
     }
@@ -47,7 +70,13 @@ public abstract class ACMEDatabase {
 
     public abstract void addNonce(ACMENonce nonce) throws Exception;
     public abstract ACMENonce removeNonce(String nonceID) throws Exception;
-    public abstract void removeExpiredNonces(Date currentTime) throws Exception;
+
+    /**
+     * Removes nonces that have expired at the given time.
+     *
+     * @return number of nonces removed
+     */
+    public abstract int removeExpiredNonces(Date currentTime) throws Exception;
 
     public abstract ACMEAccount getAccount(String accountID) throws Exception;
     public abstract void addAccount(ACMEAccount account) throws Exception;
@@ -93,7 +122,12 @@ public abstract class ACMEDatabase {
     public abstract void addOrder(ACMEOrder order) throws Exception;
     public abstract void updateOrder(ACMEOrder order) throws Exception;
 
-    public void removeExpiredOrders(Date currentTime) throws Exception {
+    /**
+     * Removes orders that have expired at the given time.
+     *
+     * @return number of orders removed
+     */
+    public int removeExpiredOrders(Date currentTime) throws Exception {
         throw new NotImplementedException("ACMEDatabase.removeExpiredOrders() must be overridden by specific implementation");
     }
 
@@ -139,7 +173,12 @@ public abstract class ACMEDatabase {
     public abstract void addAuthorization(ACMEAuthorization authorization) throws Exception;
     public abstract void updateAuthorization(ACMEAuthorization authorization) throws Exception;
 
-    public void removeExpiredAuthorizations(Date currentTime) throws Exception {
+    /**
+     * Removes authorizations that have expired at the given time.
+     *
+     * @return number of authorizations removed
+     */
+    public int removeExpiredAuthorizations(Date currentTime) throws Exception {
         throw new NotImplementedException("ACMEDatabase.removeExpiredAuthorizations() must be overridden by specific implementation");
     }
 
@@ -151,7 +190,12 @@ public abstract class ACMEDatabase {
         throw new NotImplementedException("ACMEDatabase.addCertificate() must be overridden by specific implementation");
     }
 
-    public void removeExpiredCertificates(Date currentTime) throws Exception {
+    /**
+     * Removes certificates that have expired at the given time.
+     *
+     * @return number of certificates removed
+     */
+    public int removeExpiredCertificates(Date currentTime) throws Exception {
         throw new NotImplementedException("ACMEDatabase.removeExpiredCertificates() must be overridden by specific implementation");
     }
 }
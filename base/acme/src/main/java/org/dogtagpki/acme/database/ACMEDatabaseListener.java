@@ -0,0 +1,22 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.database;
+
+/**
+ * Listener for records changed in the database by other servers.
+ */
+public interface ACMEDatabaseListener {
+
+    /**
+     * Called when the record with the given ID has been changed.
+     */
+    void recordUpdated(String id);
+
+    /**
+     * Called when any record might have been changed.
+     */
+    void recordsUpdated();
+}
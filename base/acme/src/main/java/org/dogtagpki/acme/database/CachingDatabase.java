@@ -0,0 +1,590 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.database;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.UnaryOperator;
+
+import org.dogtagpki.acme.ACMEAccount;
+import org.dogtagpki.acme.ACMEAuthorization;
+import org.dogtagpki.acme.ACMECertificate;
+import org.dogtagpki.acme.ACMEChallenge;
+import org.dogtagpki.acme.ACMEIdentifier;
+import org.dogtagpki.acme.ACMENonce;
+import org.dogtagpki.acme.ACMEOrder;
+import org.dogtagpki.acme.JWK;
+
+/**
+ * Read-through cache for another ACME database.
+ *
+ * Accounts, orders, and authorizations read by ID are kept in LRU caches
+ * for up to the cache TTL. Updates are written through to the database
+ * and replace the cached record. Changes made by other servers are
+ * picked up when the database notifies its listeners (see
+ * LDAPConfigMonitor and PostgreSQLConfigMonitor) or when the TTL expires.
+ *
+ * The cache keeps its own copies of the records and returns a new copy
+ * on each hit, so changes made by one caller to a record that has not
+ * been updated in the database are not visible to other callers.
+ */
+public class CachingDatabase extends ACMEDatabase implements ACMEDatabaseListener {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CachingDatabase.class);
+
+    public static final int DEFAULT_SIZE = 1000;
+    public static final int DEFAULT_TTL = 30; // seconds
+
+    private ACMEDatabase database;
+
+    private RecordCache<ACMEAccount> accounts;
+    private RecordCache<ACMEOrder> orders;
+    private RecordCache<ACMEAuthorization> authorizations;
+
+    // challenge ID -> authorization ID
+    private RecordCache<String> challenges;
+
+    public CachingDatabase(ACMEDatabase database) {
+        this.database = database;
+    }
+
+    public ACMEDatabase getDatabase() {
+        return database;
+    }
+
+    @Override
+    public void init() throws Exception {
+
+        logger.info("Initializing ACME database cache");
+
+        String value = config.getParameter("cache.size");
+        int size = value == null ? DEFAULT_SIZE : Integer.parseInt(value);
+        logger.info("- size: " + size);
+
+        value = config.getParameter("cache.ttl");
+        long ttl = (value == null ? DEFAULT_TTL : Long.parseLong(value)) * 1000;
+        logger.info("- TTL: " + ttl + " ms");
+
+        accounts = new RecordCache<>(size, ttl, CachingDatabase::copyAccount);
+        orders = new RecordCache<>(size, ttl, CachingDatabase::copyOrder);
+        authorizations = new RecordCache<>(size, ttl, CachingDatabase::copyAuthorization);
+        challenges = new RecordCache<>(size, ttl, UnaryOperator.identity());
+
+        database.addListener(this);
+    }
+
+    @Override
+    public void close() throws Exception {
+        database.removeListener(this);
+        database.close();
+    }
+
+    @Override
+    public void recordUpdated(String id) {
+
+        logger.debug("CachingDatabase: Invalidating record " + id);
+
+        accounts.remove(id);
+        orders.remove(id);
+        authorizations.remove(id);
+
+        // the ID might belong to a challenge stored separately
+        String authzID = challenges.get(id);
+        if (authzID != null) {
+            authorizations.remove(authzID);
+        }
+    }
+
+    @Override
+    public void recordsUpdated() {
+
+        logger.debug("CachingDatabase: Invalidating all records");
+
+        accounts.clear();
+        orders.clear();
+        authorizations.clear();
+    }
+
+    @Override
+    public Boolean getEnabled() throws Exception {
+        return database.getEnabled();
+    }
+
+    @Override
+    public void setEnabled(Boolean enabled) throws Exception {
+        database.setEnabled(enabled);
+    }
+
+    @Override
+    public void addNonce(ACMENonce nonce) throws Exception {
+        database.addNonce(nonce);
+    }
+
+    @Override
+    public ACMENonce removeNonce(String nonceID) throws Exception {
+        return database.removeNonce(nonceID);
+    }
+
+    @Override
+    public int removeExpiredNonces(Date currentTime) throws Exception {
+        return database.removeExpiredNonces(currentTime);
+    }
+
+    @Override
+    public ACMEAccount getAccount(String accountID) throws Exception {
+
+        ACMEAccount account = accounts.get(accountID);
+        if (account != null) return account;
+
+        long version = accounts.beginRead();
+        try {
+            account = database.getAccount(accountID);
+
+            if (account != null) {
+                accounts.put(accountID, account, version);
+            }
+
+        } finally {
+            accounts.endRead(version);
+        }
+
+        return account;
+    }
+
+    @Override
+    public void addAccount(ACMEAccount account) throws Exception {
+        database.addAccount(account);
+    }
+
+    @Override
+    public void updateAccount(ACMEAccount account) throws Exception {
+        accounts.remove(account.getID());
+        database.updateAccount(account);
+        accounts.put(account.getID(), account);
+    }
+
+    @Override
+    public ACMEOrder getOrder(String orderID) throws Exception {
+
+        ACMEOrder order = orders.get(orderID);
+        if (order != null) return order;
+
+        long version = orders.beginRead();
+        try {
+            order = database.getOrder(orderID);
+
+            if (order != null) {
+                orders.put(orderID, order, version);
+            }
+
+        } finally {
+            orders.endRead(version);
+        }
+
+        return order;
+    }
+
+    @Override
+    public Collection<ACMEOrder> getOrdersByAccount(String accountID) throws Exception {
+        return database.getOrdersByAccount(accountID);
+    }
+
+    @Override
+    public Collection<ACMEOrder> getOrdersByAuthorizationAndStatus(
+            String authzID,
+            String status)
+        throws Exception {
+        return database.getOrdersByAuthorizationAndStatus(authzID, status);
+    }
+
+    @Override
+    public ACMEOrder getOrderByCertificate(String certID) throws Exception {
+        return database.getOrderByCertificate(certID);
+    }
+
+    @Override
+    public void addOrder(ACMEOrder order) throws Exception {
+        database.addOrder(order);
+    }
+
+    @Override
+    public void updateOrder(ACMEOrder order) throws Exception {
+        orders.remove(order.getID());
+        database.updateOrder(order);
+        orders.put(order.getID(), order);
+    }
+
+    @Override
+    public int removeExpiredOrders(Date currentTime) throws Exception {
+        int count = database.removeExpiredOrders(currentTime);
+        if (count > 0) orders.clear();
+        return count;
+    }
+
+    @Override
+    public ACMEAuthorization getAuthorization(String authzID) throws Exception {
+
+        ACMEAuthorization authorization = authorizations.get(authzID);
+        if (authorization != null) return authorization;
+
+        long version = authorizations.beginRead();
+        try {
+            authorization = database.getAuthorization(authzID);
+
+            if (authorization != null) {
+                putAuthorization(authorization, version);
+            }
+
+        } finally {
+            authorizations.endRead(version);
+        }
+
+        return authorization;
+    }
+
+    @Override
+    public ACMEAuthorization getAuthorizationByChallenge(String challengeID) throws Exception {
+
+        String authzID = challenges.get(challengeID);
+
+        if (authzID != null) {
+            ACMEAuthorization authorization = authorizations.get(authzID);
+            if (authorization != null) return authorization;
+        }
+
+        long version = authorizations.beginRead();
+        ACMEAuthorization authorization;
+        try {
+            authorization = database.getAuthorizationByChallenge(challengeID);
+
+            if (authorization != null) {
+                putAuthorization(authorization, version);
+            }
+
+        } finally {
+            authorizations.endRead(version);
+        }
+
+        return authorization;
+    }
+
+    void putAuthorization(ACMEAuthorization authorization, long version) {
+
+        String authzID = authorization.getID();
+
+        Collection<ACMEChallenge> authzChallenges = authorization.getChallenges();
+        if (authzChallenges != null) {
+            for (ACMEChallenge challenge : authzChallenges) {
+                challenges.put(challenge.getID(), authzID);
+            }
+        }
+
+        authorizations.put(authzID, authorization, version);
+    }
+
+    @Override
+    public Collection<ACMEAuthorization> getRevocationAuthorizations(String accountID, Date time) throws Exception {
+        return database.getRevocationAuthorizations(accountID, time);
+    }
+
+    @Override
+    public boolean hasRevocationAuthorization(String accountID, Date time, ACMEIdentifier identifier) throws Exception {
+        return database.hasRevocationAuthorization(accountID, time, identifier);
+    }
+
+    @Override
+    public void addAuthorization(ACMEAuthorization authorization) throws Exception {
+        database.addAuthorization(authorization);
+    }
+
+    @Override
+    public void updateAuthorization(ACMEAuthorization authorization) throws Exception {
+        authorizations.remove(authorization.getID());
+        database.updateAuthorization(authorization);
+        putAuthorization(authorization, RecordCache.LATEST);
+    }
+
+    @Override
+    public int removeExpiredAuthorizations(Date currentTime) throws Exception {
+        int count = database.removeExpiredAuthorizations(currentTime);
+        if (count > 0) {
+            authorizations.clear();
+            challenges.clear();
+        }
+        return count;
+    }
+
+    @Override
+    public ACMECertificate getCertificate(String certID) throws Exception {
+        return database.getCertificate(certID);
+    }
+
+    @Override
+    public void addCertificate(String certID, ACMECertificate certificate) throws Exception {
+        database.addCertificate(certID, certificate);
+    }
+
+    @Override
+    public int removeExpiredCertificates(Date currentTime) throws Exception {
+        return database.removeExpiredCertificates(currentTime);
+    }
+
+    static ACMEAccount copyAccount(ACMEAccount account) {
+
+        ACMEAccount copy = new ACMEAccount();
+        copy.setID(account.getID());
+        copy.setStatus(account.getStatus());
+        copy.setContact(copyArray(account.getContact()));
+        copy.setTermsOfServiceAgreed(account.getTermsOfServiceAgreed());
+        copy.setOnlyReturnExisting(account.getOnlyReturnExisting());
+        copy.setOrders(account.getOrders());
+        copy.setCreationTime(copyDate(account.getCreationTime()));
+
+        JWK jwk = account.getJWK();
+        if (jwk != null) {
+            JWK jwkCopy = new JWK();
+            jwkCopy.setE(jwk.getE());
+            jwkCopy.setKty(jwk.getKty());
+            jwkCopy.setN(jwk.getN());
+            copy.setJWK(jwkCopy);
+        }
+
+        return copy;
+    }
+
+    static ACMEOrder copyOrder(ACMEOrder order) {
+
+        ACMEOrder copy = new ACMEOrder();
+        copy.setID(order.getID());
+        copy.setAccountID(order.getAccountID());
+        copy.setCreationTime(copyDate(order.getCreationTime()));
+        copy.setExpirationTime(copyDate(order.getExpirationTime()));
+        copy.setNotBeforeTime(copyDate(order.getNotBeforeTime()));
+        copy.setNotAfterTime(copyDate(order.getNotAfterTime()));
+        copy.setAuthzIDs(copyArray(order.getAuthzIDs()));
+        copy.setCertID(order.getCertID());
+        copy.setStatus(order.getStatus());
+        copy.setExpires(order.getExpires());
+        copy.setNotBefore(order.getNotBefore());
+        copy.setNotAfter(order.getNotAfter());
+        copy.setError(order.getError());
+        copy.setAuthorizations(copyArray(order.getAuthorizations()));
+        copy.setFinalize(order.getFinalize());
+        copy.setCSR(order.getCSR());
+        copy.setCertificate(order.getCertificate());
+        copy.setResource(order.getResource());
+
+        ACMEIdentifier[] identifiers = order.getIdentifiers();
+        if (identifiers != null) {
+            ACMEIdentifier[] identifiersCopy = new ACMEIdentifier[identifiers.length];
+            for (int i = 0; i < identifiers.length; i++) {
+                identifiersCopy[i] = copyIdentifier(identifiers[i]);
+            }
+            copy.setIdentifiers(identifiersCopy);
+        }
+
+        return copy;
+    }
+
+    static ACMEAuthorization copyAuthorization(ACMEAuthorization authorization) {
+
+        ACMEAuthorization copy = new ACMEAuthorization();
+        copy.setID(authorization.getID());
+        copy.setAccountID(authorization.getAccountID());
+        copy.setCreationTime(copyDate(authorization.getCreationTime()));
+        copy.setExpirationTime(copyDate(authorization.getExpirationTime()));
+        copy.setStatus(authorization.getStatus());
+        copy.setExpires(authorization.getExpires());
+        copy.setIdentifier(copyIdentifier(authorization.getIdentifier()));
+        copy.setWildcard(authorization.getWildcard());
+
+        Collection<ACMEChallenge> authzChallenges = authorization.getChallenges();
+        if (authzChallenges != null) {
+            Collection<ACMEChallenge> challengesCopy = new ArrayList<>();
+            for (ACMEChallenge challenge : authzChallenges) {
+                challengesCopy.add(copyChallenge(challenge));
+            }
+            copy.setChallenges(challengesCopy);
+        }
+
+        return copy;
+    }
+
+    static ACMEChallenge copyChallenge(ACMEChallenge challenge) {
+
+        ACMEChallenge copy = new ACMEChallenge();
+        copy.setID(challenge.getID());
+        copy.setAuthzID(challenge.getAuthzID());
+        copy.setResource(challenge.getResource());
+        copy.setType(challenge.getType());
+        copy.setURL(challenge.getURL());
+        copy.setToken(challenge.getToken());
+        copy.setStatus(challenge.getStatus());
+        copy.setValidated(challenge.getValidated());
+        copy.setError(challenge.getError());
+        copy.setValidationTime(copyDate(challenge.getValidationTime()));
+
+        return copy;
+    }
+
+    static ACMEIdentifier copyIdentifier(ACMEIdentifier identifier) {
+
+        if (identifier == null) return null;
+
+        ACMEIdentifier copy = new ACMEIdentifier();
+        copy.setType(identifier.getType());
+        copy.setValue(identifier.getValue());
+
+        return copy;
+    }
+
+    static Date copyDate(Date date) {
+        return date == null ? null : new Date(date.getTime());
+    }
+
+    static <E> E[] copyArray(E[] array) {
+        return array == null ? null : array.clone();
+    }
+
+    /**
+     * LRU cache with TTL.
+     *
+     * The cache stores a copy of each record and returns a new copy on
+     * each hit.
+     *
+     * A record read from the database is only cached if it has not been
+     * removed (i.e. updated or invalidated) since the read started, so a
+     * concurrent update cannot be overwritten by an older copy. Removals
+     * are tracked per record with tombstones, so updates of other records
+     * do not prevent caching. A tombstone is kept only while a read that
+     * started before it is still in progress.
+     */
+    static class RecordCache<T> {
+
+        // version for records written by the caller itself
+        static final long LATEST = Long.MAX_VALUE;
+
+        int size;
+        long ttl;
+        UnaryOperator<T> copier;
+
+        // incremented on each removal
+        long version;
+
+        // version of the last clear()
+        long clearVersion;
+
+        // record ID -> version of its last removal, in version order
+        LinkedHashMap<String, Long> tombstones = new LinkedHashMap<>();
+
+        // version when a read started -> number of reads in progress
+        TreeMap<Long, Integer> reads = new TreeMap<>();
+
+        LinkedHashMap<String, CacheEntry<T>> entries;
+
+        RecordCache(int size, long ttl, UnaryOperator<T> copier) {
+            this.size = size;
+            this.ttl = ttl;
+            this.copier = copier;
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CacheEntry<T>> eldest) {
+                    return size() > RecordCache.this.size;
+                }
+            };
+        }
+
+        /**
+         * Registers a read from the database. Must be followed
+         * by endRead() with the returned version.
+         */
+        synchronized long beginRead() {
+            reads.merge(version, 1, Integer::sum);
+            return version;
+        }
+
+        synchronized void endRead(long version) {
+
+            reads.computeIfPresent(version, (key, count) -> count == 1 ? null : count - 1);
+
+            // drop tombstones that no read in progress can be affected by
+            long oldestRead = reads.isEmpty() ? this.version : reads.firstKey();
+            Iterator<Long> i = tombstones.values().iterator();
+
+            while (i.hasNext() && i.next() <= oldestRead) {
+                i.remove();
+            }
+        }
+
+        synchronized T get(String id) {
+
+            CacheEntry<T> entry = entries.get(id);
+            if (entry == null) return null;
+
+            if (entry.expirationTime <= System.currentTimeMillis()) {
+                entries.remove(id);
+                return null;
+            }
+
+            return copier.apply(entry.value);
+        }
+
+        synchronized void put(String id, T value) {
+            entries.put(id, new CacheEntry<>(copier.apply(value), System.currentTimeMillis() + ttl));
+        }
+
+        /**
+         * Caches a record read from the database unless the record
+         * has been removed since the read started.
+         */
+        synchronized void put(String id, T value, long version) {
+
+            if (version != LATEST) {
+                if (clearVersion > version) return;
+
+                Long removed = tombstones.get(id);
+                if (removed != null && removed > version) return;
+            }
+
+            put(id, value);
+        }
+
+        synchronized void remove(String id) {
+
+            version++;
+            entries.remove(id);
+
+            if (!reads.isEmpty()) {
+                // re-insert to keep the tombstones in version order
+                tombstones.remove(id);
+                tombstones.put(id, version);
+            }
+        }
+
+        synchronized void clear() {
+            version++;
+            clearVersion = version;
+            tombstones.clear();
+            entries.clear();
+        }
+    }
+
+    static class CacheEntry<T> {
+
+        T value;
+        long expirationTime;
+
+        CacheEntry(T value, long expirationTime) {
+            this.value = value;
+            this.expirationTime = expirationTime;
+        }
+    }
+}
@@ -8,8 +8,10 @@ package org.dogtagpki.acme.database;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 
 import org.dogtagpki.acme.ACMEAccount;
 import org.dogtagpki.acme.ACMEAuthorization;
@@ -47,8 +49,8 @@ public class InMemoryDatabase extends ACMEDatabase {
     }
 
     @Override
-    public void removeExpiredNonces(Date currentTime) throws Exception {
-        nonces.values().removeIf(n -> !currentTime.before(n.getExpirationTime()));
+    public int removeExpiredNonces(Date currentTime) throws Exception {
+        return removeIf(nonces, n -> !currentTime.before(n.getExpirationTime()));
     }
 
     @Override
@@ -128,8 +130,8 @@ public class InMemoryDatabase extends ACMEDatabase {
     }
 
     @Override
-    public void removeExpiredOrders(Date currentTime) throws Exception {
-        orders.values().removeIf(
+    public int removeExpiredOrders(Date currentTime) throws Exception {
+        return removeIf(orders,
                 n -> n.getExpirationTime() != null && !currentTime.before(n.getExpirationTime()));
     }
 
@@ -237,8 +239,8 @@ public class InMemoryDatabase extends ACMEDatabase {
     }
 
     @Override
-    public void removeExpiredAuthorizations(Date currentTime) throws Exception {
-        authorizations.values().removeIf(
+    public int removeExpiredAuthorizations(Date currentTime) throws Exception {
+        return removeIf(authorizations,
                 n -> n.getExpirationTime() != null && !currentTime.before(n.getExpirationTime()));
     }
 
@@ -253,8 +255,26 @@ public class InMemoryDatabase extends ACMEDatabase {
     }
 
     @Override
-    public void removeExpiredCertificates(Date currentTime) throws Exception {
-        certificates.values().removeIf(
+    public int removeExpiredCertificates(Date currentTime) throws Exception {
+        return removeIf(certificates,
                 n -> n.getExpirationTime() != null && !currentTime.before(n.getExpirationTime()));
     }
+
+    /**
+     * @return number of records removed
+     */
+    <T> int removeIf(Map<String, T> records, Predicate<T> filter) {
+
+        int count = 0;
+        Iterator<T> i = records.values().iterator();
+
+        while (i.hasNext()) {
+            if (filter.test(i.next())) {
+                i.remove();
+                count++;
+            }
+        }
+
+        return count;
+    }
 }
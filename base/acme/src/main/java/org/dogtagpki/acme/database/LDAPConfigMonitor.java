@@ -7,6 +7,7 @@ package org.dogtagpki.acme.database;
 
 import netscape.ldap.LDAPAttribute;
 import netscape.ldap.LDAPConnection;
+import netscape.ldap.LDAPDN;
 import netscape.ldap.LDAPEntry;
 import netscape.ldap.LDAPSearchConstraints;
 import netscape.ldap.LDAPSearchResults;
@@ -21,12 +22,25 @@ public class LDAPConfigMonitor implements Runnable {
 
     LDAPDatabase database;
     LDAPPersistSearchControl searchControl;
+    boolean monitorRecords;
+    String recordsRDN;
     boolean running;
 
     public LDAPConfigMonitor() {
+        this(null);
+    }
+
+    /**
+     * @param recordsRDN RDN of a container of ACME records (e.g. ou=accounts)
+     *        to monitor instead of the ACME configuration; changes to its
+     *        entries are reported to the database listeners
+     */
+    public LDAPConfigMonitor(String recordsRDN) {
+        this.recordsRDN = recordsRDN;
+        this.monitorRecords = recordsRDN != null;
         searchControl = new LDAPPersistSearchControl(
                 LDAPPersistSearchControl.MODIFY,
-                false, // return initial entry and subsequent changes
+                monitorRecords, // for config return initial entry and subsequent changes
                 true,  // return controls
                 true); // persistent search control is critical
     }
@@ -55,9 +69,37 @@ public class LDAPConfigMonitor implements Runnable {
                 searchConstraints.setBatchSize(1);
                 searchConstraints.setServerTimeLimit(0);
 
+                LDAPSearchResults results;
+
+                if (monitorRecords) {
+                    logger.info("Start monitoring ACME records in " + recordsRDN);
+
+                    // changes might have been missed while not monitoring
+                    database.notifyRecordsUpdated();
+
+                    // only the cached record types are monitored, not the
+                    // nonces and certificates which change far more often
+                    results = conn.search(
+                            recordsRDN + "," + database.baseDN,
+                            LDAPConnection.SCOPE_ONE,
+                            "(objectClass=*)",
+                            new String[] { LDAPConnection.NO_ATTRS },
+                            false,
+                            searchConstraints);
+
+                    while (running && results.hasMoreElements()) { // process record updates
+                        LDAPEntry entry = results.next();
+                        String[] values = LDAPDN.explodeDN(entry.getDN(), true);
+                        database.notifyRecordUpdated(values[0]);
+                    }
+
+                    logger.info("Stop monitoring ACME records in " + recordsRDN);
+                    continue;
+                }
+
                 logger.info("Start monitoring ACME configuration");
 
-                LDAPSearchResults results = conn.search(
+                results = conn.search(
                         LDAPDatabase.RDN_CONFIG + "," + database.baseDN,
                         LDAPConnection.SCOPE_BASE,
                         "(objectClass=*)",
@@ -37,11 +37,16 @@ import com.netscape.cmsutil.password.PlainPasswordFile;
 import netscape.ldap.LDAPAttribute;
 import netscape.ldap.LDAPAttributeSet;
 import netscape.ldap.LDAPConnection;
+import netscape.ldap.LDAPControl;
 import netscape.ldap.LDAPEntry;
 import netscape.ldap.LDAPException;
 import netscape.ldap.LDAPModification;
 import netscape.ldap.LDAPModificationSet;
+import netscape.ldap.LDAPResponse;
+import netscape.ldap.LDAPResponseListener;
+import netscape.ldap.LDAPSearchConstraints;
 import netscape.ldap.LDAPSearchResults;
+import netscape.ldap.controls.LDAPPagedResultsControl;
 
 /**
  * LDAP database plugin for ACME service.
@@ -112,12 +117,16 @@ public class LDAPDatabase extends ACMEDatabase {
     enum LoadChallenges { DoLoad , DontLoad };
     enum OnNoSuchObject { Ignore , Throw };
 
+    static final int DEFAULT_EXPIRY_BATCH_SIZE = 1000;
+
     String baseDN;
+    int expiryBatchSize = DEFAULT_EXPIRY_BATCH_SIZE;
 
     LdapBoundConnFactory connFactory = null;
 
     Boolean enabled;
     LDAPConfigMonitor monitor;
+    List<LDAPConfigMonitor> recordMonitors = new ArrayList<>();
 
     @Override
     public void init() throws Exception {
@@ -226,6 +235,12 @@ public class LDAPDatabase extends ACMEDatabase {
         }
         logger.info("- base DN: " + baseDN);
 
+        String batchSize = config.getParameter("expiry.batchSize");
+        if (batchSize != null) {
+            expiryBatchSize = Integer.parseInt(batchSize);
+        }
+        logger.info("- expiry batch size: " + expiryBatchSize);
+
         PKISocketConfig socketConfig = cs.getSocketConfig();
 
         connFactory = new LdapBoundConnFactory("acme");
@@ -240,6 +255,20 @@ public class LDAPDatabase extends ACMEDatabase {
             monitor.setDatabase(this);
 
             new Thread(monitor, "LDAPConfigMonitor").start();
+
+            if ("true".equals(config.getParameter("cache.enabled"))) {
+
+                // notify CachingDatabase about records changed by other servers
+                String[] recordsRDNs = { RDN_ACCOUNT, RDN_ORDER, RDN_AUTHORIZATION, RDN_CHALLENGE };
+
+                for (String recordsRDN : recordsRDNs) {
+                    LDAPConfigMonitor recordMonitor = new LDAPConfigMonitor(recordsRDN);
+                    recordMonitor.setDatabase(this);
+                    recordMonitors.add(recordMonitor);
+
+                    new Thread(recordMonitor, "LDAPRecordMonitor-" + recordsRDN.substring(3)).start();
+                }
+            }
         }
     }
 
@@ -338,16 +367,8 @@ public class LDAPDatabase extends ACMEDatabase {
     }
 
     @Override
-    public void removeExpiredNonces(Date currentTime) throws Exception {
-        String[] attrs = {"1.1"};  // suppress attrs for performance; we only need DN
-        List<LDAPEntry> entries = ldapSearch(
-            RDN_NONCE + "," + baseDN,
-            "(" + ATTR_EXPIRES + "<=" + dateFormat.format(currentTime) + ")",
-            attrs
-        );
-        for (LDAPEntry entry : entries) {
-            ldapDelete(entry.getDN(), OnNoSuchObject.Ignore);
-        }
+    public int removeExpiredNonces(Date currentTime) throws Exception {
+        return ldapDeleteExpired(RDN_NONCE + "," + baseDN, currentTime);
     }
 
     @Override
@@ -608,16 +629,8 @@ public class LDAPDatabase extends ACMEDatabase {
     }
 
     @Override
-    public void removeExpiredOrders(Date currentTime) throws Exception {
-        String[] attrs = {"1.1"};  // suppress attrs for performance; we only need DN
-        List<LDAPEntry> entries = ldapSearch(
-            RDN_ORDER + "," + baseDN,
-            "(" + ATTR_EXPIRES + "<=" + dateFormat.format(currentTime) + ")",
-            attrs
-        );
-        for (LDAPEntry entry : entries) {
-            ldapDelete(entry.getDN(), OnNoSuchObject.Ignore);
-        }
+    public int removeExpiredOrders(Date currentTime) throws Exception {
+        return ldapDeleteExpired(RDN_ORDER + "," + baseDN, currentTime);
     }
 
     @Override
@@ -912,16 +925,8 @@ public class LDAPDatabase extends ACMEDatabase {
     }
 
     @Override
-    public void removeExpiredAuthorizations(Date currentTime) throws Exception {
-        String[] attrs = {"1.1"};  // suppress attrs for performance; we only need DN
-        List<LDAPEntry> entries = ldapSearch(
-            RDN_AUTHORIZATION + "," + baseDN,
-            "(" + ATTR_EXPIRES + "<=" + dateFormat.format(currentTime) + ")",
-            attrs
-        );
-        for (LDAPEntry entry : entries) {
-            ldapDelete(entry.getDN(), OnNoSuchObject.Ignore);
-        }
+    public int removeExpiredAuthorizations(Date currentTime) throws Exception {
+        return ldapDeleteExpired(RDN_AUTHORIZATION + "," + baseDN, currentTime);
     }
 
     @Override
@@ -971,16 +976,8 @@ public class LDAPDatabase extends ACMEDatabase {
     }
 
     @Override
-    public void removeExpiredCertificates(Date currentTime) throws Exception {
-        String[] attrs = {"1.1"};  // suppress attrs for performance; we only need DN
-        List<LDAPEntry> entries = ldapSearch(
-            RDN_CERTIFICATE + "," + baseDN,
-            "(" + ATTR_EXPIRES + "<=" + dateFormat.format(currentTime) + ")",
-            attrs
-        );
-        for (LDAPEntry entry : entries) {
-            ldapDelete(entry.getDN(), OnNoSuchObject.Ignore);
-        }
+    public int removeExpiredCertificates(Date currentTime) throws Exception {
+        return ldapDeleteExpired(RDN_CERTIFICATE + "," + baseDN, currentTime);
     }
 
     /* LOW LEVEL LDAP METHODS */
@@ -1036,6 +1033,106 @@ public class LDAPDatabase extends ACMEDatabase {
         }
     }
 
+    /**
+     * Deletes the entries under the search base that have expired at
+     * the given time. The entries are found with a paged search, and the
+     * entries in each page are deleted with pipelined requests.
+     *
+     * @return number of entries deleted
+     */
+    int ldapDeleteExpired(String searchBase, Date currentTime) throws Exception {
+
+        logger.info("LDAPDatabase: Deleting expired entries in " + searchBase);
+
+        String filter = "(" + ATTR_EXPIRES + "<=" + dateFormat.format(currentTime) + ")";
+        String[] attrs = {"1.1"};  // suppress attrs for performance; we only need DN
+        int count = 0;
+
+        LDAPConnection conn = connFactory.getConn();
+        try {
+            byte[] cookie = null;
+
+            do {
+                LDAPPagedResultsControl pageControl = cookie == null
+                        ? new LDAPPagedResultsControl(false, expiryBatchSize)
+                        : new LDAPPagedResultsControl(false, expiryBatchSize, cookie);
+
+                LDAPSearchConstraints cons = (LDAPSearchConstraints) conn.getSearchConstraints().clone();
+                cons.setServerControls(pageControl);
+
+                LDAPSearchResults results = conn.search(
+                    searchBase,
+                    LDAPConnection.SCOPE_ONE,
+                    filter,
+                    attrs,
+                    false /* attrsOnly */,
+                    cons
+                );
+
+                List<String> dns = new ArrayList<>();
+                while (results.hasMoreElements()) {
+                    dns.add(results.next().getDN());
+                }
+
+                cookie = null;
+                LDAPControl[] controls = results.getResponseControls();
+                if (controls != null) {
+                    for (LDAPControl control : controls) {
+                        if (control instanceof LDAPPagedResultsControl pagedResults) {
+                            cookie = pagedResults.getCookie();
+                        }
+                    }
+                }
+
+                if (cookie != null && cookie.length == 0) {
+                    cookie = null;
+                }
+
+                count += ldapDeleteAll(conn, dns);
+
+            } while (cookie != null);
+
+        } finally {
+            connFactory.returnConn(conn);
+        }
+
+        return count;
+    }
+
+    /**
+     * Sends delete requests for all entries before waiting for the
+     * responses. Entries that no longer exist are ignored.
+     *
+     * @return number of entries deleted
+     */
+    int ldapDeleteAll(LDAPConnection conn, List<String> dns) throws Exception {
+
+        if (dns.isEmpty()) return 0;
+
+        LDAPResponseListener listener = null;
+
+        for (String dn : dns) {
+            logger.debug("LDAPDatabase: Deleting " + dn);
+            listener = conn.delete(dn, listener);
+        }
+
+        int count = 0;
+
+        for (int i = 0; i < dns.size(); i++) {
+            LDAPResponse response = listener.getResponse();
+            int resultCode = response.getResultCode();
+
+            if (resultCode == LDAPException.SUCCESS) {
+                count++;
+
+            } else if (resultCode != LDAPException.NO_SUCH_OBJECT) {
+                logger.warn("LDAPDatabase: Unable to delete entry: " + response.getErrorMessage());
+            }
+        }
+
+        return count;
+    }
+
     /** Search for a single entry (SCOPE_BASE).  If it exists return it,
      * if it does not exist return null, and raise Exception on error
      */
@@ -1101,5 +1198,9 @@ public class LDAPDatabase extends ACMEDatabase {
         if (monitor != null) {
             monitor.stop();
         }
+
+        for (LDAPConfigMonitor recordMonitor : recordMonitors) {
+            recordMonitor.stop();
+        }
     }
 }
@@ -8,12 +8,11 @@ package org.dogtagpki.acme.database;
 import java.io.FileReader;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.sql.Array;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -33,6 +32,8 @@ import org.dogtagpki.acme.ACMENonce;
 import org.dogtagpki.acme.ACMEOrder;
 import org.dogtagpki.acme.JWK;
 
+import com.netscape.cmsutil.jdbc.JDBCConnectionPool;
+
 /**
  * @author Endi S. Dewata
  */
@@ -41,11 +42,15 @@ public class PostgreSQLDatabase extends ACMEDatabase {
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(PostgreSQLDatabase.class);
     public static Calendar UTC = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
 
+    public static final int DEFAULT_EXPIRY_BATCH_SIZE = 1000;
+
     protected Properties info;
     protected String url;
 
     protected Properties statements;
-    protected Connection connection;
+    protected JDBCConnectionPool connectionPool;
+    protected boolean initialized;
+    protected int expiryBatchSize = DEFAULT_EXPIRY_BATCH_SIZE;
 
     Boolean enabled;
     PostgreSQLConfigMonitor monitor;
@@ -68,6 +73,10 @@ public class PostgreSQLDatabase extends ACMEDatabase {
 
         url = (String) info.remove("url");
 
+        connectionPool = new JDBCConnectionPool(url, info);
+        connectionPool.configure(info);
+        connectionPool.init();
+
         String statementsFilename = info.getProperty(
                 "statements",
                 "/usr/share/pki/acme/database/postgresql/statements.conf");
@@ -84,6 +93,12 @@ public class PostgreSQLDatabase extends ACMEDatabase {
             logger.info("- " + name + ": " + value);
         }
 
+        String batchSize = config.getParameter("expiry.batchSize");
+        if (batchSize != null) {
+            expiryBatchSize = Integer.parseInt(batchSize);
+        }
+        logger.info("- expiry batch size: " + expiryBatchSize);
+
         String monitorEnabled = config.getParameter("monitor.enabled");
         logger.info("- monitor enabled: " + monitorEnabled);
 
@@ -107,49 +122,37 @@ public class PostgreSQLDatabase extends ACMEDatabase {
     }
 
     /**
-     * This method will create the initial connection, validate
-     * the current connection, or reestablish the connection if
-     * it's closed.
+     * This method will get a connection from the connection pool.
+     * The connection must be closed to return it into the pool.
+     * The tables will be created when the first connection is made.
      *
      * This method should only be called by methods implementing
      * ACMEDatabase.
-     *
-     * TODO: Use connection pool.
      */
-    public void connect() throws Exception {
+    public Connection connect() throws Exception {
 
-        if (connection == null) { // create the initial connection
-            logger.info("Connecting to " + url);
-            connection = DriverManager.getConnection(url, info);
-            setup();
-            return;
-        }
-
-        // validate the current connection
-        try (Statement st = connection.createStatement();
-            ResultSet rs = st.executeQuery("SELECT 1")) {
-
-        } catch (SQLException e) {
+        Connection connection = connectionPool.getConnection();
 
-            if (connection.isClosed()) { // reestablish the connection
-                logger.info("Reconnecting to " + url);
-                connection = DriverManager.getConnection(url, info);
-                return;
+        try {
+            synchronized (this) {
+                if (!initialized) {
+                    setup(connection);
+                    initialized = true;
+                }
             }
 
-            logger.error("Unable to access database: " + e.getMessage());
-
-            // https://www.postgresql.org/docs/current/errcodes-appendix.html
-            logger.error("SQL state: " + e.getSQLState());
-
+        } catch (Exception e) {
+            connection.close();
             throw e;
         }
+
+        return connection;
     }
 
     /**
      * This method will create the tables if they do not exist.
      */
-    public void setup() throws Exception {
+    public void setup(Connection connection) throws Exception {
 
         logger.info("Setting up database");
 
@@ -181,7 +184,7 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         }
     }
 
-    String getConfig(String id) throws Exception {
+    String getConfig(Connection connection, String id) throws Exception {
 
         logger.info("Getting config " + id);
 
@@ -202,7 +205,7 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         }
     }
 
-    void addConfig(String id, String value) throws Exception {
+    void addConfig(Connection connection, String id, String value) throws Exception {
 
         logger.info("Setting config " + id + ": " + value);
 
@@ -216,7 +219,7 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         }
     }
 
-    int updateConfig(String id, String value) throws Exception {
+    int updateConfig(Connection connection, String id, String value) throws Exception {
 
         logger.info("Updating config " + id + ": " + value);
 
@@ -230,7 +233,7 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         }
     }
 
-    void removeConfig(String id) throws Exception {
+    void removeConfig(Connection connection, String id) throws Exception {
 
         logger.info("Removing config " + id);
 
@@ -243,17 +246,17 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         }
     }
 
-    void setConfig(String id, String value) throws Exception {
+    void setConfig(Connection connection, String id, String value) throws Exception {
 
         if (value == null) {
-            removeConfig(id);
+            removeConfig(connection, id);
             return;
         }
 
-        int updatedRows = updateConfig(id, value);
+        int updatedRows = updateConfig(connection, id, value);
         if (updatedRows > 0) return;
 
-        addConfig(id, value);
+        addConfig(connection, id, value);
     }
 
     @Override
@@ -264,11 +267,10 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         // PostgreSQLConfigMonitor.
 
         if (monitor == null) {
-
-            connect();
-
-            String value = getConfig("enabled");
-            enabled = value == null ? null : Boolean.valueOf(value);
+            try (Connection connection = connect()) {
+                String value = getConfig(connection, "enabled");
+                enabled = value == null ? null : Boolean.valueOf(value);
+            }
         }
 
         return enabled;
@@ -277,15 +279,15 @@ public class PostgreSQLDatabase extends ACMEDatabase {
     @Override
     public void setEnabled(Boolean enabled) throws Exception {
 
-        connect();
-
-        String value = enabled == null ? null : enabled.toString();
-        setConfig("enabled", value);
+        try (Connection connection = connect()) {
+            String value = enabled == null ? null : enabled.toString();
+            setConfig(connection, "enabled", value);
 
-        this.enabled = enabled;
+            this.enabled = enabled;
+        }
     }
 
-    private ACMENonce getNonce(String nonceID) throws Exception {
+    private ACMENonce getNonce(Connection connection, String nonceID) throws Exception {
 
         logger.info("Getting nonce " + nonceID);
 
@@ -318,41 +320,41 @@ public class PostgreSQLDatabase extends ACMEDatabase {
     @Override
     public void addNonce(ACMENonce nonce) throws Exception {
 
-        connect();
+        try (Connection connection = connect()) {
+            String nonceID = nonce.getID();
+            logger.info("Adding nonce " + nonceID);
 
-        String nonceID = nonce.getID();
-        logger.info("Adding nonce " + nonceID);
-
-        String sql = statements.getProperty("addNonce");
-        logger.info("SQL: " + sql);
+            String sql = statements.getProperty("addNonce");
+            logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
 
-            ps.setString(1, nonceID);
+                ps.setString(1, nonceID);
 
-            Date creationTime = nonce.getCreationTime();
-            ps.setTimestamp(2, new Timestamp(creationTime.getTime()), UTC);
+                Date creationTime = nonce.getCreationTime();
+                ps.setTimestamp(2, new Timestamp(creationTime.getTime()), UTC);
 
-            Date expirationTime = nonce.getExpirationTime();
-            ps.setTimestamp(3, new Timestamp(expirationTime.getTime()), UTC);
+                Date expirationTime = nonce.getExpirationTime();
+                ps.setTimestamp(3, new Timestamp(expirationTime.getTime()), UTC);
 
-            ps.executeUpdate();
+                ps.executeUpdate();
+            }
         }
     }
 
     @Override
     public ACMENonce removeNonce(String nonceID) throws Exception {
 
-        connect();
-
-        ACMENonce nonce = getNonce(nonceID);
-        if (nonce == null) return null;
+        try (Connection connection = connect()) {
+            ACMENonce nonce = getNonce(connection, nonceID);
+            if (nonce == null) return null;
 
-        deleteNonce(nonceID);
-        return nonce;
+            deleteNonce(connection, nonceID);
+            return nonce;
+        }
     }
 
-    private void deleteNonce(String nonceID) throws Exception {
+    private void deleteNonce(Connection connection, String nonceID) throws Exception {
 
         logger.info("Removing nonce " + nonceID);
 
@@ -366,82 +368,160 @@ public class PostgreSQLDatabase extends ACMEDatabase {
     }
 
     @Override
-    public void removeExpiredNonces(Date currentTime) throws Exception {
+    public int removeExpiredNonces(Date currentTime) throws Exception {
+
+        try (Connection connection = connect()) {
+            logger.info("Removing expired nonces");
 
-        connect();
+            if (!hasStatements("removeExpiredNonces")) {
+                return removeExpiredRecordsByID(connection, "getExpiredNonceIDs", currentTime, "removeNonce");
+            }
+
+            return removeExpiredRecords(connection, "removeExpiredNonces", currentTime);
+        }
+    }
+
+    /**
+     * Runs a statement that removes up to the batch size of records
+     * expired at the given time until no more records are removed.
+     *
+     * @return number of records removed
+     */
+    private int removeExpiredRecords(Connection connection, String name, Date currentTime) throws Exception {
 
-        logger.info("Getting expired nonces");
+        String sql = statements.getProperty(name);
+        logger.info("SQL: " + sql);
 
-        Collection<String> nonceIDs = getExpiredNonceIDs(currentTime);
+        int count = 0;
 
-        logger.info("Removing expired nonces");
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setTimestamp(1, new Timestamp(currentTime.getTime()), UTC);
+            ps.setInt(2, expiryBatchSize);
 
-        for (String nonceID : nonceIDs) {
-            deleteNonce(nonceID);
+            int rows;
+            do {
+                rows = ps.executeUpdate();
+                count += rows;
+            } while (rows >= expiryBatchSize);
         }
+
+        return count;
     }
 
-    private Collection<String> getExpiredNonceIDs(Date currentTime) throws Exception {
+    /**
+     * Finds records expired at the given time and removes them one at a
+     * time with the given statements, executed in order for each record.
+     * This is used with statements files that do not define the batch
+     * statements.
+     *
+     * @return number of records removed by the last statement
+     */
+    private int removeExpiredRecordsByID(
+            Connection connection,
+            String getIDs,
+            Date currentTime,
+            String... removeStatements) throws Exception {
 
-        String sql = statements.getProperty("getExpiredNonceIDs");
+        String sql = statements.getProperty(getIDs);
         logger.info("SQL: " + sql);
 
-        Collection<String> nonces = new ArrayList<>();
+        Collection<String> ids = new ArrayList<>();
 
         try (PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setTimestamp(1, new Timestamp(currentTime.getTime()), UTC);
 
             try (ResultSet rs = ps.executeQuery()) {
-
                 while (rs.next()) {
-                    String nonceID = rs.getString("id");
-                    nonces.add(nonceID);
+                    ids.add(rs.getString("id"));
                 }
             }
         }
 
-        return nonces;
+        int count = 0;
+
+        for (String id : ids) {
+            for (int i = 0; i < removeStatements.length; i++) {
+
+                sql = statements.getProperty(removeStatements[i]);
+
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    ps.setString(1, id);
+                    int rows = ps.executeUpdate();
+                    if (i == removeStatements.length - 1) count += rows;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns true if all the statements are defined. Statements files
+     * copied from older versions only define the statements that remove
+     * expired records one at a time.
+     */
+    private boolean hasStatements(String... names) {
+        for (String name : names) {
+            if (statements.getProperty(name) == null) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Runs a statement that removes the records matching an array of IDs.
+     *
+     * @return number of records removed
+     */
+    private int removeRecords(Connection connection, String name, Array ids) throws Exception {
+
+        String sql = statements.getProperty(name);
+        logger.info("SQL: " + sql);
+
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setArray(1, ids);
+            return ps.executeUpdate();
+        }
     }
 
     @Override
     public ACMEAccount getAccount(String accountID) throws Exception {
 
-        connect();
+        try (Connection connection = connect()) {
+            logger.info("Getting account " + accountID);
 
-        logger.info("Getting account " + accountID);
+            String sql = statements.getProperty("getAccount");
+            logger.info("SQL: " + sql);
 
-        String sql = statements.getProperty("getAccount");
-        logger.info("SQL: " + sql);
+            ACMEAccount account = new ACMEAccount();
 
-        ACMEAccount account = new ACMEAccount();
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setString(1, accountID);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, accountID);
+                try (ResultSet rs = ps.executeQuery()) {
 
-            try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
 
-                if (!rs.next()) {
-                    return null;
-                }
-
-                account.setID(accountID);
+                    account.setID(accountID);
 
-                Timestamp created = rs.getTimestamp("created");
-                account.setCreationTime(new Date(created.getTime()));
+                    Timestamp created = rs.getTimestamp("created");
+                    account.setCreationTime(new Date(created.getTime()));
 
-                account.setStatus(rs.getString("status"));
+                    account.setStatus(rs.getString("status"));
 
-                String jwk = rs.getString("jwk");
-                account.setJWK(JWK.fromJSON(jwk));
+                    String jwk = rs.getString("jwk");
+                    account.setJWK(JWK.fromJSON(jwk));
+                }
             }
-        }
 
-        getAccountContacts(account);
+            getAccountContacts(connection, account);
 
-        return account;
+            return account;
+        }
     }
 
-    private void getAccountContacts(ACMEAccount account) throws Exception {
+    private void getAccountContacts(Connection connection, ACMEAccount account) throws Exception {
 
         String accountID = account.getID();
         logger.info("Getting contacts for " + accountID);
@@ -471,54 +551,54 @@ public class PostgreSQLDatabase extends ACMEDatabase {
     @Override
     public void addAccount(ACMEAccount account) throws Exception {
 
-        connect();
+        try (Connection connection = connect()) {
+            String accountID = account.getID();
+            logger.info("Adding account " + accountID);
 
-        String accountID = account.getID();
-        logger.info("Adding account " + accountID);
+            String sql = statements.getProperty("addAccount");
+            logger.info("SQL: " + sql);
 
-        String sql = statements.getProperty("addAccount");
-        logger.info("SQL: " + sql);
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setString(1, accountID);
 
-            ps.setString(1, accountID);
+                Date creationTime = account.getCreationTime();
+                ps.setTimestamp(2, creationTime == null ? null : new Timestamp(creationTime.getTime()), UTC);
 
-            Date creationTime = account.getCreationTime();
-            ps.setTimestamp(2, creationTime == null ? null : new Timestamp(creationTime.getTime()), UTC);
+                ps.setString(3, account.getStatus());
+                ps.setString(4, account.getJWK().toJSON());
 
-            ps.setString(3, account.getStatus());
-            ps.setString(4, account.getJWK().toJSON());
+                ps.executeUpdate();
+            }
 
-            ps.executeUpdate();
+            addAccountContacts(connection, account);
         }
-
-        addAccountContacts(account);
     }
 
     @Override
     public void updateAccount(ACMEAccount account) throws Exception {
 
-        connect();
+        try (Connection connection = connect()) {
+            String accountID = account.getID();
+            logger.info("Updating account " + accountID);
 
-        String accountID = account.getID();
-        logger.info("Updating account " + accountID);
+            String sql = statements.getProperty("updateAccount");
+            logger.info("SQL: " + sql);
 
-        String sql = statements.getProperty("updateAccount");
-        logger.info("SQL: " + sql);
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setString(1, account.getStatus());
+                ps.setString(2, accountID);
 
-            ps.setString(1, account.getStatus());
-            ps.setString(2, accountID);
+                ps.executeUpdate();
+            }
 
-            ps.executeUpdate();
+            removeAccountContacts(connection, accountID);
+            addAccountContacts(connection, account);
         }
-
-        removeAccountContacts(accountID);
-        addAccountContacts(account);
     }
 
-    private void addAccountContacts(ACMEAccount account) throws Exception {
+    private void addAccountContacts(Connection connection, ACMEAccount account) throws Exception {
 
         String[] contacts = account.getContact();
         if (contacts == null) return;
@@ -541,7 +621,7 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         }
     }
 
-    private void removeAccountContacts(String accountID) throws Exception {
+    private void removeAccountContacts(Connection connection, String accountID) throws Exception {
 
         logger.info("Removing contacts for account " + accountID);
 
@@ -559,211 +639,212 @@ public class PostgreSQLDatabase extends ACMEDatabase {
     @Override
     public ACMEOrder getOrder(String orderID) throws Exception {
 
-        connect();
+        try (Connection connection = connect()) {
+            logger.info("Getting order " + orderID);
 
-        logger.info("Getting order " + orderID);
-
-        String sql = statements.getProperty("getOrder");
-        logger.info("SQL: " + sql);
+            String sql = statements.getProperty("getOrder");
+            logger.info("SQL: " + sql);
 
-        ACMEOrder order = new ACMEOrder();
+            ACMEOrder order = new ACMEOrder();
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, orderID);
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setString(1, orderID);
 
-            try (ResultSet rs = ps.executeQuery()) {
+                try (ResultSet rs = ps.executeQuery()) {
 
-                if (!rs.next()) {
-                    return null;
-                }
+                    if (!rs.next()) {
+                        return null;
+                    }
 
-                order.setID(orderID);
-                order.setAccountID(rs.getString("account_id"));
+                    order.setID(orderID);
+                    order.setAccountID(rs.getString("account_id"));
 
-                Timestamp created = rs.getTimestamp("created");
-                order.setCreationTime(created == null ? null : new Date(created.getTime()));
+                    Timestamp created = rs.getTimestamp("created");
+                    order.setCreationTime(created == null ? null : new Date(created.getTime()));
 
-                order.setStatus(rs.getString("status"));
+                    order.setStatus(rs.getString("status"));
 
-                Timestamp expires = rs.getTimestamp("expires");
-                order.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
+                    Timestamp expires = rs.getTimestamp("expires");
+                    order.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
 
-                Timestamp notBefore = rs.getTimestamp("not_before");
-                order.setNotBeforeTime(notBefore == null ? null : new Date(notBefore.getTime()));
+                    Timestamp notBefore = rs.getTimestamp("not_before");
+                    order.setNotBeforeTime(notBefore == null ? null : new Date(notBefore.getTime()));
 
-                Timestamp notAfter = rs.getTimestamp("not_after");
-                order.setNotAfterTime(notAfter == null ? null : new Date(notAfter.getTime()));
+                    Timestamp notAfter = rs.getTimestamp("not_after");
+                    order.setNotAfterTime(notAfter == null ? null : new Date(notAfter.getTime()));
 
-                order.setCertID(rs.getString("cert_id"));
+                    order.setCertID(rs.getString("cert_id"));
+                }
             }
-        }
 
-        getOrderIdentifiers(order);
-        getOrderAuthorizations(order);
+            getOrderIdentifiers(connection, order);
+            getOrderAuthorizations(connection, order);
 
-        return order;
+            return order;
+        }
     }
 
     @Override
     public Collection<ACMEOrder> getOrdersByAccount(String accountID) throws Exception {
 
-        connect();
+        try (Connection connection = connect()) {
+            logger.info("Getting orders for account " + accountID);
 
-        logger.info("Getting orders for account " + accountID);
+            String sql = statements.getProperty("getOrdersByAccount");
+            logger.info("SQL: " + sql);
 
-        String sql = statements.getProperty("getOrdersByAccount");
-        logger.info("SQL: " + sql);
+            Collection<ACMEOrder> orders = new ArrayList<>();
 
-        Collection<ACMEOrder> orders = new ArrayList<>();
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setString(1, accountID);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, accountID);
+                try (ResultSet rs = ps.executeQuery()) {
 
-            try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        ACMEOrder order = new ACMEOrder();
+                        order.setID(rs.getString("id"));
+                        order.setAccountID(accountID);
 
-                while (rs.next()) {
-                    ACMEOrder order = new ACMEOrder();
-                    order.setID(rs.getString("id"));
-                    order.setAccountID(accountID);
-
-                    Timestamp created = rs.getTimestamp("created");
-                    order.setCreationTime(created == null ? null : new Date(created.getTime()));
+                        Timestamp created = rs.getTimestamp("created");
+                        order.setCreationTime(created == null ? null : new Date(created.getTime()));
 
-                    order.setStatus(rs.getString("status"));
+                        order.setStatus(rs.getString("status"));
 
-                    Timestamp expires = rs.getTimestamp("expires");
-                    order.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
+                        Timestamp expires = rs.getTimestamp("expires");
+                        order.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
 
-                    Timestamp notBefore = rs.getTimestamp("not_before");
-                    order.setNotBeforeTime(notBefore == null ? null : new Date(notBefore.getTime()));
+                        Timestamp notBefore = rs.getTimestamp("not_before");
+                        order.setNotBeforeTime(notBefore == null ? null : new Date(notBefore.getTime()));
 
-                    Timestamp notAfter = rs.getTimestamp("not_after");
-                    order.setNotAfterTime(notAfter == null ? null : new Date(notAfter.getTime()));
+                        Timestamp notAfter = rs.getTimestamp("not_after");
+                        order.setNotAfterTime(notAfter == null ? null : new Date(notAfter.getTime()));
 
-                    order.setCertID(rs.getString("cert_id"));
+                        order.setCertID(rs.getString("cert_id"));
 
-                    getOrderIdentifiers(order);
-                    getOrderAuthorizations(order);
+                        getOrderIdentifiers(connection, order);
+                        getOrderAuthorizations(connection, order);
 
-                    orders.add(order);
+                        orders.add(order);
+                    }
                 }
             }
-        }
 
-        return orders;
+            return orders;
+        }
     }
 
     @Override
     public Collection<ACMEOrder> getOrdersByAuthorizationAndStatus(String authzID, String status)
             throws Exception {
 
-        connect();
+        try (Connection connection = connect()) {
+            logger.info("Getting " + status + " orders for authorization " + authzID);
 
-        logger.info("Getting " + status + " orders for authorization " + authzID);
-
-        String sql = statements.getProperty("getOrdersByAuthorizationAndStatus");
-        logger.info("SQL: " + sql);
+            String sql = statements.getProperty("getOrdersByAuthorizationAndStatus");
+            logger.info("SQL: " + sql);
 
-        Collection<ACMEOrder> orders = new ArrayList<>();
+            Collection<ACMEOrder> orders = new ArrayList<>();
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, authzID);
-            ps.setString(2, status);
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setString(1, authzID);
+                ps.setString(2, status);
 
-            try (ResultSet rs = ps.executeQuery()) {
+                try (ResultSet rs = ps.executeQuery()) {
 
-                while (rs.next()) {
-                    ACMEOrder order = new ACMEOrder();
-                    order.setID(rs.getString("id"));
-                    order.setAccountID(rs.getString("account_id"));
+                    while (rs.next()) {
+                        ACMEOrder order = new ACMEOrder();
+                        order.setID(rs.getString("id"));
+                        order.setAccountID(rs.getString("account_id"));
 
-                    Timestamp created = rs.getTimestamp("created");
-                    order.setCreationTime(created == null ? null : new Date(created.getTime()));
+                        Timestamp created = rs.getTimestamp("created");
+                        order.setCreationTime(created == null ? null : new Date(created.getTime()));
 
-                    order.setStatus(rs.getString("status"));
+                        order.setStatus(rs.getString("status"));
 
-                    Timestamp expires = rs.getTimestamp("expires");
-                    order.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
+                        Timestamp expires = rs.getTimestamp("expires");
+                        order.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
 
-                    Timestamp notBefore = rs.getTimestamp("not_before");
-                    order.setNotBeforeTime(notBefore == null ? null : new Date(notBefore.getTime()));
+                        Timestamp notBefore = rs.getTimestamp("not_before");
+                        order.setNotBeforeTime(notBefore == null ? null : new Date(notBefore.getTime()));
 
-                    Timestamp notAfter = rs.getTimestamp("not_after");
-                    order.setNotAfterTime(notAfter == null ? null : new Date(notAfter.getTime()));
+                        Timestamp notAfter = rs.getTimestamp("not_after");
+                        order.setNotAfterTime(notAfter == null ? null : new Date(notAfter.getTime()));
 
-                    order.setCertID(rs.getString("cert_id"));
+                        order.setCertID(rs.getString("cert_id"));
 
-                    getOrderIdentifiers(order);
-                    getOrderAuthorizations(order);
+                        getOrderIdentifiers(connection, order);
+                        getOrderAuthorizations(connection, order);
 
-                    orders.add(order);
+                        orders.add(order);
+                    }
                 }
             }
-        }
 
-        return orders;
+            return orders;
+        }
     }
 
     @Override
     public ACMEOrder getOrderByCertificate(String certID) throws Exception {
 
-        connect();
-
-        logger.info("Getting order for certificate " + certID);
+        try (Connection connection = connect()) {
+            logger.info("Getting order for certificate " + certID);
 
-        String sql = statements.getProperty("getOrderByCertificate");
-        logger.info("SQL: " + sql);
+            String sql = statements.getProperty("getOrderByCertificate");
+            logger.info("SQL: " + sql);
 
-        ACMEOrder order = new ACMEOrder();
+            ACMEOrder order = new ACMEOrder();
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, certID);
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setString(1, certID);
 
-            try (ResultSet rs = ps.executeQuery()) {
+                try (ResultSet rs = ps.executeQuery()) {
 
-                if (!rs.next()) {
-                    // no order found
-                    return null;
-                }
+                    if (!rs.next()) {
+                        // no order found
+                        return null;
+                    }
 
-                // order found
+                    // order found
 
-                order.setID(rs.getString("id"));
-                order.setAccountID(rs.getString("account_id"));
+                    order.setID(rs.getString("id"));
+                    order.setAccountID(rs.getString("account_id"));
 
-                Timestamp created = rs.getTimestamp("created");
-                order.setCreationTime(created == null ? null : new Date(created.getTime()));
+                    Timestamp created = rs.getTimestamp("created");
+                    order.setCreationTime(created == null ? null : new Date(created.getTime()));
 
-                order.setStatus(rs.getString("status"));
+                    order.setStatus(rs.getString("status"));
 
-                Timestamp expires = rs.getTimestamp("expires");
-                order.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
+                    Timestamp expires = rs.getTimestamp("expires");
+                    order.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
 
-                Timestamp notBefore = rs.getTimestamp("not_before");
-                order.setNotBeforeTime(notBefore == null ? null : new Date(notBefore.getTime()));
+                    Timestamp notBefore = rs.getTimestamp("not_before");
+                    order.setNotBeforeTime(notBefore == null ? null : new Date(notBefore.getTime()));
 
-                Timestamp notAfter = rs.getTimestamp("not_after");
-                order.setNotAfterTime(notAfter == null ? null : new Date(notAfter.getTime()));
+                    Timestamp notAfter = rs.getTimestamp("not_after");
+                    order.setNotAfterTime(notAfter == null ? null : new Date(notAfter.getTime()));
 
-                order.setCertID(certID);
+                    order.setCertID(certID);
+                }
             }
-        }
 
-        getOrderIdentifiers(order);
-        getOrderAuthorizations(order);
+            getOrderIdentifiers(connection, order);
+            getOrderAuthorizations(connection, order);
 
-        return order;
+            return order;
+        }
     }
 
-    private Collection<String> getExpiredOrderIDs(Date currentTime) throws Exception {
+    private Collection<String> getExpiredOrderIDs(Connection connection, Date currentTime) throws Exception {
 
-        String sql = statements.getProperty("getExpiredOrderIDs");
+        String sql = statements.getProperty("getExpiredOrderIDsBatch");
         logger.info("SQL: " + sql);
 
         Collection<String> orderIDs = new ArrayList<>();
 
         try (PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setTimestamp(1, new Timestamp(currentTime.getTime()), UTC);
+            ps.setInt(2, expiryBatchSize);
 
             try (ResultSet rs = ps.executeQuery()) {
 
@@ -777,7 +858,7 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         return orderIDs;
     }
 
-    private void getOrderIdentifiers(ACMEOrder order) throws Exception {
+    private void getOrderIdentifiers(Connection connection, ACMEOrder order) throws Exception {
 
         String orderID = order.getID();
         logger.info("Getting identifiers for order " + orderID);
@@ -806,7 +887,7 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         }
     }
 
-    private void getOrderAuthorizations(ACMEOrder order) throws Exception {
+    private void getOrderAuthorizations(Connection connection, ACMEOrder order) throws Exception {
 
         String orderID = order.getID();
         logger.info("Getting authorizations for order " + orderID);
@@ -836,43 +917,43 @@ public class PostgreSQLDatabase extends ACMEDatabase {
     @Override
     public void addOrder(ACMEOrder order) throws Exception {
 
-        connect();
+        try (Connection connection = connect()) {
+            String orderID = order.getID();
+            logger.info("Adding order " + orderID);
 
-        String orderID = order.getID();
-        logger.info("Adding order " + orderID);
+            String sql = statements.getProperty("addOrder");
+            logger.info("SQL: " + sql);
 
-        String sql = statements.getProperty("addOrder");
-        logger.info("SQL: " + sql);
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setString(1, orderID);
+                ps.setString(2, order.getAccountID());
 
-            ps.setString(1, orderID);
-            ps.setString(2, order.getAccountID());
+                Date creationTime = order.getCreationTime();
+                ps.setTimestamp(3, creationTime == null ? null : new Timestamp(creationTime.getTime()), UTC);
 
-            Date creationTime = order.getCreationTime();
-            ps.setTimestamp(3, creationTime == null ? null : new Timestamp(creationTime.getTime()), UTC);
+                ps.setString(4, order.getStatus());
 
-            ps.setString(4, order.getStatus());
+                Date expirationTime = order.getExpirationTime();
+                ps.setTimestamp(5, expirationTime == null ? null : new Timestamp(expirationTime.getTime()), UTC);
 
-            Date expirationTime = order.getExpirationTime();
-            ps.setTimestamp(5, expirationTime == null ? null : new Timestamp(expirationTime.getTime()), UTC);
+                Date notBefore = order.getNotBeforeTime();
+                ps.setTimestamp(6, notBefore == null ? null : new Timestamp(notBefore.getTime()), UTC);
 
-            Date notBefore = order.getNotBeforeTime();
-            ps.setTimestamp(6, notBefore == null ? null : new Timestamp(notBefore.getTime()), UTC);
+                Date notAfter = order.getNotAfterTime();
+                ps.setTimestamp(7, notAfter == null ? null : new Timestamp(notAfter.getTime()), UTC);
 
-            Date notAfter = order.getNotAfterTime();
-            ps.setTimestamp(7, notAfter == null ? null : new Timestamp(notAfter.getTime()), UTC);
+                ps.setString(8, order.getCertID());
 
-            ps.setString(8, order.getCertID());
+                ps.executeUpdate();
+            }
 
-            ps.executeUpdate();
+            addOrderIdentifiers(connection, order);
+            addOrderAuthorizations(connection, order);
         }
-
-        addOrderIdentifiers(order);
-        addOrderAuthorizations(order);
     }
 
-    private void addOrderIdentifiers(ACMEOrder order) throws Exception {
+    private void addOrderIdentifiers(Connection connection, ACMEOrder order) throws Exception {
 
         ACMEIdentifier[] identifiers = order.getIdentifiers();
         if (identifiers == null) return;
@@ -896,20 +977,7 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         }
     }
 
-    private void removeOrderIdentifiers(String orderID) throws Exception {
-
-        logger.info("Removing identifiers for order " + orderID);
-
-        String sql = statements.getProperty("removeOrderIdentifiers");
-        logger.info("SQL: " + sql);
-
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, orderID);
-            ps.executeUpdate();
-        }
-    }
-
-    private void addOrderAuthorizations(ACMEOrder order) throws Exception {
+    private void addOrderAuthorizations(Connection connection, ACMEOrder order) throws Exception {
 
         String[] authzIDs = order.getAuthzIDs();
         if (authzIDs == null) return;
@@ -932,179 +1000,169 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         }
     }
 
-    private void removeOrderAuthorizations(String orderID) throws Exception {
-
-        logger.info("Removing authorizations for order " + orderID);
-
-        String sql = statements.getProperty("removeOrderAuthorizations");
-        logger.info("SQL: " + sql);
-
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, orderID);
-            ps.executeUpdate();
-        }
-    }
-
     @Override
     public void updateOrder(ACMEOrder order) throws Exception {
 
-        connect();
-
-        String orderID = order.getID();
-        logger.info("Updating order " + orderID);
-
-        String sql = statements.getProperty("updateOrder");
-        logger.info("SQL: " + sql);
+        try (Connection connection = connect()) {
+            String orderID = order.getID();
+            logger.info("Updating order " + orderID);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-
-            ps.setString(1, order.getStatus());
-            ps.setString(2, order.getCertID());
-
-            Date expirationTime = order.getExpirationTime();
-            ps.setTimestamp(3, expirationTime == null ? null : new Timestamp(expirationTime.getTime()), UTC);
-
-            ps.setString(4, orderID);
-
-            ps.executeUpdate();
-        }
-    }
+            String sql = statements.getProperty("updateOrder");
+            logger.info("SQL: " + sql);
 
-    private void removeOrder(String orderID) throws Exception {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
 
-        removeOrderIdentifiers(orderID);
-        removeOrderAuthorizations(orderID);
+                ps.setString(1, order.getStatus());
+                ps.setString(2, order.getCertID());
 
-        logger.info("Removing order " + orderID);
+                Date expirationTime = order.getExpirationTime();
+                ps.setTimestamp(3, expirationTime == null ? null : new Timestamp(expirationTime.getTime()), UTC);
 
-        String sql = statements.getProperty("removeOrder");
-        logger.info("SQL: " + sql);
+                ps.setString(4, orderID);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, orderID);
-            ps.executeUpdate();
+                ps.executeUpdate();
+            }
         }
     }
 
     @Override
-    public void removeExpiredOrders(Date currentTime) throws Exception {
+    public int removeExpiredOrders(Date currentTime) throws Exception {
+
+        try (Connection connection = connect()) {
+            logger.info("Removing expired orders");
+
+            if (!hasStatements(
+                    "getExpiredOrderIDsBatch",
+                    "removeOrderIdentifiersBatch",
+                    "removeOrderAuthorizationsBatch",
+                    "removeOrdersBatch")) {
+                return removeExpiredRecordsByID(connection, "getExpiredOrderIDs", currentTime,
+                        "removeOrderIdentifiers", "removeOrderAuthorizations", "removeOrder");
+            }
+
+            int count = 0;
+            Collection<String> orderIDs;
 
-        connect();
+            do {
+                orderIDs = getExpiredOrderIDs(connection, currentTime);
+                if (orderIDs.isEmpty()) break;
 
-        logger.info("Getting expired order IDs");
+                Array ids = connection.createArrayOf("VARCHAR", orderIDs.toArray());
 
-        Collection<String> orderIDs = getExpiredOrderIDs(currentTime);
+                removeRecords(connection, "removeOrderIdentifiersBatch", ids);
+                removeRecords(connection, "removeOrderAuthorizationsBatch", ids);
+                count += removeRecords(connection, "removeOrdersBatch", ids);
 
-        logger.info("Removing expired orders");
+            } while (orderIDs.size() >= expiryBatchSize);
 
-        for (String orderID : orderIDs) {
-            removeOrder(orderID);
+            return count;
         }
     }
 
     @Override
     public ACMEAuthorization getAuthorization(String authzID) throws Exception {
 
-        connect();
-
-        logger.info("Getting authorization " + authzID);
+        try (Connection connection = connect()) {
+            logger.info("Getting authorization " + authzID);
 
-        String sql = statements.getProperty("getAuthorization");
-        logger.info("SQL: " + sql);
+            String sql = statements.getProperty("getAuthorization");
+            logger.info("SQL: " + sql);
 
-        ACMEAuthorization authorization = new ACMEAuthorization();
+            ACMEAuthorization authorization = new ACMEAuthorization();
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, authzID);
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setString(1, authzID);
 
-            try (ResultSet rs = ps.executeQuery()) {
+                try (ResultSet rs = ps.executeQuery()) {
 
-                if (!rs.next()) {
-                    return null;
-                }
+                    if (!rs.next()) {
+                        return null;
+                    }
 
-                authorization.setID(authzID);
-                authorization.setAccountID(rs.getString("account_id"));
+                    authorization.setID(authzID);
+                    authorization.setAccountID(rs.getString("account_id"));
 
-                Timestamp created = rs.getTimestamp("created");
-                authorization.setCreationTime(created == null ? null : new Date(created.getTime()));
+                    Timestamp created = rs.getTimestamp("created");
+                    authorization.setCreationTime(created == null ? null : new Date(created.getTime()));
 
-                authorization.setStatus(rs.getString("status"));
+                    authorization.setStatus(rs.getString("status"));
 
-                Timestamp expires = rs.getTimestamp("expires");
-                authorization.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
+                    Timestamp expires = rs.getTimestamp("expires");
+                    authorization.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
 
-                ACMEIdentifier identifier = new ACMEIdentifier();
-                identifier.setType(rs.getString("identifier_type"));
-                identifier.setValue(rs.getString("identifier_value"));
-                authorization.setIdentifier(identifier);
+                    ACMEIdentifier identifier = new ACMEIdentifier();
+                    identifier.setType(rs.getString("identifier_type"));
+                    identifier.setValue(rs.getString("identifier_value"));
+                    authorization.setIdentifier(identifier);
 
-                boolean wildcard = rs.getBoolean("wildcard");
-                authorization.setWildcard(wildcard ? true : null);
+                    boolean wildcard = rs.getBoolean("wildcard");
+                    authorization.setWildcard(wildcard ? true : null);
+                }
             }
-        }
 
-        getAuthorizationChallenges(authorization);
+            getAuthorizationChallenges(connection, authorization);
 
-        return authorization;
+            return authorization;
+        }
     }
 
     @Override
     public ACMEAuthorization getAuthorizationByChallenge(String challengeID) throws Exception {
 
-        connect();
-
-        logger.info("Getting authorization for challenge " + challengeID);
+        try (Connection connection = connect()) {
+            logger.info("Getting authorization for challenge " + challengeID);
 
-        String sql = statements.getProperty("getAuthorizationByChallenge");
-        logger.info("SQL: " + sql);
+            String sql = statements.getProperty("getAuthorizationByChallenge");
+            logger.info("SQL: " + sql);
 
-        ACMEAuthorization authorization = new ACMEAuthorization();
+            ACMEAuthorization authorization = new ACMEAuthorization();
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, challengeID);
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setString(1, challengeID);
 
-            try (ResultSet rs = ps.executeQuery()) {
+                try (ResultSet rs = ps.executeQuery()) {
 
-                if (!rs.next()) {
-                    return null;
-                }
+                    if (!rs.next()) {
+                        return null;
+                    }
 
-                authorization.setID(rs.getString("id"));
-                authorization.setAccountID(rs.getString("account_id"));
+                    authorization.setID(rs.getString("id"));
+                    authorization.setAccountID(rs.getString("account_id"));
 
-                Timestamp created = rs.getTimestamp("created");
-                authorization.setCreationTime(created == null ? null : new Date(created.getTime()));
+                    Timestamp created = rs.getTimestamp("created");
+                    authorization.setCreationTime(created == null ? null : new Date(created.getTime()));
 
-                authorization.setStatus(rs.getString("status"));
+                    authorization.setStatus(rs.getString("status"));
 
-                Timestamp expires = rs.getTimestamp("expires");
-                authorization.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
+                    Timestamp expires = rs.getTimestamp("expires");
+                    authorization.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
 
-                ACMEIdentifier identifier = new ACMEIdentifier();
-                identifier.setType(rs.getString("identifier_type"));
-                identifier.setValue(rs.getString("identifier_value"));
-                authorization.setIdentifier(identifier);
+                    ACMEIdentifier identifier = new ACMEIdentifier();
+                    identifier.setType(rs.getString("identifier_type"));
+                    identifier.setValue(rs.getString("identifier_value"));
+                    authorization.setIdentifier(identifier);
 
-                boolean wildcard = rs.getBoolean("wildcard");
-                authorization.setWildcard(wildcard ? true : null);
+                    boolean wildcard = rs.getBoolean("wildcard");
+                    authorization.setWildcard(wildcard ? true : null);
+                }
             }
-        }
 
-        getAuthorizationChallenges(authorization);
+            getAuthorizationChallenges(connection, authorization);
 
-        return authorization;
+            return authorization;
+        }
     }
 
-    private Collection<String> getExpiredAuthorizationIDs(Date currentTime) throws Exception {
+    private Collection<String> getExpiredAuthorizationIDs(Connection connection, Date currentTime) throws Exception {
 
-        String sql = statements.getProperty("getExpiredAuthorizationIDs");
+        String sql = statements.getProperty("getExpiredAuthorizationIDsBatch");
         logger.info("SQL: " + sql);
 
         Collection<String> authzIDs = new ArrayList<>();
 
         try (PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setTimestamp(1, new Timestamp(currentTime.getTime()), UTC);
+            ps.setInt(2, expiryBatchSize);
 
             try (ResultSet rs = ps.executeQuery()) {
 
@@ -1121,55 +1179,55 @@ public class PostgreSQLDatabase extends ACMEDatabase {
     @Override
     public Collection<ACMEAuthorization> getRevocationAuthorizations(String accountID, Date time) throws Exception {
 
-        connect();
+        try (Connection connection = connect()) {
+            logger.info("Getting authorizations for account " + accountID);
 
-        logger.info("Getting authorizations for account " + accountID);
+            String sql = statements.getProperty("getRevocationAuthorizations");
+            logger.info("SQL: " + sql);
 
-        String sql = statements.getProperty("getRevocationAuthorizations");
-        logger.info("SQL: " + sql);
+            Collection<ACMEAuthorization> authorizations = new ArrayList<>();
 
-        Collection<ACMEAuthorization> authorizations = new ArrayList<>();
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setString(1, accountID);
+                ps.setTimestamp(2, new Timestamp(time.getTime()), UTC);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, accountID);
-            ps.setTimestamp(2, new Timestamp(time.getTime()), UTC);
+                try (ResultSet rs = ps.executeQuery()) {
 
-            try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
 
-                while (rs.next()) {
-
-                    ACMEAuthorization authorization = new ACMEAuthorization();
+                        ACMEAuthorization authorization = new ACMEAuthorization();
 
-                    authorization.setID(rs.getString("id"));
-                    authorization.setAccountID(accountID);
+                        authorization.setID(rs.getString("id"));
+                        authorization.setAccountID(accountID);
 
-                    Timestamp created = rs.getTimestamp("created");
-                    authorization.setCreationTime(created == null ? null : new Date(created.getTime()));
+                        Timestamp created = rs.getTimestamp("created");
+                        authorization.setCreationTime(created == null ? null : new Date(created.getTime()));
 
-                    authorization.setStatus(rs.getString("status"));
+                        authorization.setStatus(rs.getString("status"));
 
-                    Timestamp expires = rs.getTimestamp("expires");
-                    authorization.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
+                        Timestamp expires = rs.getTimestamp("expires");
+                        authorization.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
 
-                    ACMEIdentifier identifier = new ACMEIdentifier();
-                    identifier.setType(rs.getString("identifier_type"));
-                    identifier.setValue(rs.getString("identifier_value"));
-                    authorization.setIdentifier(identifier);
+                        ACMEIdentifier identifier = new ACMEIdentifier();
+                        identifier.setType(rs.getString("identifier_type"));
+                        identifier.setValue(rs.getString("identifier_value"));
+                        authorization.setIdentifier(identifier);
 
-                    boolean wildcard = rs.getBoolean("wildcard");
-                    authorization.setWildcard(wildcard ? true : null);
+                        boolean wildcard = rs.getBoolean("wildcard");
+                        authorization.setWildcard(wildcard ? true : null);
 
-                    getAuthorizationChallenges(authorization);
+                        getAuthorizationChallenges(connection, authorization);
 
-                    authorizations.add(authorization);
+                        authorizations.add(authorization);
+                    }
                 }
             }
-        }
 
-        return authorizations;
+            return authorizations;
+        }
     }
 
-    private void getAuthorizationChallenges(ACMEAuthorization authorization) throws Exception {
+    private void getAuthorizationChallenges(Connection connection, ACMEAuthorization authorization) throws Exception {
 
         String authzID = authorization.getID();
         logger.info("Getting challenges for authorization " + authzID);
@@ -1209,68 +1267,68 @@ public class PostgreSQLDatabase extends ACMEDatabase {
     @Override
     public void addAuthorization(ACMEAuthorization authorization) throws Exception {
 
-        connect();
+        try (Connection connection = connect()) {
+            String authzID = authorization.getID();
+            logger.info("Adding authorization " + authzID);
 
-        String authzID = authorization.getID();
-        logger.info("Adding authorization " + authzID);
+            String sql = statements.getProperty("addAuthorization");
+            logger.info("SQL: " + sql);
 
-        String sql = statements.getProperty("addAuthorization");
-        logger.info("SQL: " + sql);
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setString(1, authzID);
+                ps.setString(2, authorization.getAccountID());
 
-            ps.setString(1, authzID);
-            ps.setString(2, authorization.getAccountID());
+                Date creationTime = authorization.getCreationTime();
+                ps.setTimestamp(3, creationTime == null ? null : new Timestamp(creationTime.getTime()), UTC);
 
-            Date creationTime = authorization.getCreationTime();
-            ps.setTimestamp(3, creationTime == null ? null : new Timestamp(creationTime.getTime()), UTC);
+                ps.setString(4, authorization.getStatus());
 
-            ps.setString(4, authorization.getStatus());
+                Date expirationTime = authorization.getExpirationTime();
+                ps.setTimestamp(5, expirationTime == null ? null : new Timestamp(expirationTime.getTime()), UTC);
 
-            Date expirationTime = authorization.getExpirationTime();
-            ps.setTimestamp(5, expirationTime == null ? null : new Timestamp(expirationTime.getTime()), UTC);
+                ACMEIdentifier identifier = authorization.getIdentifier();
+                ps.setString(6, identifier.getType());
+                ps.setString(7, identifier.getValue());
 
-            ACMEIdentifier identifier = authorization.getIdentifier();
-            ps.setString(6, identifier.getType());
-            ps.setString(7, identifier.getValue());
+                Boolean wildcard = authorization.getWildcard();
+                ps.setBoolean(8, wildcard == null ? false : wildcard);
 
-            Boolean wildcard = authorization.getWildcard();
-            ps.setBoolean(8, wildcard == null ? false : wildcard);
+                ps.executeUpdate();
+            }
 
-            ps.executeUpdate();
+            addAuthorizationChallenges(connection, authorization);
         }
-
-        addAuthorizationChallenges(authorization);
     }
 
     @Override
     public void updateAuthorization(ACMEAuthorization authorization) throws Exception {
 
-        connect();
+        try (Connection connection = connect()) {
+            String authzID = authorization.getID();
+            logger.info("Updating authorization " + authzID);
 
-        String authzID = authorization.getID();
-        logger.info("Updating authorization " + authzID);
+            String sql = statements.getProperty("updateAuthorization");
+            logger.info("SQL: " + sql);
 
-        String sql = statements.getProperty("updateAuthorization");
-        logger.info("SQL: " + sql);
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setString(1, authorization.getStatus());
 
-            ps.setString(1, authorization.getStatus());
+                Date expirationTime = authorization.getExpirationTime();
+                ps.setTimestamp(2, expirationTime == null ? null : new Timestamp(expirationTime.getTime()), UTC);
 
-            Date expirationTime = authorization.getExpirationTime();
-            ps.setTimestamp(2, expirationTime == null ? null : new Timestamp(expirationTime.getTime()), UTC);
+                ps.setString(3, authzID);
 
-            ps.setString(3, authzID);
+                ps.executeUpdate();
+            }
 
-            ps.executeUpdate();
+            removeAuthorizationChallenges(connection, authzID);
+            addAuthorizationChallenges(connection, authorization);
         }
-
-        removeAuthorizationChallenges(authzID);
-        addAuthorizationChallenges(authorization);
     }
 
-    private void removeAuthorizationChallenges(String authzID) throws Exception {
+    private void removeAuthorizationChallenges(Connection connection, String authzID) throws Exception {
 
         logger.info("Removing challenges for authorization " + authzID);
 
@@ -1283,7 +1341,7 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         }
     }
 
-    private void addAuthorizationChallenges(ACMEAuthorization authorization) throws Exception {
+    private void addAuthorizationChallenges(Connection connection, ACMEAuthorization authorization) throws Exception {
 
         Collection<ACMEChallenge> challenges = authorization.getChallenges();
         if (challenges == null) return;
@@ -1312,146 +1370,110 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         }
     }
 
-    private void removeAuthorization(String authzID) throws Exception {
-
-        removeAuthorizationChallenges(authzID);
-
-        logger.info("Removing authorization " + authzID);
+    @Override
+    public int removeExpiredAuthorizations(Date currentTime) throws Exception {
 
-        String sql = statements.getProperty("removeAuthorization");
-        logger.info("SQL: " + sql);
+        try (Connection connection = connect()) {
+            logger.info("Removing expired authorizations");
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, authzID);
-            ps.executeUpdate();
-        }
-    }
+            if (!hasStatements(
+                    "getExpiredAuthorizationIDsBatch",
+                    "removeAuthorizationChallengesBatch",
+                    "removeAuthorizationsBatch")) {
+                return removeExpiredRecordsByID(connection, "getExpiredAuthorizationIDs", currentTime,
+                        "removeAuthorizationChallenges", "removeAuthorization");
+            }
 
-    @Override
-    public void removeExpiredAuthorizations(Date currentTime) throws Exception {
+            int count = 0;
+            Collection<String> authzIDs;
 
-        connect();
+            do {
+                authzIDs = getExpiredAuthorizationIDs(connection, currentTime);
+                if (authzIDs.isEmpty()) break;
 
-        logger.info("Getting expired authorization IDs");
+                Array ids = connection.createArrayOf("VARCHAR", authzIDs.toArray());
 
-        Collection<String> authzIDs = getExpiredAuthorizationIDs(currentTime);
+                removeRecords(connection, "removeAuthorizationChallengesBatch", ids);
+                count += removeRecords(connection, "removeAuthorizationsBatch", ids);
 
-        logger.info("Removing expired authorization");
+            } while (authzIDs.size() >= expiryBatchSize);
 
-        for (String authzID : authzIDs) {
-            removeAuthorization(authzID);
+            return count;
         }
     }
 
     @Override
     public ACMECertificate getCertificate(String certID) throws Exception {
 
-        connect();
-
-        logger.info("Getting certificate " + certID);
-
-        String sql = statements.getProperty("getCertificate");
-        logger.info("SQL: " + sql);
-
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, certID);
-
-            try (ResultSet rs = ps.executeQuery()) {
-
-                if (!rs.next()) {
-                    return null;
-                }
-
-                ACMECertificate certificate = new ACMECertificate();
-                certificate.setID(certID);
+        try (Connection connection = connect()) {
+            logger.info("Getting certificate " + certID);
 
-                Timestamp created = rs.getTimestamp("created");
-                certificate.setCreationTime(created == null ? null : new Date(created.getTime()));
+            String sql = statements.getProperty("getCertificate");
+            logger.info("SQL: " + sql);
 
-                certificate.setData(rs.getBytes("data"));
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setString(1, certID);
 
-                Timestamp expires = rs.getTimestamp("expires");
-                certificate.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
+                try (ResultSet rs = ps.executeQuery()) {
 
-                return certificate;
-            }
-        }
-    }
-
-    private Collection<String> getExpiredCertificateIDs(Date currentTime) throws Exception {
+                    if (!rs.next()) {
+                        return null;
+                    }
 
-        String sql = statements.getProperty("getExpiredCertificateIDs");
-        logger.info("SQL: " + sql);
+                    ACMECertificate certificate = new ACMECertificate();
+                    certificate.setID(certID);
 
-        Collection<String> certIDs = new ArrayList<>();
+                    Timestamp created = rs.getTimestamp("created");
+                    certificate.setCreationTime(created == null ? null : new Date(created.getTime()));
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setTimestamp(1, new Timestamp(currentTime.getTime()), UTC);
+                    certificate.setData(rs.getBytes("data"));
 
-            try (ResultSet rs = ps.executeQuery()) {
+                    Timestamp expires = rs.getTimestamp("expires");
+                    certificate.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
 
-                while (rs.next()) {
-                    String certID = rs.getString("id");
-                    certIDs.add(certID);
+                    return certificate;
                 }
             }
         }
-
-        return certIDs;
     }
 
     @Override
     public void addCertificate(String certID, ACMECertificate certificate) throws Exception {
 
-        connect();
-
-        logger.info("Adding certificate " + certID);
-
-        String sql = statements.getProperty("addCertificate");
-        logger.info("SQL: " + sql);
+        try (Connection connection = connect()) {
+            logger.info("Adding certificate " + certID);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            String sql = statements.getProperty("addCertificate");
+            logger.info("SQL: " + sql);
 
-            ps.setString(1, certID);
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
 
-            Date creationTime = certificate.getCreationTime();
-            ps.setTimestamp(2, creationTime == null ? null : new Timestamp(creationTime.getTime()), UTC);
+                ps.setString(1, certID);
 
-            ps.setBytes(3, certificate.getData());
+                Date creationTime = certificate.getCreationTime();
+                ps.setTimestamp(2, creationTime == null ? null : new Timestamp(creationTime.getTime()), UTC);
 
-            Date expirationTime = certificate.getExpirationTime();
-            ps.setTimestamp(4, expirationTime == null ? null : new Timestamp(expirationTime.getTime()), UTC);
+                ps.setBytes(3, certificate.getData());
 
-            ps.executeUpdate();
-        }
-    }
+                Date expirationTime = certificate.getExpirationTime();
+                ps.setTimestamp(4, expirationTime == null ? null : new Timestamp(expirationTime.getTime()), UTC);
 
-    private void removeCertificate(String certID) throws Exception {
-
-        logger.info("Removing certificate " + certID);
-
-        String sql = statements.getProperty("removeCertificate");
-        logger.info("SQL: " + sql);
-
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, certID);
-            ps.executeUpdate();
+                ps.executeUpdate();
+            }
         }
     }
 
     @Override
-    public void removeExpiredCertificates(Date currentTime) throws Exception {
-
-        connect();
+    public int removeExpiredCertificates(Date currentTime) throws Exception {
 
-        logger.info("Getting expired certificaate IDs");
+        try (Connection connection = connect()) {
+            logger.info("Removing expired certificates");
 
-        Collection<String> certIDs = getExpiredCertificateIDs(currentTime);
-
-        logger.info("Removing expired certificates");
+            if (!hasStatements("removeExpiredCertificates")) {
+                return removeExpiredRecordsByID(connection, "getExpiredCertificateIDs", currentTime, "removeCertificate");
+            }
 
-        for (String certID : certIDs) {
-            removeCertificate(certID);
+            return removeExpiredRecords(connection, "removeExpiredCertificates", currentTime);
         }
     }
 
@@ -1462,8 +1484,8 @@ public class PostgreSQLDatabase extends ACMEDatabase {
             monitor.stop();
         }
 
-        if (connection != null) {
-            connection.close();
+        if (connectionPool != null) {
+            connectionPool.close();
         }
     }
 }
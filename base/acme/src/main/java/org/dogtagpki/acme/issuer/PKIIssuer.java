@@ -13,6 +13,7 @@ import java.math.BigInteger;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
 
 import org.apache.commons.codec.binary.Base64;
 import org.dogtagpki.acme.ACMERevocation;
@@ -46,9 +47,25 @@ public class PKIIssuer extends ACMEIssuer {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(PKIIssuer.class);
 
+    public static final int DEFAULT_MAX_IDLE_CLIENTS = 10;
+    public static final int DEFAULT_CLIENT_IDLE_TIMEOUT = 60; // seconds
+    public static final int DEFAULT_SESSION_TIMEOUT = 600; // seconds
+    public static final int DEFAULT_TEMPLATE_CACHE_TIMEOUT = 300; // seconds
+
     private ClientConfig clientConfig = new ClientConfig();
     private String profile;
 
+    private int maxIdleClients = DEFAULT_MAX_IDLE_CLIENTS;
+    private long clientIdleTimeout = DEFAULT_CLIENT_IDLE_TIMEOUT * 1000L;
+    private long sessionTimeout = DEFAULT_SESSION_TIMEOUT * 1000L;
+    private long templateCacheTimeout = DEFAULT_TEMPLATE_CACHE_TIMEOUT * 1000L;
+
+    // idle clients, most recently used first
+    private LinkedBlockingDeque<IssuerClient> idleClients = new LinkedBlockingDeque<>();
+
+    private String templateXML;
+    private long templateTime;
+
     public String getProfile() {
         return profile;
     }
@@ -108,6 +125,121 @@ public class PKIIssuer extends ACMEIssuer {
 
         profile = config.getParameter("profile");
         logger.info("- profile: " + profile);
+
+        String value = config.getParameter("maxIdleClients");
+        if (value != null) {
+            maxIdleClients = Integer.parseInt(value);
+        }
+        logger.info("- max idle clients: " + maxIdleClients);
+
+        value = config.getParameter("clientIdleTimeout");
+        if (value != null) {
+            clientIdleTimeout = Integer.parseInt(value) * 1000L;
+        }
+        logger.info("- client idle timeout: " + clientIdleTimeout / 1000 + " s");
+
+        value = config.getParameter("sessionTimeout");
+        if (value != null) {
+            sessionTimeout = Integer.parseInt(value) * 1000L;
+        }
+        logger.info("- session timeout: " + sessionTimeout / 1000 + " s");
+
+        value = config.getParameter("templateCacheTimeout");
+        if (value != null) {
+            templateCacheTimeout = Integer.parseInt(value) * 1000L;
+        }
+        logger.info("- template cache timeout: " + templateCacheTimeout / 1000 + " s");
+    }
+
+    @Override
+    public void close() throws Exception {
+
+        logger.info("Closing PKI issuer");
+
+        IssuerClient client;
+        while ((client = idleClients.pollFirst()) != null) {
+            client.close();
+        }
+    }
+
+    /**
+     * Returns an idle client if available, otherwise creates a new one.
+     * Reusing a client reuses its connection to the CA and its session,
+     * so the TLS handshake and the login are not repeated for each
+     * operation. The client must be returned with releaseClient().
+     */
+    IssuerClient getClient() throws Exception {
+
+        long now = System.currentTimeMillis();
+        IssuerClient client;
+
+        while ((client = idleClients.pollFirst()) != null) {
+
+            if (now - client.lastUsed < clientIdleTimeout) {
+                return client;
+            }
+
+            // the CA has most likely closed the connection already
+            logger.debug("PKIIssuer: Closing idle client");
+            client.close();
+        }
+
+        logger.debug("PKIIssuer: Creating new client");
+        return new IssuerClient();
+    }
+
+    /**
+     * Returns a client into the pool. Clients that failed an operation
+     * might have a broken connection or session so they are closed.
+     */
+    void releaseClient(IssuerClient client, boolean reusable) {
+
+        long now = System.currentTimeMillis();
+
+        if (!reusable || idleClients.size() >= maxIdleClients) {
+            client.close();
+
+        } else {
+            client.lastUsed = now;
+            idleClients.offerFirst(client);
+        }
+
+        // remove clients that have not been used recently
+        IssuerClient last;
+        while ((last = idleClients.peekLast()) != null && now - last.lastUsed >= clientIdleTimeout) {
+            if (idleClients.removeLastOccurrence(last)) {
+                last.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the enrollment template of the profile. The template is
+     * fetched from the CA at most once per template cache timeout.
+     */
+    CertEnrollmentRequest getEnrollmentTemplate(IssuerClient client) throws Exception {
+
+        long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            if (templateXML != null && now - templateTime < templateCacheTimeout) {
+                // the template is modified by the caller so return a copy
+                return CertEnrollmentRequest.fromXML(templateXML);
+            }
+        }
+
+        logger.info("Retrieving enrollment template for " + profile);
+        CertEnrollmentRequest template = client.certClient.getEnrollmentTemplate(profile);
+
+        if (templateCacheTimeout > 0) {
+            String xml = template.toXML();
+            synchronized (this) {
+                templateXML = xml;
+                templateTime = now;
+            }
+        }
+
+        return template;
     }
 
     @Override
@@ -115,10 +247,10 @@ public class PKIIssuer extends ACMEIssuer {
 
         logger.info("Issuing certificate");
 
-        try (PKIClient pkiClient = new PKIClient(clientConfig)) {
-
-            CAClient caClient = new CAClient(pkiClient);
+        IssuerClient client = getClient();
+        boolean reusable = false;
 
+        try {
             // Here the agent credentials are stored in the ClientConfig and will
             // be sent to the CA automatically if any of the methods being called
             // requires REST authentication. However, the methods being called
@@ -144,10 +276,13 @@ public class PKIIssuer extends ACMEIssuer {
             // it's not actually necessary to call CAClient.login(). However, to
             // support both types of profiles the CAClient.login() needs to be
             // called explicitly.
-            caClient.login();
+            //
+            // The session created by the login is kept in the client and
+            // reused until the session timeout.
+            client.login();
 
-            CACertClient certClient = new CACertClient(caClient);
-            CertEnrollmentRequest certEnrollmentRequest = certClient.getEnrollmentTemplate(profile);
+            CACertClient certClient = client.certClient;
+            CertEnrollmentRequest certEnrollmentRequest = getEnrollmentTemplate(client);
 
             for (ProfileInput input : certEnrollmentRequest.getInputs()) {
 
@@ -192,9 +327,14 @@ public class PKIIssuer extends ACMEIssuer {
                 id = info.getCertId();
             }
 
+            reusable = true;
+
             logger.info("Serial number: " + id.toHexString());
             BigInteger serialNumber = id.toBigInteger();
             return Base64.encodeBase64URLSafeString(serialNumber.toByteArray());
+
+        } finally {
+            releaseClient(client, reusable);
         }
     }
 
@@ -204,11 +344,12 @@ public class PKIIssuer extends ACMEIssuer {
         CertId id = new CertId(new BigInteger(1, Base64.decodeBase64(certID)));
         logger.info("Serial number: " + id.toHexString());
 
-        try (PKIClient pkiClient = new PKIClient(clientConfig)) {
+        IssuerClient client = getClient();
+        boolean reusable = false;
 
-            CAClient caClient = new CAClient(pkiClient);
-            CACertClient certClient = new CACertClient(caClient);
-            CertData certData = certClient.getCert(id);
+        try {
+            CertData certData = client.certClient.getCert(id);
+            reusable = true;
 
             String pkcs7Chain = certData.getPkcs7CertChain();
             logger.info("Cert chain:\n" + pkcs7Chain);
@@ -234,6 +375,9 @@ public class PKIIssuer extends ACMEIssuer {
             }
 
             return sw.toString();
+
+        } finally {
+            releaseClient(client, reusable);
         }
     }
 
@@ -263,10 +407,11 @@ public class PKIIssuer extends ACMEIssuer {
 
         logger.info("Reviewing certificate");
 
-        try (PKIClient pkiClient = new PKIClient(clientConfig)) {
+        IssuerClient client = getClient();
+        boolean reusable = false;
 
-            CAClient caClient = new CAClient(pkiClient);
-            CACertClient certClient = new CACertClient(caClient);
+        try {
+            CACertClient certClient = client.certClient;
             CertData certData = certClient.reviewCert(certID);
 
             // Compare cert in request to cert retrieved from PKI.
@@ -292,6 +437,7 @@ public class PKIIssuer extends ACMEIssuer {
 
             logger.info("Revoking certificate");
             CertRequestInfo certRequestInfo = certClient.revokeCert(certID, request);
+            reusable = true;
 
             RequestStatus status = certRequestInfo.getRequestStatus();
             if (status != RequestStatus.COMPLETE) {
@@ -302,6 +448,49 @@ public class PKIIssuer extends ACMEIssuer {
                 String error = certRequestInfo.getErrorMessage();
                 throw new Exception("Unable to revoke certificate: " + error);
             }
+
+        } finally {
+            releaseClient(client, reusable);
+        }
+    }
+
+    /**
+     * Client used by one thread at a time. The underlying HTTP client
+     * keeps its connection to the CA alive between operations.
+     */
+    class IssuerClient implements AutoCloseable {
+
+        PKIClient pkiClient;
+        CAClient caClient;
+        CACertClient certClient;
+
+        long loginTime;
+        long lastUsed;
+
+        IssuerClient() throws Exception {
+            pkiClient = new PKIClient(clientConfig);
+            caClient = new CAClient(pkiClient);
+            certClient = new CACertClient(caClient);
+        }
+
+        /**
+         * Logs in unless the current session is still valid.
+         */
+        void login() throws Exception {
+
+            long now = System.currentTimeMillis();
+
+            if (loginTime > 0 && now - loginTime < sessionTimeout) {
+                return;
+            }
+
+            caClient.login();
+            loginTime = now;
+        }
+
+        @Override
+        public void close() {
+            pkiClient.close();
         }
     }
 }
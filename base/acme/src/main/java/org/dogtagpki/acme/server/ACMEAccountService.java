@@ -47,7 +47,6 @@ public class ACMEAccountService {
         ACMEHeader header = ACMEHeader.fromJSON(protectedHeader);
 
         ACMEEngine engine = ACMEEngine.getInstance();
-        engine.validateNonce(header.getNonce());
 
         URI kid = header.getKid();
         String kidPath = kid.getPath();
@@ -72,6 +71,7 @@ public class ACMEAccountService {
         }
 
         engine.validateJWS(jws, header.getAlg(), account.getJWK());
+        engine.validateNonce(header.getNonce());
 
         String payload = new String(jws.getPayloadAsBytes(), "UTF-8");
 
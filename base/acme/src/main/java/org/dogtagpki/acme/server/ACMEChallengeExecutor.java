@@ -0,0 +1,344 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.server;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.dogtagpki.acme.ACMEError;
+import org.dogtagpki.acme.ValidationResult;
+import org.dogtagpki.acme.validator.ACMEValidator;
+
+/**
+ * Executor for challenge validations.
+ *
+ * Each validator has its own queue of challenges and validates at most
+ * its configured number of challenges concurrently. The validations run
+ * on a shared thread pool whose size is the sum of these limits.
+ *
+ * A failed validation attempt does not hold a thread while waiting to
+ * be retried. The retry is scheduled after the validator's retry delay,
+ * and then the challenge is put back into the validator's queue.
+ *
+ * On shutdown the running validations are allowed to finish. Challenges
+ * that are still queued or waiting to be retried are marked invalid so
+ * that clients do not wait for them in processing state.
+ */
+public class ACMEChallengeExecutor {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ACMEChallengeExecutor.class);
+
+    public static final long SHUTDOWN_TIMEOUT = 30 * 1000;
+
+    private ScheduledThreadPoolExecutor executorService;
+
+    private Map<ACMEValidator, ValidatorQueue> queues = new ConcurrentHashMap<>();
+
+    private volatile boolean closed;
+
+    public void init(Collection<ACMEValidator> validators) {
+
+        logger.info("Initializing ACME challenge executor");
+
+        int threads = 0;
+        for (ACMEValidator validator : validators) {
+            queues.put(validator, new ValidatorQueue(validator));
+            threads += validator.getMaxConcurrency();
+        }
+
+        threads = Math.max(threads, 1);
+        logger.info("- threads: " + threads);
+
+        AtomicInteger counter = new AtomicInteger();
+
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "ACMEChallengeExecutor-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        executorService = new ScheduledThreadPoolExecutor(threads, threadFactory);
+
+        // cancel scheduled retries on shutdown
+        executorService.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Queues a challenge for validation.
+     */
+    public void submit(ACMEChallengeProcessor processor) {
+        ValidatorQueue queue = queues.computeIfAbsent(processor.getValidator(), ValidatorQueue::new);
+        queue.add(processor);
+    }
+
+    /**
+     * Returns the number of challenges waiting for a validation slot.
+     */
+    public int getQueued() {
+        return queues.values().stream().mapToInt(q -> q.queued.get()).sum();
+    }
+
+    /**
+     * Returns the number of challenges being validated.
+     */
+    public int getInFlight() {
+        return queues.values().stream().mapToInt(q -> q.inFlight.get()).sum();
+    }
+
+    /**
+     * Returns the number of challenges waiting to be retried.
+     */
+    public int getRetrying() {
+        return queues.values().stream().mapToInt(q -> q.scheduled.size()).sum();
+    }
+
+    /**
+     * Returns the number of challenges that have been finalized.
+     */
+    public long getCompleted() {
+        return queues.values().stream().mapToLong(q -> q.valid.sum() + q.invalid.sum()).sum();
+    }
+
+    /**
+     * Returns the number of retries that have been scheduled.
+     */
+    public long getRetries() {
+        return queues.values().stream().mapToLong(q -> q.retries.sum()).sum();
+    }
+
+    /**
+     * Returns the number of challenges marked invalid on shutdown.
+     */
+    public long getAbandoned() {
+        return queues.values().stream().mapToLong(q -> q.abandoned.sum()).sum();
+    }
+
+    public void logStats() {
+        for (ValidatorQueue queue : queues.values()) {
+            logger.info("ACMEChallengeExecutor: " + queue);
+        }
+    }
+
+    public void shutdown() {
+
+        logger.info("Shutting down ACME challenge executor");
+
+        closed = true;
+
+        // let running validations finish
+        executorService.shutdown();
+
+        try {
+            if (!executorService.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                logger.warn("Unable to finish challenge validations within " + SHUTDOWN_TIMEOUT + " ms");
+                executorService.shutdownNow();
+            }
+
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        for (ValidatorQueue queue : queues.values()) {
+            queue.abandonAll();
+        }
+
+        logStats();
+    }
+
+    class ValidatorQueue {
+
+        ACMEValidator validator;
+
+        Queue<ACMEChallengeProcessor> pending = new ConcurrentLinkedQueue<>();
+
+        // challenges waiting to be retried
+        Set<ACMEChallengeProcessor> scheduled = ConcurrentHashMap.newKeySet();
+
+        AtomicInteger queued = new AtomicInteger();
+        AtomicInteger inFlight = new AtomicInteger();
+
+        LongAdder valid = new LongAdder();
+        LongAdder invalid = new LongAdder();
+        LongAdder retries = new LongAdder();
+        LongAdder abandoned = new LongAdder();
+
+        ValidatorQueue(ACMEValidator validator) {
+            this.validator = validator;
+        }
+
+        void add(ACMEChallengeProcessor processor) {
+
+            if (closed) {
+                abandon(processor);
+                return;
+            }
+
+            queued.incrementAndGet();
+            pending.add(processor);
+            dispatch();
+        }
+
+        /**
+         * Starts queued validations while the validator is below
+         * its concurrency limit.
+         */
+        void dispatch() {
+
+            while (!closed) {
+
+                int current = inFlight.get();
+                if (current >= validator.getMaxConcurrency() || pending.isEmpty()) {
+                    return;
+                }
+
+                if (!inFlight.compareAndSet(current, current + 1)) {
+                    continue;
+                }
+
+                ACMEChallengeProcessor processor = pending.poll();
+
+                if (processor == null) {
+                    // another thread took the challenge, release the slot
+                    // and check again in case a challenge was added meanwhile
+                    inFlight.decrementAndGet();
+                    continue;
+                }
+
+                queued.decrementAndGet();
+
+                try {
+                    executorService.execute(() -> validate(processor));
+
+                } catch (RejectedExecutionException e) {
+                    inFlight.decrementAndGet();
+                    abandon(processor);
+                    return;
+                }
+            }
+        }
+
+        void validate(ACMEChallengeProcessor processor) {
+
+            String challengeID = processor.getChallenge().getID();
+
+            try {
+                ValidationResult result = processor.validateChallenge();
+
+                if (result.isOK()) {
+                    processor.finalizeValidAuthorization();
+                    valid.increment();
+
+                } else if (processor.getAttempts() < validator.getMaxAttempts()) {
+                    retry(processor);
+
+                } else {
+                    processor.finalizeInvalidAuthorization(result.getError());
+                    invalid.increment();
+                }
+
+            } catch (Exception e) {
+                logger.error("Unable to process challenge " + challengeID + ": " + e.getMessage(), e);
+
+            } finally {
+                inFlight.decrementAndGet();
+                log();
+                dispatch();
+            }
+        }
+
+        void retry(ACMEChallengeProcessor processor) {
+
+            if (closed) {
+                abandon(processor);
+                return;
+            }
+
+            long delay = validator.getRetryDelay(processor.getAttempts());
+            logger.info("Retrying challenge " + processor.getChallenge().getID() + " in " + delay + " ms");
+
+            retries.increment();
+            scheduled.add(processor);
+
+            try {
+                executorService.schedule(() -> {
+                    if (scheduled.remove(processor)) {
+                        add(processor);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+
+            } catch (RejectedExecutionException e) {
+                if (scheduled.remove(processor)) {
+                    abandon(processor);
+                }
+            }
+        }
+
+        /**
+         * Marks the challenges that are still queued or waiting
+         * to be retried invalid.
+         */
+        void abandonAll() {
+
+            ACMEChallengeProcessor processor;
+            while ((processor = pending.poll()) != null) {
+                queued.decrementAndGet();
+                abandon(processor);
+            }
+
+            for (ACMEChallengeProcessor p : scheduled) {
+                if (scheduled.remove(p)) {
+                    abandon(p);
+                }
+            }
+        }
+
+        void abandon(ACMEChallengeProcessor processor) {
+
+            String challengeID = processor.getChallenge().getID();
+            logger.warn("Unable to validate challenge " + challengeID + ": Server is shutting down");
+
+            ACMEError error = new ACMEError();
+            error.setType("urn:ietf:params:acme:error:serverInternal");
+            error.setDetail("Challenge validation was stopped by server shutdown");
+
+            try {
+                processor.finalizeInvalidAuthorization(error);
+
+            } catch (Exception e) {
+                logger.error("Unable to finalize challenge " + challengeID + ": " + e.getMessage(), e);
+            }
+
+            abandoned.increment();
+        }
+
+        void log() {
+            logger.debug("ACMEChallengeExecutor: " + this);
+        }
+
+        @Override
+        public String toString() {
+            return validator.getName()
+                    + " queued: " + queued.get()
+                    + ", in flight: " + inFlight.get()
+                    + ", retrying: " + scheduled.size()
+                    + ", retries: " + retries.sum()
+                    + ", valid: " + valid.sum()
+                    + ", invalid: " + invalid.sum()
+                    + ", abandoned: " + abandoned.sum();
+        }
+    }
+}
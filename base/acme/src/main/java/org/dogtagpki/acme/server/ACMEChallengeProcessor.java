@@ -20,7 +20,7 @@ import org.dogtagpki.acme.validator.ACMEValidator;
 /**
  * @author Endi S. Dewata
  */
-public class ACMEChallengeProcessor implements Runnable {
+public class ACMEChallengeProcessor {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ACMEChallengeProcessor.class);
 
@@ -29,6 +29,8 @@ public class ACMEChallengeProcessor implements Runnable {
     ACMEChallenge challenge;
     ACMEValidator validator;
 
+    int attempts;
+
     public ACMEChallengeProcessor(
             ACMEAccount account,
             ACMEAuthorization authorization,
@@ -41,43 +43,38 @@ public class ACMEChallengeProcessor implements Runnable {
         this.validator = validator;
     }
 
-    @Override
-    public void run() {
-        try {
-            processChallenge();
-        } catch (Exception e) {
-            logger.error("Unable to process challenge " + challenge.getID() + ": " + e.getMessage(), e);
-        }
+    public ACMEChallenge getChallenge() {
+        return challenge;
     }
 
-    public void processChallenge() throws Exception {
+    public ACMEValidator getValidator() {
+        return validator;
+    }
 
-        String challengeID = challenge.getID();
-        logger.info("Processing challenge " + challengeID);
-
-        // TODO make retry parameters configurable
-        int maxAttempts = 5;
-        int delaySeconds = 5;
-        int attempts = 0;
-        ValidationResult r = null;
-
-        while (attempts++ < maxAttempts) {
-            try {
-                r = validator.validateChallenge(authorization, challenge);
-            } catch (Exception e) {
-                ACMEError error = new ACMEError();
-                error.setType("urn:ietf:params:acme:error:serverInternal");
-                error.setDetail("Internal server error: " + e);
-                r = ValidationResult.fail(error);
-            }
-            if (r.isOK()) break;
-            Thread.sleep(delaySeconds * 1000);
-        }
+    /**
+     * Returns the number of validation attempts made so far.
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Makes a single validation attempt. Retrying failed attempts and
+     * finalizing the authorization is done by ACMEChallengeExecutor.
+     */
+    public ValidationResult validateChallenge() {
+
+        attempts++;
+        logger.info("Processing challenge " + challenge.getID() + " (attempt " + attempts + ")");
 
-        if (r.isOK()) {
-            finalizeValidAuthorization();
-        } else {
-            finalizeInvalidAuthorization(r.getError());
+        try {
+            return validator.validateChallenge(authorization, challenge);
+
+        } catch (Exception e) {
+            ACMEError error = new ACMEError();
+            error.setType("urn:ietf:params:acme:error:serverInternal");
+            error.setDetail("Internal server error: " + e);
+            return ValidationResult.fail(error);
         }
     }
 
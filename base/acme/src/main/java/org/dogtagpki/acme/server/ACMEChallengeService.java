@@ -48,7 +48,6 @@ public class ACMEChallengeService {
         ACMEHeader header = ACMEHeader.fromJSON(protectedHeader);
 
         ACMEEngine engine = ACMEEngine.getInstance();
-        engine.validateNonce(header.getNonce());
 
         URI kid = header.getKid();
         String kidPath = kid.getPath();
@@ -57,6 +56,7 @@ public class ACMEChallengeService {
 
         ACMEAccount account = engine.getAccount(accountID);
         engine.validateJWS(jws, header.getAlg(), account.getJWK());
+        engine.validateNonce(header.getNonce());
 
         String payload = new String(jws.getPayloadAsBytes(), "UTF-8");
         logger.info("Payload: " + payload);
@@ -92,8 +92,7 @@ public class ACMEChallengeService {
                     challenge,
                     validator);
 
-            // TODO: use thread pool
-            new Thread(processor).start();
+            engine.getChallengeExecutor().submit(processor);
 
         } else if (challengeStatus.equals("processing")) {
             // TODO: retry the challenge
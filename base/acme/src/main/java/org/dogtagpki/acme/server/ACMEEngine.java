@@ -17,9 +17,11 @@ import java.security.Signature;
 import java.security.cert.X509Certificate;
 import java.security.spec.RSAPublicKeySpec;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -48,6 +50,7 @@ import org.dogtagpki.acme.JWK;
 import org.dogtagpki.acme.JWS;
 import org.dogtagpki.acme.database.ACMEDatabase;
 import org.dogtagpki.acme.database.ACMEDatabaseConfig;
+import org.dogtagpki.acme.database.CachingDatabase;
 import org.dogtagpki.acme.issuer.ACMEIssuer;
 import org.dogtagpki.acme.issuer.ACMEIssuerConfig;
 import org.dogtagpki.acme.scheduler.ACMEScheduler;
@@ -73,6 +76,8 @@ public class ACMEEngine {
 
     public static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ACMEEngine.class);
 
+    public static final int MAX_PUBLIC_KEYS = 1000;
+
     public static ACMEEngine INSTANCE;
 
     private String id;
@@ -97,11 +102,26 @@ public class ACMEEngine {
 
     private ACMEScheduler scheduler;
 
+    private ACMEChallengeExecutor challengeExecutor;
+
     private RealmCommon realm;
 
     private boolean noncesPersistent;
+    private ACMEStatelessNonces statelessNonces;
     private Map<String, ACMENonce> nonces = new ConcurrentHashMap<>();
 
+    // record type -> expiry sweep statistics
+    private Map<String, ACMEExpiryStats> expiryStats = new LinkedHashMap<>();
+
+    // JWK modulus and exponent -> parsed RSA public key
+    private Map<String, PublicKey> publicKeys = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PublicKey> eldest) {
+                    return size() > MAX_PUBLIC_KEYS;
+                }
+            });
+
     public static ACMEEngine getInstance() {
         return INSTANCE;
     }
@@ -210,6 +230,7 @@ public class ACMEEngine {
         logger.info("- enabled: " + config.isEnabled());
         logger.info("- base URL: " + config.getBaseURL());
         logger.info("- nonces persistent: " + config.getNoncesPersistent());
+        logger.info("- nonces stateless: " + config.getNoncesStateless());
 
         ACMEPolicyConfig policyConfig = config.getPolicyConfig();
         logger.info("- wildcard: " + policyConfig.getEnableWildcards());
@@ -274,6 +295,16 @@ public class ACMEEngine {
         database = databaseClass.getDeclaredConstructor().newInstance();
         database.setConfig(databaseConfig);
         database.init();
+
+        String cacheEnabled = databaseConfig.getParameter("cache.enabled");
+        logger.info("- cache enabled: " + cacheEnabled);
+
+        if ("true".equals(cacheEnabled)) {
+            CachingDatabase cache = new CachingDatabase(database);
+            cache.setConfig(databaseConfig);
+            cache.init();
+            database = cache;
+        }
     }
 
     public void initValidators(String filename) throws Exception {
@@ -310,6 +341,19 @@ public class ACMEEngine {
         }
     }
 
+    public Collection<ACMEExpiryStats> getExpiryStats() {
+        return expiryStats.values();
+    }
+
+    public ACMEChallengeExecutor getChallengeExecutor() {
+        return challengeExecutor;
+    }
+
+    public void initChallengeExecutor() throws Exception {
+        challengeExecutor = new ACMEChallengeExecutor();
+        challengeExecutor.init(validators.values());
+    }
+
     public void initIssuer(String filename) throws Exception {
 
         File issuerConfigFile = new File(filename);
@@ -458,9 +502,11 @@ public class ACMEEngine {
         this.noncesPersistent =  noncePersistent != null ? noncePersistent : false;
 
         initRandomGenerator();
+        initStatelessNonces();
         initMetadata(acmeConfDir + File.separator + "metadata.conf");
         initDatabase(acmeConfDir + File.separator + "database.conf");
         initValidators(acmeConfDir + File.separator + "validators.conf");
+        initChallengeExecutor();
         initIssuer(acmeConfDir + File.separator + "issuer.conf");
         initScheduler(acmeConfDir + File.separator + "scheduler.conf");
         initMonitors(acmeConfDir + File.separator + "configsources.conf");
@@ -485,6 +531,13 @@ public class ACMEEngine {
         validators.clear();
     }
 
+    public void shutdownChallengeExecutor() throws Exception {
+        if (challengeExecutor == null) return;
+
+        challengeExecutor.shutdown();
+        challengeExecutor = null;
+    }
+
     public void shutdownIssuer() throws Exception {
         if (issuer == null) return;
 
@@ -521,6 +574,7 @@ public class ACMEEngine {
         shutdownMonitors();
         shutdownScheduler();
         shutdownIssuer();
+        shutdownChallengeExecutor();
         shutdownValidators();
         shutdownDatabase();
 
@@ -533,11 +587,66 @@ public class ACMEEngine {
         return RandomStringUtils.random(length, 0, 0, true, true, null, random);
     }
 
+    public void initStatelessNonces() throws Exception {
+
+        Boolean stateless = config.getNoncesStateless();
+        if (stateless == null || !stateless) return;
+
+        logger.info("Initializing stateless nonces");
+
+        // Used nonces are only tracked in this server's memory. A secret
+        // shared with other servers or kept across restarts would let a
+        // used nonce be replayed there, so each server generates its own.
+        if (config.getNoncesSecret() != null) {
+            throw new Exception("nonces.secret is not supported with stateless nonces: "
+                    + "used nonces are only tracked by the server that issued them");
+        }
+
+        logger.info("- secret: random");
+        byte[] secret = new byte[32];
+        random.nextBytes(secret);
+
+        long lifetime = policy.getNonceExpirationTime(new Date(0)).getTime();
+        logger.info("- lifetime: " + lifetime + " ms");
+
+        statelessNonces = new ACMEStatelessNonces(secret, lifetime);
+
+        Double expectedRate = config.getNoncesExpectedRate();
+        if (expectedRate != null) statelessNonces.setExpectedRate(expectedRate);
+        logger.info("- expected rate: " + statelessNonces.getExpectedRate() + " nonces/s");
+
+        Double falsePositiveRate = config.getNoncesFalsePositiveRate();
+        if (falsePositiveRate != null) statelessNonces.setTargetFalsePositiveRate(falsePositiveRate);
+        logger.info("- false positive rate: " + statelessNonces.getTargetFalsePositiveRate());
+
+        Integer filterSize = config.getNoncesFilterSize();
+        if (filterSize != null) statelessNonces.setFilterSize(filterSize);
+
+        Integer maxFilters = config.getNoncesMaxFilters();
+        if (maxFilters != null) statelessNonces.setMaxFilters(maxFilters);
+        logger.info("- max filters: " + statelessNonces.getMaxFilters());
+
+        statelessNonces.init();
+
+        logger.info("- filter size: " + statelessNonces.getFilterSize() + " bits");
+        logger.info("- filter capacity: " + statelessNonces.getCapacity() + " nonces");
+        logger.info("- hashes: " + statelessNonces.getHashes());
+    }
+
     public ACMENonce createNonce() throws Exception {
 
         Date currentTime = new Date();
         ACMENonce nonce = new ACMENonce();
 
+        if (statelessNonces != null) {
+            Date expirationTime = policy.getNonceExpirationTime(currentTime);
+            nonce.setID(statelessNonces.createNonce(expirationTime.getTime(), random));
+            nonce.setCreationTime(currentTime);
+            nonce.setExpirationTime(expirationTime);
+            logger.info("Created nonce: " + nonce);
+            return nonce;
+        }
+
         // generate 128-bit nonce with JSS
         // TODO: make it configurable
 
@@ -563,8 +672,26 @@ public class ACMEEngine {
         return nonce;
     }
 
+    /**
+     * Validates and consumes a nonce. This should be called after the JWS
+     * has been verified so that a forged request cannot use up a nonce.
+     */
     public void validateNonce(String value) throws Exception {
 
+        if (statelessNonces != null) {
+
+            try {
+                statelessNonces.validateNonce(value);
+
+            } catch (ACMEStatelessNonces.BadNonceException e) {
+                logger.info("Bad nonce " + value + ": " + e.getMessage());
+                throw createBadNonceException(e.getMessage());
+            }
+
+            logger.info("Valid nonce: " + value);
+            return;
+        }
+
         ACMENonce nonce;
 
         if (noncesPersistent) {
@@ -591,15 +718,43 @@ public class ACMEEngine {
 
     public void removeExpiredRecords(Date currentTime) throws Exception {
 
-        if (noncesPersistent) {
-            database.removeExpiredNonces(currentTime);
+        if (statelessNonces != null) {
+            // used nonces are removed from the filters as they expire
+            statelessNonces.logStats();
+        } else if (noncesPersistent) {
+            removeExpiredRecords("nonces", () -> database.removeExpiredNonces(currentTime));
         } else {
-            nonces.values().removeIf(n -> !currentTime.before(n.getExpirationTime()));
+            removeExpiredRecords("nonces", () -> {
+                int size = nonces.size();
+                nonces.values().removeIf(n -> !currentTime.before(n.getExpirationTime()));
+                return Math.max(size - nonces.size(), 0);
+            });
         }
 
-        database.removeExpiredAuthorizations(currentTime);
-        database.removeExpiredOrders(currentTime);
-        database.removeExpiredCertificates(currentTime);
+        removeExpiredRecords("authorizations", () -> database.removeExpiredAuthorizations(currentTime));
+        removeExpiredRecords("orders", () -> database.removeExpiredOrders(currentTime));
+        removeExpiredRecords("certificates", () -> database.removeExpiredCertificates(currentTime));
+    }
+
+    void removeExpiredRecords(String name, ExpirySweep sweep) throws Exception {
+
+        long startTime = System.currentTimeMillis();
+        int removed = sweep.run();
+        long duration = System.currentTimeMillis() - startTime;
+
+        logger.info("Removed " + removed + " expired " + name + " in " + duration + " ms");
+
+        ACMEExpiryStats stats;
+        synchronized (expiryStats) {
+            stats = expiryStats.computeIfAbsent(name, ACMEExpiryStats::new);
+        }
+
+        stats.record(removed, duration);
+        logger.debug("ACMEEngine: " + stats);
+    }
+
+    interface ExpirySweep {
+        int run() throws Exception;
     }
 
     public void validateJWS(JWS jws, String alg, JWK jwk) throws Exception {
@@ -614,16 +769,23 @@ public class ACMEEngine {
             signer = Signature.getInstance("SHA256withRSA", "Mozilla-JSS");
 
             String kty = jwk.getKty();
-            KeyFactory keyFactory = KeyFactory.getInstance(kty, "Mozilla-JSS");
-
             String n = jwk.getN();
-            BigInteger modulus = new BigInteger(1, Base64.decodeBase64(n));
-
             String e = jwk.getE();
-            BigInteger publicExponent = new BigInteger(1, Base64.decodeBase64(e));
 
-            RSAPublicKeySpec keySpec = new RSAPublicKeySpec(modulus, publicExponent);
-            publicKey = keyFactory.generatePublic(keySpec);
+            String keyID = kty + "." + n + "." + e;
+            publicKey = publicKeys.get(keyID);
+
+            if (publicKey == null) {
+                KeyFactory keyFactory = KeyFactory.getInstance(kty, "Mozilla-JSS");
+
+                BigInteger modulus = new BigInteger(1, Base64.decodeBase64(n));
+                BigInteger publicExponent = new BigInteger(1, Base64.decodeBase64(e));
+
+                RSAPublicKeySpec keySpec = new RSAPublicKeySpec(modulus, publicExponent);
+                publicKey = keyFactory.generatePublic(keySpec);
+
+                publicKeys.put(keyID, publicKey);
+            }
 
         } else {
             ResponseBuilder builder = Response.status(Response.Status.BAD_REQUEST);
@@ -728,6 +890,18 @@ public class ACMEEngine {
         return new WebApplicationException(builder.build());
     }
 
+    public Exception createBadNonceException(String desc) {
+        ResponseBuilder builder = Response.status(Response.Status.BAD_REQUEST);
+        builder.type("application/problem+json");
+
+        ACMEError error = new ACMEError();
+        error.setType("urn:ietf:params:acme:error:badNonce");
+        error.setDetail(desc);
+        builder.entity(error);
+
+        return new WebApplicationException(builder.build());
+    }
+
     public Exception createMalformedException(String desc) {
         ResponseBuilder builder = Response.status(Response.Status.BAD_REQUEST);
         builder.type("application/problem+json");
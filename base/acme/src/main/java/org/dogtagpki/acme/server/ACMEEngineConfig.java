@@ -9,6 +9,7 @@ import java.net.URL;
 import java.util.Map.Entry;
 import java.util.Properties;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
@@ -25,6 +26,12 @@ public class ACMEEngineConfig implements JSONSerializer {
     private Boolean enabled = true;
     private URL baseURL;
     private Boolean noncesPersistent;
+    private Boolean noncesStateless;
+    private String noncesSecret;
+    private Double noncesExpectedRate;
+    private Double noncesFalsePositiveRate;
+    private Integer noncesFilterSize;
+    private Integer noncesMaxFilters;
 
     @JsonProperty("policy")
     private ACMEPolicyConfig policyConfig = new ACMEPolicyConfig();
@@ -53,6 +60,56 @@ public class ACMEEngineConfig implements JSONSerializer {
         this.noncesPersistent = noncesPersistent;
     }
 
+    public Boolean getNoncesStateless() {
+        return noncesStateless;
+    }
+
+    public void setNoncesStateless(Boolean noncesStateless) {
+        this.noncesStateless = noncesStateless;
+    }
+
+    @JsonIgnore
+    public String getNoncesSecret() {
+        return noncesSecret;
+    }
+
+    @JsonIgnore
+    public void setNoncesSecret(String noncesSecret) {
+        this.noncesSecret = noncesSecret;
+    }
+
+    public Double getNoncesExpectedRate() {
+        return noncesExpectedRate;
+    }
+
+    public void setNoncesExpectedRate(Double noncesExpectedRate) {
+        this.noncesExpectedRate = noncesExpectedRate;
+    }
+
+    public Double getNoncesFalsePositiveRate() {
+        return noncesFalsePositiveRate;
+    }
+
+    public void setNoncesFalsePositiveRate(Double noncesFalsePositiveRate) {
+        this.noncesFalsePositiveRate = noncesFalsePositiveRate;
+    }
+
+    public Integer getNoncesMaxFilters() {
+        return noncesMaxFilters;
+    }
+
+    public void setNoncesMaxFilters(Integer noncesMaxFilters) {
+        this.noncesMaxFilters = noncesMaxFilters;
+    }
+
+    public Integer getNoncesFilterSize() {
+        return noncesFilterSize;
+    }
+
+    public void setNoncesFilterSize(Integer noncesFilterSize) {
+        this.noncesFilterSize = noncesFilterSize;
+    }
+
     public ACMEPolicyConfig getPolicyConfig() {
         return policyConfig;
     }
@@ -79,6 +136,24 @@ public class ACMEEngineConfig implements JSONSerializer {
             } else if (key.equals("nonces.persistent")) {
                 config.setNoncePersistent(Boolean.valueOf(value));
 
+            } else if (key.equals("nonces.stateless")) {
+                config.setNoncesStateless(Boolean.valueOf(value));
+
+            } else if (key.equals("nonces.secret")) {
+                config.setNoncesSecret(value);
+
+            } else if (key.equals("nonces.expectedRate")) {
+                config.setNoncesExpectedRate(Double.valueOf(value));
+
+            } else if (key.equals("nonces.falsePositiveRate")) {
+                config.setNoncesFalsePositiveRate(Double.valueOf(value));
+
+            } else if (key.equals("nonces.filterSize")) {
+                config.setNoncesFilterSize(Integer.valueOf(value));
+
+            } else if (key.equals("nonces.maxFilters")) {
+                config.setNoncesMaxFilters(Integer.valueOf(value));
+
             } else if (key.startsWith("policy.")) {
 
                 String policyKey = key.substring(7);
@@ -0,0 +1,75 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.server;
+
+/**
+ * Statistics of the expiry sweeps for one type of record.
+ */
+public class ACMEExpiryStats {
+
+    private String name;
+
+    private long sweeps;
+    private long removed;
+    private long duration;
+
+    private int lastRemoved;
+    private long lastDuration;
+
+    public ACMEExpiryStats(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized void record(int removed, long duration) {
+        this.sweeps++;
+        this.removed += removed;
+        this.duration += duration;
+        this.lastRemoved = removed;
+        this.lastDuration = duration;
+    }
+
+    /**
+     * Returns the number of sweeps.
+     */
+    public synchronized long getSweeps() {
+        return sweeps;
+    }
+
+    /**
+     * Returns the total number of records removed.
+     */
+    public synchronized long getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Returns the total duration of the sweeps in milliseconds.
+     */
+    public synchronized long getDuration() {
+        return duration;
+    }
+
+    public synchronized int getLastRemoved() {
+        return lastRemoved;
+    }
+
+    public synchronized long getLastDuration() {
+        return lastDuration;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return name + " sweeps: " + sweeps
+                + ", removed: " + removed
+                + ", duration: " + duration + " ms"
+                + ", last removed: " + lastRemoved
+                + ", last duration: " + lastDuration + " ms";
+    }
+}
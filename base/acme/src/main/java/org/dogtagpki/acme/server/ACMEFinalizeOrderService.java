@@ -52,7 +52,6 @@ public class ACMEFinalizeOrderService {
         ACMEHeader header = ACMEHeader.fromJSON(protectedHeader);
 
         ACMEEngine engine = ACMEEngine.getInstance();
-        engine.validateNonce(header.getNonce());
 
         URI kid = header.getKid();
         String kidPath = kid.getPath();
@@ -61,6 +60,7 @@ public class ACMEFinalizeOrderService {
 
         ACMEAccount account = engine.getAccount(accountID);
         engine.validateJWS(jws, header.getAlg(), account.getJWK());
+        engine.validateNonce(header.getNonce());
 
         String payload = new String(jws.getPayloadAsBytes(), "UTF-8");
         logger.info("Payload: " + payload);
@@ -47,12 +47,12 @@ public class ACMENewAccountService {
         ACMEHeader header = ACMEHeader.fromJSON(protectedHeader);
 
         ACMEEngine engine = ACMEEngine.getInstance();
-        engine.validateNonce(header.getNonce());
 
         JWK jwk = header.getJwk();
         logger.info("JWK: " + jwk);
 
         engine.validateJWS(jws, header.getAlg(), jwk);
+        engine.validateNonce(header.getNonce());
 
         // generate account ID from JWK thumbprint
         String accountID = engine.generateThumbprint(jwk);
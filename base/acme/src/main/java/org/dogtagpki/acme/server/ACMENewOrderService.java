@@ -56,7 +56,6 @@ public class ACMENewOrderService extends ACMEService {
         ACMEHeader header = ACMEHeader.fromJSON(protectedHeader);
 
         ACMEEngine engine = ACMEEngine.getInstance();
-        engine.validateNonce(header.getNonce());
 
         URI kid = header.getKid();
         String kidPath = kid.getPath();
@@ -65,6 +64,7 @@ public class ACMENewOrderService extends ACMEService {
 
         ACMEAccount account = engine.getAccount(accountID);
         engine.validateJWS(jws, header.getAlg(), account.getJWK());
+        engine.validateNonce(header.getNonce());
 
         String payload = new String(jws.getPayloadAsBytes(), "UTF-8");
         logger.info("Payload: " + payload);
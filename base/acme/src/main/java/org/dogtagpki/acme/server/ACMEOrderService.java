@@ -47,7 +47,6 @@ public class ACMEOrderService {
         ACMEHeader header = ACMEHeader.fromJSON(protectedHeader);
 
         ACMEEngine engine = ACMEEngine.getInstance();
-        engine.validateNonce(header.getNonce());
 
         URI kid = header.getKid();
         String kidPath = kid.getPath();
@@ -56,6 +55,7 @@ public class ACMEOrderService {
 
         ACMEAccount account = engine.getAccount(accountID);
         engine.validateJWS(jws, header.getAlg(), account.getJWK());
+        engine.validateNonce(header.getNonce());
 
         ACMEOrder order = engine.getOrder(account, orderID);
 
@@ -47,7 +47,6 @@ public class ACMERevokeCertificateService {
         ACMEHeader header = ACMEHeader.fromJSON(protectedHeader);
 
         ACMEEngine engine = ACMEEngine.getInstance();
-        engine.validateNonce(header.getNonce());
 
         String payload = new String(jws.getPayloadAsBytes(), "UTF-8");
         logger.info("Payload: " + payload);
@@ -79,6 +78,7 @@ public class ACMERevokeCertificateService {
             // validate that the revocation request was signed with the account key
             ACMEAccount account = engine.getAccount(accountID);
             engine.validateJWS(jws, header.getAlg(), account.getJWK());
+            engine.validateNonce(header.getNonce());
 
             // validate that the account is authorized to revoke the cert
             engine.validateRevocation(account, revocation);
@@ -87,6 +87,7 @@ public class ACMERevokeCertificateService {
             // validate that the revocation request was signed
             // with the key of the cert being revoked
             engine.validateJWS(jws, header.getAlg(), jwk);
+            engine.validateNonce(header.getNonce());
 
         } else {
             // TODO: generate proper exception
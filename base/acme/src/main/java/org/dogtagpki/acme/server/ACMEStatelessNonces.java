@@ -0,0 +1,399 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.server;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.LinkedList;
+import java.util.Random;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Self-validating nonces.
+ *
+ * A nonce consists of its expiration time, 8 random bytes, and a MAC
+ * of these values. It can be validated without storing it.
+ *
+ * Used nonces are recorded in a chain of Bloom filters to prevent
+ * replay. The filters are sized for the number of nonces expected within
+ * one nonce lifetime. A new filter is started when the current one has
+ * covered one lifetime or has reached its capacity, and an old filter
+ * is dropped once all nonces that it might contain have expired. If a
+ * burst needs more than the maximum number of filters, nonces are
+ * rejected until the oldest filter expires, so a used nonce is never
+ * forgotten before it expires.
+ *
+ * A false positive rejects a fresh nonce as used, which the client handles
+ * like any other badNonce error by retrying with a new nonce.
+ *
+ * The filters are kept in memory, so the secret must be known only to
+ * this server. Otherwise a nonce used on one server could be replayed
+ * on another server or after a restart.
+ */
+public class ACMEStatelessNonces {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ACMEStatelessNonces.class);
+
+    public static final String MAC_ALGORITHM = "HmacSHA256";
+
+    // expiration time + random bytes
+    public static final int DATA_LENGTH = 16;
+
+    // truncated MAC
+    public static final int MAC_LENGTH = 16;
+
+    // nonces used per second
+    public static final double DEFAULT_EXPECTED_RATE = 100;
+
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.001;
+
+    public static final int DEFAULT_MAX_FILTERS = 4;
+
+    private SecretKeySpec key;
+
+    private ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::createMac);
+
+    private long lifetime;
+
+    private double expectedRate = DEFAULT_EXPECTED_RATE;
+    private double falsePositiveRate = DEFAULT_FALSE_POSITIVE_RATE;
+    private Integer filterSize; // computed unless configured
+    private int maxFilters = DEFAULT_MAX_FILTERS;
+
+    private int capacity;
+    private int hashes;
+
+    // current filter first
+    private LinkedList<Filter> filters = new LinkedList<>();
+
+    private long overflows;
+
+    /**
+     * Thrown when a nonce is invalid, expired, or cannot be accepted.
+     */
+    public static class BadNonceException extends Exception {
+
+        public BadNonceException(String message) {
+            super(message);
+        }
+    }
+
+    static class Filter {
+
+        long[] bits;
+        int bitCount;
+        int count;
+
+        long startTime;
+
+        // time of the last insertion once the filter is no longer current
+        long endTime = Long.MAX_VALUE;
+
+        Filter(int size, long startTime) {
+            this.bits = new long[(size + 63) / 64];
+            this.startTime = startTime;
+        }
+    }
+
+    public ACMEStatelessNonces(byte[] secret, long lifetime) {
+        this.key = new SecretKeySpec(secret, MAC_ALGORITHM);
+        this.lifetime = lifetime;
+    }
+
+    public double getExpectedRate() {
+        return expectedRate;
+    }
+
+    /**
+     * Sets the number of nonces expected to be used per second.
+     */
+    public void setExpectedRate(double expectedRate) {
+        this.expectedRate = expectedRate;
+    }
+
+    public double getTargetFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    public void setTargetFalsePositiveRate(double falsePositiveRate) {
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * Returns the size of each filter in bits.
+     */
+    public int getFilterSize() {
+        return filterSize;
+    }
+
+    /**
+     * Overrides the filter size computed from the expected rate.
+     */
+    public void setFilterSize(int filterSize) {
+        this.filterSize = filterSize;
+    }
+
+    public int getMaxFilters() {
+        return maxFilters;
+    }
+
+    /**
+     * Sets the maximum number of filters. At least two filters are used
+     * so that a new filter can be started before the previous one expires.
+     */
+    public void setMaxFilters(int maxFilters) {
+        this.maxFilters = Math.max(2, maxFilters);
+    }
+
+    /**
+     * Returns the number of nonces recorded in a filter before
+     * a new filter is started.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of bits set in a filter per nonce.
+     */
+    public int getHashes() {
+        return hashes;
+    }
+
+    public void init() {
+
+        // nonces recorded within one lifetime at the expected rate
+        capacity = (int) Math.max(1, Math.ceil(expectedRate * lifetime / 1000));
+
+        double ln2 = Math.log(2);
+
+        if (filterSize == null) {
+            // optimal size for the capacity and false positive rate
+            double bits = -capacity * Math.log(falsePositiveRate) / (ln2 * ln2);
+            filterSize = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, Math.ceil(bits)));
+
+        } else {
+            // capacity for the configured size and false positive rate
+            double n = -filterSize * ln2 * ln2 / Math.log(falsePositiveRate);
+            capacity = (int) Math.max(1, Math.floor(n));
+        }
+
+        // optimal number of hashes for the size and capacity
+        hashes = (int) Math.max(1, Math.min(16, Math.round((double) filterSize / capacity * ln2)));
+
+        filters.clear();
+        filters.addFirst(new Filter(filterSize, getCurrentTime()));
+    }
+
+    long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    Mac createMac() {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (Exception e) {
+            throw new RuntimeException("Unable to create " + MAC_ALGORITHM + ": " + e.getMessage(), e);
+        }
+    }
+
+    byte[] sign(byte[] bytes) {
+        Mac mac = macs.get();
+        mac.update(bytes, 0, DATA_LENGTH);
+        byte[] digest = mac.doFinal();
+        byte[] result = new byte[MAC_LENGTH];
+        System.arraycopy(digest, 0, result, 0, MAC_LENGTH);
+        return result;
+    }
+
+    /**
+     * Creates a nonce that expires at the given time.
+     */
+    public String createNonce(long expirationTime, Random random) {
+
+        byte[] bytes = new byte[DATA_LENGTH + MAC_LENGTH];
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.putLong(expirationTime);
+
+        byte[] randomBytes = new byte[DATA_LENGTH - Long.BYTES];
+        random.nextBytes(randomBytes);
+        buffer.put(randomBytes);
+
+        buffer.put(sign(bytes));
+
+        return Base64.encodeBase64URLSafeString(bytes);
+    }
+
+    /**
+     * Validates a nonce and marks it as used.
+     *
+     * @exception BadNonceException the nonce is invalid, expired, or already used,
+     * or it cannot be recorded because all filters are in use
+     */
+    public void validateNonce(String value) throws BadNonceException {
+
+        byte[] bytes = value == null ? new byte[0] : Base64.decodeBase64(value);
+
+        if (bytes.length != DATA_LENGTH + MAC_LENGTH) {
+            throw new BadNonceException("Invalid nonce: " + value);
+        }
+
+        byte[] mac = new byte[MAC_LENGTH];
+        System.arraycopy(bytes, DATA_LENGTH, mac, 0, MAC_LENGTH);
+
+        if (!MessageDigest.isEqual(mac, sign(bytes))) {
+            throw new BadNonceException("Invalid nonce: " + value);
+        }
+
+        long expirationTime = ByteBuffer.wrap(bytes).getLong();
+
+        if (expirationTime <= getCurrentTime()) {
+            throw new BadNonceException("Expired nonce: " + value);
+        }
+
+        // the MAC is uniformly distributed, so it is used as the hash
+        ByteBuffer buffer = ByteBuffer.wrap(mac);
+        long hash1 = buffer.getLong();
+        long hash2 = buffer.getLong() | 1;
+
+        markUsed(hash1, hash2);
+    }
+
+    /**
+     * Records a nonce in the current filter.
+     *
+     * @exception BadNonceException the nonce might have been recorded before,
+     * or a new filter is needed but all filters are in use
+     */
+    synchronized void markUsed(long hash1, long hash2) throws BadNonceException {
+
+        long currentTime = getCurrentTime();
+
+        // drop filters whose nonces have all expired
+        while (filters.size() > 1 && filters.getLast().endTime + lifetime <= currentTime) {
+            filters.removeLast();
+        }
+
+        Filter current = filters.getFirst();
+
+        if (currentTime - current.startTime >= lifetime || current.count >= capacity) {
+
+            if (filters.size() >= maxFilters) {
+                // the oldest filter still has unexpired nonces, so it cannot be
+                // dropped, and nonces are rejected until it expires
+                overflows++;
+                logger.warn("ACMEStatelessNonces: All " + maxFilters
+                        + " filters are in use, nonces.expectedRate is too low");
+                throw new BadNonceException("Unable to accept nonces, try again later");
+            }
+
+            if (current.count >= capacity) {
+                logger.info("ACMEStatelessNonces: Filter reached capacity of " + capacity + " nonces");
+            }
+
+            current.endTime = currentTime;
+            current = new Filter(filterSize, currentTime);
+            filters.addFirst(current);
+        }
+
+        for (Filter filter : filters) {
+            if (filter != current && contains(filter, hash1, hash2)) {
+                throw new BadNonceException("Used nonce");
+            }
+        }
+
+        boolean added = false;
+
+        for (int i = 0; i < hashes; i++) {
+            int bit = (int) Long.remainderUnsigned(hash1 + i * hash2, filterSize);
+            long mask = 1L << bit;
+
+            if ((current.bits[bit >>> 6] & mask) == 0) {
+                current.bits[bit >>> 6] |= mask;
+                current.bitCount++;
+                added = true;
+            }
+        }
+
+        if (!added) {
+            throw new BadNonceException("Used nonce");
+        }
+
+        current.count++;
+    }
+
+    boolean contains(Filter filter, long hash1, long hash2) {
+
+        for (int i = 0; i < hashes; i++) {
+            int bit = (int) Long.remainderUnsigned(hash1 + i * hash2, filterSize);
+
+            if ((filter.bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the number of filters in use.
+     */
+    public synchronized int getFilterCount() {
+        return filters.size();
+    }
+
+    /**
+     * Returns the number of nonces recorded in the current filter.
+     */
+    public synchronized int getCount() {
+        return filters.getFirst().count;
+    }
+
+    /**
+     * Returns the fraction of bits set in the current filter.
+     */
+    public synchronized double getFillRatio() {
+        return (double) filters.getFirst().bitCount / filterSize;
+    }
+
+    /**
+     * Returns the estimated probability that a fresh nonce
+     * is rejected as used.
+     */
+    public synchronized double getFalsePositiveRate() {
+
+        double notRejected = 1;
+
+        for (Filter filter : filters) {
+            double fill = (double) filter.bitCount / filterSize;
+            notRejected *= 1 - Math.pow(fill, hashes);
+        }
+
+        return 1 - notRejected;
+    }
+
+    /**
+     * Returns the number of nonces rejected because all filters were in use.
+     */
+    public synchronized long getOverflows() {
+        return overflows;
+    }
+
+    public void logStats() {
+        logger.info("ACMEStatelessNonces: filters: " + getFilterCount()
+                + ", current count: " + getCount() + "/" + capacity
+                + ", fill ratio: " + String.format("%.4f", getFillRatio())
+                + ", false positive rate: " + String.format("%.6f", getFalsePositiveRate())
+                + ", overflows: " + getOverflows());
+    }
+}
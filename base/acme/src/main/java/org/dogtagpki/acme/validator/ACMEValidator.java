@@ -22,6 +22,13 @@ public abstract class ACMEValidator {
 
     protected ACMEValidatorConfig config;
 
+    // validation policy, see init()
+    protected int maxConcurrency = 10;
+    protected int maxAttempts = 5;
+    protected long retryDelay = 5000;
+    protected double retryBackoff = 1;
+    protected long maxRetryDelay = 60000;
+
     public ACMEValidator(String name, String type) {
         this.name = name;
         this.type = type;
@@ -51,7 +58,59 @@ public abstract class ACMEValidator {
         this.config = config;
     }
 
+    /**
+     * Returns the maximum number of challenges validated concurrently
+     * by this validator. Other challenges wait in a queue.
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Returns the maximum number of validation attempts per challenge.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Returns the delay in msec before retrying a challenge after the
+     * given number of failed attempts. The initial retry delay is
+     * multiplied by the retry backoff after each attempt up to the
+     * maximum retry delay.
+     */
+    public long getRetryDelay(int attempts) {
+        double delay = retryDelay * Math.pow(retryBackoff, attempts - 1);
+        return (long) Math.min(delay, maxRetryDelay);
+    }
+
     public void init() throws Exception {
+
+        if (config == null) return;
+
+        String value = config.getParameter("maxConcurrency");
+        if (value != null) maxConcurrency = Integer.parseInt(value);
+        logger.info("- max concurrency: " + maxConcurrency);
+
+        value = config.getParameter("maxAttempts");
+        if (value != null) maxAttempts = Integer.parseInt(value);
+        logger.info("- max attempts: " + maxAttempts);
+
+        value = config.getParameter("retryDelay");
+        if (value != null) retryDelay = Long.parseLong(value) * 1000;
+        logger.info("- retry delay: " + retryDelay + " ms");
+
+        value = config.getParameter("retryBackoff");
+        if (value != null) retryBackoff = Double.parseDouble(value);
+        logger.info("- retry backoff: " + retryBackoff);
+
+        value = config.getParameter("maxRetryDelay");
+        if (value != null) maxRetryDelay = Long.parseLong(value) * 1000;
+        logger.info("- max retry delay: " + maxRetryDelay + " ms");
+
+        if (maxConcurrency < 1 || maxAttempts < 1) {
+            throw new Exception("Invalid " + name + " validator concurrency or attempts");
+        }
     }
 
     public void close() throws Exception {
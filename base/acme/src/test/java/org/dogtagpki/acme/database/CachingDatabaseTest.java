@@ -0,0 +1,314 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.function.UnaryOperator;
+
+import org.dogtagpki.acme.ACMEAccount;
+import org.dogtagpki.acme.ACMEAuthorization;
+import org.dogtagpki.acme.ACMEChallenge;
+import org.dogtagpki.acme.ACMEIdentifier;
+import org.dogtagpki.acme.ACMEOrder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class CachingDatabaseTest {
+
+    DatabaseStub database;
+    CachingDatabase cache;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+
+        database = new DatabaseStub();
+
+        cache = new CachingDatabase(database);
+        cache.setConfig(new ACMEDatabaseConfig());
+        cache.init();
+    }
+
+    @Test
+    public void testAccountCopies() throws Exception {
+
+        database.addAccount(createAccount("a1", "valid"));
+
+        ACMEAccount account1 = cache.getAccount("a1");
+        ACMEAccount account2 = cache.getAccount("a1");
+
+        assertEquals(1, database.reads);
+        assertNotSame(account1, account2);
+
+        // changes that are not written to the database are not shared
+        account2.setStatus("deactivated");
+        account2.getContact()[0] = "mailto:other@example.com";
+
+        ACMEAccount account3 = cache.getAccount("a1");
+        assertEquals("valid", account3.getStatus());
+        assertEquals("mailto:admin@example.com", account3.getContact()[0]);
+        assertEquals(1, database.reads);
+    }
+
+    @Test
+    public void testUpdatedAccountCopy() throws Exception {
+
+        ACMEAccount account = createAccount("a1", "valid");
+        database.addAccount(account);
+
+        account.setStatus("deactivated");
+        cache.updateAccount(account);
+
+        // later changes of the caller's object are not cached
+        account.setStatus("revoked");
+
+        assertEquals("deactivated", cache.getAccount("a1").getStatus());
+        assertEquals(0, database.reads);
+    }
+
+    @Test
+    public void testOrderCopies() throws Exception {
+
+        ACMEOrder order = new ACMEOrder();
+        order.setID("o1");
+        order.setStatus("pending");
+        order.setAuthzIDs(new String[] { "z1" });
+        order.setIdentifiers(new ACMEIdentifier[] { new ACMEIdentifier("dns", "example.com") });
+        database.addOrder(order);
+
+        ACMEOrder order1 = cache.getOrder("o1");
+        order1.setStatus("ready");
+        order1.getAuthzIDs()[0] = "z2";
+        order1.getIdentifiers()[0].setValue("other.example.com");
+
+        ACMEOrder order2 = cache.getOrder("o1");
+        assertEquals("pending", order2.getStatus());
+        assertEquals("z1", order2.getAuthzIDs()[0]);
+        assertEquals("example.com", order2.getIdentifiers()[0].getValue());
+        assertEquals(1, database.reads);
+    }
+
+    @Test
+    public void testAuthorizationCopies() throws Exception {
+
+        database.addAuthorization(createAuthorization("z1", "c1", "pending"));
+
+        ACMEAuthorization authorization1 = cache.getAuthorization("z1");
+        authorization1.setStatus("valid");
+        authorization1.getChallenge("c1").setStatus("valid");
+
+        ACMEAuthorization authorization2 = cache.getAuthorizationByChallenge("c1");
+        assertEquals("pending", authorization2.getStatus());
+        assertEquals("pending", authorization2.getChallenge("c1").getStatus());
+        assertEquals(1, database.reads);
+    }
+
+    @Test
+    public void testRecordUpdated() throws Exception {
+
+        database.addAccount(createAccount("a1", "valid"));
+        cache.getAccount("a1");
+
+        // another server updated the account
+        database.addAccount(createAccount("a1", "deactivated"));
+        assertEquals("valid", cache.getAccount("a1").getStatus());
+
+        database.notifyRecordUpdated("a1");
+
+        assertEquals("deactivated", cache.getAccount("a1").getStatus());
+        assertEquals(2, database.reads);
+    }
+
+    @Test
+    public void testChallengeUpdated() throws Exception {
+
+        database.addAuthorization(createAuthorization("z1", "c1", "pending"));
+        cache.getAuthorization("z1");
+
+        // another server updated the challenge of the authorization
+        database.addAuthorization(createAuthorization("z1", "c1", "valid"));
+        database.notifyRecordUpdated("c1");
+
+        assertEquals("valid", cache.getAuthorizationByChallenge("c1").getStatus());
+        assertEquals(2, database.reads);
+    }
+
+    @Test
+    public void testRecordsUpdated() throws Exception {
+
+        database.addAccount(createAccount("a1", "valid"));
+        database.addAuthorization(createAuthorization("z1", "c1", "pending"));
+
+        cache.getAccount("a1");
+        cache.getAuthorization("z1");
+
+        database.addAccount(createAccount("a1", "deactivated"));
+        database.addAuthorization(createAuthorization("z1", "c1", "valid"));
+        database.notifyRecordsUpdated();
+
+        assertEquals("deactivated", cache.getAccount("a1").getStatus());
+        assertEquals("valid", cache.getAuthorization("z1").getStatus());
+        assertEquals(4, database.reads);
+    }
+
+    @Test
+    public void testRemovedDuringRead() {
+
+        CachingDatabase.RecordCache<String> records = createRecordCache();
+
+        long version = records.beginRead();
+
+        // the record is updated while it is being read
+        records.remove("r1");
+        records.put("r1", "old", version);
+        assertNull(records.get("r1"));
+
+        records.endRead(version);
+        assertTrue(records.tombstones.isEmpty());
+    }
+
+    @Test
+    public void testOtherRecordRemovedDuringRead() {
+
+        CachingDatabase.RecordCache<String> records = createRecordCache();
+
+        long version = records.beginRead();
+
+        records.remove("r2");
+        records.put("r1", "value", version);
+        assertEquals("value", records.get("r1"));
+
+        records.endRead(version);
+        assertTrue(records.tombstones.isEmpty());
+    }
+
+    @Test
+    public void testRemovedBeforeRead() {
+
+        CachingDatabase.RecordCache<String> records = createRecordCache();
+
+        // no tombstones are kept without reads in progress
+        records.remove("r1");
+        assertTrue(records.tombstones.isEmpty());
+
+        long version = records.beginRead();
+        records.put("r1", "value", version);
+        records.endRead(version);
+
+        assertEquals("value", records.get("r1"));
+    }
+
+    @Test
+    public void testClearedDuringRead() {
+
+        CachingDatabase.RecordCache<String> records = createRecordCache();
+
+        long version = records.beginRead();
+
+        records.clear();
+        records.put("r1", "old", version);
+        assertNull(records.get("r1"));
+
+        records.endRead(version);
+    }
+
+    @Test
+    public void testOverlappingReads() {
+
+        CachingDatabase.RecordCache<String> records = createRecordCache();
+
+        long version1 = records.beginRead();
+        records.remove("r1");
+
+        long version2 = records.beginRead();
+        records.remove("r2");
+
+        assertEquals(2, records.tombstones.size());
+
+        // the second read started after the first removal
+        records.put("r1", "value", version2);
+        assertEquals("value", records.get("r1"));
+
+        records.put("r2", "old", version2);
+        assertNull(records.get("r2"));
+
+        // only the tombstone that the second read can be affected by is kept
+        records.endRead(version1);
+        assertEquals(1, records.tombstones.size());
+        assertTrue(records.tombstones.containsKey("r2"));
+
+        records.endRead(version2);
+        assertTrue(records.tombstones.isEmpty());
+    }
+
+    CachingDatabase.RecordCache<String> createRecordCache() {
+        return new CachingDatabase.RecordCache<>(10, 60000, UnaryOperator.identity());
+    }
+
+    ACMEAccount createAccount(String id, String status) {
+        ACMEAccount account = new ACMEAccount();
+        account.setID(id);
+        account.setStatus(status);
+        account.setContact(new String[] { "mailto:admin@example.com" });
+        return account;
+    }
+
+    ACMEAuthorization createAuthorization(String id, String challengeID, String status) {
+
+        ACMEChallenge challenge = new ACMEChallenge();
+        challenge.setID(challengeID);
+        challenge.setAuthzID(id);
+        challenge.setStatus(status);
+
+        Collection<ACMEChallenge> challenges = new ArrayList<>();
+        challenges.add(challenge);
+
+        ACMEAuthorization authorization = new ACMEAuthorization();
+        authorization.setID(id);
+        authorization.setStatus(status);
+        authorization.setIdentifier(new ACMEIdentifier("dns", "example.com"));
+        authorization.setChallenges(challenges);
+
+        return authorization;
+    }
+
+    /**
+     * In-memory database that counts the records read from it.
+     */
+    static class DatabaseStub extends InMemoryDatabase {
+
+        int reads;
+
+        @Override
+        public ACMEAccount getAccount(String accountID) throws Exception {
+            reads++;
+            return super.getAccount(accountID);
+        }
+
+        @Override
+        public ACMEOrder getOrder(String orderID) throws Exception {
+            reads++;
+            return super.getOrder(orderID);
+        }
+
+        @Override
+        public ACMEAuthorization getAuthorization(String authzID) throws Exception {
+            reads++;
+            return super.getAuthorization(authzID);
+        }
+
+        @Override
+        public ACMEAuthorization getAuthorizationByChallenge(String challengeID) throws Exception {
+            reads++;
+            return super.getAuthorizationByChallenge(challengeID);
+        }
+    }
+}
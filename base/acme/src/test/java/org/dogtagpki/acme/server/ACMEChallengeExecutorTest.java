@@ -0,0 +1,299 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.dogtagpki.acme.ACMEAuthorization;
+import org.dogtagpki.acme.ACMEChallenge;
+import org.dogtagpki.acme.ACMEError;
+import org.dogtagpki.acme.ValidationResult;
+import org.dogtagpki.acme.validator.ACMEValidator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class ACMEChallengeExecutorTest {
+
+    ACMEChallengeExecutor executor;
+
+    // blocked validations
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRetryDelay() {
+
+        ValidatorStub validator = new ValidatorStub("test", 1, 5, 1000, 2, 5000);
+
+        assertEquals(1000, validator.getRetryDelay(1));
+        assertEquals(2000, validator.getRetryDelay(2));
+        assertEquals(4000, validator.getRetryDelay(3));
+        assertEquals(5000, validator.getRetryDelay(4));
+        assertEquals(5000, validator.getRetryDelay(5));
+    }
+
+    @Test
+    public void testConcurrencyLimit() throws Exception {
+
+        ValidatorStub validator1 = new ValidatorStub("test1", 2, 1, 1000, 1, 1000);
+        ValidatorStub validator2 = new ValidatorStub("test2", 1, 1, 1000, 1, 1000);
+        init(validator1, validator2);
+
+        List<ProcessorStub> processors = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            ProcessorStub processor = new ProcessorStub("c" + i, validator1);
+            processor.block = true;
+            processors.add(processor);
+            executor.submit(processor);
+        }
+
+        waitFor(() -> running.get() == 2);
+
+        // the other challenges wait until a slot is released
+        Thread.sleep(100);
+        assertEquals(2, running.get());
+        assertEquals(2, executor.getInFlight());
+        assertEquals(4, executor.getQueued());
+
+        // other validators are not limited by the busy validator
+        ProcessorStub other = new ProcessorStub("other", validator2);
+        executor.submit(other);
+        waitFor(() -> "valid".equals(other.status));
+
+        release.countDown();
+        waitFor(() -> executor.getCompleted() == 7);
+
+        assertEquals(2, maxRunning.get());
+        assertEquals(0, executor.getInFlight());
+        assertEquals(0, executor.getQueued());
+
+        for (ProcessorStub processor : processors) {
+            assertEquals("valid", processor.status);
+        }
+    }
+
+    @Test
+    public void testBackoff() throws Exception {
+
+        // retry delays: 50, 100, 150 ms
+        ValidatorStub validator = new ValidatorStub("test", 1, 4, 50, 2, 150);
+        init(validator);
+
+        ProcessorStub processor = new ProcessorStub("c0", validator);
+        processor.fail = true;
+        executor.submit(processor);
+
+        waitFor(() -> processor.status != null);
+
+        assertEquals("invalid", processor.status);
+        assertEquals(4, processor.getAttempts());
+        assertEquals(3, executor.getRetries());
+        assertEquals(0, executor.getRetrying());
+
+        long[] delays = { 50, 100, 150 };
+        for (int i = 0; i < delays.length; i++) {
+            long delay = TimeUnit.NANOSECONDS.toMillis(processor.times.get(i + 1) - processor.times.get(i));
+            assertTrue(delay >= delays[i], "Retry " + (i + 1) + " after " + delay + " ms");
+        }
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+
+        ValidatorStub validator = new ValidatorStub("test", 1, 2, 60000, 1, 60000);
+        init(validator);
+
+        // waits for a retry
+        ProcessorStub retrying = new ProcessorStub("c0", validator);
+        retrying.fail = true;
+        executor.submit(retrying);
+        waitFor(() -> executor.getRetrying() == 1);
+
+        // being validated
+        ProcessorStub inFlight = new ProcessorStub("c1", validator);
+        inFlight.block = true;
+        executor.submit(inFlight);
+        waitFor(() -> running.get() == 1);
+
+        // waits for a validation slot
+        ProcessorStub queued = new ProcessorStub("c2", validator);
+        executor.submit(queued);
+        assertEquals(1, executor.getQueued());
+
+        Thread shutdownThread = new Thread(executor::shutdown);
+        shutdownThread.start();
+        waitFor(() -> shutdownThread.getState() == Thread.State.TIMED_WAITING);
+
+        // the running validation is finished
+        release.countDown();
+        shutdownThread.join(10000);
+        executor = null;
+
+        assertEquals("valid", inFlight.status);
+
+        // the other challenges are not left in processing state
+        assertEquals("invalid", retrying.status);
+        assertEquals("urn:ietf:params:acme:error:serverInternal", retrying.error.getType());
+        assertEquals(1, retrying.getAttempts());
+
+        assertEquals("invalid", queued.status);
+        assertEquals(0, queued.getAttempts());
+    }
+
+    @Test
+    public void testShutdownCounters() throws Exception {
+
+        ValidatorStub validator = new ValidatorStub("test", 1, 2, 60000, 1, 60000);
+        init(validator);
+
+        ProcessorStub processor = new ProcessorStub("c0", validator);
+        processor.fail = true;
+        executor.submit(processor);
+        waitFor(() -> executor.getRetrying() == 1);
+
+        executor.shutdown();
+
+        assertEquals(1, executor.getRetries());
+        assertEquals(1, executor.getAbandoned());
+        assertEquals(0, executor.getRetrying());
+        assertEquals(0, executor.getCompleted());
+
+        // challenges submitted after shutdown are not validated
+        ProcessorStub late = new ProcessorStub("c1", validator);
+        executor.submit(late);
+
+        assertEquals("invalid", late.status);
+        assertEquals(0, late.getAttempts());
+        assertEquals(2, executor.getAbandoned());
+
+        executor = null;
+    }
+
+    void init(ACMEValidator... validators) {
+        executor = new ACMEChallengeExecutor();
+        executor.init(List.of(validators));
+    }
+
+    void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < end, "Timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    static class ValidatorStub extends ACMEValidator {
+
+        ValidatorStub(
+                String name,
+                int maxConcurrency,
+                int maxAttempts,
+                long retryDelay,
+                double retryBackoff,
+                long maxRetryDelay) {
+
+            super(name, "test");
+
+            this.maxConcurrency = maxConcurrency;
+            this.maxAttempts = maxAttempts;
+            this.retryDelay = retryDelay;
+            this.retryBackoff = retryBackoff;
+            this.maxRetryDelay = maxRetryDelay;
+        }
+
+        @Override
+        public ValidationResult validateChallenge(
+                ACMEAuthorization authorization,
+                ACMEChallenge challenge) {
+            return ValidationResult.ok();
+        }
+    }
+
+    /**
+     * Challenge processor that records the validation attempts and the
+     * final status instead of updating the database.
+     */
+    class ProcessorStub extends ACMEChallengeProcessor {
+
+        volatile boolean block;
+        volatile boolean fail;
+
+        List<Long> times = new ArrayList<>();
+
+        volatile String status;
+        volatile ACMEError error;
+
+        ProcessorStub(String id, ACMEValidator validator) {
+            super(null, null, createChallenge(id), validator);
+        }
+
+        @Override
+        public ValidationResult validateChallenge() {
+
+            attempts++;
+            times.add(System.nanoTime());
+
+            if (block) {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+
+            if (fail) {
+                ACMEError connectionError = new ACMEError();
+                connectionError.setType("urn:ietf:params:acme:error:connection");
+                return ValidationResult.fail(connectionError);
+            }
+
+            return ValidationResult.ok();
+        }
+
+        @Override
+        public void finalizeValidAuthorization() {
+            assertNull(status);
+            status = "valid";
+        }
+
+        @Override
+        public void finalizeInvalidAuthorization(ACMEError error) {
+            assertNull(status);
+            this.error = error;
+            status = "invalid";
+        }
+    }
+
+    static ACMEChallenge createChallenge(String id) {
+        ACMEChallenge challenge = new ACMEChallenge();
+        challenge.setID(id);
+        return challenge;
+    }
+}
@@ -0,0 +1,172 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.codec.binary.Base64;
+import org.dogtagpki.acme.server.ACMEStatelessNonces.BadNonceException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ACMEStatelessNoncesTest {
+
+    static final long LIFETIME = 1000; // milliseconds
+
+    // nonces per filter: 10 nonces/s over one lifetime
+    static final int CAPACITY = 10;
+
+    Random random = new Random(0);
+    TestNonces nonces;
+
+    @BeforeEach
+    public void setUp() {
+        nonces = createNonces(1);
+        nonces.init();
+    }
+
+    @Test
+    public void testValidNonce() throws Exception {
+
+        assertEquals(CAPACITY, nonces.getCapacity());
+
+        nonces.validateNonce(createNonce());
+        assertEquals(1, nonces.getCount());
+    }
+
+    @Test
+    public void testInvalidMAC() throws Exception {
+
+        byte[] bytes = Base64.decodeBase64(createNonce());
+        bytes[bytes.length - 1] ^= 1;
+
+        String nonce = Base64.encodeBase64URLSafeString(bytes);
+        assertThrows(BadNonceException.class, () -> nonces.validateNonce(nonce));
+
+        String truncated = Base64.encodeBase64URLSafeString(Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(BadNonceException.class, () -> nonces.validateNonce(truncated));
+
+        assertEquals(0, nonces.getCount());
+    }
+
+    @Test
+    public void testOtherSecret() throws Exception {
+
+        TestNonces other = createNonces(2);
+        other.init();
+
+        // a nonce issued with another secret is not accepted
+        String nonce = other.createNonce(other.currentTime + LIFETIME, random);
+        assertThrows(BadNonceException.class, () -> nonces.validateNonce(nonce));
+    }
+
+    @Test
+    public void testExpiredNonce() throws Exception {
+
+        String nonce = createNonce();
+
+        nonces.currentTime += LIFETIME;
+        assertThrows(BadNonceException.class, () -> nonces.validateNonce(nonce));
+    }
+
+    @Test
+    public void testReusedNonce() throws Exception {
+
+        String nonce = createNonce();
+
+        nonces.validateNonce(nonce);
+        assertThrows(BadNonceException.class, () -> nonces.validateNonce(nonce));
+    }
+
+    @Test
+    public void testFilterRotation() throws Exception {
+
+        String first = createNonce();
+        nonces.validateNonce(first);
+
+        for (int i = 1; i < CAPACITY; i++) {
+            nonces.validateNonce(createNonce());
+        }
+
+        assertEquals(1, nonces.getFilterCount());
+
+        // the current filter is full, the next nonce starts a new one
+        nonces.validateNonce(createNonce());
+        assertEquals(2, nonces.getFilterCount());
+        assertEquals(1, nonces.getCount());
+
+        // nonces in the previous filter are still rejected
+        assertThrows(BadNonceException.class, () -> nonces.validateNonce(first));
+
+        // the previous filter is dropped once its nonces have expired
+        nonces.currentTime += LIFETIME;
+        nonces.validateNonce(createNonce());
+        assertEquals(2, nonces.getFilterCount());
+        assertEquals(1, nonces.getCount());
+    }
+
+    @Test
+    public void testFiltersFull() throws Exception {
+
+        nonces = createNonces(1);
+        nonces.setMaxFilters(2);
+        nonces.init();
+
+        String first = createNonce();
+        nonces.validateNonce(first);
+
+        for (int i = 1; i < 2 * CAPACITY; i++) {
+            nonces.validateNonce(createNonce());
+        }
+
+        assertEquals(2, nonces.getFilterCount());
+
+        // the oldest filter has not expired, so nonces are rejected
+        // instead of forgetting the nonces recorded in it
+        assertThrows(BadNonceException.class, () -> nonces.validateNonce(createNonce()));
+        assertEquals(1, nonces.getOverflows());
+        assertThrows(BadNonceException.class, () -> nonces.validateNonce(first));
+
+        // nonces are accepted again once the oldest filter has expired
+        nonces.currentTime += LIFETIME;
+        nonces.validateNonce(createNonce());
+        assertEquals(2, nonces.getFilterCount());
+    }
+
+    TestNonces createNonces(int secret) {
+
+        byte[] bytes = new byte[32];
+        Arrays.fill(bytes, (byte) secret);
+
+        TestNonces nonces = new TestNonces(bytes);
+        nonces.setExpectedRate(CAPACITY * 1000.0 / LIFETIME);
+        nonces.setTargetFalsePositiveRate(1e-9);
+
+        return nonces;
+    }
+
+    String createNonce() {
+        return nonces.createNonce(nonces.currentTime + LIFETIME, random);
+    }
+
+    static class TestNonces extends ACMEStatelessNonces {
+
+        long currentTime = 1000000;
+
+        TestNonces(byte[] secret) {
+            super(secret, LIFETIME);
+        }
+
+        @Override
+        long getCurrentTime() {
+            return currentTime;
+        }
+    }
+}
@@ -17,7 +17,12 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.ca;
 
+import java.io.InputStream;
 import java.security.SignatureException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.dogtagpki.server.ca.CAEngine;
 
 import org.mozilla.jss.CryptoManager;
 import org.mozilla.jss.NoSuchTokenException;
@@ -38,11 +43,16 @@ import com.netscape.certsrv.ca.ECAException;
 import com.netscape.certsrv.security.SigningUnit;
 import com.netscape.certsrv.security.SigningUnitConfig;
 import com.netscape.cmscore.apps.CMS;
+import com.netscape.cmscore.util.StatsSubsystem;
 import com.netscape.cmsutil.crypto.CryptoUtil;
+import com.netscape.cmsutil.crypto.SignerPool;
 
 /**
  * CA signing unit based on JSS.
  *
+ * If a signer pool is configured, its hit and exhausted counts are
+ * reported in the statistics under "signer_pool (&lt;config&gt;, &lt;nickname&gt;)".
+ *
  * $Revision$ $Date$
  */
 
@@ -50,6 +60,9 @@ public final class CASigningUnit extends SigningUnit {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CASigningUnit.class);
 
+    protected SignerPool mSignerPool;
+    protected StatsSubsystem mStatsSub;
+
     public CASigningUnit() {
     }
 
@@ -115,6 +128,16 @@ public final class CASigningUnit extends SigningUnit {
             mDefSigningAlgorithm = checkSigningAlgorithmFromName(mDefSigningAlgname);
             logger.debug("SigningUnit: signing algorithm: " + mDefSigningAlgorithm);
 
+            int signerPoolSize = config.getSignerPoolSize();
+            logger.debug("SigningUnit: signer pool size: " + signerPoolSize);
+
+            if (signerPoolSize > 0) {
+                mSignerPool = new SignerPool(mToken, mPrivk, signerPoolSize);
+                registerSignerPoolStats();
+            } else {
+                mSignerPool = null;
+            }
+
             mInited = true;
 
         } catch (java.security.cert.CertificateException e) {
@@ -157,12 +180,11 @@ public final class CASigningUnit extends SigningUnit {
             signAlg = checkSigningAlgorithmFromName(algname);
         }
 
-        // XXX use a pool of signers based on alg ?
         // XXX Map algor. name to id. hack: use hardcoded define for now.
         logger.info("CASigningUnit: Getting algorithm context for " + algname + " " + signAlg);
-        Signature signer = mToken.getSignatureContext(signAlg);
+        SignerPool signerPool = mSignerPool;
+        Signature signer = getSigner(signerPool, signAlg);
 
-        signer.initSign(mPrivk);
         signer.update(data);
 
         /* debugging
@@ -181,7 +203,134 @@ public final class CASigningUnit extends SigningUnit {
             throw new SignatureException("SignatureException forced for testing");
         }
 
-        return signer.sign();
+        byte[] signature = signer.sign();
+
+        // only signers that completed successfully are reused
+        if (signerPool != null) {
+            signerPool.release(signAlg, signer);
+        }
+
+        return signature;
+    }
+
+    /**
+     * Returns a signer initialized with the private key, taken from
+     * the signer pool if there is one.
+     */
+    private Signature getSigner(SignerPool signerPool, SignatureAlgorithm signAlg) throws Exception {
+
+        if (signerPool != null) {
+            // hits and misses are counted by the pool itself
+            return signerPool.borrow(signAlg);
+        }
+
+        Signature signer = mToken.getSignatureContext(signAlg);
+        signer.initSign(mPrivk);
+        return signer;
+    }
+
+    /**
+     * Signs the data read from the given stream. The data is passed to
+     * the signature context in chunks, so it does not have to fit in memory.
+     */
+    public byte[] sign(InputStream in, String algname) throws Exception {
+
+        if (!mInited) {
+            throw new EBaseException("CASigningUnit not initialized");
+        }
+
+        SignatureAlgorithm signAlg = mDefSigningAlgorithm;
+
+        if (algname != null) {
+            signAlg = checkSigningAlgorithmFromName(algname);
+        }
+
+        logger.info("CASigningUnit: Getting algorithm context for " + algname + " " + signAlg);
+        SignerPool signerPool = mSignerPool;
+        Signature signer = getSigner(signerPool, signAlg);
+
+        byte[] buffer = new byte[8192];
+        int len;
+
+        while ((len = in.read(buffer)) != -1) {
+            signer.update(buffer, 0, len);
+        }
+
+        logger.info("CASigningUnit: Signing ...");
+
+        boolean testSignatureFailure = mConfig.getTestSignatureFailure();
+        if (testSignatureFailure) {
+            throw new SignatureException("SignatureException forced for testing");
+        }
+
+        byte[] signature = signer.sign();
+
+        // only signers that completed successfully are reused
+        if (signerPool != null) {
+            signerPool.release(signAlg, signer);
+        }
+
+        return signature;
+    }
+
+    public SignerPool getSignerPool() {
+        return mSignerPool;
+    }
+
+    public String getSignerPoolStatsGroup() {
+        return "signer_pool (" + mConfig.getName() + ", " + mNickname + ")";
+    }
+
+    /**
+     * Returns the signer pool hit and exhausted counts, or an empty map
+     * if there is no signer pool.
+     */
+    public Map<String, Long> getSignerPoolStats() {
+
+        Map<String, Long> stats = new LinkedHashMap<>();
+
+        SignerPool signerPool = mSignerPool;
+        if (signerPool == null) {
+            return stats;
+        }
+
+        stats.put("hit", signerPool.getHits());
+        stats.put("exhausted", signerPool.getExhausted());
+        return stats;
+    }
+
+    private void registerSignerPoolStats() {
+
+        CAEngine engine = CAEngine.getInstance();
+        if (engine == null) {
+            return;
+        }
+
+        mStatsSub = (StatsSubsystem) engine.getSubsystem(StatsSubsystem.ID);
+        if (mStatsSub != null) {
+            mStatsSub.registerCounters(getSignerPoolStatsGroup(), this::getSignerPoolStats);
+        }
+    }
+
+    /**
+     * Logs the signer pool hit and exhausted counts and removes them
+     * from the statistics.
+     */
+    public void shutdown() {
+
+        SignerPool signerPool = mSignerPool;
+        if (signerPool == null) {
+            return;
+        }
+
+        if (mStatsSub != null) {
+            mStatsSub.unregisterCounters(getSignerPoolStatsGroup());
+            mStatsSub = null;
+        }
+
+        logger.info("CASigningUnit: Signer pool for " + mConfig.getName() + ":");
+        logger.info("CASigningUnit: - hits: " + signerPool.getHits());
+        logger.info("CASigningUnit: - exhausted: " + signerPool.getExhausted());
     }
 
     @Override
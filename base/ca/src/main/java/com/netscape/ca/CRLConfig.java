@@ -31,6 +31,14 @@ public class CRLConfig extends ConfigStore {
         putInteger("pageSize", pageSize);
     }
 
+    /**
+     * Returns the time in seconds a shared scan of a CRL partition
+     * group can be used by the other members of the group.
+     */
+    public int getPartitionScanMaxAge() throws EBaseException {
+        return getInteger("partitionScanMaxAge", 60);
+    }
+
     /**
      * Returns ca.crl.<name>.* parameters.
      */
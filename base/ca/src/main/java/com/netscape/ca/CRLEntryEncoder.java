@@ -0,0 +1,240 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.ca;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.cert.CRLException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+import org.mozilla.jss.asn1.ASN1Util;
+import org.mozilla.jss.asn1.GeneralizedTime;
+import org.mozilla.jss.asn1.UTCTime;
+import org.mozilla.jss.netscape.security.util.DerOutputStream;
+import org.mozilla.jss.netscape.security.util.DerValue;
+import org.mozilla.jss.netscape.security.x509.AlgorithmId;
+import org.mozilla.jss.netscape.security.x509.CRLExtensions;
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+
+/**
+ * Keeps the DER encoding of the revoked certificate entries of a CRL
+ * sorted by serial number, so that a new TBSCertList can be assembled
+ * without encoding every entry again.
+ *
+ * On each update the cached entries are compared with the current
+ * revoked certificates of the issuing point: entries that are no
+ * longer listed are dropped and only new or replaced entries are
+ * encoded. The TBSCertList is then written as a single buffer from
+ * the header, the cached entries, and the CRL extensions.
+ */
+public class CRLEntryEncoder {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CRLEntryEncoder.class);
+
+    private static final byte[] VERSION_V2 = { DerValue.tag_Integer, 1, 1 };
+
+    // dates from 2050 on are encoded as GeneralizedTime (RFC 5280 4.1.2.5)
+    private static final long UTC_TIME_LIMIT;
+
+    static {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+        calendar.clear();
+        calendar.set(2050, Calendar.JANUARY, 1);
+        UTC_TIME_LIMIT = calendar.getTimeInMillis();
+    }
+
+    private TreeMap<BigInteger, EncodedEntry> entries = new TreeMap<>();
+
+    // total length of the encoded entries
+    private long entriesLength;
+
+    // number of entries with CRL entry extensions
+    private int entriesWithExtensions;
+
+    /**
+     * Synchronizes the cached entries with the given revoked certificates.
+     *
+     * @return number of entries that had to be encoded
+     */
+    public synchronized int update(Map<BigInteger, RevokedCertificate> revokedCerts) throws CRLException {
+
+        Iterator<Map.Entry<BigInteger, EncodedEntry>> i = entries.entrySet().iterator();
+        while (i.hasNext()) {
+            Map.Entry<BigInteger, EncodedEntry> entry = i.next();
+            if (!revokedCerts.containsKey(entry.getKey())) {
+                remove(entry.getValue());
+                i.remove();
+            }
+        }
+
+        int encoded = 0;
+
+        for (Map.Entry<BigInteger, RevokedCertificate> e : revokedCerts.entrySet()) {
+
+            RevokedCertificate revokedCert = e.getValue();
+            EncodedEntry current = entries.get(e.getKey());
+
+            // revoked certificate objects are replaced, not modified,
+            // when the entry changes
+            if (current != null && current.source == revokedCert) {
+                continue;
+            }
+
+            EncodedEntry entry = new EncodedEntry(revokedCert);
+            if (current != null) {
+                remove(current);
+            }
+
+            entries.put(e.getKey(), entry);
+            entriesLength += entry.data.length;
+            if (entry.hasExtensions) {
+                entriesWithExtensions++;
+            }
+
+            encoded++;
+        }
+
+        logger.debug("CRLEntryEncoder: encoded " + encoded + " of " + entries.size() + " entries");
+        return encoded;
+    }
+
+    private void remove(EncodedEntry entry) {
+        entriesLength -= entry.data.length;
+        if (entry.hasExtensions) {
+            entriesWithExtensions--;
+        }
+    }
+
+    /**
+     * Returns the number of cached entries.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Drops all cached entries.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        entriesLength = 0;
+        entriesWithExtensions = 0;
+    }
+
+    /**
+     * Encodes a TBSCertList with the cached entries.
+     */
+    public synchronized byte[] encodeTBSCertList(
+            X500Name issuer,
+            AlgorithmId algorithm,
+            Date thisUpdate,
+            Date nextUpdate,
+            CRLExtensions extensions) throws IOException, CRLException {
+
+        DerOutputStream header = new DerOutputStream();
+
+        if (extensions != null || entriesWithExtensions > 0) {
+            header.write(VERSION_V2);
+        }
+
+        algorithm.encode(header);
+        header.write(issuer.getEncoded());
+        header.write(encodeTime(thisUpdate));
+
+        if (nextUpdate != null) {
+            header.write(encodeTime(nextUpdate));
+        }
+
+        byte[] trailer = null;
+
+        if (extensions != null) {
+            DerOutputStream tmp = new DerOutputStream();
+            extensions.encode(tmp, true);
+            trailer = tmp.toByteArray();
+        }
+
+        long length = header.size() + (trailer == null ? 0 : trailer.length);
+        byte[] entriesHeader = null;
+
+        if (!entries.isEmpty()) {
+            entriesHeader = encodeHeader(DerValue.tag_Sequence, entriesLength);
+            length += entriesHeader.length + entriesLength;
+        }
+
+        byte[] tbsHeader = encodeHeader(DerValue.tag_Sequence, length);
+
+        long total = tbsHeader.length + length;
+        if (total > Integer.MAX_VALUE) {
+            throw new CRLException("CRL too large: " + total + " bytes");
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) total);
+        out.write(tbsHeader);
+        header.writeTo(out);
+
+        if (entriesHeader != null) {
+            out.write(entriesHeader);
+            for (EncodedEntry entry : entries.values()) {
+                out.write(entry.data);
+            }
+        }
+
+        if (trailer != null) {
+            out.write(trailer);
+        }
+
+        return out.toByteArray();
+    }
+
+    static byte[] encodeTime(Date date) {
+        if (date.getTime() < UTC_TIME_LIMIT) {
+            return ASN1Util.encode(new UTCTime(date));
+        }
+        return ASN1Util.encode(new GeneralizedTime(date));
+    }
+
+    static byte[] encodeHeader(byte tag, long length) {
+
+        if (length < 128) {
+            return new byte[] { tag, (byte) length };
+        }
+
+        int size = 0;
+        for (long l = length; l > 0; l >>= 8) {
+            size++;
+        }
+
+        byte[] header = new byte[2 + size];
+        header[0] = tag;
+        header[1] = (byte) (0x80 | size);
+
+        for (int i = 0; i < size; i++) {
+            header[header.length - 1 - i] = (byte) (length >> (8 * i));
+        }
+
+        return header;
+    }
+
+    static class EncodedEntry {
+
+        RevokedCertificate source;
+        byte[] data;
+        boolean hasExtensions;
+
+        EncodedEntry(RevokedCertificate source) throws CRLException {
+            this.source = source;
+            this.data = source.getEncoded();
+            this.hasExtensions = source.hasExtensions();
+        }
+    }
+}
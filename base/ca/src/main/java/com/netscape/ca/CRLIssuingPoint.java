@@ -102,6 +102,7 @@ public class CRLIssuingPoint implements Runnable {
     public static final String PROP_MIN_UPDATE_INTERVAL = "minUpdateInterval";
     public static final String PROP_BEGIN_SERIAL = "crlBeginSerialNo";
     public static final String PROP_END_SERIAL = "crlEndSerialNo";
+    public static final String PROP_PARTITION_INDEX = "partitionIndex";
 
     public static final String SC_ISSUING_POINT_ID = "issuingPointId";
     public static final String SC_IS_DELTA_CRL = "isDeltaCRL";
@@ -344,6 +345,19 @@ public class CRLIssuingPoint implements Runnable {
     protected BigInteger mBeginSerial = null;
     protected BigInteger mEndSerial = null;
 
+    /**
+     * Hash partition of the serial numbers covered by this CRL,
+     * not used if the partition count is less than 2.
+     */
+    private int mPartitionCount;
+    private int mPartitionIndex;
+
+    /**
+     * Group of issuing points sharing a single scan of revoked certs.
+     */
+    private String mPartitionGroupName;
+    private volatile CRLPartitionGroup mPartitionGroup;
+
     private int mUpdatingCRL = CRL_UPDATE_DONE;
 
     private boolean mDoManualUpdate = false;
@@ -354,6 +368,18 @@ public class CRLIssuingPoint implements Runnable {
 
     private boolean mSaveMemory = false;
 
+    /**
+     * Encoded CRL entries kept between full CRL updates,
+     * null if incremental encoding is disabled.
+     */
+    private CRLEntryEncoder mCRLEntryEncoder;
+
+    /**
+     * Whether full CRLs are generated with a StreamingCRLWriter
+     * if the CRL cache is disabled.
+     */
+    private boolean mStreamingGeneration;
+
     /**
      * One time config flag that we have an updated schedule and we want it
      * followed immediately after startup.
@@ -893,6 +919,16 @@ public class CRLIssuingPoint implements Runnable {
 
         mSaveMemory = config.getSaveMemory();
 
+        if (config.getIncrementalEncoding()) {
+            mCRLEntryEncoder = new CRLEntryEncoder();
+        }
+
+        mStreamingGeneration = config.getStreamingGeneration();
+
+        if (mStreamingGeneration && mEnableCRLCache) {
+            logger.warn("CRLIssuingPoint: Streaming generation for " + mId + " requires CRL cache to be disabled");
+        }
+
         mCMSCRLExtensions = new CMSCRLExtensions(this, config);
 
         mExtendedNextUpdate = (
@@ -913,6 +949,16 @@ public class CRLIssuingPoint implements Runnable {
                             PROP_END_SERIAL, "BigInteger", "positive number"));
         }
 
+        mPartitionCount = config.getPartitionCount();
+        mPartitionIndex = config.getPartitionIndex();
+        if (mPartitionCount > 1 && (mPartitionIndex < 0 || mPartitionIndex >= mPartitionCount)) {
+            throw new EBaseException(
+                    CMS.getUserMessage("CMS_BASE_INVALID_PROPERTY_1",
+                            PROP_PARTITION_INDEX, "int", "number between 0 and " + (mPartitionCount - 1)));
+        }
+
+        mPartitionGroupName = config.getPartitionGroup();
+
         mAutoUpdateIntervalEffectiveAtStart = config.getAutoUpdateIntervalEffectiveAtStart();
         logger.debug("CRLIssuingPoint: auto update interval effective at start: " + mAutoUpdateIntervalEffectiveAtStart);
 
@@ -2180,9 +2226,16 @@ public class CRLIssuingPoint implements Runnable {
      */
     public void processRevokedCerts() throws EBaseException {
 
+        CRLPartitionGroup partitionGroup = mPartitionGroup;
+        if (partitionGroup != null) {
+            logger.info("CRLIssuingPoint: Getting revoked certs from partition group " + partitionGroup.getName());
+            mCRLCerts.putAll(partitionGroup.getRevokedCerts(this));
+            return;
+        }
+
         logger.info("CRLIssuingPoint: Processing revoked certs");
 
-        CertRecordProcessor cp = new CertRecordProcessor(mCRLCerts, this, mAllowExtensions);
+        CertRecordProcessor cp = createCertRecordProcessor(mCRLCerts);
 
         String filter = getFilter();
         logger.info("CRLIssuingPoint: - filter: " + filter);
@@ -2191,6 +2244,95 @@ public class CRLIssuingPoint implements Runnable {
         engine.certStatusUpdateTask.processRevokedCerts(cp, filter, mPageSize);
     }
 
+    /**
+     * Passes the revoked certificates to a streaming CRL writer
+     * instead of collecting them in the CRL cache.
+     */
+    public void processRevokedCerts(StreamingCRLWriter crlWriter) throws EBaseException {
+
+        logger.info("CRLIssuingPoint: Processing revoked certs into " + crlWriter);
+
+        CertRecordProcessor cp = new CertRecordProcessor(crlWriter, this, mAllowExtensions);
+
+        String filter = getFilter();
+        logger.info("CRLIssuingPoint: - filter: " + filter);
+
+        CAEngine engine = CAEngine.getInstance();
+        engine.certStatusUpdateTask.processRevokedCerts(cp, filter, mPageSize);
+    }
+
+    /**
+     * Creates a processor that collects the revoked certs
+     * of this issuing point into the given map.
+     */
+    CertRecordProcessor createCertRecordProcessor(Map<BigInteger, RevokedCertificate> crlCerts) {
+        return new CertRecordProcessor(crlCerts, this, mAllowExtensions);
+    }
+
+    /**
+     * Returns true if the full CRL is generated with a StreamingCRLWriter.
+     * Issuing points in a partition group use the shared scan instead.
+     */
+    public boolean isStreamingGeneration() {
+        return mStreamingGeneration && !mEnableCRLCache && mPartitionGroup == null;
+    }
+
+    /**
+     * Returns true if this CRL only covers a serial number range
+     * or a hash partition.
+     */
+    public boolean isPartitioned() {
+        return mBeginSerial != null || mEndSerial != null || mPartitionCount > 1;
+    }
+
+    /**
+     * Checks if the serial number belongs to the serial number range
+     * and hash partition of this CRL.
+     *
+     * @return true if the serial number belongs to this CRL
+     */
+    public boolean isInPartition(BigInteger serialNumber) {
+
+        if (mBeginSerial != null && serialNumber.compareTo(mBeginSerial) < 0) {
+            return false;
+        }
+
+        if (mEndSerial != null && serialNumber.compareTo(mEndSerial) > 0) {
+            return false;
+        }
+
+        if (mPartitionCount > 1) {
+            return serialNumber.mod(BigInteger.valueOf(mPartitionCount)).intValue() == mPartitionIndex;
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks if the other issuing point selects the same revoked certs
+     * apart from the serial number range and hash partition, so both
+     * can be built from one scan.
+     */
+    public boolean hasSameScope(CRLIssuingPoint other) {
+        return getClass() == other.getClass()
+                && mIncludeExpiredCerts == other.mIncludeExpiredCerts
+                && mCACertsOnly == other.mCACertsOnly
+                && isProfileCertsOnly() == other.isProfileCertsOnly()
+                && (!isProfileCertsOnly() || mProfileList.equals(other.mProfileList));
+    }
+
+    public String getPartitionGroupName() {
+        return mPartitionGroupName;
+    }
+
+    public CRLPartitionGroup getPartitionGroup() {
+        return mPartitionGroup;
+    }
+
+    public void setPartitionGroup(CRLPartitionGroup partitionGroup) {
+        mPartitionGroup = partitionGroup;
+    }
+
     /**
      * Clears CRL cache
      */
@@ -2503,6 +2645,12 @@ public class CRLIssuingPoint implements Runnable {
                                String requestId) {
 
         CertId certID = new CertId(serialNumber);
+
+        if (!isInPartition(serialNumber)) {
+            logger.debug("CRLIssuingPoint: Cert " + certID.toHexString() + " is not in " + mId);
+            return;
+        }
+
         logger.info("CRLIssuingPoint: Adding revoked cert " + certID.toHexString());
 
         CertRecordProcessor cp = new CertRecordProcessor(mCRLCerts, this, mAllowExtensions);
@@ -2540,6 +2688,12 @@ public class CRLIssuingPoint implements Runnable {
     public void addUnrevokedCert(BigInteger serialNumber, String requestId) {
 
         CertId certID = new CertId(serialNumber);
+
+        if (!isInPartition(serialNumber)) {
+            logger.debug("CRLIssuingPoint: Cert " + certID.toHexString() + " is not in " + mId);
+            return;
+        }
+
         logger.info("CRLIssuingPoint: Adding unrevoked cert " + certID.toHexString());
 
         if (mEnable && mEnableCRLCache) {
@@ -2564,6 +2718,12 @@ public class CRLIssuingPoint implements Runnable {
     public void addExpiredCert(BigInteger serialNumber) {
 
         CertId certID = new CertId(serialNumber);
+
+        if (!isInPartition(serialNumber)) {
+            logger.debug("CRLIssuingPoint: Cert " + certID.toHexString() + " is not in " + mId);
+            return;
+        }
+
         logger.info("CRLIssuingPoint: Adding expired cert " + certID.toHexString());
 
         if (mEnable && mEnableCRLCache && (!mIncludeExpiredCerts)) {
@@ -2917,7 +3077,12 @@ public class CRLIssuingPoint implements Runnable {
             if (statsSub != null) {
                 statsSub.startTiming("generation");
             }
-            processRevokedCerts();
+
+            // with streaming generation the revoked certs are
+            // read while the full CRL is generated
+            if (!isStreamingGeneration()) {
+                processRevokedCerts();
+            }
 
             if (statsSub != null) {
                 statsSub.endTiming("generation");
@@ -3203,18 +3368,30 @@ public class CRLIssuingPoint implements Runnable {
         mSplits[6] += System.currentTimeMillis();
 
         X509CRLImpl newX509CRL = null;
+        StreamingCRLWriter crlWriter = null;
+
+        // the CRL file is kept until the CRL has been published
+        boolean stored = false;
 
         try {
             logger.debug("CRLIssuingPoint: - signing algorithm: " + signingAlgorithm);
 
             mSplits[7] -= System.currentTimeMillis();
 
-            logger.debug("CRLIssuingPoint: - CRL certs: " + mCRLCerts.size());
+            long crlSize = mCRLCerts.size();
+
+            if (isStreamingGeneration()) {
+                crlWriter = new StreamingCRLWriter();
+                processRevokedCerts(crlWriter);
+                crlSize = crlWriter.getCount();
+            }
+
+            logger.debug("CRLIssuingPoint: - CRL certs: " + crlSize);
 
             // #56123 - dont generate CRL if no revoked certificates
             if (mConfigStore.getNoCRLIfNoRevokedCert()) {
 
-                if (mCRLCerts.size() == 0) {
+                if (crlSize == 0) {
                     logger.info("CRLIssuingPoint: Not generating full CRL since there are no revoked certificates");
                     auditor.log(FullCRLGenerationEvent.createSuccessEvent(
                             getAuditSubjectID(),
@@ -3223,16 +3400,49 @@ public class CRLIssuingPoint implements Runnable {
                 }
             }
 
-            logger.info("CRLIssuingPoint: Generating full CRL with " + mCRLCerts.size() + " cert(s)");
-            X509CRLImpl crl = new X509CRLImpl(mCA.getCRLX500Name(),
-                    AlgorithmId.get(signingAlgorithm),
-                    thisUpdate, nextUpdate, mCRLCerts, ext);
+            logger.info("CRLIssuingPoint: Generating full CRL with " + crlSize + " cert(s)");
+
+            byte[] newCRL;
+
+            if (crlWriter != null) {
+                logger.info("CRLIssuingPoint: Signing full CRL with " + signingAlgorithm);
+                crlWriter.finish(
+                        mCA.getCRLX500Name(),
+                        signingAlgorithm,
+                        thisUpdate, nextUpdate, ext,
+                        mCA);
+
+                // The CRL record keeps the CRL in a single LDAP attribute
+                // value, so it has to be loaded once for storing. The copy
+                // is dropped once stored, and publishers read the CRL from
+                // the file (see FileX509CRL).
+                newCRL = crlWriter.getEncoded();
+
+            } else if (mCRLEntryEncoder != null) {
+                int encoded = mCRLEntryEncoder.update(mCRLCerts);
+                logger.info("CRLIssuingPoint: Encoded " + encoded + " new or changed CRL entries");
+
+                byte[] tbsCertList = mCRLEntryEncoder.encodeTBSCertList(
+                        mCA.getCRLX500Name(),
+                        AlgorithmId.get(signingAlgorithm),
+                        thisUpdate, nextUpdate, ext);
+
+                logger.info("CRLIssuingPoint: Signing full CRL with " + signingAlgorithm);
+                newX509CRL = mCA.signCRL(tbsCertList, signingAlgorithm);
 
-            logger.info("CRLIssuingPoint: Signing full CRL with " + signingAlgorithm);
-            newX509CRL = mCA.sign(crl, signingAlgorithm);
+            } else {
+                X509CRLImpl crl = new X509CRLImpl(mCA.getCRLX500Name(),
+                        AlgorithmId.get(signingAlgorithm),
+                        thisUpdate, nextUpdate, mCRLCerts, ext);
+
+                logger.info("CRLIssuingPoint: Signing full CRL with " + signingAlgorithm);
+                newX509CRL = mCA.sign(crl, signingAlgorithm);
+            }
 
-            logger.info("CRLIssuingPoint: Encoding full CRL");
-            byte[] newCRL = newX509CRL.getEncoded();
+            if (crlWriter == null) {
+                logger.info("CRLIssuingPoint: Encoding full CRL");
+                newCRL = newX509CRL.getEncoded();
+            }
 
             mSplits[7] += System.currentTimeMillis();
 
@@ -3249,20 +3459,23 @@ public class CRLIssuingPoint implements Runnable {
             if (mSaveMemory) {
                 mCRLRepository.updateCRLIssuingPointRecord(
                         mId, newCRL, thisUpdate, nextUpdateDate,
-                        mNextCRLNumber, Long.valueOf(mCRLCerts.size()));
+                        mNextCRLNumber, Long.valueOf(crlSize));
                 updateCRLCacheRepository();
 
             } else {
                 mCRLRepository.updateCRLIssuingPointRecord(
                         mId, newCRL, thisUpdate, nextUpdateDate,
-                        mNextCRLNumber, Long.valueOf(mCRLCerts.size()),
+                        mNextCRLNumber, Long.valueOf(crlSize),
                         mRevokedCerts, mUnrevokedCerts, mExpiredCerts);
                 mFirstUnsaved = CRLIssuingPointRecord.CLEAN_CACHE;
             }
 
             mSplits[8] += System.currentTimeMillis();
 
-            mCRLSize = mCRLCerts.size();
+            newCRL = null;
+            stored = true;
+
+            mCRLSize = crlSize;
             mCRLNumber = mNextCRLNumber;
             mDeltaCRLNumber = mCRLNumber;
             mNextCRLNumber = mCRLNumber.add(BigInteger.ONE);
@@ -3316,6 +3529,11 @@ public class CRLIssuingPoint implements Runnable {
                     getAuditSubjectID(),
                     e.getMessage()));
             throw new ECAException(CMS.getUserMessage("CMS_CA_FAILED_CONSTRUCTING_CRL", e.toString()), e);
+
+        } finally {
+            if (crlWriter != null && !stored) {
+                crlWriter.close();
+            }
         }
 
         logger.info("CRLIssuingPoint: Publishing full CRL");
@@ -3323,6 +3541,11 @@ public class CRLIssuingPoint implements Runnable {
         try {
             mSplits[9] -= System.currentTimeMillis();
             mUpdatingCRL = CRL_PUBLISHING_STARTED;
+
+            if (crlWriter != null) {
+                newX509CRL = crlWriter.getCRL();
+            }
+
             publishCRL(newX509CRL);
             mSplits[9] += System.currentTimeMillis();
 
@@ -3334,6 +3557,11 @@ public class CRLIssuingPoint implements Runnable {
             logger.error(message, e);
             auditor.log(new FullCRLPublishingEvent(getAuditSubjectID(), mCRLNumber, e.getMessage()));
             throw new ECAException(message, e);
+
+        } finally {
+            if (crlWriter != null) {
+                crlWriter.close();
+            }
         }
     }
 
@@ -189,6 +189,22 @@ public class CRLIssuingPointConfig extends ConfigStore {
         return getBoolean("saveMemory", false);
     }
 
+    /**
+     * Returns true if the encoded CRL entries are kept between updates
+     * so that only new or changed entries are encoded.
+     */
+    public boolean getIncrementalEncoding() throws EBaseException {
+        return getBoolean("incrementalEncoding", false);
+    }
+
+    /**
+     * Returns true if full CRLs are encoded and signed through temporary
+     * files instead of in memory. Only used if the CRL cache is disabled.
+     */
+    public boolean getStreamingGeneration() throws EBaseException {
+        return getBoolean("streamingGeneration", false);
+    }
+
     public void setSaveMemory(boolean saveMemory) {
         putBoolean("saveMemory", saveMemory);
     }
@@ -305,6 +321,30 @@ public class CRLIssuingPointConfig extends ConfigStore {
         putBigInteger("crlEndSerialNo", crlEndSerialNo);
     }
 
+    /**
+     * Returns the number of hash partitions, or 0 if the CRL
+     * is not partitioned by serial number hash.
+     */
+    public int getPartitionCount() throws EBaseException {
+        return getInteger("partitionCount", 0);
+    }
+
+    /**
+     * Returns the hash partition covered by this CRL, from 0 to
+     * partitionCount - 1.
+     */
+    public int getPartitionIndex() throws EBaseException {
+        return getInteger("partitionIndex", 0);
+    }
+
+    /**
+     * Returns the name of the partition group that shares a single
+     * scan of the revoked certificates, or null.
+     */
+    public String getPartitionGroup() throws EBaseException {
+        return getString("partitionGroup", null);
+    }
+
     public boolean getAutoUpdateIntervalEffectiveAtStart() throws EBaseException {
         return getBoolean("autoUpdateInterval.effectiveAtStart", false);
     }
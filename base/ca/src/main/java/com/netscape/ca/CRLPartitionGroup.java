@@ -0,0 +1,280 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.ca;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.dogtagpki.server.ca.CAEngine;
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.cmscore.dbs.ElementProcessor;
+import com.netscape.cmscore.util.StatsSubsystem;
+
+/**
+ * A group of CRL issuing points that partition the revoked certificates
+ * of the CA by serial number range (crlBeginSerialNo, crlEndSerialNo)
+ * or by serial number hash (partitionCount, partitionIndex).
+ *
+ * Instead of each issuing point searching the certificate repository
+ * on its own, the first member that needs the revoked certificates
+ * scans the repository once for the whole group and sorts the records
+ * into the partitions. The other members are then scheduled for an
+ * immediate update, so all partitions are signed and published in
+ * parallel by their own update threads from the same scan.
+ *
+ * Members must have the CRL cache disabled and select the same kind of
+ * certificates, i.e. differ only in their partition parameters.
+ */
+public class CRLPartitionGroup {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CRLPartitionGroup.class);
+
+    public static final String STATS_ID = "crl_partition_group";
+
+    private String name;
+    private long maxAge;
+    private int pageSize;
+
+    private List<CRLIssuingPoint> members = new ArrayList<>();
+
+    // scan results not yet picked up by their issuing point, guarded by this
+    private Map<String, ScanResult> results = new HashMap<>();
+
+    private ExecutorService updateService;
+
+    public CRLPartitionGroup(String name, int maxAge, int pageSize) {
+        this.name = name;
+        this.maxAge = maxAge * 1000L;
+        this.pageSize = pageSize;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Adds an issuing point to the group.
+     *
+     * @return false if the issuing point cannot share a scan with the
+     *         current members
+     */
+    public synchronized boolean addMember(CRLIssuingPoint issuingPoint) {
+
+        if (issuingPoint.isCRLCacheEnabled()) {
+            logger.warn("CRLPartitionGroup: " + issuingPoint.getId() + " has CRL cache enabled");
+            return false;
+        }
+
+        if (!members.isEmpty() && !members.get(0).hasSameScope(issuingPoint)) {
+            logger.warn("CRLPartitionGroup: " + issuingPoint.getId()
+                    + " does not match the scope of partition group " + name);
+            return false;
+        }
+
+        members.add(issuingPoint);
+        return true;
+    }
+
+    /**
+     * Removes an issuing point from the group.
+     */
+    public synchronized void removeMember(CRLIssuingPoint issuingPoint) {
+        members.remove(issuingPoint);
+        results.remove(issuingPoint.getId());
+        issuingPoint.setPartitionGroup(null);
+    }
+
+    public synchronized List<CRLIssuingPoint> getMembers() {
+        return new ArrayList<>(members);
+    }
+
+    public void start() {
+
+        logger.info("CRLPartitionGroup: Starting partition group " + name + " with " + members.size() + " member(s)");
+
+        for (CRLIssuingPoint issuingPoint : getMembers()) {
+            issuingPoint.setPartitionGroup(this);
+        }
+
+        updateService = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "CRLPartitionGroup-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void shutdown() {
+
+        logger.info("CRLPartitionGroup: Shutting down partition group " + name);
+
+        for (CRLIssuingPoint issuingPoint : getMembers()) {
+            issuingPoint.setPartitionGroup(null);
+        }
+
+        if (updateService != null) {
+            updateService.shutdownNow();
+            updateService = null;
+        }
+
+        synchronized (this) {
+            results.clear();
+        }
+    }
+
+    /**
+     * Returns the revoked certificates of the given issuing point.
+     * If a recent scan result is available for the issuing point it
+     * is used, otherwise the certificate repository is scanned for
+     * all members and the other members are scheduled for an update.
+     */
+    public Map<BigInteger, RevokedCertificate> getRevokedCerts(CRLIssuingPoint issuingPoint)
+            throws EBaseException {
+
+        String id = issuingPoint.getId();
+        List<CRLIssuingPoint> others = new ArrayList<>();
+        ScanResult result;
+
+        synchronized (this) {
+
+            result = results.remove(id);
+
+            if (result != null && result.scanTime + maxAge > System.currentTimeMillis()) {
+                logger.info("CRLPartitionGroup: Using shared scan for " + id + " with " + result.certs.size() + " cert(s)");
+                recordEvent("shared", 0);
+                return result.certs;
+            }
+
+            scan();
+
+            result = results.remove(id);
+
+            if (result == null) {
+                throw new EBaseException("CRL issuing point " + id + " is not in partition group " + name);
+            }
+
+            for (CRLIssuingPoint member : members) {
+                if (member != issuingPoint) {
+                    others.add(member);
+                }
+            }
+        }
+
+        ExecutorService service = updateService;
+        if (service != null) {
+            // schedule the updates outside of the lock since each update
+            // takes the lock of the other issuing point
+            service.submit(() -> {
+                for (CRLIssuingPoint member : others) {
+                    if (hasScanResult(member)) {
+                        logger.info("CRLPartitionGroup: Scheduling update of " + member.getId());
+                        member.setManualUpdate(null);
+                    }
+                }
+            });
+        }
+
+        return result.certs;
+    }
+
+    private synchronized boolean hasScanResult(CRLIssuingPoint issuingPoint) {
+        return results.containsKey(issuingPoint.getId());
+    }
+
+    /**
+     * Scans the revoked certificates of all members in a single search.
+     */
+    private void scan() throws EBaseException {
+
+        logger.info("CRLPartitionGroup: Scanning revoked certs for partition group " + name);
+
+        long startTime = System.currentTimeMillis();
+
+        Map<String, Map<BigInteger, RevokedCertificate>> certs = new HashMap<>();
+        List<CertRecordProcessor> processors = new ArrayList<>();
+
+        // the members differ only in their serial number ranges,
+        // so the search returns the union of their filters
+        Set<String> filters = new LinkedHashSet<>();
+
+        for (CRLIssuingPoint member : members) {
+            Map<BigInteger, RevokedCertificate> memberCerts = new Hashtable<>();
+            certs.put(member.getId(), memberCerts);
+            processors.add(member.createCertRecordProcessor(memberCerts));
+            filters.add(member.getFilter());
+        }
+
+        String filter;
+        if (filters.size() == 1) {
+            filter = filters.iterator().next();
+        } else {
+            StringBuilder sb = new StringBuilder("(|");
+            for (String f : filters) {
+                sb.append(f);
+            }
+            sb.append(")");
+            filter = sb.toString();
+        }
+
+        logger.info("CRLPartitionGroup: - filter: " + filter);
+
+        ElementProcessor processor = new ElementProcessor() {
+            @Override
+            public void process(Object o) throws EBaseException {
+                // each processor skips records outside of its partition
+                for (CertRecordProcessor cp : processors) {
+                    cp.process(o);
+                }
+            }
+        };
+
+        CAEngine engine = CAEngine.getInstance();
+        engine.certStatusUpdateTask.processRevokedCerts(processor, filter, pageSize);
+
+        long scanTime = System.currentTimeMillis();
+
+        results.clear();
+        for (Map.Entry<String, Map<BigInteger, RevokedCertificate>> e : certs.entrySet()) {
+            logger.info("CRLPartitionGroup: - " + e.getKey() + ": " + e.getValue().size() + " cert(s)");
+            results.put(e.getKey(), new ScanResult(e.getValue(), scanTime));
+        }
+
+        recordEvent("scan", scanTime - startTime);
+    }
+
+    private void recordEvent(String id, long timeTaken) {
+
+        CAEngine engine = CAEngine.getInstance();
+        if (engine == null) {
+            return;
+        }
+
+        StatsSubsystem statsSub = (StatsSubsystem) engine.getSubsystem(StatsSubsystem.ID);
+        if (statsSub != null) {
+            statsSub.recordEvent(STATS_ID + " (" + name + ")", id, timeTaken);
+        }
+    }
+
+    static class ScanResult {
+
+        Map<BigInteger, RevokedCertificate> certs;
+        long scanTime;
+
+        ScanResult(Map<BigInteger, RevokedCertificate> certs, long scanTime) {
+            this.certs = certs;
+            this.scanTime = scanTime;
+        }
+    }
+}
@@ -17,7 +17,9 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.ca;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.security.cert.CRLException;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -32,6 +34,7 @@ import org.mozilla.jss.netscape.security.x509.RevocationReason;
 import org.mozilla.jss.netscape.security.x509.RevokedCertImpl;
 import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
 
+import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.dbs.certdb.CertId;
 import com.netscape.cmscore.dbs.CertRecord;
 import com.netscape.cmscore.dbs.ElementProcessor;
@@ -42,6 +45,7 @@ public class CertRecordProcessor extends ElementProcessor {
     public static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CertRecordProcessor.class);
 
     private Map<BigInteger, RevokedCertificate> crlCerts;
+    private StreamingCRLWriter crlWriter;
     private boolean allowExtensions;
     private CRLIssuingPoint issuingPoint;
 
@@ -59,6 +63,20 @@ public class CertRecordProcessor extends ElementProcessor {
         this.allowExtensions = allowExtensions;
     }
 
+    /**
+     * Creates a processor that passes the revoked certificates to
+     * a streaming CRL writer instead of collecting them in a map.
+     */
+    public CertRecordProcessor(
+            StreamingCRLWriter crlWriter,
+            CRLIssuingPoint ip,
+            boolean allowExtensions) {
+
+        this.crlWriter = crlWriter;
+        this.issuingPoint = ip;
+        this.allowExtensions = allowExtensions;
+    }
+
     private boolean initCRLIssuingDistPointExtension() {
 
         boolean result = false;
@@ -206,12 +224,17 @@ public class CertRecordProcessor extends ElementProcessor {
     }
 
     @Override
-    public void process(Object o) {
+    public void process(Object o) throws EBaseException {
         CertRecord certRecord = (CertRecord) o;
 
         BigInteger serialNumber = certRecord.getSerialNumber();
         CertId certID = new CertId(serialNumber);
 
+        // records of a shared scan may belong to another partition
+        if (!issuingPoint.isInPartition(serialNumber)) {
+            return;
+        }
+
         Date revocationDate = certRecord.getRevocationDate();
         RevocationInfo revInfo = certRecord.getRevocationInfo();
 
@@ -229,7 +252,17 @@ public class CertRecordProcessor extends ElementProcessor {
 
         if (includeCert) {
             logger.info("CertRecordProcessor: Adding cert {} into CRL", certID.toHexString()); //NOSONAR
-            crlCerts.put(serialNumber, newRevokedCert);
+
+            if (crlWriter == null) {
+                crlCerts.put(serialNumber, newRevokedCert);
+                return;
+            }
+
+            try {
+                crlWriter.add(newRevokedCert);
+            } catch (IOException | CRLException e) {
+                throw new EBaseException("Unable to add cert " + certID.toHexString() + " into CRL: " + e.getMessage(), e);
+            }
         }
     }
 }
@@ -0,0 +1,246 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.ca;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.dogtagpki.server.ca.CAEngine;
+
+import com.netscape.cmscore.util.StatsSubsystem;
+
+/**
+ * A queued signing stage for certificate issuance.
+ *
+ * Request processing threads encode the TBSCertificate themselves
+ * and put it in a bounded queue. A fixed number of dedicated signing
+ * threads take pending jobs from the queue in batches and sign them
+ * with the CA signing unit, so the number of concurrent operations on
+ * the signing token no longer depends on the number of request threads.
+ *
+ * The caller still waits for its own signature, so the request lifecycle
+ * (including audit events) is unchanged.
+ *
+ * The number of signatures, failures and timeouts, the total time jobs
+ * waited in the queue and were signed, and the current queue depth are
+ * reported in the statistics under "signing_queue".
+ */
+public class CertSigningQueue {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CertSigningQueue.class);
+
+    public static final String STATS_ID = "signing_queue";
+
+    private CertificateAuthority ca;
+    private int threads;
+    private int batchSize;
+    private long timeout; // milliseconds
+
+    private BlockingQueue<SigningJob> queue;
+    private List<Thread> signers = new ArrayList<>();
+    private volatile boolean running;
+
+    private LongAdder signed = new LongAdder();
+    private LongAdder failed = new LongAdder();
+    private LongAdder timeouts = new LongAdder();
+    private LongAdder waitTime = new LongAdder();
+    private LongAdder signTime = new LongAdder();
+
+    private StatsSubsystem statsSub;
+
+    public CertSigningQueue(CertificateAuthority ca, int threads, int capacity, int batchSize, int timeout) {
+        this.ca = ca;
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.timeout = timeout * 1000L;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public void start() {
+
+        logger.info("CertSigningQueue: Starting " + threads + " signing thread(s)");
+        running = true;
+
+        CAEngine engine = CAEngine.getInstance();
+        if (engine != null) {
+            statsSub = (StatsSubsystem) engine.getSubsystem(StatsSubsystem.ID);
+        }
+
+        if (statsSub != null) {
+            statsSub.registerCounters(STATS_ID, this::getStats);
+        }
+
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(this::run, "CertSigningQueue-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            signers.add(thread);
+        }
+    }
+
+    public void shutdown() {
+
+        logger.info("CertSigningQueue: Shutting down");
+        running = false;
+
+        if (statsSub != null) {
+            statsSub.unregisterCounters(STATS_ID);
+        }
+
+        for (Thread thread : signers) {
+            thread.interrupt();
+        }
+        signers.clear();
+
+        // fail remaining jobs so callers do not wait forever
+        List<SigningJob> jobs = new ArrayList<>();
+        queue.drainTo(jobs);
+
+        for (SigningJob job : jobs) {
+            job.result.completeExceptionally(new IllegalStateException("Signing queue has been shut down"));
+        }
+    }
+
+    /**
+     * Returns the number of jobs waiting for a signing thread.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the number of signed and failed jobs, jobs that timed out,
+     * the total time in msec jobs waited in the queue and were signed,
+     * and the current queue depth.
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("signed", signed.sum());
+        stats.put("failed", failed.sum());
+        stats.put("timeout", timeouts.sum());
+        stats.put("wait_time", waitTime.sum());
+        stats.put("sign_time", signTime.sum());
+        stats.put("queue_depth", (long) queue.size());
+        return stats;
+    }
+
+    /**
+     * Queues the data for signing and waits for the signature.
+     * Blocks if the queue is full, up to the configured timeout.
+     *
+     * @param data data to be signed, e.g. an encoded TBSCertificate
+     * @param algname signing algorithm to be used
+     * @return signature
+     */
+    public byte[] sign(byte[] data, String algname) throws Exception {
+
+        if (!running) {
+            throw new IllegalStateException("Signing queue is not running");
+        }
+
+        SigningJob job = new SigningJob(data, algname);
+
+        if (!queue.offer(job, timeout, TimeUnit.MILLISECONDS)) {
+            timeouts.increment();
+            throw new TimeoutException("Signing queue is full");
+        }
+
+        if (!running && queue.remove(job)) {
+            // the queue was shut down after the check above but
+            // before the job was added, so no one will drain it
+            throw new IllegalStateException("Signing queue has been shut down");
+        }
+
+        try {
+            return job.result.get(timeout, TimeUnit.MILLISECONDS);
+
+        } catch (TimeoutException e) {
+            // skip the job if a signing thread has not taken it yet
+            job.result.cancel(false);
+            queue.remove(job);
+            timeouts.increment();
+            throw new TimeoutException("Signing timed out after " + timeout + " ms");
+
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    private void run() {
+
+        List<SigningJob> batch = new ArrayList<>(batchSize);
+
+        while (running) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+
+                for (SigningJob job : batch) {
+                    process(job);
+                }
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+
+            } finally {
+                batch.clear();
+            }
+        }
+
+        logger.debug("CertSigningQueue: " + Thread.currentThread().getName() + " stopped");
+    }
+
+    private void process(SigningJob job) {
+
+        if (job.result.isDone()) {
+            // the caller has timed out
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        waitTime.add(startTime - job.enqueueTime);
+
+        try {
+            byte[] signature = ca.getSigningUnit().sign(job.data, job.algname);
+            job.result.complete(signature);
+            signed.increment();
+
+        } catch (Exception e) {
+            job.result.completeExceptionally(e);
+            failed.increment();
+
+        } finally {
+            signTime.add(System.currentTimeMillis() - startTime);
+        }
+    }
+
+    static class SigningJob {
+
+        byte[] data;
+        String algname;
+        long enqueueTime = System.currentTimeMillis();
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+
+        SigningJob(byte[] data, String algname) {
+            this.data = data;
+            this.algname = algname;
+        }
+    }
+}
@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigInteger;
 import java.security.KeyPair;
 import java.security.MessageDigest;
@@ -35,9 +36,12 @@ import java.security.cert.CertificateParsingException;
 import java.security.interfaces.RSAKey;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
 
 import javax.servlet.http.HttpServletRequest;
@@ -217,6 +221,7 @@ public class CertificateAuthority extends Subsystem implements IAuthority, IOCSP
     protected CASigningUnit mSigningUnit;
     protected CASigningUnit mOCSPSigningUnit;
     protected CASigningUnit mCRLSigningUnit;
+    protected CertSigningQueue mSigningQueue;
 
     protected CertificateIssuerName mIssuerObj = null;
     protected CertificateSubjectName mSubjectObj = null;
@@ -367,6 +372,8 @@ public class CertificateAuthority extends Subsystem implements IAuthority, IOCSP
             // try to update the cert once we have the cert and key
             checkForNewerCert();
 
+            initSigningQueue();
+
         } catch (CAMissingCertException | CAMissingKeyException e) {
             logger.warn("CertificateAuthority: CA signing key and cert not (yet) present in NSS database");
             signingUnitException = e;
@@ -467,6 +474,22 @@ public class CertificateAuthority extends Subsystem implements IAuthority, IOCSP
      */
     @Override
     public void shutdown() {
+        if (mSigningQueue != null) {
+            mSigningQueue.shutdown();
+            mSigningQueue = null;
+        }
+
+        // the CRL and OCSP signing units may be the CA signing unit
+        Set<CASigningUnit> signingUnits = Collections.newSetFromMap(new IdentityHashMap<>());
+        signingUnits.add(mSigningUnit);
+        signingUnits.add(mOCSPSigningUnit);
+        signingUnits.add(mCRLSigningUnit);
+
+        for (CASigningUnit signingUnit : signingUnits) {
+            if (signingUnit != null) {
+                signingUnit.shutdown();
+            }
+        }
     }
 
     /**
@@ -871,6 +894,126 @@ public class CertificateAuthority extends Subsystem implements IAuthority, IOCSP
         return signedcrl;
     }
 
+    /**
+     * Signs an encoded TBSCertList using the specified signature algorithm.
+     * The returned CRL does not decode the revoked certificate entries.
+     *
+     * @param tbsCertList the encoded TBSCertList to be signed.
+     * @param algname the algorithm name to use. If set to null the default
+     *            signing algorithm is used.
+     * @return the signed CRL
+     * @exception EBaseException failed to sign CRL
+     */
+    public X509CRLImpl signCRL(byte[] tbsCertList, String algname)
+            throws EBaseException {
+
+        CAEngine engine = CAEngine.getInstance();
+        ensureReady();
+
+        StatsSubsystem statsSub = (StatsSubsystem) engine.getSubsystem(StatsSubsystem.ID);
+        if (statsSub != null) {
+            statsSub.startTiming("signing");
+        }
+
+        try (DerOutputStream out = new DerOutputStream()) {
+            DerOutputStream tmp = new DerOutputStream();
+
+            if (algname == null) {
+                algname = mSigningUnit.getDefaultAlgorithm();
+            }
+
+            byte[] signature = mCRLSigningUnit.sign(tbsCertList, algname);
+
+            tmp.write(tbsCertList);
+            AlgorithmId.get(algname).encode(tmp);
+            tmp.putBitString(signature);
+            out.write(DerValue.tag_Sequence, tmp);
+
+            return new X509CRLImpl(out.toByteArray(), false);
+
+        } catch (CRLException e) {
+            logger.error(CMS.getLogMessage("CMSCORE_CA_CA_SIGN_CRL", e.toString(), e.getMessage()), e);
+            throw new ECAException(
+                    CMS.getUserMessage("CMS_CA_SIGNING_CRL_FAILED", e.getMessage()), e);
+
+        } catch (NoSuchAlgorithmException e) {
+            logger.error(CMS.getLogMessage("CMSCORE_CA_CA_SIGN_CRL", e.toString(), e.getMessage()), e);
+            throw new ECAException(CMS.getUserMessage("CMS_CA_SIGNING_CRL_FAILED", e.getMessage()), e);
+
+        } catch (IOException e) {
+            logger.error(CMS.getLogMessage("CMSCORE_CA_CA_SIGN_CRL", e.toString(), e.getMessage()), e);
+            throw new ECAException(
+                    CMS.getUserMessage("CMS_CA_SIGNING_CRL_FAILED", e.getMessage()), e);
+
+        } catch (SignatureException e) {
+            logger.error(CMS.getUserMessage("CMS_CA_SIGNING_OPERATION_FAILED", e.toString()), e);
+            engine.checkForAndAutoShutdown();
+            throw new EBaseException(e);
+
+        } catch (Exception e) {
+            logger.error("Unable to sign data: " + e.getMessage(), e);
+            throw new EBaseException(e);
+
+        } finally {
+            if (statsSub != null) {
+                statsSub.endTiming("signing");
+            }
+        }
+    }
+
+    /**
+     * Signs an encoded TBSCertList read from the given stream using the
+     * specified signature algorithm, so the TBSCertList does not have
+     * to fit in memory.
+     *
+     * @param tbsCertList stream containing the encoded TBSCertList
+     * @param algname the algorithm name to use. If set to null the default
+     *            signing algorithm is used.
+     * @return the signature
+     * @exception EBaseException failed to sign CRL
+     */
+    public byte[] signCRL(InputStream tbsCertList, String algname)
+            throws EBaseException {
+
+        CAEngine engine = CAEngine.getInstance();
+        ensureReady();
+
+        StatsSubsystem statsSub = (StatsSubsystem) engine.getSubsystem(StatsSubsystem.ID);
+        if (statsSub != null) {
+            statsSub.startTiming("signing");
+        }
+
+        try {
+            if (algname == null) {
+                algname = mSigningUnit.getDefaultAlgorithm();
+            }
+
+            return mCRLSigningUnit.sign(tbsCertList, algname);
+
+        } catch (IOException e) {
+            logger.error(CMS.getLogMessage("CMSCORE_CA_CA_SIGN_CRL", e.toString(), e.getMessage()), e);
+            throw new ECAException(
+                    CMS.getUserMessage("CMS_CA_SIGNING_CRL_FAILED", e.getMessage()), e);
+
+        } catch (SignatureException e) {
+            logger.error(CMS.getUserMessage("CMS_CA_SIGNING_OPERATION_FAILED", e.toString()), e);
+            engine.checkForAndAutoShutdown();
+            throw new EBaseException(e);
+
+        } catch (EBaseException e) {
+            throw e;
+
+        } catch (Exception e) {
+            logger.error("Unable to sign data: " + e.getMessage(), e);
+            throw new EBaseException(e);
+
+        } finally {
+            if (statsSub != null) {
+                statsSub.endTiming("signing");
+            }
+        }
+    }
+
     /**
      * Signs the given certificate info using specified signing algorithm
      * If no algorithm is specified the CA's default algorithm is used.
@@ -920,7 +1063,14 @@ public class CertificateAuthority extends Subsystem implements IAuthority, IOCSP
             alg.encode(tmp);
 
             logger.debug("CA cert signing: signing cert");
-            byte[] signature = mSigningUnit.sign(rawCert, algname);
+            byte[] signature;
+            CertSigningQueue signingQueue = mSigningQueue;
+
+            if (signingQueue == null) {
+                signature = mSigningUnit.sign(rawCert, algname);
+            } else {
+                signature = signingQueue.sign(rawCert, algname);
+            }
 
             tmp.putBitString(signature);
 
@@ -1117,6 +1267,39 @@ public class CertificateAuthority extends Subsystem implements IAuthority, IOCSP
     // Initialization routines.
     //
 
+    /**
+     * Starts the queued signing stage for certificates if enabled
+     * in ca.signingQueue.*. Only the host CA uses the queue;
+     * lightweight CAs sign on the calling thread.
+     */
+    public void initSigningQueue() throws EBaseException {
+
+        if (!hostCA) {
+            return;
+        }
+
+        SigningQueueConfig queueConfig = mConfig.getSigningQueueConfig();
+
+        if (!queueConfig.getEnable()) {
+            return;
+        }
+
+        logger.info("CertificateAuthority: Initializing signing queue");
+
+        mSigningQueue = new CertSigningQueue(
+                this,
+                queueConfig.getThreads(),
+                queueConfig.getCapacity(),
+                queueConfig.getBatchSize(),
+                queueConfig.getTimeout());
+
+        mSigningQueue.start();
+    }
+
+    public CertSigningQueue getSigningQueue() {
+        return mSigningQueue;
+    }
+
     public synchronized void initCertSigningUnit() throws Exception {
 
         logger.info("CertificateAuthority: Initializing cert signing unit");
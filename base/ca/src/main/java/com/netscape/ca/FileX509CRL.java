@@ -0,0 +1,84 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.ca;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.cert.CRLException;
+import java.util.Date;
+import java.util.Hashtable;
+
+import org.mozilla.jss.netscape.security.x509.AlgorithmId;
+import org.mozilla.jss.netscape.security.x509.CRLExtensions;
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
+
+/**
+ * A signed CRL stored in a file by StreamingCRLWriter.
+ *
+ * Only the CRL header (issuer, dates and extensions) is kept in memory,
+ * so mappers and publishers can use it like any other CRL. The revoked
+ * certificate entries are not available. Publishers that can copy the
+ * CRL from a stream use openStream(); getEncoded() reads the whole file
+ * for publishers that need the CRL in memory.
+ */
+public class FileX509CRL extends X509CRLImpl {
+
+    private static final long serialVersionUID = 1L;
+
+    private File file;
+
+    public FileX509CRL(
+            X500Name issuer,
+            AlgorithmId algorithm,
+            Date thisUpdate,
+            Date nextUpdate,
+            CRLExtensions extensions,
+            File file) throws CRLException {
+
+        super(issuer, algorithm, thisUpdate, nextUpdate,
+                new Hashtable<BigInteger, RevokedCertificate>(), extensions);
+
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the size of the DER-encoded CRL in bytes.
+     */
+    public long getLength() {
+        return file.length();
+    }
+
+    /**
+     * Opens the DER-encoded CRL for reading.
+     */
+    public InputStream openStream() throws IOException {
+        return new BufferedInputStream(new FileInputStream(file), StreamingCRLWriter.BUFFER_SIZE);
+    }
+
+    /**
+     * Reads the DER-encoded CRL into memory.
+     */
+    @Override
+    public byte[] getEncoded() throws CRLException {
+
+        try (InputStream in = openStream()) {
+            return in.readNBytes((int) file.length());
+
+        } catch (IOException e) {
+            throw new CRLException("Unable to read CRL from " + file + ": " + e.getMessage(), e);
+        }
+    }
+}
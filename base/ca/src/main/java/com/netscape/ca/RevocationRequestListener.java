@@ -43,8 +43,8 @@ public class RevocationRequestListener extends RequestListener {
 
         logger.info("RevocationRequestListener: Received revocation request " + r.getRequestId().toHexString());
 
-        // check if serial number is in begin/end range if set.
-        if (crlIssuingPoint.mBeginSerial != null || crlIssuingPoint.mEndSerial != null) {
+        // check if serial number is in begin/end range and partition if set.
+        if (crlIssuingPoint.isPartitioned()) {
 
             BigInteger[] serialNumbers = r.getExtDataInBigIntegerArray(Request.OLD_SERIALS);
             if (serialNumbers == null || serialNumbers.length == 0) {
@@ -61,19 +61,18 @@ public class RevocationRequestListener extends RequestListener {
             }
 
             logger.debug("RevocationRequestListener: Checking serial numbers:");
-            boolean inRange = false;
+            boolean inPartition = false;
 
             for (int i = 0; i < serialNumbers.length; i++) {
                 BigInteger serialNumber = serialNumbers[i];
                 logger.debug("RevocationRequestListener: - serial number: " + serialNumber);
-                if ((crlIssuingPoint.mBeginSerial == null || serialNumber.compareTo(crlIssuingPoint.mBeginSerial) >= 0)
-                        && (crlIssuingPoint.mEndSerial == null || serialNumber.compareTo(crlIssuingPoint.mEndSerial) <= 0)) {
-                    inRange = true;
+                if (crlIssuingPoint.isInPartition(serialNumber)) {
+                    inPartition = true;
                 }
             }
 
-            logger.debug("RevocationRequestListener: Serial numbers in range: " + inRange);
-            if (!inRange) {
+            logger.debug("RevocationRequestListener: Serial numbers in partition: " + inPartition);
+            if (!inPartition) {
                 return;
             }
         }
@@ -0,0 +1,60 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.ca;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.cmscore.base.ConfigStorage;
+import com.netscape.cmscore.base.ConfigStore;
+import com.netscape.cmscore.base.SimpleProperties;
+
+/**
+ * Provides ca.signingQueue.* parameters.
+ */
+public class SigningQueueConfig extends ConfigStore {
+
+    public SigningQueueConfig(ConfigStorage storage) {
+        super(storage);
+    }
+
+    public SigningQueueConfig(String name, SimpleProperties source) {
+        super(name, source);
+    }
+
+    public boolean getEnable() throws EBaseException {
+        return getBoolean("enable", false);
+    }
+
+    /**
+     * Returns the number of dedicated signing threads.
+     */
+    public int getThreads() throws EBaseException {
+        return getInteger("threads", 4);
+    }
+
+    /**
+     * Returns the maximum number of pending signing jobs. Callers
+     * block when the queue is full.
+     */
+    public int getCapacity() throws EBaseException {
+        return getInteger("capacity", 1000);
+    }
+
+    /**
+     * Returns the maximum time in seconds a caller waits for
+     * a place in the queue and for its signature.
+     */
+    public int getTimeout() throws EBaseException {
+        return getInteger("timeout", 60);
+    }
+
+    /**
+     * Returns the maximum number of pending jobs a signing thread
+     * takes from the queue at a time.
+     */
+    public int getBatchSize() throws EBaseException {
+        return getInteger("batchSize", 50);
+    }
+}
@@ -0,0 +1,236 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.ca;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.security.cert.CRLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.mozilla.jss.netscape.security.util.DerOutputStream;
+import org.mozilla.jss.netscape.security.util.DerValue;
+import org.mozilla.jss.netscape.security.x509.AlgorithmId;
+import org.mozilla.jss.netscape.security.x509.CRLExtensions;
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+
+/**
+ * Writes a signed CRL to a temporary file without keeping the revoked
+ * certificate entries in memory.
+ *
+ * Entries are encoded one at a time as they are read from the
+ * certificate repository and appended to a temporary entries file.
+ * Once all entries have been added, the TBSCertList is streamed from
+ * that file through the CA signing path, and the complete CRL is written
+ * to a second temporary file. Only a fixed size buffer is held in
+ * memory, regardless of the number of entries.
+ *
+ * The CRL is read into memory once to store it, since the CRL record
+ * keeps it in a single LDAP attribute value. Publishers get a
+ * FileX509CRL backed by the CRL file, so publishers that copy the CRL
+ * from a stream never hold it in memory.
+ *
+ * Both temporary files are removed by close().
+ */
+public class StreamingCRLWriter implements AutoCloseable {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(StreamingCRLWriter.class);
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private File entriesFile;
+    private OutputStream entriesOut;
+    private File crlFile;
+
+    private X500Name issuer;
+    private AlgorithmId algorithm;
+    private Date thisUpdate;
+    private Date nextUpdate;
+    private CRLExtensions extensions;
+
+    private long entriesLength;
+    private int count;
+    private boolean hasEntryExtensions;
+
+    public StreamingCRLWriter() throws IOException {
+        entriesFile = File.createTempFile("pki-crl-entries-", ".der");
+        entriesOut = new BufferedOutputStream(new FileOutputStream(entriesFile), BUFFER_SIZE);
+    }
+
+    /**
+     * Encodes and appends a revoked certificate entry.
+     */
+    public void add(RevokedCertificate revokedCert) throws IOException, CRLException {
+
+        byte[] data = revokedCert.getEncoded();
+        entriesOut.write(data);
+
+        entriesLength += data.length;
+        count++;
+
+        if (revokedCert.hasExtensions()) {
+            hasEntryExtensions = true;
+        }
+    }
+
+    /**
+     * Returns the number of entries added so far.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Signs the CRL and writes it into a temporary file.
+     *
+     * @return file containing the DER-encoded CRL
+     */
+    public File finish(
+            X500Name issuer,
+            String algname,
+            Date thisUpdate,
+            Date nextUpdate,
+            CRLExtensions extensions,
+            CertificateAuthority ca) throws Exception {
+
+        entriesOut.close();
+
+        AlgorithmId algorithm = AlgorithmId.get(algname);
+
+        this.issuer = issuer;
+        this.algorithm = algorithm;
+        this.thisUpdate = thisUpdate;
+        this.nextUpdate = nextUpdate;
+        this.extensions = extensions;
+
+        DerOutputStream header = new DerOutputStream();
+
+        if (extensions != null || hasEntryExtensions) {
+            header.write(new byte[] { DerValue.tag_Integer, 1, 1 });
+        }
+
+        algorithm.encode(header);
+        header.write(issuer.getEncoded());
+        header.write(CRLEntryEncoder.encodeTime(thisUpdate));
+
+        if (nextUpdate != null) {
+            header.write(CRLEntryEncoder.encodeTime(nextUpdate));
+        }
+
+        byte[] entriesHeader = new byte[0];
+        if (count > 0) {
+            entriesHeader = CRLEntryEncoder.encodeHeader(DerValue.tag_Sequence, entriesLength);
+        }
+
+        byte[] trailer = new byte[0];
+        if (extensions != null) {
+            DerOutputStream tmp = new DerOutputStream();
+            extensions.encode(tmp, true);
+            trailer = tmp.toByteArray();
+        }
+
+        long length = header.size() + entriesHeader.length + entriesLength + trailer.length;
+        byte[] tbsHeader = CRLEntryEncoder.encodeHeader(DerValue.tag_Sequence, length);
+
+        List<byte[]> prefix = List.of(tbsHeader, header.toByteArray(), entriesHeader);
+
+        logger.info("StreamingCRLWriter: Signing CRL with " + count + " entries");
+
+        byte[] signature;
+        try (InputStream in = openTBSCertList(prefix, trailer)) {
+            signature = ca.signCRL(in, algname);
+        }
+
+        DerOutputStream algorithmOut = new DerOutputStream();
+        algorithm.encode(algorithmOut);
+        byte[] algorithmId = algorithmOut.toByteArray();
+
+        DerOutputStream signatureOut = new DerOutputStream();
+        signatureOut.putBitString(signature);
+        byte[] signatureValue = signatureOut.toByteArray();
+
+        long tbsLength = tbsHeader.length + length;
+        byte[] crlHeader = CRLEntryEncoder.encodeHeader(
+                DerValue.tag_Sequence,
+                tbsLength + algorithmId.length + signatureValue.length);
+
+        crlFile = File.createTempFile("pki-crl-", ".der");
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(crlFile), BUFFER_SIZE);
+                InputStream in = openTBSCertList(prefix, trailer)) {
+
+            out.write(crlHeader);
+            in.transferTo(out);
+            out.write(algorithmId);
+            out.write(signatureValue);
+        }
+
+        logger.info("StreamingCRLWriter: Stored CRL in " + crlFile + " (" + crlFile.length() + " bytes)");
+
+        return crlFile;
+    }
+
+    /**
+     * Reads the signed CRL into memory for storing it.
+     */
+    public byte[] getEncoded() throws IOException {
+
+        try (InputStream in = new FileInputStream(crlFile)) {
+            return in.readNBytes((int) crlFile.length());
+        }
+    }
+
+    /**
+     * Returns the signed CRL backed by the CRL file. The file is
+     * removed by close(), so the CRL must be published before that.
+     */
+    public FileX509CRL getCRL() throws CRLException {
+        return new FileX509CRL(issuer, algorithm, thisUpdate, nextUpdate, extensions, crlFile);
+    }
+
+    private InputStream openTBSCertList(List<byte[]> prefix, byte[] trailer) throws IOException {
+
+        InputStream entries = new BufferedInputStream(new FileInputStream(entriesFile), BUFFER_SIZE);
+
+        List<InputStream> streams = new ArrayList<>();
+        for (byte[] bytes : prefix) {
+            streams.add(new ByteArrayInputStream(bytes));
+        }
+        streams.add(entries);
+        streams.add(new ByteArrayInputStream(trailer));
+
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+
+    @Override
+    public void close() {
+
+        try {
+            entriesOut.close();
+        } catch (IOException e) {
+            logger.warn("StreamingCRLWriter: Unable to close " + entriesFile + ": " + e.getMessage(), e);
+        }
+
+        if (!entriesFile.delete()) {
+            logger.warn("StreamingCRLWriter: Unable to delete " + entriesFile);
+        }
+
+        if (crlFile != null && !crlFile.delete()) {
+            logger.warn("StreamingCRLWriter: Unable to delete " + crlFile);
+        }
+    }
+}
@@ -23,6 +23,8 @@ import java.io.FileFilter;
 import java.io.FileOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.math.BigInteger;
 import java.security.cert.CRLException;
@@ -42,6 +44,7 @@ import org.apache.commons.io.filefilter.RegexFileFilter;
 import org.mozilla.jss.netscape.security.util.Utils;
 import org.mozilla.jss.util.Base64OutputStream;
 
+import com.netscape.ca.FileX509CRL;
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.IExtendedPluginInfo;
 import com.netscape.certsrv.ldap.ELdapException;
@@ -375,12 +378,17 @@ public class FileBasedPublisher
                 String destName = null;
                 File renameFile = null;
 
+                // a CRL stored in a file is copied from the file
+                // instead of being loaded into memory
+                if (!(crl instanceof FileX509CRL)) {
+                    encodedArray = crl.getEncoded();
+                }
+
                 if (mDerAttr) {
                     FileOutputStream fos = null;
                     try {
                         fos = new FileOutputStream(tempFile);
-                        encodedArray = crl.getEncoded();
-                        fos.write(encodedArray);
+                        writeCRL(crl, encodedArray, fos);
                     } finally {
                         if (fos != null)
                             fos.close();
@@ -390,7 +398,7 @@ public class FileBasedPublisher
                             zos = new ZipOutputStream(new FileOutputStream(baseName + ".zip"));
                             zos.setLevel(mZipLevel);
                             zos.putNextEntry(new ZipEntry(baseName + ".der"));
-                            zos.write(encodedArray, 0, encodedArray.length);
+                            writeCRL(crl, encodedArray, zos);
                             zos.closeEntry();
                         } finally {
                             if (zos != null)
@@ -424,12 +432,17 @@ public class FileBasedPublisher
 
                 // output base64 file
                 if (mB64Attr == true) {
-                    if (encodedArray == null)
-                        encodedArray = crl.getEncoded();
                     FileOutputStream fos = null;
                     try {
                         fos = new FileOutputStream(tempFile);
-                        fos.write(Utils.base64encode(encodedArray, true).getBytes());
+                        if (encodedArray != null) {
+                            fos.write(Utils.base64encode(encodedArray, true).getBytes());
+                        } else {
+                            // 64 characters per line
+                            Base64OutputStream b64 = new Base64OutputStream(new PrintStream(fos), 16);
+                            writeCRL(crl, null, b64);
+                            b64.close();
+                        }
                     } finally {
                         if (fos != null)
                             fos.close();
@@ -455,6 +468,22 @@ public class FileBasedPublisher
         }
     }
 
+    /**
+     * Writes the DER-encoded CRL. If the CRL has not been loaded into
+     * memory it is copied from its file.
+     */
+    private void writeCRL(X509CRL crl, byte[] encoded, OutputStream out) throws IOException {
+
+        if (encoded != null) {
+            out.write(encoded);
+            return;
+        }
+
+        try (InputStream in = ((FileX509CRL) crl).openStream()) {
+            in.transferTo(out);
+        }
+    }
+
     /**
      * Gets all the CRLS (full and delta) in the directory
      * These match <prefix>-<yyyyMMDD>-<HHmmss>.* and <prefix>-<yyyyMMDD>-<HHmmss>-delta.*
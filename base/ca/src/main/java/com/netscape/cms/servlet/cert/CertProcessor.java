@@ -52,6 +52,7 @@ import com.netscape.cmscore.base.ConfigStore;
 import com.netscape.cmscore.logging.Auditor;
 import com.netscape.cmscore.request.Request;
 import com.netscape.cmscore.request.RequestNotifier;
+import com.netscape.cmscore.request.RequestRepository;
 import com.netscape.cmsutil.ldap.LDAPUtil;
 
 public class CertProcessor extends CAProcessor {
@@ -226,8 +227,13 @@ public class CertProcessor extends CAProcessor {
 
         CAEngine engine = CAEngine.getInstance();
         Auditor auditor = engine.getAuditor();
+        RequestRepository requestRepository = engine.getRequestRepository();
 
         for (Request req : reqs) {
+
+            // write the updates made while processing the request at once
+            requestRepository.beginUpdates();
+
             try {
                 ConfigStore profileConf = profile.getConfigStore().getSubStore("auth", ConfigStore.class);
                 boolean explicitApprovalRequired = profileConf.getBoolean("explicitApprovalRequired", false);
@@ -321,11 +327,18 @@ public class CertProcessor extends CAProcessor {
                 if (errorCode == null) {
                     engine.getRequestQueue().markAsServiced(req);
                 } else {
-                    engine.getRequestRepository().updateRequest(req);
+                    requestRepository.updateRequest(req);
                 }
 
             } catch (EBaseException e) {
                 logger.warn("Unable to update certificate request: " + e.getMessage(), e);
+
+            } finally {
+                try {
+                    requestRepository.commitUpdates();
+                } catch (EBaseException e) {
+                    logger.warn("Unable to update certificate request: " + e.getMessage(), e);
+                }
             }
         }
 
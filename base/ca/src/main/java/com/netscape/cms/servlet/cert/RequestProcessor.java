@@ -130,87 +130,133 @@ public class RequestProcessor extends CertProcessor {
             }
             logger.debug("RequestProcessor: requestId=" + requestId);
 
-            // check if the request is in one of the terminal states
-            if (!req.getRequestStatus().equals(RequestStatus.PENDING)) {
-                logger.error(CMS.getUserMessage(locale, "CMS_REQUEST_NOT_PENDING", requestId.toString()));
-                throw new BadRequestDataException(CMS.getUserMessage(locale, "CMS_REQUEST_NOT_PENDING",
-                        requestId.toString()));
+            // Approving, rejecting or canceling changes the request state,
+            // so the request is locked until the change has been stored.
+            // Otherwise two agents could both see the request pending and
+            // both execute the profile.
+            boolean lock = op.equals("approve") || op.equals("reject") || op.equals("cancel");
+
+            if (lock) {
+                queue.getLockTable().lock(requestId);
             }
 
-            if (authToken != null && req != null) {
-                // save auth token in request
-                saveAuthToken(authToken, req);
-            }
+            try {
+                if (lock) {
+                    checkPending(requestId);
+                }
+                processRequest(authToken, data, req, requestId, op);
 
-            String profileId = req.getExtDataInString(Request.PROFILE_ID);
-            if (profileId == null || profileId.equals("")) {
-                logger.error("RequestProcessor: Profile Id not found in request");
-                throw new EBaseException(CMS.getUserMessage(locale, "CMS_PROFILE_ID_NOT_FOUND"));
+            } finally {
+                if (lock) {
+                    queue.getLockTable().unlock(requestId);
+                }
             }
-            logger.debug("RequestProcessor: profileId=" + profileId);
 
-            Profile profile = ps.getProfile(profileId);
-            if (profile == null) {
-                logger.error(CMS.getUserMessage(locale, "CMS_PROFILE_NOT_FOUND", profileId));
-                throw new BadRequestDataException(CMS.getUserMessage(locale, "CMS_PROFILE_NOT_FOUND", profileId));
-            }
-            if (!ps.isProfileEnable(profileId)) {
-                logger.error("RequestProcessor: Profile " + profileId + " not enabled");
-                throw new BadRequestDataException("Profile " + profileId + " not enabled");
-            }
+            endTiming("approval");
 
-            if (op.equals("assign")) {
-                String owner = req.getRequestOwner();
+        } finally {
+            endAllEvents();
+        }
+    }
 
-                // assigned owner
-                if (owner != null && owner.length() > 0) {
-                    if (!grantPermission(req, authToken)) {
-                        logger.error("RequestProcessor: Permission not granted to assign request.");
-                        throw new EAuthzException(CMS.getUserMessage(locale, "CMS_PROFILE_DENY_OPERATION"));
-                    }
-                }
-                String id = auditSubjectID();
-                req.setRequestOwner(id);
-            } else {
-                if (grantPermission(req, authToken)) {
-                    if (op.equals("approve")) {
-                        checkProfileVersion(profile, req);
-                        updateValues(data, req, profile, locale);
-                        updateNotes(data, req);
-                        approveRequest(req, data, profile, locale);
-                    } else if (op.equals("reject")) {
-                        updateNotes(data, req);
-                        rejectRequest(req);
-                    } else if (op.equals("cancel")) {
-                        updateNotes(data, req);
-                        cancelRequest(req);
-                    } else if (op.equals("update")) {
-                        checkProfileVersion(profile, req);
-                        updateValues(data, req, profile, locale);
-                        updateNotes(data, req);
-                    } else if (op.equals("validate")) {
-                        updateValues(data, req, profile, locale);
-                    } else if (op.equals("unassign")) {
-                        req.setRequestOwner(null);
-                    }
-                } else {
-                    logger.error("RequestProcessor: Permission not granted to approve/reject/cancel/update/validate/unassign request.");
+    private void processRequest(AuthToken authToken, CertReviewResponse data, Request req, RequestId requestId, String op)
+            throws EBaseException {
+
+        // check if the request is in one of the terminal states
+        if (!req.getRequestStatus().equals(RequestStatus.PENDING)) {
+            logger.error(CMS.getUserMessage(locale, "CMS_REQUEST_NOT_PENDING", requestId.toString()));
+            throw new BadRequestDataException(CMS.getUserMessage(locale, "CMS_REQUEST_NOT_PENDING",
+                    requestId.toString()));
+        }
+
+        if (authToken != null && req != null) {
+            // save auth token in request
+            saveAuthToken(authToken, req);
+        }
+
+        String profileId = req.getExtDataInString(Request.PROFILE_ID);
+        if (profileId == null || profileId.equals("")) {
+            logger.error("RequestProcessor: Profile Id not found in request");
+            throw new EBaseException(CMS.getUserMessage(locale, "CMS_PROFILE_ID_NOT_FOUND"));
+        }
+        logger.debug("RequestProcessor: profileId=" + profileId);
+
+        Profile profile = ps.getProfile(profileId);
+        if (profile == null) {
+            logger.error(CMS.getUserMessage(locale, "CMS_PROFILE_NOT_FOUND", profileId));
+            throw new BadRequestDataException(CMS.getUserMessage(locale, "CMS_PROFILE_NOT_FOUND", profileId));
+        }
+        if (!ps.isProfileEnable(profileId)) {
+            logger.error("RequestProcessor: Profile " + profileId + " not enabled");
+            throw new BadRequestDataException("Profile " + profileId + " not enabled");
+        }
+
+        if (op.equals("assign")) {
+            String owner = req.getRequestOwner();
+
+            // assigned owner
+            if (owner != null && owner.length() > 0) {
+                if (!grantPermission(req, authToken)) {
+                    logger.error("RequestProcessor: Permission not granted to assign request.");
                     throw new EAuthzException(CMS.getUserMessage(locale, "CMS_PROFILE_DENY_OPERATION"));
                 }
             }
-
-            // commit request to the storage
-            if (!op.equals("validate")) {
+            String id = auditSubjectID();
+            req.setRequestOwner(id);
+        } else {
+            if (grantPermission(req, authToken)) {
                 if (op.equals("approve")) {
-                    queue.markAsServiced(req);
-                } else {
-                    requestRepository.updateRequest(req);
+                    checkProfileVersion(profile, req);
+                    updateValues(data, req, profile, locale);
+                    updateNotes(data, req);
+                    approveRequest(req, data, profile, locale);
+                } else if (op.equals("reject")) {
+                    updateNotes(data, req);
+                    rejectRequest(req);
+                } else if (op.equals("cancel")) {
+                    updateNotes(data, req);
+                    cancelRequest(req);
+                } else if (op.equals("update")) {
+                    checkProfileVersion(profile, req);
+                    updateValues(data, req, profile, locale);
+                    updateNotes(data, req);
+                } else if (op.equals("validate")) {
+                    updateValues(data, req, profile, locale);
+                } else if (op.equals("unassign")) {
+                    req.setRequestOwner(null);
                 }
+            } else {
+                logger.error("RequestProcessor: Permission not granted to approve/reject/cancel/update/validate/unassign request.");
+                throw new EAuthzException(CMS.getUserMessage(locale, "CMS_PROFILE_DENY_OPERATION"));
             }
-            endTiming("approval");
+        }
 
-        } finally {
-            endAllEvents();
+        // commit request to the storage
+        if (!op.equals("validate")) {
+            if (op.equals("approve")) {
+                queue.markAsServiced(req);
+            } else {
+                requestRepository.updateRequest(req);
+            }
+        }
+    }
+
+    /**
+     * Verifies under the request lock that the request is still pending.
+     *
+     * The request was read before the lock was taken, so another agent
+     * might have approved or rejected it in the meantime. Only the stored
+     * status is read again; this is one lookup by DN per agent action and
+     * is not on the enrollment path.
+     */
+    private void checkPending(RequestId requestId) throws EBaseException {
+
+        Request current = requestRepository.readRequest(requestId);
+
+        if (current != null && current.getRequestStatus() != RequestStatus.PENDING) {
+            logger.error(CMS.getUserMessage(locale, "CMS_REQUEST_NOT_PENDING", requestId.toString()));
+            throw new BadRequestDataException(CMS.getUserMessage(locale, "CMS_REQUEST_NOT_PENDING",
+                    requestId.toString()));
         }
     }
 
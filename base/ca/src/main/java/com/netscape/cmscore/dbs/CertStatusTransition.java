@@ -0,0 +1,186 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.dbs;
+
+import java.math.BigInteger;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.dogtagpki.server.ca.CAEngine;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.dbs.certdb.CertId;
+import com.netscape.cmscore.util.StatsSubsystem;
+
+/**
+ * Moves certificate records from one status to another in bulk.
+ *
+ * The records are streamed from a paged search, so they are never
+ * all held in memory, and the modifications are pipelined over a
+ * fixed number of threads, each using its own pooled connection.
+ * The number of outstanding modifications is bounded so the search
+ * does not run ahead of the threads.
+ *
+ * The search filter selects only the records that still need the
+ * transition, so the progress is checkpointed in the records
+ * themselves: a run that is interrupted or stopped at the maximum
+ * number of records resumes with the remaining records the next time.
+ */
+public class CertStatusTransition {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CertStatusTransition.class);
+
+    public static final String STATS_ID = "cert_status_transition";
+
+    // outstanding modifications per thread
+    public static final int QUEUE_FACTOR = 4;
+
+    private static final String[] ATTRS = { "objectclass", CertRecord.ATTR_ID };
+
+    CertificateRepository repository;
+
+    int threads;
+    int maxRecords;
+    int maxPending;
+
+    ExecutorService executorService;
+
+    public CertStatusTransition(
+            CertificateRepository repository,
+            int threads,
+            int maxRecords) {
+
+        this.repository = repository;
+        this.threads = Math.max(threads, 1);
+        this.maxRecords = maxRecords;
+        this.maxPending = this.threads * QUEUE_FACTOR;
+    }
+
+    public void start() {
+
+        AtomicInteger counter = new AtomicInteger();
+
+        executorService = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "CertStatusTransition-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Updates the status of the certificates matching the filter.
+     *
+     * @param name transition name used in logs and stats
+     * @param filter search filter selecting the certificates to update
+     * @param status new certificate status
+     * @param listener called with the serial number of each updated
+     *        certificate from the update threads, or null
+     * @return number of updated certificates
+     */
+    public int transit(
+            String name,
+            String filter,
+            String status,
+            Consumer<BigInteger> listener) throws EBaseException, InterruptedException {
+
+        logger.info("CertStatusTransition: Updating " + name + " certs to " + status);
+        logger.debug("CertStatusTransition: - filter: " + filter);
+
+        long startTime = System.currentTimeMillis();
+
+        Semaphore pending = new Semaphore(maxPending);
+        AtomicInteger updated = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        int count = 0;
+
+        try {
+            CertRecordPagedList records = repository.findPagedCertRecords(filter, ATTRS, null);
+
+            for (CertRecord record : records) {
+
+                if (count >= maxRecords) {
+                    logger.info("CertStatusTransition: Reached max records, remaining " + name
+                            + " certs will be updated in the next run");
+                    break;
+                }
+
+                BigInteger serialNumber = record.getSerialNumber();
+                count++;
+
+                pending.acquire();
+
+                try {
+                    executorService.execute(() -> {
+                        long modifyTime = System.currentTimeMillis();
+                        try {
+                            repository.transitStatus(serialNumber, status);
+                            updated.incrementAndGet();
+                            recordEvent(name, System.currentTimeMillis() - modifyTime);
+
+                            if (listener != null) {
+                                listener.accept(serialNumber);
+                            }
+
+                        } catch (Exception e) {
+                            // the record still matches the filter and will be retried
+                            failed.incrementAndGet();
+                            logger.warn("CertStatusTransition: Unable to update cert "
+                                    + new CertId(serialNumber).toHexString() + ": " + e.getMessage(), e);
+
+                        } finally {
+                            pending.release();
+                        }
+                    });
+
+                } catch (RuntimeException e) {
+                    pending.release();
+                    throw e;
+                }
+            }
+
+        } catch (RuntimeException e) {
+            // paged list wraps search errors
+            throw new EBaseException("Unable to search " + name + " certs: " + e.getMessage(), e);
+
+        } finally {
+            // wait for outstanding modifications
+            pending.acquireUninterruptibly(maxPending);
+            pending.release(maxPending);
+        }
+
+        long time = System.currentTimeMillis() - startTime;
+        long rate = updated.get() * 1000L / Math.max(time, 1);
+
+        logger.info("CertStatusTransition: Updated " + updated.get() + " " + name + " certs in "
+                + time + " ms (" + rate + " certs/s), " + failed.get() + " failed");
+
+        recordEvent(name + " run", time);
+
+        return updated.get();
+    }
+
+    public void shutdown() {
+        if (executorService != null) {
+            executorService.shutdown();
+        }
+    }
+
+    private void recordEvent(String id, long timeTaken) {
+
+        CAEngine engine = CAEngine.getInstance();
+        if (engine == null) {
+            return;
+        }
+
+        StatsSubsystem statsSub = (StatsSubsystem) engine.getSubsystem(StatsSubsystem.ID);
+        if (statsSub != null) {
+            statsSub.recordEvent(STATS_ID, id, timeTaken);
+        }
+    }
+}
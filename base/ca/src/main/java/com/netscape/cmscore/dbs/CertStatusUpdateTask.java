@@ -17,7 +17,11 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.dbs;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Vector;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -27,7 +31,6 @@ import java.util.concurrent.TimeUnit;
 import org.dogtagpki.server.ca.CAEngine;
 
 import com.netscape.ca.CRLIssuingPoint;
-import com.netscape.ca.CertRecordProcessor;
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.dbs.certdb.CertId;
 import com.netscape.cmscore.apps.CMS;
@@ -41,8 +44,10 @@ public class CertStatusUpdateTask implements Runnable {
     int interval;
     int pageSize = 200;
     int maxRecords = 1000000;
+    int threads;
 
     ScheduledExecutorService executorService;
+    CertStatusTransition transition;
 
     public CertStatusUpdateTask(
             CertificateRepository repository,
@@ -50,13 +55,35 @@ public class CertStatusUpdateTask implements Runnable {
             int pageSize,
             int maxRecords) {
 
+        this(repository, interval, pageSize, maxRecords, 0);
+    }
+
+    /**
+     * @param threads number of concurrent status modifications for
+     *        bulk status transitions, or 0 to update the certificates
+     *        found in the VLV lists one at a time
+     */
+    public CertStatusUpdateTask(
+            CertificateRepository repository,
+            int interval,
+            int pageSize,
+            int maxRecords,
+            int threads) {
+
         this.repository = repository;
         this.interval = interval;
         this.pageSize = pageSize;
         this.maxRecords = maxRecords;
+        this.threads = threads;
     }
 
     public void start() {
+
+        if (threads > 0) {
+            transition = new CertStatusTransition(repository, threads, maxRecords);
+            transition.start();
+        }
+
         // schedule task to run immediately and repeat after specified interval
         executorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
             @Override
@@ -76,6 +103,13 @@ public class CertStatusUpdateTask implements Runnable {
         logger.info("CertStatusUpdateTask: Updating invalid certs to valid");
         Date now = new Date();
 
+        if (transition != null) {
+            String filter = "(&(" + CertRecord.ATTR_CERT_STATUS + "=" + CertRecord.STATUS_INVALID + ")"
+                    + "(x509Cert.notBefore<=" + now.getTime() + "))";
+            transition.transit("invalid", filter, CertRecord.STATUS_VALID, null);
+            return;
+        }
+
         CertRecordList recordList = repository.getInvalidCertsByNotBeforeDate(now, -1 * pageSize);
 
         int totalSize = recordList.getSize();
@@ -118,6 +152,13 @@ public class CertStatusUpdateTask implements Runnable {
         logger.info("CertStatusUpdateTask: Updating valid certs to expired");
         Date now = new Date();
 
+        if (transition != null) {
+            String filter = "(&(" + CertRecord.ATTR_CERT_STATUS + "=" + CertRecord.STATUS_VALID + ")"
+                    + "(x509Cert.notAfter<=" + now.getTime() + "))";
+            transition.transit("valid", filter, CertRecord.STATUS_EXPIRED, null);
+            return;
+        }
+
         CertRecordList recordList = repository.getValidCertsByNotAfterDate(now, -1 * pageSize);
 
         int totalSize = recordList.getSize();
@@ -154,12 +195,28 @@ public class CertStatusUpdateTask implements Runnable {
      * Updates a certificate status from REVOKED to REVOKED_EXPIRED
      * if a revoked certificate becomes expired.
      */
-    public void updateRevokedExpiredCertificates() throws EBaseException {
+    public void updateRevokedExpiredCertificates() throws Exception {
 
         logger.info("CertStatusUpdateTask: Updating revoked certs to expired");
         CAEngine engine = CAEngine.getInstance();
         Date now = new Date();
 
+        if (transition != null) {
+            String filter = "(&(" + CertRecord.ATTR_CERT_STATUS + "=" + CertRecord.STATUS_REVOKED + ")"
+                    + "(x509Cert.notAfter<=" + now.getTime() + "))";
+
+            List<BigInteger> expired = Collections.synchronizedList(new ArrayList<>());
+            transition.transit("revoked", filter, CertRecord.STATUS_REVOKED_EXPIRED, expired::add);
+
+            // notify all CRL issuing points about revoked and expired certificates
+            for (BigInteger serialNumber : expired) {
+                for (CRLIssuingPoint issuingPoint : engine.getCRLIssuingPoints()) {
+                    issuingPoint.addExpiredCert(serialNumber);
+                }
+            }
+            return;
+        }
+
         CertRecordList recordList = repository.getRevokedCertsByNotAfterDate(now, -1 * pageSize);
 
         int totalSize = recordList.getSize();
@@ -233,7 +290,7 @@ public class CertStatusUpdateTask implements Runnable {
      * This code and updateCertStatus() are mutually exclusive.
      */
     public synchronized void processRevokedCerts(
-            CertRecordProcessor cp,
+            ElementProcessor cp,
             String filter,
             int pageSize) throws EBaseException {
 
@@ -266,5 +323,6 @@ public class CertStatusUpdateTask implements Runnable {
     public void stop() {
         // shutdown executorService without interrupting running task
         if (executorService != null) executorService.shutdown();
+        if (transition != null) transition.shutdown();
     }
 }
@@ -25,7 +25,11 @@ import java.util.Date;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.mozilla.jss.netscape.security.x509.CertificateValidity;
 import org.mozilla.jss.netscape.security.x509.X500Name;
@@ -77,6 +81,7 @@ public class CertificateRepository extends Repository {
     private static final String PROP_COLLISION_RECOVERY_STEPS = "collisionRecoverySteps";
     private static final String PROP_COLLISION_RECOVERY_REGENERATIONS = "collisionRecoveryRegenerations";
     private static final String PROP_MINIMUM_RANDOM_BITS = "minimumRandomBits";
+    private static final String PROP_RANDOM_SERIAL_NUMBER_BLOCK_SIZE = "randomSerialNumberBlockSize";
     private static final BigInteger BI_MINUS_ONE = BigInteger.ONE.negate();
 
     public static final String PROP_CERT_ID_GENERATOR = "cert.id.generator";
@@ -93,6 +98,8 @@ public class CertificateRepository extends Repository {
     private int mMinRandomBitLength = 4;
     private int mMaxCollisionRecoverySteps = 10;
     private int mMaxCollisionRecoveryRegenerations = 3;
+    private int mRandomSerialNumberBlockSize = 0;
+    private Queue<BigInteger> mReservedSerialNumbers = new ConcurrentLinkedQueue<>();
     private DatabaseConfig mDBConfig = null;
     private boolean mForceModeChange = false;
 
@@ -205,6 +212,7 @@ public class CertificateRepository extends Repository {
 
         if (mEnableRandomSerialNumbers ^ random || forceModeChange) {
             mEnableRandomSerialNumbers = random;
+            mReservedSerialNumbers.clear();
             logger.debug("CertificateRepository:  setEnableRandomSerialNumbers   switching to " +
                       ((random)?PROP_RANDOM_MODE:PROP_SEQUENTIAL_MODE) + " mode");
             if (updateMode) {
@@ -322,17 +330,40 @@ public class CertificateRepository extends Repository {
      * Retrieves the next certificate serial number, and also increases
      * the serial number by one.
      *
+     * If random serial numbers are enabled with a block size
+     * (dbs.randomSerialNumberBlockSize), serial numbers are taken
+     * without locking from a block of random serial numbers that
+     * has been checked for collisions in advance.
+     *
      * @return serial number
      * @exception EBaseException failed to retrieve next serial number
      */
     @Override
-    public synchronized BigInteger getNextSerialNumber()
+    public BigInteger getNextSerialNumber()
             throws EBaseException {
 
         if (idGenerator == IDGenerator.RANDOM) {
             return super.getNextSerialNumber();
         }
 
+        if (mEnableRandomSerialNumbers && mRandomSerialNumberBlockSize > 0) {
+
+            BigInteger nextSerialNumber = pollReservedSerialNumber();
+
+            if (nextSerialNumber == null) {
+                nextSerialNumber = reserveRandomSerialNumbers();
+            }
+
+            logger.debug("CertificateRepository: getNextSerialNumber  nextSerialNumber=" + nextSerialNumber);
+            return nextSerialNumber;
+        }
+
+        return getNextLegacySerialNumber();
+    }
+
+    private synchronized BigInteger getNextLegacySerialNumber()
+            throws EBaseException {
+
         BigInteger nextSerialNumber = null;
         BigInteger randomNumber = null;
 
@@ -374,6 +405,114 @@ public class CertificateRepository extends Repository {
         return nextSerialNumber;
     }
 
+    /**
+     * Takes a serial number from the reserved block. Numbers that are
+     * no longer in the current range (e.g. after a range switch or after
+     * part of the range was transferred to a clone) are discarded.
+     *
+     * @return serial number, or null if the block is exhausted
+     */
+    private BigInteger pollReservedSerialNumber() {
+
+        BigInteger serialNumber;
+
+        while ((serialNumber = mReservedSerialNumbers.poll()) != null) {
+
+            BigInteger minSerialNo = mMinSerialNo;
+            BigInteger maxSerialNo = mMaxSerialNo;
+
+            if ((minSerialNo == null || serialNumber.compareTo(minSerialNo) >= 0) &&
+                (maxSerialNo == null || serialNumber.compareTo(maxSerialNo) <= 0)) {
+                return serialNumber;
+            }
+
+            logger.debug("CertificateRepository: Discarding reserved serial number " + serialNumber + " outside current range");
+        }
+
+        return null;
+    }
+
+    /**
+     * Generates a new block of random serial numbers, checks them for
+     * collisions with a single search, and returns the first one.
+     * The rest of the block is handed out by pollReservedSerialNumber().
+     */
+    private synchronized BigInteger reserveRandomSerialNumbers()
+            throws EBaseException {
+
+        // another thread might have reserved a block in the meantime
+        BigInteger nextSerialNumber = pollReservedSerialNumber();
+        if (nextSerialNumber != null) {
+            return nextSerialNumber;
+        }
+
+        initCache();
+
+        Set<BigInteger> serialNumbers;
+        int i = 0;
+        do {
+            if (i > 0) {
+                logger.debug("CertificateRepository: reserveRandomSerialNumbers  regenerating serial numbers");
+            }
+            serialNumbers = generateRandomSerialNumbers(mRandomSerialNumberBlockSize);
+            i++;
+        } while (serialNumbers.isEmpty() && i < mMaxCollisionRecoveryRegenerations);
+
+        if (serialNumbers.isEmpty()) {
+            logger.error("CertificateRepository: in reserveRandomSerialNumbers  no serial number available");
+            throw new EBaseException("nextSerialNumber is null");
+        }
+
+        logger.debug("CertificateRepository: reserveRandomSerialNumbers  reserved " + serialNumbers.size() + " serial numbers");
+
+        // the whole block is counted against the range up front
+        if (mCounter.compareTo(BigInteger.ZERO) >= 0) {
+            mCounter = mCounter.add(BigInteger.valueOf(serialNumbers.size()));
+        }
+        logger.debug("CertificateRepository: reserveRandomSerialNumbers  mCounter=" + mCounter);
+
+        Iterator<BigInteger> iterator = serialNumbers.iterator();
+        nextSerialNumber = iterator.next();
+        iterator.remove();
+
+        super.checkRange();
+
+        mReservedSerialNumbers.addAll(serialNumbers);
+
+        return nextSerialNumber;
+    }
+
+    /**
+     * Generates up to the given number of distinct random serial numbers
+     * in the current range and removes the ones that are already in use.
+     */
+    private Set<BigInteger> generateRandomSerialNumbers(int size) throws EBaseException {
+
+        Set<BigInteger> serialNumbers = new LinkedHashSet<>();
+
+        // small ranges might not have enough distinct numbers
+        for (int i = 0; i < 2 * size && serialNumbers.size() < size; i++) {
+            serialNumbers.add(getRandomSerialNumber(getRandomNumber()));
+        }
+
+        StringBuilder filter = new StringBuilder("(|");
+        for (BigInteger serialNumber : serialNumbers) {
+            filter.append("(" + CertRecord.ATTR_ID + "=" + serialNumber + ")");
+        }
+        filter.append(")");
+
+        Enumeration<Object> e = findCertRecs(filter.toString(), new String[] {CertRecord.ATTR_ID, "objectclass"});
+        while (e != null && e.hasMoreElements()) {
+            CertRecord rec = (CertRecord) e.nextElement();
+            if (rec != null) {
+                logger.debug("CertificateRepository: generateRandomSerialNumbers  collision detected for serialNumber=" + rec.getSerialNumber());
+                serialNumbers.remove(rec.getSerialNumber());
+            }
+        }
+
+        return serialNumbers;
+    }
+
     @Override
     public BigInteger getRangeLength() {
         if (dbSubsystem.getEnableSerialMgmt() && mEnableRandomSerialNumbers) {
@@ -550,6 +689,7 @@ public class CertificateRepository extends Repository {
         mMinRandomBitLength = mDBConfig.getInteger(PROP_MINIMUM_RANDOM_BITS, 4);
         mMaxCollisionRecoverySteps = mDBConfig.getInteger(PROP_COLLISION_RECOVERY_STEPS, 10);
         mMaxCollisionRecoveryRegenerations = mDBConfig.getInteger(PROP_COLLISION_RECOVERY_REGENERATIONS, 3);
+        mRandomSerialNumberBlockSize = mDBConfig.getInteger(PROP_RANDOM_SERIAL_NUMBER_BLOCK_SIZE, 0);
         boolean modeChange = (mEnableRandomSerialNumbers && crMode != null && crMode.equals(PROP_SEQUENTIAL_MODE)) ||
                              ((!mEnableRandomSerialNumbers) && crMode != null && crMode.equals(PROP_RANDOM_MODE));
         boolean enableRsnAtConfig = mEnableRandomSerialNumbers && engine.isPreOpMode() &&
@@ -1004,6 +1144,23 @@ public class CertificateRepository extends Repository {
         modifyCertificateRecord(id.toBigInteger(), mods);
     }
 
+    /**
+     * Updates the status of a certificate record for a bulk status
+     * transition. Unlike modifyCertificateRecord() this method is not
+     * synchronized, so several records can be updated concurrently
+     * over separate connections.
+     */
+    public void transitStatus(BigInteger serialNo, String status) throws EBaseException {
+
+        ModificationSet mods = new ModificationSet();
+        mods.add(CertRecord.ATTR_CERT_STATUS, Modification.MOD_REPLACE, status);
+        mods.add(CertRecord.ATTR_MODIFY_TIME, Modification.MOD_REPLACE, new Date());
+
+        try (DBSSession s = dbSubsystem.createSession()) {
+            s.modify("cn=" + serialNo + "," + mBaseDN, mods);
+        }
+    }
+
     /**
      * Finds a list of certificate records that satisifies
      * the filter.
@@ -9,6 +9,7 @@ import org.dogtagpki.legacy.ca.CAPolicyConfig;
 
 import com.netscape.ca.CRLConfig;
 import com.netscape.ca.CertificateAuthority;
+import com.netscape.ca.SigningQueueConfig;
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.connector.ConnectorsConfig;
 import com.netscape.certsrv.security.SigningUnitConfig;
@@ -98,6 +99,13 @@ public class CAConfig extends ConfigStore {
         return getSubStore("crl", CRLConfig.class);
     }
 
+    /**
+     * Returns ca.signingQueue.* parameters.
+     */
+    public SigningQueueConfig getSigningQueueConfig() {
+        return getSubStore("signingQueue", SigningQueueConfig.class);
+    }
+
     /**
      * Returns ca.connector.* parameters.
      */
@@ -62,6 +62,7 @@ import com.netscape.ca.CAService;
 import com.netscape.ca.CRLConfig;
 import com.netscape.ca.CRLIssuingPoint;
 import com.netscape.ca.CRLIssuingPointConfig;
+import com.netscape.ca.CRLPartitionGroup;
 import com.netscape.ca.CertificateAuthority;
 import com.netscape.ca.KeyRetriever;
 import com.netscape.ca.KeyRetrieverRunner;
@@ -109,8 +110,10 @@ import com.netscape.cmscore.ldapconn.LdapBoundConnFactory;
 import com.netscape.cmscore.listeners.ListenerPlugin;
 import com.netscape.cmscore.profile.ProfileSubsystem;
 import com.netscape.cmscore.request.CertRequestRepository;
+import com.netscape.cmscore.request.RequestLockTable;
 import com.netscape.cmscore.request.RequestNotifier;
 import com.netscape.cmscore.request.RequestQueue;
+import com.netscape.cmscore.util.StatsSubsystem;
 import com.netscape.cmsutil.crypto.CryptoUtil;
 import com.netscape.cmsutil.ldap.LDAPPostReadControl;
 
@@ -155,6 +158,7 @@ public class CAEngine extends CMSEngine {
     protected CAPublisherProcessor publisherProcessor;
 
     protected Map<String, CRLIssuingPoint> crlIssuingPoints = new HashMap<>();
+    protected Map<String, CRLPartitionGroup> crlPartitionGroups = new HashMap<>();
 
     // for CMC shared secret operations
     protected org.mozilla.jss.crypto.X509Certificate issuanceProtectionCert;
@@ -358,7 +362,18 @@ public class CAEngine extends CMSEngine {
     }
 
     public CRLIssuingPoint removeCRLIssuingPoint(String id) {
-        return crlIssuingPoints.remove(id);
+
+        CRLIssuingPoint crlIssuingPoint = crlIssuingPoints.remove(id);
+
+        if (crlIssuingPoint != null && crlIssuingPoint.getPartitionGroup() != null) {
+            crlIssuingPoint.getPartitionGroup().removeMember(crlIssuingPoint);
+        }
+
+        return crlIssuingPoint;
+    }
+
+    public Collection<CRLPartitionGroup> getCRLPartitionGroups() {
+        return crlPartitionGroups.values();
     }
 
     /**
@@ -566,6 +581,42 @@ public class CAEngine extends CMSEngine {
 
             crlIssuingPoints.put(id, issuingPoint);
         }
+
+        initCRLPartitionGroups(crlConfig);
+    }
+
+    /**
+     * Groups the CRL issuing points with the same partitionGroup
+     * parameter so that they share a single scan of revoked certs.
+     */
+    public void initCRLPartitionGroups(CRLConfig crlConfig) throws Exception {
+
+        for (CRLIssuingPoint issuingPoint : crlIssuingPoints.values()) {
+
+            String name = issuingPoint.getPartitionGroupName();
+            if (name == null) {
+                continue;
+            }
+
+            CRLPartitionGroup partitionGroup = crlPartitionGroups.get(name);
+
+            if (partitionGroup == null) {
+                partitionGroup = new CRLPartitionGroup(
+                        name,
+                        crlConfig.getPartitionScanMaxAge(),
+                        crlConfig.getPageSize());
+                crlPartitionGroups.put(name, partitionGroup);
+            }
+
+            if (!partitionGroup.addMember(issuingPoint)) {
+                logger.warn("CAEngine: CRL issuing point " + issuingPoint.getId()
+                        + " will not use partition group " + name);
+            }
+        }
+
+        for (CRLPartitionGroup partitionGroup : crlPartitionGroups.values()) {
+            partitionGroup.start();
+        }
     }
 
     /**
@@ -716,6 +767,11 @@ public class CAEngine extends CMSEngine {
         int maxRecords = caConfig.getInteger(CertificateRepository.PROP_TRANS_MAXRECORDS, 1000000);
         logger.info("CAEngine: - max records: " + maxRecords);
 
+        // number of concurrent status modifications, 0 to update the
+        // certificates found in the VLV lists one at a time
+        int threads = caConfig.getInteger("certStatusUpdateThreads", 0);
+        logger.info("CAEngine: - threads: " + threads);
+
         if (certStatusUpdateTask != null) {
             certStatusUpdateTask.stop();
         }
@@ -740,7 +796,8 @@ public class CAEngine extends CMSEngine {
                 certificateRepository,
                 interval,
                 pageSize,
-                maxRecords);
+                maxRecords,
+                threads);
         certStatusUpdateTask.start();
     }
 
@@ -861,6 +918,13 @@ public class CAEngine extends CMSEngine {
                 requestNotifier,
                 pendingNotifier);
 
+        int requestLockTimeout = caConfig.getInteger("requestLockTimeout", 30);
+        logger.info("CAEngine: - request lock timeout: " + requestLockTimeout + " seconds");
+
+        RequestLockTable lockTable = requestQueue.getLockTable();
+        lockTable.setTimeout(requestLockTimeout * 1000L);
+        lockTable.setStatsSubsystem((StatsSubsystem) getSubsystem(StatsSubsystem.ID));
+
         if (schedulerClass != null) {
             RequestScheduler scheduler = (RequestScheduler) Class.forName(schedulerClass).getDeclaredConstructor().newInstance();
             requestQueue.setRequestScheduler(scheduler);
@@ -2010,6 +2074,11 @@ public class CAEngine extends CMSEngine {
 
         super.shutdownSubsystems();
 
+        for (CRLPartitionGroup crlPartitionGroup : crlPartitionGroups.values()) {
+            crlPartitionGroup.shutdown();
+        }
+        crlPartitionGroups.clear();
+
         for (CRLIssuingPoint crlIssuingPoint : crlIssuingPoints.values()) {
             crlIssuingPoint.shutdown();
         }
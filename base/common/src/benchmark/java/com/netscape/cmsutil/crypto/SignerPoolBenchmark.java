@@ -0,0 +1,117 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmsutil.crypto;
+
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.InitializationValues;
+import org.mozilla.jss.crypto.CryptoToken;
+import org.mozilla.jss.crypto.KeyPairAlgorithm;
+import org.mozilla.jss.crypto.KeyPairGenerator;
+import org.mozilla.jss.crypto.PrivateKey;
+import org.mozilla.jss.crypto.Signature;
+import org.mozilla.jss.crypto.SignatureAlgorithm;
+import org.mozilla.jss.util.Password;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * JMH benchmark comparing signing throughput with and without
+ * a signer pool. It is only built with the benchmark profile and
+ * needs an existing NSS database:
+ *
+ * <pre>
+ * $ mvn -pl base/common -Pbenchmark test-compile exec:exec \
+ *     -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main SignerPoolBenchmark \
+ *         -t 8 -p dbdir=/path/to/nssdb -p password=Secret.123"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SignerPoolBenchmark {
+
+    @Param("")
+    public String dbdir;
+
+    @Param("internal")
+    public String token;
+
+    @Param("")
+    public String password;
+
+    @Param("2048")
+    public int keySize;
+
+    @Param("8")
+    public int poolSize;
+
+    private CryptoToken cryptoToken;
+    private PrivateKey privateKey;
+    private SignerPool pool;
+
+    private SignatureAlgorithm algorithm = SignatureAlgorithm.RSASignatureWithSHA256Digest;
+    private byte[] data = new byte[1024];
+
+    @Setup
+    public void setUp() throws Exception {
+
+        InitializationValues vals = new InitializationValues(dbdir, "", "", "secmod.db");
+        CryptoManager.initialize(vals);
+
+        cryptoToken = CryptoUtil.getKeyStorageToken(token);
+
+        Password pass = new Password(password.toCharArray());
+        try {
+            cryptoToken.login(pass);
+        } finally {
+            pass.clear();
+        }
+
+        KeyPairGenerator g = cryptoToken.getKeyPairGenerator(KeyPairAlgorithm.RSA);
+        g.temporaryPairs(true);
+        g.initialize(keySize);
+        KeyPair pair = g.genKeyPair();
+        privateKey = (PrivateKey) pair.getPrivate();
+
+        pool = new SignerPool(cryptoToken, privateKey, poolSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println();
+        System.out.println("Pool hits: " + pool.getHits());
+        System.out.println("Pool exhausted: " + pool.getExhausted());
+        pool.clear();
+    }
+
+    @Benchmark
+    public byte[] unpooled() throws Exception {
+        Signature signer = cryptoToken.getSignatureContext(algorithm);
+        signer.initSign(privateKey);
+        signer.update(data);
+        return signer.sign();
+    }
+
+    @Benchmark
+    public byte[] pooled() throws Exception {
+        Signature signer = pool.borrow(algorithm);
+        signer.update(data);
+        byte[] signature = signer.sign();
+        pool.release(algorithm, signer);
+        return signature;
+    }
+}
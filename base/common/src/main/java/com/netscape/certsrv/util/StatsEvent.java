@@ -58,6 +58,10 @@ public class StatsEvent {
         mSubEvents.put(st.getName(), st);
     }
 
+    public void removeSubEvent(String name) {
+        mSubEvents.remove(name);
+    }
+
     /**
      * Retrieves a list of sub transaction names.
      */
@@ -0,0 +1,151 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmsutil.crypto;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.jss.crypto.CryptoToken;
+import org.mozilla.jss.crypto.PrivateKey;
+import org.mozilla.jss.crypto.Signature;
+import org.mozilla.jss.crypto.SignatureAlgorithm;
+
+/**
+ * A bounded pool of signature contexts initialized with a single
+ * private key. Each signing algorithm has its own pool of at most
+ * <code>size</code> idle signers.
+ *
+ * A signer taken from the pool is owned exclusively by the caller
+ * until it is released, so the pool can be shared by multiple threads.
+ * Released signers are initialized again before they are put back, so a
+ * borrowed signer is always ready for update() regardless of whether the
+ * token resets the context after sign().
+ */
+public class SignerPool {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(SignerPool.class);
+
+    private CryptoToken token;
+    private PrivateKey privateKey;
+    private int size;
+
+    private Map<SignatureAlgorithm, BlockingQueue<Signature>> signers = new ConcurrentHashMap<>();
+
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong exhausted = new AtomicLong();
+
+    public SignerPool(CryptoToken token, PrivateKey privateKey, int size) {
+        this.token = token;
+        this.privateKey = privateKey;
+        this.size = size;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns an idle signer for the given algorithm, or creates a new
+     * one if all pooled signers are in use.
+     *
+     * @return signer initialized for signing
+     */
+    public Signature borrow(SignatureAlgorithm algorithm) throws Exception {
+
+        Signature signer = poll(algorithm);
+
+        if (signer == null) {
+            signer = create(algorithm);
+        }
+
+        return signer;
+    }
+
+    /**
+     * Takes an idle signer for the given algorithm out of the pool.
+     *
+     * @return signer initialized for signing, or null if the pool is exhausted
+     */
+    public Signature poll(SignatureAlgorithm algorithm) {
+
+        Signature signer = getQueue(algorithm).poll();
+
+        if (signer == null) {
+            exhausted.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+
+        return signer;
+    }
+
+    /**
+     * Creates a new signer for the given algorithm. The signer can be
+     * added to the pool with release().
+     *
+     * @return signer initialized for signing
+     */
+    public Signature create(SignatureAlgorithm algorithm) throws Exception {
+        Signature signer = token.getSignatureContext(algorithm);
+        signer.initSign(privateKey);
+        return signer;
+    }
+
+    /**
+     * Returns a signer to the pool after a successful sign() call.
+     * Signers whose last operation failed must not be released since
+     * their state is unknown; they are simply dropped.
+     */
+    public void release(SignatureAlgorithm algorithm, Signature signer) {
+
+        try {
+            signer.initSign(privateKey);
+        } catch (Exception e) {
+            logger.warn("SignerPool: Unable to reinitialize " + algorithm + " signer: " + e.getMessage(), e);
+            return;
+        }
+
+        // if the pool is already full the signer is discarded
+        getQueue(algorithm).offer(signer);
+    }
+
+    /**
+     * Returns the number of borrow() calls served from idle signers.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of borrow() calls that found no idle signer
+     * and had to create a new signature context.
+     */
+    public long getExhausted() {
+        return exhausted.get();
+    }
+
+    /**
+     * Returns the number of idle signers for the given algorithm.
+     */
+    public int getIdle(SignatureAlgorithm algorithm) {
+        BlockingQueue<Signature> queue = signers.get(algorithm);
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * Drops all idle signers.
+     */
+    public void clear() {
+        signers.clear();
+    }
+
+    private BlockingQueue<Signature> getQueue(SignatureAlgorithm algorithm) {
+        return signers.computeIfAbsent(algorithm, k -> new ArrayBlockingQueue<>(size));
+    }
+}
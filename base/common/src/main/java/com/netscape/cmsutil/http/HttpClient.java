@@ -17,6 +17,7 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmsutil.http;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
@@ -24,6 +25,7 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 
 import org.mozilla.jss.ssl.SSLCertificateApprovalCallback;
 
@@ -39,6 +41,7 @@ public class HttpClient {
 
     protected Socket mSocket = null;
     protected InputStream mInputStream = null;
+    protected BufferedInputStream mBufferedInputStream = null;
     protected OutputStream mOutputStream = null;
 
     protected InputStreamReader mInputStreamReader = null;
@@ -46,6 +49,7 @@ public class HttpClient {
     protected BufferedReader mBufferedReader = null;
     protected SSLCertificateApprovalCallback mCertApprovalCallback = null;
     protected boolean mConnected = false;
+    protected boolean mKeepAlive = false;
     // for auditing purposes
     protected String mHost;
     protected String mPort;
@@ -87,6 +91,7 @@ public class HttpClient {
 
         mInputStream = mSocket.getInputStream();
         mOutputStream = mSocket.getOutputStream();
+        mBufferedInputStream = new BufferedInputStream(mInputStream);
         mInputStreamReader = new InputStreamReader(mInputStream, "UTF8");
         mBufferedReader = new BufferedReader(mInputStreamReader);
         mOutputStreamWriter = new OutputStreamWriter(mOutputStream, "UTF8");
@@ -101,6 +106,18 @@ public class HttpClient {
         return mConnected;
     }
 
+    public boolean getKeepAlive() {
+        return mKeepAlive;
+    }
+
+    /**
+     * Keeps the connection open after a response if the server allows it
+     * so the next request does not need a new connection and handshake.
+     */
+    public void setKeepAlive(boolean keepAlive) {
+        mKeepAlive = keepAlive;
+    }
+
     /**
      * Sends a request to http server.
      * Returns a http response.
@@ -111,22 +128,93 @@ public class HttpClient {
 
         if (mOutputStream == null)
             throw new IOException("Output stream not initialized");
-        request.write(mOutputStreamWriter);
         try {
-            resp.parse(mBufferedReader);
+            // a kept-alive connection might have been closed by the server
+            request.write(mOutputStreamWriter);
+        } catch (IOException e) {
+            disconnect();
+            throw new HttpRequestNotSentException("Unable to send request: " + e.getMessage(), e);
+        }
+        try {
+            // the content length is in bytes, so read the response as bytes
+            resp.parse(mBufferedInputStream);
         } catch (IOException e) {
             // XXX should we disconnect in all cases ?
             disconnect();
             throw e;
         }
-        disconnect();
+        if (!mKeepAlive || !isPersistent(resp)) {
+            disconnect();
+        }
         return resp;
     }
 
+    /**
+     * Returns true if the connection can be reused after the response.
+     * Without a Content-Length the content was read until the server
+     * closed the connection.
+     */
+    protected boolean isPersistent(HttpResponse resp) {
+
+        if (!Http.Vers1_1.equals(resp.getHttpVers())) {
+            return false;
+        }
+
+        if (resp.getHeader("content-length") == null) {
+            return false;
+        }
+
+        String connection = resp.getHeader("connection");
+        return connection == null || !connection.equalsIgnoreCase("close");
+    }
+
+    /**
+     * Returns true if a kept-alive connection can no longer be used,
+     * i.e. the server has closed it or sent unexpected data. Waits at
+     * most 1 ms for the socket, so it can be called before each request.
+     */
+    public boolean isStale() {
+
+        if (!mConnected || mSocket == null || mSocket.isClosed()) {
+            return true;
+        }
+
+        int timeout = 0;
+        try {
+            timeout = mSocket.getSoTimeout();
+            mSocket.setSoTimeout(1);
+
+            mBufferedInputStream.mark(1);
+            if (mBufferedInputStream.read() == -1) {
+                // closed by the server
+                return true;
+            }
+
+            // no response is expected before the next request
+            mBufferedInputStream.reset();
+            return true;
+
+        } catch (SocketTimeoutException e) {
+            // nothing to read, the connection is still open
+            return false;
+
+        } catch (IOException e) {
+            return true;
+
+        } finally {
+            try {
+                mSocket.setSoTimeout(timeout);
+            } catch (IOException e) {
+                // the connection is unusable, send() will fail
+            }
+        }
+    }
+
     public void disconnect()
             throws IOException {
         mSocket.close();
         mInputStream = null;
+        mBufferedInputStream = null;
         mOutputStream = null;
         mConnected = false;
     }
@@ -18,9 +18,12 @@
 package com.netscape.cmsutil.http;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.Enumeration;
 import java.util.Hashtable;
 
@@ -105,6 +108,62 @@ public class HttpMessage {
         }
     }
 
+    /**
+     * read http headers from a byte stream.
+     * does not support values of more than one line or multivalue headers.
+     */
+    public void readHeaders(InputStream in)
+            throws IOException {
+        mHeaders = new Hashtable<>();
+
+        int colon;
+        String line, key, value;
+
+        while (true) {
+            line = readLine(in);
+            if (line == null || line.equals(""))
+                break;
+            colon = line.indexOf(':');
+            if (colon == -1) {
+                mHeaders = null;
+                throw new HttpProtocolException("Bad Http header format");
+            }
+            key = line.substring(0, colon);
+            value = line.substring(colon + 1);
+            mHeaders.put(key.toLowerCase(), value.trim());
+        }
+    }
+
+    /**
+     * Read a line terminated by LF or CRLF. The line is decoded as
+     * ISO-8859-1 as defined for the HTTP start line and headers.
+     * Returns null if the end of stream is reached before any byte.
+     */
+    protected static String readLine(InputStream in)
+            throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(128);
+        int b;
+
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                break;
+            }
+            buf.write(b);
+        }
+
+        if (b == -1 && buf.size() == 0) {
+            return null;
+        }
+
+        byte[] bytes = buf.toByteArray();
+        int len = bytes.length;
+        if (len > 0 && bytes[len - 1] == '\r') {
+            len--;
+        }
+
+        return new String(bytes, 0, len, StandardCharsets.ISO_8859_1);
+    }
+
     public void write(OutputStreamWriter writer)
             throws IOException {
         writer.write(mLine + Http.CRLF);
@@ -133,13 +192,17 @@ public class HttpMessage {
         String lenstr = mHeaders.get("content-length");
 
         if (lenstr != null) {
+            // NOTE: the content length is counted in chars here; use
+            // parse(InputStream) for content that is not plain ASCII
             int len = Integer.parseInt(lenstr);
             char[] cbuf = new char[len];
-            int done = reader.read(cbuf, 0, cbuf.length);
-            int total = done;
+            int total = 0;
 
-            while (done >= 0 && total < len) {
-                done = reader.read(cbuf, total, len - total);
+            while (total < len) {
+                int done = reader.read(cbuf, total, len - total);
+                if (done == -1) {
+                    throw new HttpEofException("End of stream reached after " + total + " of " + len + " chars");
+                }
                 total += done;
             }
 
@@ -155,6 +218,56 @@ public class HttpMessage {
         }
     }
 
+    /**
+     * Parse a http message from a byte stream.
+     * The content length is counted in bytes and the content is
+     * decoded as UTF-8.
+     */
+    public void parse(InputStream in)
+            throws IOException {
+        String line = readLine(in);
+
+        if (line == null) {
+            throw new HttpEofException("End of stream reached");
+        }
+        if (line.equals("")) {
+            throw new HttpProtocolException("Bad Http req/resp line " + line);
+        }
+        mLine = line;
+        readHeaders(in);
+
+        String lenstr = mHeaders.get("content-length");
+
+        if (lenstr != null) {
+            int len;
+            try {
+                len = Integer.parseInt(lenstr);
+            } catch (NumberFormatException e) {
+                throw new HttpProtocolException("Bad Http content length " + lenstr);
+            }
+            byte[] buf = new byte[len];
+            int total = 0;
+
+            while (total < len) {
+                int done = in.read(buf, total, len - total);
+                if (done == -1) {
+                    throw new HttpEofException("End of stream reached after " + total + " of " + len + " bytes");
+                }
+                total += done;
+            }
+
+            mContent = new String(buf, StandardCharsets.UTF_8);
+        } else {
+            byte[] buf = new byte[8192];
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int bytesRead;
+            while ((bytesRead = in.read(buf)) != -1) {
+                out.write(buf, 0, bytesRead);
+            }
+            if (out.size() > 0) mContent = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
     public void reset() {
         mLine = null;
         mHeaders = null;
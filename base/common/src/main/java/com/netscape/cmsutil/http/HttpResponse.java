@@ -19,6 +19,7 @@ package com.netscape.cmsutil.http;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
 
 /**
@@ -94,6 +95,24 @@ public class HttpResponse extends HttpMessage {
         mReasonPhrase = null;
 
         super.parse(reader);
+        parseStatusLine();
+    }
+
+    /**
+     * parse a http response from a http server byte stream
+     */
+    @Override
+    public void parse(InputStream in)
+            throws IOException {
+        mHttpVers = null;
+        mStatusCode = null;
+        mReasonPhrase = null;
+
+        super.parse(in);
+        parseStatusLine();
+    }
+
+    private void parseStatusLine() throws HttpProtocolException {
 
         int httpvers = mLine.indexOf(' ');
 
@@ -0,0 +1,502 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmsutil.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of JDBC connections.
+ *
+ * Connections returned by getConnection() are returned into the pool
+ * when they are closed. Up to maxSize connections can be in use at the
+ * same time, other callers wait up to maxWait msec for a connection.
+ *
+ * An idle connection that has not been used for validationInterval
+ * msec is validated with the validation query before it is reused.
+ * Connections that failed with a connection error are discarded.
+ *
+ * Each connection keeps a cache of up to statementCacheSize prepared
+ * statements. Closing a cached statement returns it into the cache so
+ * the next prepareStatement() call with the same SQL reuses it.
+ */
+public class JDBCConnectionPool implements AutoCloseable {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(JDBCConnectionPool.class);
+
+    public static final int DEFAULT_MAX_SIZE = 10;
+    public static final long DEFAULT_MAX_WAIT = 30 * 1000;
+    public static final String DEFAULT_VALIDATION_QUERY = "SELECT 1";
+    public static final long DEFAULT_VALIDATION_INTERVAL = 30 * 1000;
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 50;
+
+    protected String url;
+    protected Properties info;
+
+    protected int maxSize = DEFAULT_MAX_SIZE;
+    protected long maxWait = DEFAULT_MAX_WAIT;
+    protected String validationQuery = DEFAULT_VALIDATION_QUERY;
+    protected long validationInterval = DEFAULT_VALIDATION_INTERVAL;
+    protected int statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
+
+    private Semaphore permits;
+
+    // idle connections, most recently used first
+    private LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+
+    private volatile boolean closed;
+
+    public JDBCConnectionPool(String url, Properties info) {
+        this.url = url;
+        this.info = info;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    public void setMaxWait(long maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    public String getValidationQuery() {
+        return validationQuery;
+    }
+
+    public void setValidationQuery(String validationQuery) {
+        this.validationQuery = validationQuery;
+    }
+
+    public long getValidationInterval() {
+        return validationInterval;
+    }
+
+    public void setValidationInterval(long validationInterval) {
+        this.validationInterval = validationInterval;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    /**
+     * Reads the pool parameters (pool.maxSize, pool.maxWait,
+     * pool.validationQuery, pool.validationInterval, and
+     * pool.statementCacheSize) and removes them from the properties
+     * so they are not passed to the JDBC driver.
+     */
+    public void configure(Properties props) {
+
+        String value = (String) props.remove("pool.maxSize");
+        if (value != null) {
+            maxSize = Integer.parseInt(value);
+        }
+
+        value = (String) props.remove("pool.maxWait");
+        if (value != null) {
+            maxWait = Long.parseLong(value);
+        }
+
+        value = (String) props.remove("pool.validationQuery");
+        if (value != null) {
+            validationQuery = value;
+        }
+
+        value = (String) props.remove("pool.validationInterval");
+        if (value != null) {
+            validationInterval = Long.parseLong(value);
+        }
+
+        value = (String) props.remove("pool.statementCacheSize");
+        if (value != null) {
+            statementCacheSize = Integer.parseInt(value);
+        }
+    }
+
+    public void init() {
+
+        logger.info("JDBCConnectionPool: Initializing connection pool for " + url);
+        logger.info("JDBCConnectionPool: - max size: " + maxSize);
+        logger.info("JDBCConnectionPool: - max wait: " + maxWait + " ms");
+        logger.info("JDBCConnectionPool: - validation query: " + validationQuery);
+        logger.info("JDBCConnectionPool: - validation interval: " + validationInterval + " ms");
+        logger.info("JDBCConnectionPool: - statement cache size: " + statementCacheSize);
+
+        permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Creates a new physical connection.
+     */
+    protected Connection createConnection() throws SQLException {
+        logger.info("JDBCConnectionPool: Connecting to " + url);
+        return DriverManager.getConnection(url, info);
+    }
+
+    /**
+     * Returns a connection from the pool. The connection must be closed
+     * to return it into the pool.
+     */
+    public Connection getConnection() throws SQLException {
+
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        try {
+            if (!permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Unable to get database connection within " + maxWait + " ms");
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for database connection", e);
+        }
+
+        try {
+            PooledConnection pc;
+
+            while ((pc = idleConnections.pollFirst()) != null) {
+
+                if (validate(pc)) {
+                    return pc.open();
+                }
+
+                pc.destroy();
+            }
+
+            pc = new PooledConnection(createConnection());
+            return pc.open();
+
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    boolean validate(PooledConnection pc) {
+
+        if (System.currentTimeMillis() - pc.lastUsed < validationInterval) {
+            return true;
+        }
+
+        try (Statement st = pc.connection.createStatement();
+                ResultSet rs = st.executeQuery(validationQuery)) {
+            return true;
+
+        } catch (SQLException e) {
+            logger.info("JDBCConnectionPool: Discarding invalid connection: " + e.getMessage());
+            return false;
+        }
+    }
+
+    void release(PooledConnection pc) {
+
+        try {
+            if (closed || pc.broken || pc.connection.isClosed()) {
+                pc.destroy();
+                return;
+            }
+
+            if (!pc.connection.getAutoCommit()) {
+                // do not leak an incomplete transaction to the next user
+                pc.connection.rollback();
+                pc.connection.setAutoCommit(true);
+            }
+
+            pc.lastUsed = System.currentTimeMillis();
+            idleConnections.offerFirst(pc);
+
+        } catch (SQLException e) {
+            logger.warn("JDBCConnectionPool: Discarding connection: " + e.getMessage());
+            pc.destroy();
+
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Returns the number of idle connections.
+     */
+    public int getIdleCount() {
+        return idleConnections.size();
+    }
+
+    /**
+     * Returns the number of connections in use.
+     */
+    public int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    @Override
+    public void close() {
+
+        closed = true;
+
+        PooledConnection pc;
+        while ((pc = idleConnections.pollFirst()) != null) {
+            pc.destroy();
+        }
+    }
+
+    /**
+     * Returns true if the exception indicates that the connection
+     * can no longer be used.
+     *
+     * https://www.postgresql.org/docs/current/errcodes-appendix.html
+     */
+    static boolean isConnectionError(Throwable t) {
+
+        if (!(t instanceof SQLException)) {
+            return false;
+        }
+
+        String sqlState = ((SQLException) t).getSQLState();
+        return sqlState != null && sqlState.startsWith("08");
+    }
+
+    class PooledConnection {
+
+        Connection connection;
+        long lastUsed = System.currentTimeMillis();
+        boolean broken;
+
+        // prepared statements by SQL, least recently used first
+        Map<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= statementCacheSize) {
+                    return false;
+                }
+                if (!eldest.getValue().inUse) {
+                    eldest.getValue().destroy();
+                }
+                return true;
+            }
+        };
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        Connection open() {
+            return (Connection) Proxy.newProxyInstance(
+                    JDBCConnectionPool.class.getClassLoader(),
+                    new Class<?>[] { Connection.class },
+                    new ConnectionHandler(this));
+        }
+
+        PreparedStatement prepareStatement(String sql) throws SQLException {
+
+            if (statementCacheSize <= 0) {
+                return connection.prepareStatement(sql);
+            }
+
+            CachedStatement cs = statements.get(sql);
+
+            if (cs == null) {
+                cs = new CachedStatement(this, connection.prepareStatement(sql));
+                statements.put(sql, cs);
+
+            } else if (cs.inUse) {
+                // the same SQL is already being used with this connection
+                return connection.prepareStatement(sql);
+            }
+
+            cs.inUse = true;
+
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    JDBCConnectionPool.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class },
+                    new StatementHandler(cs));
+        }
+
+        void destroy() {
+
+            for (CachedStatement cs : statements.values()) {
+                cs.destroy();
+            }
+            statements.clear();
+
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.warn("JDBCConnectionPool: Unable to close connection: " + e.getMessage());
+            }
+        }
+    }
+
+    class CachedStatement {
+
+        PooledConnection pc;
+        PreparedStatement statement;
+        boolean inUse;
+
+        CachedStatement(PooledConnection pc, PreparedStatement statement) {
+            this.pc = pc;
+            this.statement = statement;
+        }
+
+        void release() throws SQLException {
+
+            inUse = false;
+
+            if (!pc.statements.containsValue(this)) {
+                // evicted while in use
+                destroy();
+                return;
+            }
+
+            statement.clearParameters();
+            statement.clearBatch();
+        }
+
+        void destroy() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                logger.warn("JDBCConnectionPool: Unable to close statement: " + e.getMessage());
+            }
+        }
+    }
+
+    class ConnectionHandler implements InvocationHandler {
+
+        PooledConnection pc;
+        boolean closed;
+
+        ConnectionHandler(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+            String name = method.getName();
+
+            if ("close".equals(name)) {
+                if (!closed) {
+                    closed = true;
+                    release(pc);
+                }
+                return null;
+            }
+
+            if ("isClosed".equals(name)) {
+                return closed || pc.connection.isClosed();
+            }
+
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+
+            if (closed) {
+                throw new SQLException("Connection has been returned into the pool");
+            }
+
+            try {
+                if ("prepareStatement".equals(name) && args.length == 1) {
+                    return pc.prepareStatement((String) args[0]);
+                }
+
+                return method.invoke(pc.connection, args);
+
+            } catch (InvocationTargetException e) {
+                throw check(pc, e.getCause());
+
+            } catch (SQLException e) {
+                throw check(pc, e);
+            }
+        }
+    }
+
+    class StatementHandler implements InvocationHandler {
+
+        CachedStatement cs;
+        boolean closed;
+
+        StatementHandler(CachedStatement cs) {
+            this.cs = cs;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+            String name = method.getName();
+
+            if ("close".equals(name)) {
+                if (!closed) {
+                    closed = true;
+                    cs.release();
+                }
+                return null;
+            }
+
+            if ("isClosed".equals(name)) {
+                return closed;
+            }
+
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+
+            if (closed) {
+                throw new SQLException("Statement has been closed");
+            }
+
+            try {
+                return method.invoke(cs.statement, args);
+
+            } catch (InvocationTargetException e) {
+                throw check(cs.pc, e.getCause());
+            }
+        }
+    }
+
+    Throwable check(PooledConnection pc, Throwable t) {
+        if (isConnectionError(t)) {
+            logger.warn("JDBCConnectionPool: Connection error: " + t.getMessage());
+            pc.broken = true;
+        }
+        return t;
+    }
+}
@@ -0,0 +1,152 @@
+package com.netscape.cmsutil.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class HttpClientTest {
+
+    ServerSocket server;
+    Thread serverThread;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        server.close();
+        if (serverThread != null) {
+            serverThread.join(5000);
+        }
+    }
+
+    /**
+     * Accepts one connection and answers the given number of requests
+     * with the given connection header, then closes the connection
+     * once closeLatch is released.
+     */
+    void startServer(int requests, String connection, CountDownLatch closeLatch) {
+
+        serverThread = new Thread(() -> {
+            try (Socket socket = server.accept()) {
+                InputStream in = socket.getInputStream();
+                OutputStream out = socket.getOutputStream();
+
+                for (int i = 0; i < requests; i++) {
+                    HttpMessage.readLine(in); // request line
+
+                    HttpRequest request = new HttpRequest();
+                    request.readHeaders(in);
+
+                    int length = Integer.parseInt(request.getHeader("content-length"));
+                    in.readNBytes(length);
+
+                    String content = "response " + i;
+                    String response = "HTTP/1.1 200 OK\r\n"
+                            + "Content-Length: " + content.length() + "\r\n"
+                            + (connection == null ? "" : "Connection: " + connection + "\r\n")
+                            + "\r\n"
+                            + content;
+                    out.write(response.getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+
+                closeLatch.await(5, TimeUnit.SECONDS);
+
+            } catch (Exception e) {
+                // client has gone
+            }
+        });
+
+        serverThread.start();
+    }
+
+    HttpRequest createRequest() throws Exception {
+        HttpRequest request = new HttpRequest();
+        request.setMethod(HttpRequest.POST);
+        request.setURI("/test");
+        request.setHeader("Content-Length", "4");
+        request.setContent("test");
+        return request;
+    }
+
+    @Test
+    public void testKeepAlive() throws Exception {
+
+        CountDownLatch closeLatch = new CountDownLatch(1);
+        startServer(2, null, closeLatch);
+
+        HttpClient client = new HttpClient();
+        client.setKeepAlive(true);
+        client.connect(server.getInetAddress().getHostAddress(), server.getLocalPort());
+
+        HttpResponse resp = client.send(createRequest());
+        assertEquals("response 0", resp.getContent());
+        assertTrue(client.connected());
+        assertFalse(client.isStale());
+
+        // the second request reuses the connection
+        resp = client.send(createRequest());
+        assertEquals("response 1", resp.getContent());
+        assertTrue(client.connected());
+
+        // the server closes the idle connection
+        closeLatch.countDown();
+        serverThread.join(5000);
+
+        assertTrue(client.isStale());
+
+        client.disconnect();
+    }
+
+    @Test
+    public void testConnectionClose() throws Exception {
+
+        CountDownLatch closeLatch = new CountDownLatch(1);
+        startServer(1, "close", closeLatch);
+
+        HttpClient client = new HttpClient();
+        client.setKeepAlive(true);
+        client.connect(server.getInetAddress().getHostAddress(), server.getLocalPort());
+
+        HttpResponse resp = client.send(createRequest());
+        assertEquals("response 0", resp.getContent());
+
+        // the server does not allow the connection to be reused
+        assertFalse(client.connected());
+        assertTrue(client.isStale());
+
+        closeLatch.countDown();
+    }
+
+    @Test
+    public void testKeepAliveDisabled() throws Exception {
+
+        CountDownLatch closeLatch = new CountDownLatch(1);
+        startServer(1, null, closeLatch);
+
+        HttpClient client = new HttpClient();
+        client.connect(server.getInetAddress().getHostAddress(), server.getLocalPort());
+
+        HttpResponse resp = client.send(createRequest());
+        assertEquals("response 0", resp.getContent());
+        assertFalse(client.connected());
+
+        closeLatch.countDown();
+    }
+}
@@ -0,0 +1,125 @@
+package com.netscape.cmsutil.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+public class HttpResponseTest {
+
+    private static InputStream toStream(String message) {
+        return new ByteArrayInputStream(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testParseContentLengthInBytes() throws Exception {
+
+        // 2-byte and 3-byte UTF-8 characters: 5 chars, 8 bytes
+        String content = "a\u00e9b\u20acc";
+        int length = content.getBytes(StandardCharsets.UTF_8).length;
+
+        InputStream in = toStream(
+                "HTTP/1.1 200 OK\r\n"
+                + "Content-Length: " + length + "\r\n"
+                + "\r\n"
+                + content
+                + "HTTP/1.1 200 OK\r\n");
+
+        HttpResponse resp = new HttpResponse();
+        resp.parse(in);
+
+        assertEquals("HTTP/1.1", resp.getHttpVers());
+        assertEquals("200", resp.getStatusCode());
+        assertEquals("OK", resp.getReasonPhrase());
+        assertEquals(content, resp.getContent());
+
+        // the next response on a kept-alive connection is not consumed
+        assertEquals("HTTP/1.1 200 OK", HttpMessage.readLine(in));
+    }
+
+    @Test
+    public void testParseLFHeaders() throws Exception {
+
+        HttpResponse resp = new HttpResponse();
+        resp.parse(toStream(
+                "HTTP/1.0 404 Not Found\n"
+                + "Content-Type: text/plain\n"
+                + "Content-Length: 4\n"
+                + "\n"
+                + "none"));
+
+        assertEquals("HTTP/1.0", resp.getHttpVers());
+        assertEquals("404", resp.getStatusCode());
+        assertEquals("text/plain", resp.getHeader("Content-Type"));
+        assertEquals("none", resp.getContent());
+    }
+
+    @Test
+    public void testParseWithoutContentLength() throws Exception {
+
+        HttpResponse resp = new HttpResponse();
+        resp.parse(toStream(
+                "HTTP/1.1 200 OK\r\n"
+                + "\r\n"
+                + "read until \u00e9nd of stream"));
+
+        assertEquals("read until \u00e9nd of stream", resp.getContent());
+    }
+
+    @Test
+    public void testParseEmptyContent() throws Exception {
+
+        HttpResponse resp = new HttpResponse();
+        resp.parse(toStream(
+                "HTTP/1.1 204 No Content\r\n"
+                + "\r\n"));
+
+        assertNull(resp.getContent());
+    }
+
+    @Test
+    public void testParseTruncatedContent() {
+
+        HttpResponse resp = new HttpResponse();
+
+        assertThrows(HttpEofException.class, () -> resp.parse(toStream(
+                "HTTP/1.1 200 OK\r\n"
+                + "Content-Length: 10\r\n"
+                + "\r\n"
+                + "short")));
+    }
+
+    @Test
+    public void testParseEndOfStream() {
+
+        HttpResponse resp = new HttpResponse();
+
+        assertThrows(HttpEofException.class, () -> resp.parse(toStream("")));
+    }
+
+    @Test
+    public void testParseBadContentLength() {
+
+        HttpResponse resp = new HttpResponse();
+
+        assertThrows(HttpProtocolException.class, () -> resp.parse(toStream(
+                "HTTP/1.1 200 OK\r\n"
+                + "Content-Length: abc\r\n"
+                + "\r\n")));
+    }
+
+    @Test
+    public void testParseBadStatusLine() {
+
+        HttpResponse resp = new HttpResponse();
+
+        assertThrows(HttpProtocolException.class, () -> resp.parse(toStream(
+                "HTTP/2 200 OK\r\n"
+                + "\r\n")));
+    }
+}
@@ -0,0 +1,247 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmsutil.jdbc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests JDBCConnectionPool against stand-in connections that count
+ * the connections and statements created by the pool.
+ */
+public class JDBCConnectionPoolTest {
+
+    AtomicInteger connections = new AtomicInteger();
+    AtomicInteger statements = new AtomicInteger();
+    AtomicInteger validations = new AtomicInteger();
+
+    // SQL state of the error thrown by executeUpdate(), if any
+    String sqlState;
+
+    boolean valid = true;
+
+    JDBCConnectionPool pool;
+
+    @BeforeEach
+    public void setUp() {
+
+        pool = new JDBCConnectionPool("jdbc:test", new Properties()) {
+            @Override
+            protected Connection createConnection() {
+                connections.incrementAndGet();
+                return createStandInConnection();
+            }
+        };
+
+        pool.setMaxSize(2);
+        pool.setMaxWait(100);
+        pool.init();
+    }
+
+    Connection createStandInConnection() {
+        return (Connection) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "prepareStatement":
+                        statements.incrementAndGet();
+                        return createStandInStatement(PreparedStatement.class);
+                    case "createStatement":
+                        return createStandInStatement(Statement.class);
+                    case "getAutoCommit":
+                    case "isValid":
+                        return true;
+                    case "isClosed":
+                        return false;
+                    default:
+                        return null;
+                    }
+                });
+    }
+
+    Object createStandInStatement(Class<?> type) {
+        return Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { type },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "executeQuery":
+                        validations.incrementAndGet();
+                        if (!valid) {
+                            throw new SQLException("Connection reset", "08006");
+                        }
+                        return Proxy.newProxyInstance(
+                                getClass().getClassLoader(),
+                                new Class<?>[] { ResultSet.class },
+                                (p, m, a) -> null);
+                    case "executeUpdate":
+                        if (sqlState != null) {
+                            throw new SQLException("Error", sqlState);
+                        }
+                        return 1;
+                    default:
+                        return null;
+                    }
+                });
+    }
+
+    @Test
+    public void testConnectionReuse() throws Exception {
+
+        try (Connection connection = pool.getConnection()) {
+            assertEquals(1, pool.getActiveCount());
+        }
+
+        assertEquals(0, pool.getActiveCount());
+        assertEquals(1, pool.getIdleCount());
+
+        try (Connection connection = pool.getConnection()) {
+            // reuses the idle connection
+        }
+
+        assertEquals(1, connections.get());
+    }
+
+    @Test
+    public void testClosedConnection() throws Exception {
+
+        Connection connection = pool.getConnection();
+        connection.close();
+
+        assertTrue(connection.isClosed());
+        assertThrows(SQLException.class, () -> connection.prepareStatement("SELECT 1"));
+    }
+
+    @Test
+    public void testMaxSize() throws Exception {
+
+        try (Connection c1 = pool.getConnection();
+                Connection c2 = pool.getConnection()) {
+
+            assertThrows(SQLException.class, () -> pool.getConnection());
+        }
+
+        try (Connection connection = pool.getConnection()) {
+            // available again
+        }
+
+        assertEquals(2, connections.get());
+    }
+
+    @Test
+    public void testStatementCache() throws Exception {
+
+        try (Connection connection = pool.getConnection()) {
+
+            try (PreparedStatement ps = connection.prepareStatement("SELECT 1")) {
+                ps.executeQuery();
+            }
+
+            try (PreparedStatement ps = connection.prepareStatement("SELECT 1")) {
+                ps.executeQuery();
+            }
+        }
+
+        try (Connection connection = pool.getConnection()) {
+            try (PreparedStatement ps = connection.prepareStatement("SELECT 1")) {
+                ps.executeQuery();
+            }
+        }
+
+        assertEquals(1, statements.get());
+    }
+
+    @Test
+    public void testStatementInUse() throws Exception {
+
+        try (Connection connection = pool.getConnection();
+                PreparedStatement ps1 = connection.prepareStatement("SELECT 1");
+                PreparedStatement ps2 = connection.prepareStatement("SELECT 1")) {
+
+            assertNotSame(ps1, ps2);
+        }
+
+        assertEquals(2, statements.get());
+    }
+
+    @Test
+    public void testStatementCacheSize() throws Exception {
+
+        pool.setStatementCacheSize(1);
+
+        try (Connection connection = pool.getConnection()) {
+
+            connection.prepareStatement("SELECT 1").close();
+            connection.prepareStatement("SELECT 2").close();
+            connection.prepareStatement("SELECT 1").close();
+        }
+
+        assertEquals(3, statements.get());
+    }
+
+    @Test
+    public void testBrokenConnection() throws Exception {
+
+        sqlState = "08006";
+
+        try (Connection connection = pool.getConnection();
+                PreparedStatement ps = connection.prepareStatement("DELETE FROM test")) {
+
+            assertThrows(SQLException.class, () -> ps.executeUpdate());
+        }
+
+        // broken connection is discarded
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void testSQLError() throws Exception {
+
+        sqlState = "23505";
+
+        try (Connection connection = pool.getConnection();
+                PreparedStatement ps = connection.prepareStatement("INSERT INTO test")) {
+
+            assertThrows(SQLException.class, () -> ps.executeUpdate());
+        }
+
+        // connection is still usable
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void testValidation() throws Exception {
+
+        pool.setValidationInterval(0);
+
+        try (Connection connection = pool.getConnection()) {
+        }
+
+        valid = false;
+
+        try (Connection connection = pool.getConnection()) {
+            // invalid idle connection is replaced
+        }
+
+        assertEquals(1, validations.get());
+        assertEquals(2, connections.get());
+    }
+}
@@ -83,12 +83,14 @@ import com.netscape.cmscore.dbs.ReplicaIDRepository;
 import com.netscape.cmscore.logging.Auditor;
 import com.netscape.cmscore.request.KeyRequestRepository;
 import com.netscape.cmscore.request.Request;
+import com.netscape.cmscore.request.RequestLockTable;
 import com.netscape.cmscore.request.RequestNotifier;
 import com.netscape.cmscore.request.RequestQueue;
 import com.netscape.cmscore.request.RequestRepository;
 import com.netscape.cmscore.request.RequestSubsystem;
 import com.netscape.cmscore.security.JssSubsystem;
 import com.netscape.cmscore.usrgrp.UGSubsystem;
+import com.netscape.cmscore.util.StatsSubsystem;
 import com.netscape.cmsutil.crypto.CryptoUtil;
 
 /**
@@ -434,6 +436,13 @@ public class KeyRecoveryAuthority extends Subsystem implements IAuthority {
                 pendingNotifier);
         engine.setRequestQueue(requestQueue);
 
+        int requestLockTimeout = mConfig.getInteger("requestLockTimeout", 30);
+        logger.info("KeyRecoveryAuthority: - request lock timeout: " + requestLockTimeout + " seconds");
+
+        RequestLockTable lockTable = requestQueue.getLockTable();
+        lockTable.setTimeout(requestLockTimeout * 1000L);
+        lockTable.setStatsSubsystem((StatsSubsystem) engine.getSubsystem(StatsSubsystem.ID));
+
         startKeyStatusUpdate();
 
         // init request scheduler if configured
@@ -27,9 +27,15 @@ import java.util.Date;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.codec.binary.Hex;
+import org.dogtagpki.server.ocsp.OCSPEngine;
 import org.mozilla.jss.asn1.GeneralizedTime;
 import org.mozilla.jss.asn1.INTEGER;
 import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
@@ -75,6 +81,9 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
     // the master (by default no refresh)
     private static final String PROP_USE_CACHE = "useCache";
 
+    // keep a compact index of the revoked certificates of each CRL
+    private static final String PROP_USE_REVOCATION_INDEX = "useRevocationIndex";
+
     private static final String PROP_REFRESH_IN_SEC = "refreshInSec";
     private static final int DEF_REFRESH_IN_SEC = 0;
 
@@ -95,6 +104,10 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
     protected boolean mByName = true;
     protected boolean mIncludeNextUpdate = false;
     protected Hashtable<String, CRLIPContainer> mCacheCRLIssuingPoints = new Hashtable<>();
+    protected boolean mUseRevocationIndex = true;
+    protected Map<String, RevocationIndex> mRevocationIndexes = new ConcurrentHashMap<>();
+    private Set<String> mPendingRevocationIndexes = ConcurrentHashMap.newKeySet();
+    private ExecutorService mRevocationIndexBuilder;
     private ConfigStore mConfig;
     private String mId = null;
     private DBSubsystem dbSubsystem;
@@ -149,6 +162,15 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
 
         mUseCache = mConfig.getBoolean(PROP_USE_CACHE, true);
 
+        mUseRevocationIndex = mConfig.getBoolean(PROP_USE_REVOCATION_INDEX, true);
+        if (mUseRevocationIndex) {
+            mRevocationIndexBuilder = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "DefStoreRevocationIndexBuilder");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
         mByName = mConfig.getBoolean(PROP_BY_NAME, true);
 
         // To include next update in the OCSP response. If included,
@@ -287,6 +309,9 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
 
     @Override
     public void shutdown() {
+        if (mRevocationIndexBuilder != null) {
+            mRevocationIndexBuilder.shutdownNow();
+        }
     }
 
     public ConfigStore getConfigStore() {
@@ -367,7 +392,11 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
                     throw new Exception("Missing CRL data");
                 }
 
-                if (rec.getCRLCache() == null) {
+                if (hasRevocationIndex(rec)) {
+                    // the index replaces the decoded CRL and the CRL cache
+                    logger.debug("DefStore: using revocation index");
+                    releaseCRLData(rec);
+                } else if (rec.getCRLCache() == null) {
                     logger.debug("DefStore: start building x509 crl impl");
                     try {
                         theCRL = new X509CRLImpl(crldata);
@@ -436,6 +465,27 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
 
         CertStatus certStatus;
 
+        RevocationIndex index = getRevocationIndex(theRec, theCRL);
+        if (index != null) {
+            logger.debug("DefStore: evaluating revocation index");
+            long revocationTime = index.getRevocationTime(serialNo);
+
+            if (revocationTime != RevocationIndex.NOT_REVOKED) {
+                certStatus = new RevokedInfo(new GeneralizedTime(new Date(revocationTime)));
+            } else if (isNotFoundGood()) {
+                certStatus = new GoodInfo();
+            } else {
+                certStatus = new UnknownInfo();
+            }
+
+            return new SingleResponse(cid, certStatus, thisUpdate, nextUpdate);
+        }
+
+        if (theCRL == null && theRec != null && theRec.getCRLCacheNoClone() == null && theRec.getCRL() != null) {
+            // the decoded CRL was released for an index that no longer matches
+            theCRL = new X509CRLImpl(theRec.getCRL());
+        }
+
         if (theCRL == null) {
 
             certStatus = new UnknownInfo();
@@ -487,6 +537,124 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
                 nextUpdate);
     }
 
+    private boolean hasRevocationIndex(CRLIssuingPointRecord rec) {
+
+        if (!mUseRevocationIndex) {
+            return false;
+        }
+
+        RevocationIndex index = mRevocationIndexes.get(rec.getId());
+        return index != null && index.matches(rec.getCRLNumber(), rec.getThisUpdate());
+    }
+
+    /**
+     * Drops the decoded revoked certificates kept in the record once the
+     * revocation index is available. The encoded CRL is kept so the index
+     * can be rebuilt.
+     */
+    private void releaseCRLData(CRLIssuingPointRecord rec) {
+        try {
+            rec.set(CRLIssuingPointRecord.ATTR_CRL_CACHE, null);
+            rec.set(CRLIssuingPointRecord.ATTR_REVOKED_CERTS, null);
+            rec.set(CRLIssuingPointRecord.ATTR_UNREVOKED_CERTS, null);
+            rec.set(CRLIssuingPointRecord.ATTR_EXPIRED_CERTS, null);
+        } catch (EBaseException e) {
+            logger.warn("DefStore: Unable to release CRL cache of " + rec.getId() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Releases the decoded CRLs of the cached issuing points that are
+     * covered by the given index.
+     */
+    private void releaseCRLs(String id, RevocationIndex index) {
+
+        for (CRLIPContainer container : mCacheCRLIssuingPoints.values()) {
+
+            CRLIssuingPointRecord rec = container.getCRLIssuingPointRecord();
+            if (rec == null || !id.equals(rec.getId())) continue;
+            if (!index.matches(rec.getCRLNumber(), rec.getThisUpdate())) continue;
+
+            container.releaseCRL();
+            releaseCRLData(rec);
+        }
+    }
+
+    /**
+     * Returns the revocation index of the CRL in the given record.
+     * If the index is missing or was built from a different CRL, a new
+     * index is built in the background and null is returned, so the
+     * caller falls back to the CRL or the CRL cache.
+     */
+    private RevocationIndex getRevocationIndex(CRLIssuingPointRecord rec, X509CRLImpl crl) {
+
+        if (!mUseRevocationIndex || rec == null) {
+            return null;
+        }
+
+        RevocationIndex index = mRevocationIndexes.get(rec.getId());
+        if (index != null && index.matches(rec.getCRLNumber(), rec.getThisUpdate())) {
+            return index;
+        }
+
+        buildRevocationIndex(rec.getId(), () -> {
+            if (crl != null) {
+                return RevocationIndex.fromCRL(crl);
+            }
+
+            Hashtable<BigInteger, RevokedCertificate> cache = rec.getCRLCacheNoClone();
+            if (cache != null) {
+                return RevocationIndex.fromCache(rec.getCRLNumber(), rec.getThisUpdate(), cache.values());
+            }
+
+            byte[] crlData = rec.getCRL();
+            if (crlData == null) {
+                throw new Exception("Missing CRL data");
+            }
+
+            return RevocationIndex.fromCRL(new X509CRLImpl(crlData));
+        });
+
+        return null;
+    }
+
+    /**
+     * Builds a revocation index in the background and replaces the
+     * current index of the issuing point once it is complete. Only one
+     * build per issuing point runs at a time.
+     */
+    private void buildRevocationIndex(String id, RevocationIndexSource source) {
+
+        if (mRevocationIndexBuilder == null || !mPendingRevocationIndexes.add(id)) {
+            return;
+        }
+
+        try {
+            mRevocationIndexBuilder.execute(() -> {
+                try {
+                    long startTime = System.currentTimeMillis();
+                    RevocationIndex index = source.build();
+                    mRevocationIndexes.put(id, index);
+                    releaseCRLs(id, index);
+
+                    logger.info("DefStore: Built revocation index for " + id
+                            + " with " + index.size() + " entries in "
+                            + (System.currentTimeMillis() - startTime) + " ms");
+
+                } catch (Exception e) {
+                    logger.warn("DefStore: Unable to build revocation index for " + id + ": " + e.getMessage(), e);
+
+                } finally {
+                    mPendingRevocationIndexes.remove(id);
+                }
+            });
+
+        } catch (RuntimeException e) {
+            // executor has been shut down
+            mPendingRevocationIndexes.remove(id);
+        }
+    }
+
     private String transformDN(String dn) {
         String newdn = dn;
 
@@ -765,6 +933,14 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
             // update cache
             mCacheCRLIssuingPoints.clear();
 
+            OCSPEngine engine = OCSPEngine.getInstance();
+            if (engine != null && engine.getOCSP() != null) {
+                engine.getOCSP().crlUpdated();
+            }
+
+            X509CRLImpl crlImpl = (X509CRLImpl) crl;
+            buildRevocationIndex(crl.getIssuerDN().getName(), () -> RevocationIndex.fromCRL(crlImpl));
+
             logger.info("DefStore: Finish Committing CRL." +
                     " thisUpdate=" + crl.getThisUpdate() +
                     " nextUpdate=" + crl.getNextUpdate());
@@ -781,6 +957,10 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
 
 }
 
+interface RevocationIndexSource {
+    RevocationIndex build() throws Exception;
+}
+
 class DeleteOldCRLsThread extends Thread {
     private DefStore mDefStore = null;
 
@@ -800,7 +980,7 @@ class DeleteOldCRLsThread extends Thread {
 class CRLIPContainer {
     private CRLIssuingPointRecord mRec = null;
     private X509CertImpl mCert = null;
-    private X509CRLImpl mCRL = null;
+    private volatile X509CRLImpl mCRL = null;
 
     public CRLIPContainer(CRLIssuingPointRecord rec, X509CertImpl cert, X509CRLImpl crl) {
         mRec = rec;
@@ -819,6 +999,13 @@ class CRLIPContainer {
     public X509CRLImpl getX509CRLImpl() {
         return mCRL;
     }
+
+    /**
+     * Drops the decoded CRL once the revocation index replaces it.
+     */
+    public void releaseCRL() {
+        mCRL = null;
+    }
 }
 
 class DefStoreCRLUpdater extends Thread {
@@ -262,6 +262,11 @@ public class LDAPStore implements IDefStore, IExtendedPluginInfo {
         logger.debug("LDAPStore: updateCRLHash: Added '" + caCert.getSubjectName() + "' into CRL hash");
         mCRLs.put(caCert, crl);
         logger.debug("LDAPStore: updateCRLHash: mCRLs size= "+ mCRLs.size());
+
+        OCSPEngine engine = OCSPEngine.getInstance();
+        if (engine != null && engine.getOCSP() != null) {
+            engine.getOCSP().crlUpdated();
+        }
     }
 
     @Override
@@ -0,0 +1,197 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.ocsp;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
+
+/**
+ * A read-only index of the revoked certificates of a single CRL.
+ *
+ * Serial numbers that fit in a long are kept in a sorted long array,
+ * larger serial numbers in a sorted BigInteger array, each with a
+ * parallel array of revocation times. This takes a fraction of the
+ * memory used by decoded CRL entries, and lookups are binary searches
+ * that take no locks and allocate nothing.
+ *
+ * An index is immutable once built, so it can be replaced atomically
+ * when a new CRL is received.
+ */
+public class RevocationIndex {
+
+    public static final long NOT_REVOKED = -1;
+
+    // CRL number stored in the CRL issuing point record if the CRL has none
+    public static final BigInteger NO_CRL_NUMBER = BigInteger.valueOf(-1);
+
+    private final BigInteger crlNumber;
+    private final Date thisUpdate;
+
+    private final long[] serials;
+    private final long[] revocationTimes;
+
+    private final BigInteger[] bigSerials;
+    private final long[] bigRevocationTimes;
+
+    private RevocationIndex(
+            BigInteger crlNumber,
+            Date thisUpdate,
+            List<Entry> entries) {
+
+        this.crlNumber = crlNumber == null ? NO_CRL_NUMBER : crlNumber;
+        this.thisUpdate = thisUpdate;
+
+        List<Entry> small = new ArrayList<>();
+        List<Entry> big = new ArrayList<>();
+
+        for (Entry entry : entries) {
+            if (entry.serial.bitLength() < Long.SIZE) {
+                small.add(entry);
+            } else {
+                big.add(entry);
+            }
+        }
+
+        small.sort((e1, e2) -> e1.serial.compareTo(e2.serial));
+        big.sort((e1, e2) -> e1.serial.compareTo(e2.serial));
+
+        serials = new long[small.size()];
+        revocationTimes = new long[small.size()];
+
+        for (int i = 0; i < serials.length; i++) {
+            Entry entry = small.get(i);
+            serials[i] = entry.serial.longValue();
+            revocationTimes[i] = entry.revocationTime;
+        }
+
+        bigSerials = new BigInteger[big.size()];
+        bigRevocationTimes = new long[big.size()];
+
+        for (int i = 0; i < bigSerials.length; i++) {
+            Entry entry = big.get(i);
+            bigSerials[i] = entry.serial;
+            bigRevocationTimes[i] = entry.revocationTime;
+        }
+    }
+
+    /**
+     * Builds an index from the entries of a decoded CRL.
+     */
+    public static RevocationIndex fromCRL(X509CRLImpl crl) {
+
+        List<Entry> entries = new ArrayList<>();
+
+        Set<RevokedCertificate> revokedCerts = crl.getRevokedCertificates();
+        if (revokedCerts != null) {
+            for (RevokedCertificate revokedCert : revokedCerts) {
+                entries.add(new Entry(revokedCert.getSerialNumber(), revokedCert.getRevocationDate()));
+            }
+        }
+
+        return new RevocationIndex(crl.getCRLNumber(), crl.getThisUpdate(), entries);
+    }
+
+    /**
+     * Builds an index from the CRL cache of a CRL issuing point record.
+     */
+    public static RevocationIndex fromCache(
+            BigInteger crlNumber,
+            Date thisUpdate,
+            Collection<RevokedCertificate> revokedCerts) {
+
+        List<Entry> entries = new ArrayList<>();
+
+        if (revokedCerts != null) {
+            for (RevokedCertificate revokedCert : revokedCerts) {
+                entries.add(new Entry(revokedCert.getSerialNumber(), revokedCert.getRevocationDate()));
+            }
+        }
+
+        return new RevocationIndex(crlNumber, thisUpdate, entries);
+    }
+
+    /**
+     * Returns true if this index was built from the CRL with the given
+     * CRL number and this update time. The time is compared in seconds
+     * since the CRL and the LDAP record do not store milliseconds.
+     */
+    public boolean matches(BigInteger crlNumber, Date thisUpdate) {
+
+        if (!this.crlNumber.equals(crlNumber == null ? NO_CRL_NUMBER : crlNumber)) {
+            return false;
+        }
+
+        if (this.thisUpdate == null || thisUpdate == null) {
+            return this.thisUpdate == thisUpdate;
+        }
+
+        return this.thisUpdate.getTime() / 1000 == thisUpdate.getTime() / 1000;
+    }
+
+    /**
+     * Returns the revocation time of the certificate in msec since
+     * epoch, or NOT_REVOKED if the serial number is not in the CRL.
+     */
+    public long getRevocationTime(BigInteger serialNumber) {
+
+        if (serialNumber.bitLength() < Long.SIZE) {
+            int i = Arrays.binarySearch(serials, serialNumber.longValue());
+            return i < 0 ? NOT_REVOKED : revocationTimes[i];
+        }
+
+        int low = 0;
+        int high = bigSerials.length - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = bigSerials[mid].compareTo(serialNumber);
+
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                return bigRevocationTimes[mid];
+            }
+        }
+
+        return NOT_REVOKED;
+    }
+
+    /**
+     * Returns the number of revoked certificates in this index.
+     */
+    public int size() {
+        return serials.length + bigSerials.length;
+    }
+
+    public BigInteger getCRLNumber() {
+        return crlNumber;
+    }
+
+    public Date getThisUpdate() {
+        return thisUpdate;
+    }
+
+    static class Entry {
+
+        BigInteger serial;
+        long revocationTime;
+
+        Entry(BigInteger serial, Date revocationDate) {
+            this.serial = serial;
+            this.revocationTime = revocationDate == null ? 0 : revocationDate.getTime();
+        }
+    }
+}
@@ -33,6 +33,7 @@ import java.util.Vector;
 import org.dogtagpki.server.ocsp.OCSPConfig;
 import org.dogtagpki.server.ocsp.OCSPEngine;
 import org.dogtagpki.server.ocsp.OCSPEngineConfig;
+import org.dogtagpki.server.ocsp.OCSPResponseCacheConfig;
 import org.mozilla.jss.asn1.ASN1Util;
 import org.mozilla.jss.asn1.GeneralizedTime;
 import org.mozilla.jss.asn1.InvalidBERException;
@@ -105,6 +106,7 @@ public class OCSPAuthority extends Subsystem implements IAuthority, IOCSPService
 
     private String[] mOCSPSigningAlgorithms = null;
     private IOCSPStore mDefStore = null;
+    private OCSPResponseCache mResponseCache;
 
     public long mNumOCSPRequest = 0;
     public long mTotalTime = 0;
@@ -182,6 +184,16 @@ public class OCSPAuthority extends Subsystem implements IAuthority, IOCSPService
             throw e;
         }
 
+        OCSPResponseCacheConfig cacheConfig = mConfig.getResponseCacheConfig();
+        if (cacheConfig.getEnable()) {
+            mResponseCache = new OCSPResponseCache(
+                    this,
+                    cacheConfig.getSize(),
+                    cacheConfig.getMaxAge(),
+                    cacheConfig.getRefreshBefore(),
+                    cacheConfig.getRefreshInterval());
+        }
+
         try {
             String ocspSigningSKI = CryptoUtil.getSKIString(mSigningUnit.getCertImpl());
             auditor.log(OCSPSigningInfoEvent.createSuccessEvent(ILogger.SYSTEM_UID, ocspSigningSKI));
@@ -341,6 +353,9 @@ public class OCSPAuthority extends Subsystem implements IAuthority, IOCSPService
             if (mDefStore != null)
                 mDefStore.startup();
 
+            if (mResponseCache != null)
+                mResponseCache.start();
+
         } catch (EBaseException e) {
             logger.warn("OCSPAuthority: " + e.getMessage(), e);
             if (engine.isPreOpMode()) {
@@ -377,54 +392,12 @@ public class OCSPAuthority extends Subsystem implements IAuthority, IOCSPService
             throw new EBaseException("OCSP request is empty");
         }
 
-        OCSPEngine engine = OCSPEngine.getInstance();
-        StatsSubsystem statsSub = (StatsSubsystem) engine.getSubsystem(StatsSubsystem.ID);
-
         incNumOCSPRequest(1);
         long startTime = new Date().getTime();
 
         OCSPResponse response;
 
         try {
-            // (3) look into database to check the certificate's status
-            Vector<SingleResponse> singleResponses = new Vector<>();
-
-            if (statsSub != null) {
-                statsSub.startTiming("lookup");
-            }
-
-            long lookupStartTime = new Date().getTime();
-
-            for (int i = 0; i < tbsReq.getRequestCount(); i++) {
-                logger.info("OCSPAuthority: Processing request #" + i);
-
-                Request req = tbsReq.getRequestAt(i);
-                SingleResponse sr = mDefStore.processRequest(req);
-                singleResponses.addElement(sr);
-            }
-
-            long lookupEndTime = new Date().getTime();
-            incLookupTime(lookupEndTime - lookupStartTime);
-
-            if (statsSub != null) {
-                statsSub.endTiming("lookup");
-            }
-
-            if (statsSub != null) {
-                statsSub.startTiming("build_response");
-            }
-
-            SingleResponse res[] = new SingleResponse[singleResponses.size()];
-            singleResponses.copyInto(res);
-
-            ResponderID rid = null;
-
-            if (mDefStore.isByName()) {
-                rid = getResponderIDByName();
-            } else {
-                rid = getResponderIDByHash();
-            }
-
             Extension nonce[] = null;
 
             for (int j = 0; j < tbsReq.getExtensionsCount(); j++) {
@@ -436,32 +409,38 @@ public class OCSPAuthority extends Subsystem implements IAuthority, IOCSPService
                 }
             }
 
-            ResponseData rd = new ResponseData(rid,
-                    new GeneralizedTime(new Date()), res, nonce);
+            // responses with nonce are unique, so only single
+            // certificate requests without nonce can be cached
+            if (mResponseCache != null && nonce == null && tbsReq.getRequestCount() == 1) {
 
-            if (statsSub != null) {
-                statsSub.endTiming("build_response");
-            }
+                Request req = tbsReq.getRequestAt(0);
+                String key = mResponseCache.getKey(req);
 
-            if (statsSub != null) {
-                statsSub.startTiming("signing");
-            }
+                response = mResponseCache.get(key);
 
-            long signStartTime = new Date().getTime();
+                if (response == null) {
+                    long generation = mResponseCache.getGeneration();
+                    SingleResponse sr = lookup(req);
+                    response = createResponse(new SingleResponse[] { sr }, null);
+                    mResponseCache.put(key, req, sr, response, generation);
+                }
 
-            BasicOCSPResponse basicRes = sign(rd);
+            } else {
+                Vector<SingleResponse> singleResponses = new Vector<>();
 
-            long signEndTime = new Date().getTime();
-            incSignTime(signEndTime - signStartTime);
+                for (int i = 0; i < tbsReq.getRequestCount(); i++) {
+                    logger.info("OCSPAuthority: Processing request #" + i);
 
-            if (statsSub != null) {
-                statsSub.endTiming("signing");
-            }
+                    Request req = tbsReq.getRequestAt(i);
+                    SingleResponse sr = lookup(req);
+                    singleResponses.addElement(sr);
+                }
+
+                SingleResponse res[] = new SingleResponse[singleResponses.size()];
+                singleResponses.copyInto(res);
 
-            response = new OCSPResponse(
-                    OCSPResponseStatus.SUCCESSFUL,
-                    new ResponseBytes(ResponseBytes.OCSP_BASIC,
-                            new OCTET_STRING(ASN1Util.encode(basicRes))));
+                response = createResponse(res, nonce);
+            }
 
         } catch (EBaseException e) {
             logger.error(CMS.getLogMessage("OCSP_REQUEST_FAILURE", e.toString()), e);
@@ -482,6 +461,98 @@ public class OCSPAuthority extends Subsystem implements IAuthority, IOCSPService
         return response;
     }
 
+    /**
+     * Looks up the status of a single certificate in the default store.
+     */
+    public SingleResponse lookup(Request req) throws Exception {
+
+        OCSPEngine engine = OCSPEngine.getInstance();
+        StatsSubsystem statsSub = (StatsSubsystem) engine.getSubsystem(StatsSubsystem.ID);
+
+        // (3) look into database to check the certificate's status
+        if (statsSub != null) {
+            statsSub.startTiming("lookup");
+        }
+
+        long lookupStartTime = new Date().getTime();
+
+        try {
+            return mDefStore.processRequest(req);
+
+        } finally {
+            long lookupEndTime = new Date().getTime();
+            incLookupTime(lookupEndTime - lookupStartTime);
+
+            if (statsSub != null) {
+                statsSub.endTiming("lookup");
+            }
+        }
+    }
+
+    /**
+     * Builds and signs an OCSP response for the given single responses.
+     */
+    public OCSPResponse createResponse(SingleResponse[] res, Extension[] nonce) throws Exception {
+
+        OCSPEngine engine = OCSPEngine.getInstance();
+        StatsSubsystem statsSub = (StatsSubsystem) engine.getSubsystem(StatsSubsystem.ID);
+
+        if (statsSub != null) {
+            statsSub.startTiming("build_response");
+        }
+
+        ResponderID rid = null;
+
+        if (mDefStore.isByName()) {
+            rid = getResponderIDByName();
+        } else {
+            rid = getResponderIDByHash();
+        }
+
+        ResponseData rd = new ResponseData(rid,
+                new GeneralizedTime(new Date()), res, nonce);
+
+        if (statsSub != null) {
+            statsSub.endTiming("build_response");
+        }
+
+        if (statsSub != null) {
+            statsSub.startTiming("signing");
+        }
+
+        long signStartTime = new Date().getTime();
+
+        BasicOCSPResponse basicRes = sign(rd);
+
+        long signEndTime = new Date().getTime();
+        incSignTime(signEndTime - signStartTime);
+
+        if (statsSub != null) {
+            statsSub.endTiming("signing");
+        }
+
+        return new OCSPResponse(
+                OCSPResponseStatus.SUCCESSFUL,
+                new ResponseBytes(ResponseBytes.OCSP_BASIC,
+                        new OCTET_STRING(ASN1Util.encode(basicRes))));
+    }
+
+    /**
+     * Returns the cache of signed responses, or null if it is disabled.
+     */
+    public OCSPResponseCache getResponseCache() {
+        return mResponseCache;
+    }
+
+    /**
+     * Notifies this subsystem that the OCSP store has received a new CRL.
+     */
+    public void crlUpdated() {
+        if (mResponseCache != null) {
+            mResponseCache.invalidate();
+        }
+    }
+
     /**
      * Stops this system. The owner may call shutdown
      * anytime after initialization.
@@ -489,6 +560,9 @@ public class OCSPAuthority extends Subsystem implements IAuthority, IOCSPService
      */
     @Override
     public void shutdown() {
+        if (mResponseCache != null) {
+            mResponseCache.shutdown();
+        }
     }
 
     /**
@@ -0,0 +1,301 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.ocsp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.binary.Hex;
+import org.dogtagpki.server.ocsp.OCSPEngine;
+import org.mozilla.jss.asn1.ASN1Util;
+import org.mozilla.jss.asn1.GeneralizedTime;
+
+import com.netscape.cmscore.util.StatsSubsystem;
+import com.netscape.cmsutil.ocsp.OCSPResponse;
+import com.netscape.cmsutil.ocsp.Request;
+import com.netscape.cmsutil.ocsp.SingleResponse;
+
+/**
+ * A cache of signed OCSP responses for requests without nonce that
+ * ask for the status of a single certificate. Responses are keyed by
+ * the encoded CertID (hash algorithm, issuer name hash, issuer key
+ * hash, and serial number).
+ *
+ * A cached response expires after maxAge seconds or at its nextUpdate
+ * time, whichever comes first. Responses that have been served since
+ * they were last signed are signed again in the background shortly
+ * before they expire, so frequently requested certificates are always
+ * answered from the cache. The whole cache is invalidated whenever the
+ * OCSP store receives a new CRL.
+ *
+ * The number of hits, misses, refreshes, responses dropped because the
+ * cache was full, and invalidations, as well as the current number of
+ * entries, are reported in the statistics under "ocsp_response_cache".
+ */
+public class OCSPResponseCache {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(OCSPResponseCache.class);
+
+    public static final String STATS_ID = "ocsp_response_cache";
+
+    private OCSPAuthority ocsp;
+    private int size;
+    private long maxAge;
+    private long refreshBefore;
+    private int refreshInterval;
+
+    private Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // incremented on invalidation so that responses generated
+    // from an older CRL are not added after the cache is cleared
+    private AtomicLong generation = new AtomicLong();
+
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+    private AtomicLong refreshes = new AtomicLong();
+    private AtomicLong full = new AtomicLong();
+    private AtomicLong invalidations = new AtomicLong();
+
+    private StatsSubsystem statsSub;
+
+    private ScheduledExecutorService refreshService;
+
+    public OCSPResponseCache(
+            OCSPAuthority ocsp,
+            int size,
+            int maxAge,
+            int refreshBefore,
+            int refreshInterval) {
+
+        this.ocsp = ocsp;
+        this.size = size;
+        this.maxAge = maxAge * 1000L;
+        this.refreshBefore = refreshBefore * 1000L;
+        this.refreshInterval = refreshInterval;
+    }
+
+    public void start() {
+
+        logger.info("OCSPResponseCache: Starting response cache with " + size + " entries");
+
+        OCSPEngine engine = OCSPEngine.getInstance();
+        if (engine != null) {
+            statsSub = (StatsSubsystem) engine.getSubsystem(StatsSubsystem.ID);
+        }
+
+        if (statsSub != null) {
+            statsSub.registerCounters(STATS_ID, this::getStats);
+        }
+
+        if (refreshInterval <= 0) {
+            return;
+        }
+
+        refreshService = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "OCSPResponseCache");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        refreshService.scheduleWithFixedDelay(
+                this::refresh,
+                refreshInterval,
+                refreshInterval,
+                TimeUnit.SECONDS);
+    }
+
+    public void shutdown() {
+
+        logger.info("OCSPResponseCache: Shutting down");
+
+        if (statsSub != null) {
+            statsSub.unregisterCounters(STATS_ID);
+            statsSub = null;
+        }
+
+        if (refreshService != null) {
+            refreshService.shutdownNow();
+            refreshService = null;
+        }
+
+        entries.clear();
+    }
+
+    public String getKey(Request request) {
+        return Hex.encodeHexString(ASN1Util.encode(request.getCertID()));
+    }
+
+    /**
+     * Returns the current generation which has to be passed to put().
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Returns a cached response that has not expired, or null.
+     */
+    public OCSPResponse get(String key) {
+
+        Entry entry = entries.get(key);
+
+        if (entry == null || entry.expirationTime <= System.currentTimeMillis()) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        entry.used = true;
+        hits.incrementAndGet();
+        return entry.response;
+    }
+
+    /**
+     * Adds a response generated for the given request. The response is
+     * dropped if the cache has been invalidated since the generation
+     * was obtained or if the cache is full.
+     */
+    public void put(String key, Request request, SingleResponse singleResponse,
+            OCSPResponse response, long generation) {
+
+        long now = System.currentTimeMillis();
+        long expirationTime = now + maxAge;
+
+        GeneralizedTime nextUpdate = singleResponse.getNextUpdate();
+        if (nextUpdate != null) {
+            expirationTime = Math.min(expirationTime, nextUpdate.toDate().getTime());
+        }
+
+        if (expirationTime <= now) {
+            return;
+        }
+
+        if (entries.size() >= size && !entries.containsKey(key)) {
+            removeExpiredEntries(now);
+            if (entries.size() >= size) {
+                full.incrementAndGet();
+                return;
+            }
+        }
+
+        Entry entry = new Entry(request, response, expirationTime);
+        entries.put(key, entry);
+
+        // discard the entry if a CRL arrived while it was generated
+        if (this.generation.get() != generation) {
+            entries.remove(key, entry);
+        }
+    }
+
+    /**
+     * Removes all cached responses.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        int count = entries.size();
+        entries.clear();
+        invalidations.incrementAndGet();
+        logger.info("OCSPResponseCache: Invalidated " + count + " response(s)");
+    }
+
+    /**
+     * Signs again the responses that are about to expire and have been
+     * served since they were signed. Unused responses are removed once
+     * they expire.
+     */
+    public void refresh() {
+
+        long now = System.currentTimeMillis();
+
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+
+            String key = e.getKey();
+            Entry entry = e.getValue();
+
+            if (entry.expirationTime - refreshBefore > now) {
+                continue;
+            }
+
+            if (!entry.used) {
+                if (entry.expirationTime <= now) {
+                    entries.remove(key, entry);
+                }
+                continue;
+            }
+
+            long gen = generation.get();
+
+            try {
+                SingleResponse singleResponse = ocsp.lookup(entry.request);
+                OCSPResponse response = ocsp.createResponse(
+                        new SingleResponse[] { singleResponse },
+                        null);
+
+                put(key, entry.request, singleResponse, response, gen);
+
+                refreshes.incrementAndGet();
+
+            } catch (Exception ex) {
+                logger.warn("OCSPResponseCache: Unable to refresh response: " + ex.getMessage(), ex);
+                entries.remove(key, entry);
+            }
+        }
+    }
+
+    private void removeExpiredEntries(long now) {
+        entries.values().removeIf(entry -> entry.expirationTime <= now);
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    /**
+     * Returns the number of hits, misses, refreshes, responses dropped
+     * because the cache was full, and invalidations, and the current
+     * number of entries.
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hit", hits.get());
+        stats.put("miss", misses.get());
+        stats.put("refresh", refreshes.get());
+        stats.put("full", full.get());
+        stats.put("invalidate", invalidations.get());
+        stats.put("entries", (long) entries.size());
+        return stats;
+    }
+
+    static class Entry {
+
+        Request request;
+        OCSPResponse response;
+        long expirationTime;
+        volatile boolean used;
+
+        Entry(Request request, OCSPResponse response, long expirationTime) {
+            this.request = request;
+            this.response = response;
+            this.expirationTime = expirationTime;
+        }
+    }
+}
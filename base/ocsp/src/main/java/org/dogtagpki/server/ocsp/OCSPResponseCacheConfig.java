@@ -0,0 +1,59 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.server.ocsp;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.cmscore.base.ConfigStorage;
+import com.netscape.cmscore.base.ConfigStore;
+import com.netscape.cmscore.base.SimpleProperties;
+
+/**
+ * Provides ocsp.responseCache.* parameters.
+ */
+public class OCSPResponseCacheConfig extends ConfigStore {
+
+    public OCSPResponseCacheConfig(ConfigStorage storage) {
+        super(storage);
+    }
+
+    public OCSPResponseCacheConfig(String name, SimpleProperties source) {
+        super(name, source);
+    }
+
+    public boolean getEnable() throws EBaseException {
+        return getBoolean("enable", false);
+    }
+
+    /**
+     * Returns the maximum number of cached responses.
+     */
+    public int getSize() throws EBaseException {
+        return getInteger("size", 10000);
+    }
+
+    /**
+     * Returns the maximum time in seconds a response is served from
+     * the cache. Responses with an earlier nextUpdate expire at nextUpdate.
+     */
+    public int getMaxAge() throws EBaseException {
+        return getInteger("maxAge", 300);
+    }
+
+    /**
+     * Returns the time in seconds before expiration at which responses
+     * that are still in use are refreshed in the background.
+     */
+    public int getRefreshBefore() throws EBaseException {
+        return getInteger("refreshBefore", 60);
+    }
+
+    /**
+     * Returns the interval in seconds of the background refresh task.
+     */
+    public int getRefreshInterval() throws EBaseException {
+        return getInteger("refreshInterval", 30);
+    }
+}
@@ -78,4 +78,21 @@ public class ConnectorConfig extends ConfigStore {
     public int getMaxHttpConns() throws EBaseException {
         return getInteger("maxHttpConns", 15);
     }
+
+    /**
+     * Returns whether connections are kept open between requests.
+     * Enabled by default. A request is only resent if it could not be
+     * written, so stale connections are closed before they are used.
+     */
+    public boolean getKeepAlive() throws EBaseException {
+        return getBoolean("keepAlive", true);
+    }
+
+    public int getIdleTimeout() throws EBaseException {
+        return getInteger("idleTimeout", 15);
+    }
+
+    public int getHostRetryInterval() throws EBaseException {
+        return getInteger("hostRetryInterval", 30);
+    }
 }
@@ -23,6 +23,7 @@ import org.mozilla.jss.ssl.SSLSocketListener;
 import com.netscape.cmscore.ldapconn.LdapConnInfo;
 import com.netscape.cmscore.ldapconn.PKISocketConfig;
 import com.netscape.cmscore.logging.Auditor;
+import com.netscape.cmscore.util.StatsSubsystem;
 
 import netscape.ldap.LDAPConnection;
 
@@ -70,6 +71,7 @@ public abstract class LdapConnFactory {
     protected boolean mDefErrorIfDown;
 
     protected Auditor auditor;
+    protected volatile StatsSubsystem statsSubsystem;
     protected SSLSocketListener socketListener;
     protected SSLCertificateApprovalCallback approvalCallback;
 
@@ -88,6 +90,14 @@ public abstract class LdapConnFactory {
         this.auditor = auditor;
     }
 
+    public StatsSubsystem getStatsSubsystem() {
+        return statsSubsystem;
+    }
+
+    public void setStatsSubsystem(StatsSubsystem statsSubsystem) {
+        this.statsSubsystem = statsSubsystem;
+    }
+
     public SSLSocketListener getSocketListener() {
         return socketListener;
     }
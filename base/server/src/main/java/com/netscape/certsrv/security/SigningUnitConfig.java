@@ -93,6 +93,14 @@ public class SigningUnitConfig extends ConfigStore {
         return getBoolean("testSignatureFailure", false);
     }
 
+    /**
+     * Returns the maximum number of idle signature contexts kept per
+     * signing algorithm. Zero disables signer pooling.
+     */
+    public int getSignerPoolSize() throws EBaseException {
+        return getInteger("signerPoolSize", 0);
+    }
+
     public String getDefaultSigningAlgorithm() throws EBaseException {
         return getString("defaultSigningAlgorithm");
     }
@@ -23,6 +23,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.CharArrayReader;
 import java.io.CharArrayWriter;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
@@ -32,6 +33,7 @@ import java.io.LineNumberReader;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.RandomAccessFile;
+import java.io.SyncFailedException;
 import java.io.UnsupportedEncodingException;
 import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
@@ -43,14 +45,21 @@ import java.security.Signature;
 import java.security.SignatureException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.servlet.ServletException;
 
@@ -168,6 +177,33 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
      */
     private Thread mFlushThread = null;
 
+    /**
+     * The file descriptor of the open log file, used to sync the
+     * file after each batch written by the async writer.
+     */
+    private FileDescriptor mLogFD = null;
+
+    /**
+     * The events waiting for the async writer, or null if events
+     * are written by the calling threads.
+     */
+    private volatile BlockingQueue<QueuedEvent> mAsyncQueue = null;
+
+    /**
+     * Held for reading while an event is queued and for writing while
+     * the async writer is started or stopped, so no event is queued
+     * after the queue has been drained.
+     */
+    private final ReadWriteLock mAsyncLock = new ReentrantReadWriteLock();
+
+    private int mAsyncBatchSize = LoggerConfig.DEFAULT_ASYNC_BATCH_SIZE;
+
+    private boolean mAsyncFsync = true;
+
+    private volatile boolean mAsyncRunning = false;
+
+    private Thread mAsyncWriterThread = null;
+
     /**
      * The mandatory log event types
      */
@@ -458,6 +494,21 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
 
         if (mOn) {
             init(fileName, config.getBufferSize(), config.getFlushInterval());
+
+            if (config.getAsync()) {
+                boolean fsync = config.getAsyncFsync();
+
+                if (!fsync && (mLogSigning || ILogger.PROP_SIGNED_AUDIT.equals(mType))) {
+                    // each signed batch must be on disk before the next one is taken
+                    logger.warn("LogFile: Ignoring " + LoggerConfig.ASYNC_FSYNC + "=false for signed audit log " + mFileName);
+                    fsync = true;
+                }
+
+                startAsyncWriter(
+                        config.getAsyncQueueSize(),
+                        config.getAsyncBatchSize(),
+                        fsync);
+            }
         }
     }
 
@@ -697,6 +748,7 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
             out.seek(out.length());
             //XXX int or long?
             mBytesWritten = (int) out.length();
+            mLogFD = out.getFD();
             if (!Utils.isNT()) {
                 try {
                     Utils.exec("chmod 00640 " + mFile.getCanonicalPath());
@@ -780,6 +832,7 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
             System.err.println(CMS.getUserMessage("CMS_LOG_CLOSE_FAILED", mFileName, e.toString()));
         }
         mLogWriter = null;
+        mLogFD = null;
     }
 
     /**
@@ -791,23 +844,27 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
      * </ul>
      */
     @Override
-    public synchronized void shutdown() {
+    public void shutdown() {
 
-        logger.info("Destroying LogFile(" + mFileName + ")");
+        synchronized (this) {
+            logger.info("Destroying LogFile(" + mFileName + ")");
 
-        Auditor auditor = engine.getAuditor();
-        String auditMessage = null;
+            Auditor auditor = engine.getAuditor();
+            String auditMessage = null;
 
-        setFlushInterval(0);
+            setFlushInterval(0);
 
-        // log signed audit shutdown success
-        auditMessage = CMS.getLogMessage(
-                           AuditEvent.AUDIT_LOG_SHUTDOWN,
-                           ILogger.SYSTEM_UID,
-                           ILogger.SUCCESS);
+            // log signed audit shutdown success
+            auditMessage = CMS.getLogMessage(
+                               AuditEvent.AUDIT_LOG_SHUTDOWN,
+                               ILogger.SYSTEM_UID,
+                               ILogger.SUCCESS);
 
-        auditor.log(auditMessage);
+            auditor.log(auditMessage);
+        }
 
+        // must not hold the log file lock, see stopAsyncWriter()
+        stopAsyncWriter();
         close();
     }
 
@@ -873,11 +930,348 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
     }
 
     /**
-     * Synchronized method to write an event to the log file.
+     * Starts a writer thread that takes the events from a bounded queue
+     * and writes them in batches. The log is flushed (and signed if log
+     * signing is enabled) once per batch, and optionally synced to disk,
+     * so the calling threads only wait for a free slot in the queue.
+     *
+     * @param queueSize The maximum number of events waiting to be written
+     * @param batchSize The maximum number of events written per flush
+     * @param fsync Whether to sync the log file after each batch
+     */
+    public void startAsyncWriter(int queueSize, int batchSize, boolean fsync) {
+
+        mAsyncLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                if (mAsyncWriterThread != null) {
+                    return;
+                }
+
+                logger.info("LogFile: Starting async writer for " + mFileName);
+                logger.info("LogFile: - queue size: " + queueSize);
+                logger.info("LogFile: - batch size: " + batchSize);
+                logger.info("LogFile: - fsync: " + fsync);
+
+                mAsyncQueue = new ArrayBlockingQueue<>(queueSize);
+                mAsyncBatchSize = batchSize;
+                mAsyncFsync = fsync;
+                mAsyncRunning = true;
+
+                mAsyncWriterThread = new AsyncWriterThread();
+                mAsyncWriterThread.setDaemon(true);
+                mAsyncWriterThread.start();
+            }
+
+        } finally {
+            mAsyncLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stops the writer thread and writes the remaining queued events.
+     *
+     * The write lock waits for callers that are still queuing events
+     * (the writer keeps draining the queue meanwhile) and holds back new
+     * events until the remaining ones have been written, so no event is
+     * lost or written out of order. It must be taken before the log
+     * file lock since the writer thread needs that lock to make room in
+     * the queue.
+     */
+    protected void stopAsyncWriter() {
+
+        mAsyncLock.writeLock().lock();
+        try {
+            if (mAsyncQueue == null) {
+                return;
+            }
+
+            logger.info("LogFile: Stopping async writer for " + mFileName);
+
+            mAsyncRunning = false;
+
+            Thread writer;
+            synchronized (this) {
+                writer = mAsyncWriterThread;
+            }
+
+            if (writer != null) {
+                writer.interrupt();
+                try {
+                    writer.join(10000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            synchronized (this) {
+                List<QueuedEvent> events = new ArrayList<>();
+                mAsyncQueue.drainTo(events);
+                mAsyncQueue = null;
+
+                writeQueuedEvents(events);
+            }
+
+        } finally {
+            mAsyncLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the given queued events and flushes the log.
+     */
+    private synchronized void writeQueuedEvents(List<QueuedEvent> events) {
+
+        for (QueuedEvent event : events) {
+            try {
+                doLog(event.event, event.threadName, true);
+            } catch (ELogException e) {
+                logger.error("LogFile: Unable to write queued event: " + e.getMessage(), e);
+            }
+        }
+
+        flush();
+    }
+
+    /**
+     * Called by the writer thread if it cannot continue. New events
+     * are written synchronously by the callers from now on, and the
+     * events still in the queue are written by the writer thread,
+     * including those of callers that are still waiting for room in
+     * the queue, so no caller blocks forever.
+     *
+     * Returns early if the writer is interrupted by stopAsyncWriter(),
+     * which then writes the remaining events itself.
+     */
+    private void fallBackToSyncWrites(BlockingQueue<QueuedEvent> queue) {
+
+        List<QueuedEvent> events = new ArrayList<>();
+
+        synchronized (this) {
+            // events queued so far are written before any new event
+            mAsyncRunning = false;
+            queue.drainTo(events);
+            writeOrDropQueuedEvents(events);
+        }
+
+        while (true) {
+            try {
+                // the write lock is available once no caller is queuing events
+                if (mAsyncLock.writeLock().tryLock(100, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            events.clear();
+            queue.drainTo(events);
+            writeOrDropQueuedEvents(events);
+        }
+
+        try {
+            synchronized (this) {
+                events.clear();
+                queue.drainTo(events);
+                writeOrDropQueuedEvents(events);
+
+                if (mAsyncQueue == queue) {
+                    mAsyncQueue = null;
+                }
+            }
+
+        } finally {
+            mAsyncLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the given queued events. Since the writer has already
+     * failed, events that still cannot be written are dropped so the
+     * remaining callers are not blocked.
+     */
+    private void writeOrDropQueuedEvents(List<QueuedEvent> events) {
+        try {
+            writeQueuedEvents(events);
+        } catch (Throwable t) {
+            logger.error("LogFile: Unable to write " + events.size() + " queued event(s) to " + mFileName
+                    + ": " + t.getMessage(), t);
+        }
+    }
+
+    /**
+     * Writes a batch of queued events, then flushes the log once
+     * for the whole batch and syncs it to disk if configured. With
+     * log signing enabled the flush pushes one signature covering
+     * the whole batch. Events queued while the file is being synced
+     * are committed together with the next batch.
+     */
+    private void writeBatch(List<QueuedEvent> events) {
+
+        FileDescriptor fd;
+
+        synchronized (this) {
+            for (QueuedEvent event : events) {
+                try {
+                    doLog(event.event, event.threadName, true);
+                } catch (ELogException e) {
+                    // failures of signed audit logs have already
+                    // disabled the subsystem in doLog()
+                    logger.error("LogFile: Unable to write queued event: " + e.getMessage(), e);
+                }
+            }
+
+            flush();
+            fd = mLogFD;
+        }
+
+        if (!mAsyncFsync || fd == null) {
+            return;
+        }
+
+        // sync outside of the lock so callers are not blocked on disk I/O
+        try {
+            fd.sync();
+
+        } catch (SyncFailedException e) {
+            synchronized (this) {
+                if (fd != mLogFD) {
+                    // the log has been rotated or closed in the meantime
+                    return;
+                }
+            }
+
+            String message = CMS.getUserMessage("CMS_LOG_FLUSH_LOG_FAILED", mFileName, e.getMessage());
+            logger.error("LogFile: " + message, e);
+            System.err.println(message);
+            if (mLogSigning) {
+                // Failed to write to audit log, shut down CMS
+                shutdownCMS();
+            }
+        }
+    }
+
+    /**
+     * Async log writer thread. Takes the queued events in batches
+     * until the writer is stopped.
+     */
+    final class AsyncWriterThread extends Thread {
+
+        public AsyncWriterThread() {
+            super();
+            super.setName(mFileName + ".writer");
+        }
+
+        @Override
+        public void run() {
+
+            BlockingQueue<QueuedEvent> queue = mAsyncQueue;
+            List<QueuedEvent> batch = new ArrayList<>(mAsyncBatchSize);
+
+            try {
+                while (mAsyncRunning) {
+                    try {
+                        batch.add(queue.take());
+                    } catch (InterruptedException e) {
+                        // check whether the writer has been stopped
+                        continue;
+                    }
+
+                    queue.drainTo(batch, mAsyncBatchSize - 1);
+
+                    try {
+                        writeBatch(batch);
+
+                    } catch (RuntimeException e) {
+                        // keep the writer alive, otherwise callers would
+                        // block forever once the queue is full
+                        logger.error("LogFile: Unable to write events to " + mFileName + ": " + e.getMessage(), e);
+                        if (mLogSigning) {
+                            shutdownCMS();
+                        }
+
+                    } finally {
+                        batch.clear();
+                    }
+                }
+
+            } catch (Throwable t) {
+                // e.g. OutOfMemoryError or a provider failure while signing
+                logger.error("LogFile: Async writer for " + mFileName + " failed, writing synchronously: "
+                        + t.getMessage(), t);
+                if (mLogSigning) {
+                    shutdownCMS();
+                }
+
+                fallBackToSyncWrites(queue);
+
+            } finally {
+                synchronized (LogFile.this) {
+                    mAsyncWriterThread = null;
+                    LogFile.this.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * An event waiting for the async writer. The name of the calling
+     * thread is kept since it is part of the log entry.
+     */
+    static class QueuedEvent {
+
+        LogEvent event;
+        String threadName;
+
+        QueuedEvent(LogEvent event, String threadName) {
+            this.event = event;
+            this.threadName = threadName;
+        }
+    }
+
+    /**
+     * Writes an event to the log file, or queues it for the
+     * async writer if it is running.
      *
      * @param event The log event
      */
-    protected synchronized void doLog(LogEvent event) throws ELogException {
+    protected void doLog(LogEvent event) throws ELogException {
+
+        BlockingQueue<QueuedEvent> queue;
+
+        mAsyncLock.readLock().lock();
+        try {
+            queue = mAsyncQueue;
+
+            if (queue != null && mAsyncRunning) {
+                try {
+                    // blocks while the queue is full, events are never dropped
+                    queue.put(new QueuedEvent(event, Thread.currentThread().getName()));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ELogException("Interrupted while queuing event for " + mFileName, e);
+                }
+                return;
+            }
+
+        } finally {
+            mAsyncLock.readLock().unlock();
+        }
+
+        if (queue != null) {
+            // the writer has failed, see fallBackToSyncWrites(), so
+            // write the events this thread queued before this one first
+            synchronized (this) {
+                List<QueuedEvent> events = new ArrayList<>();
+                queue.drainTo(events);
+                if (!events.isEmpty()) {
+                    writeQueuedEvents(events);
+                }
+                doLog(event, false);
+            }
+            return;
+        }
+
         doLog(event, false);
     }
 
@@ -893,8 +1287,13 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
      */
     private synchronized void doLog(LogEvent event, boolean noFlush)
             throws ELogException {
+        doLog(event, Thread.currentThread().getName(), noFlush);
+    }
+
+    private synchronized void doLog(LogEvent event, String threadName, boolean noFlush)
+            throws ELogException {
 
-        String entry = logEvt2String(event);
+        String entry = logEvt2String(event, threadName);
 
         if (mLogWriter == null) {
             String[] params = { mFileName, entry };
@@ -1195,6 +1594,10 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
     }
 
     public String logEvt2String(LogEvent ev) {
+        return logEvt2String(ev, Thread.currentThread().getName());
+    }
+
+    public String logEvt2String(LogEvent ev, String threadName) {
         String entry = null;
 
         // Hmm.. multiple threads could hit this and reset the time.
@@ -1205,12 +1608,12 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
         // This should follow the Common Log Format which still needs
         // some work.
         if (ev.getMultiline() == ILogger.L_MULTILINE) {
-            entry = engine.getPID() + "." + Thread.currentThread().getName() + " - ["
+            entry = engine.getPID() + "." + threadName + " - ["
                     + mLogDateFormat.format(mDate) + "] [" +
                     ev.getSource().value() + "] [" + Integer.toString(ev.getLevel())
                     + "] " + prepareMultiline(ev.toString());
         } else {
-            entry = engine.getPID() + "." + Thread.currentThread().getName() + " - ["
+            entry = engine.getPID() + "." + threadName + " - ["
                     + mLogDateFormat.format(mDate) + "] [" +
                     ev.getSource().value() + "] [" + Integer.toString(ev.getLevel())
                     + "] " + ev.toString();
@@ -12,11 +12,9 @@ import java.security.NoSuchAlgorithmException;
 import java.security.Principal;
 import java.security.cert.X509Certificate;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -29,6 +27,7 @@ import org.mozilla.jss.netscape.security.util.Cert;
 import org.mozilla.jss.netscape.security.x509.X509CertImpl;
 
 import com.netscape.cmscore.usrgrp.User;
+import com.netscape.cmsutil.jdbc.JDBCConnectionPool;
 
 /**
  * @author Endi S. Dewata
@@ -41,7 +40,8 @@ public class PKIPostgreSQLRealm extends RealmCommon {
     String url;
 
     Properties statements;
-    Connection connection;
+    JDBCConnectionPool connectionPool;
+    boolean initialized;
 
     MessageDigestCredentialHandler handler;
 
@@ -63,6 +63,10 @@ public class PKIPostgreSQLRealm extends RealmCommon {
 
         url = (String) info.remove("url");
 
+        connectionPool = new JDBCConnectionPool(url, info);
+        connectionPool.configure(info);
+        connectionPool.init();
+
         String statementsFilename = info.getProperty(
                 "statements");
 
@@ -124,7 +128,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
     /**
      * This method will create the tables if they do not exist.
      */
-    public void setup() throws Exception {
+    public void setup(Connection connection) throws Exception {
 
         logger.info("Setting up PostgreSQL realm");
 
@@ -158,40 +162,28 @@ public class PKIPostgreSQLRealm extends RealmCommon {
     }
 
     /**
-     * This method will create the initial connection, validate
-     * the current connection, or reestablish the connection if
-     * it's closed.
-     *
-     * TODO: Use connection pool.
+     * This method will get a connection from the connection pool.
+     * The connection must be closed to return it into the pool.
+     * The tables will be created when the first connection is made.
      */
-    public void connect() throws Exception {
-
-        if (connection == null) { // create the initial connection
-            logger.info("Connecting to " + url);
-            connection = DriverManager.getConnection(url, info);
-            setup();
-            return;
-        }
-
-        // validate the current connection
-        try (Statement st = connection.createStatement();
-            ResultSet rs = st.executeQuery("SELECT 1")) {
+    public Connection connect() throws Exception {
 
-        } catch (SQLException e) {
+        Connection connection = connectionPool.getConnection();
 
-            if (connection.isClosed()) { // reestablish the connection
-                logger.info("Reconnecting to " + url);
-                connection = DriverManager.getConnection(url, info);
-                return;
+        try {
+            synchronized (this) {
+                if (!initialized) {
+                    setup(connection);
+                    initialized = true;
+                }
             }
 
-            logger.error("Unable to access database: " + e.getMessage());
-
-            // https://www.postgresql.org/docs/current/errcodes-appendix.html
-            logger.error("SQL state: " + e.getSQLState());
-
+        } catch (Exception e) {
+            connection.close();
             throw e;
         }
+
+        return connection;
     }
 
     public User createUser(ResultSet rs) throws Exception {
@@ -209,7 +201,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
         return user;
     }
 
-    public User getUserByID(String userID) throws Exception {
+    public User getUserByID(Connection connection, String userID) throws Exception {
 
         logger.info("Getting user " + userID);
 
@@ -237,7 +229,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
                 + cert.getSubjectDN();
     }
 
-    public User getUserByCertID(String certID) throws Exception {
+    public User getUserByCertID(Connection connection, String certID) throws Exception {
 
         logger.info("Getting user for cert " + certID);
 
@@ -258,7 +250,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
         }
     }
 
-    public List<X509Certificate> getUserCerts(String userID) throws Exception {
+    public List<X509Certificate> getUserCerts(Connection connection, String userID) throws Exception {
 
         logger.info("Getting certs for user " + userID);
 
@@ -281,7 +273,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
         return results;
     }
 
-    public List<String> getUserRoles(String userID) throws Exception {
+    public List<String> getUserRoles(Connection connection, String userID) throws Exception {
 
         logger.info("Getting roles for user " + userID);
 
@@ -310,11 +302,10 @@ public class PKIPostgreSQLRealm extends RealmCommon {
 
         logger.info("Authenticating user " + username + " with password");
 
-        try {
-            connect();
+        try (Connection connection = connect()) {
 
             logger.info("Searching for user " + username);
-            User user = getUserByID(username);
+            User user = getUserByID(connection, username);
 
             if (user == null) {
                 logger.warn("Unable to authenticate user " + username + ": User not found");
@@ -331,7 +322,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
 
             logger.info("User " + username + " authenticated");
 
-            List<String> roles = getUserRoles(username);
+            List<String> roles = getUserRoles(connection, username);
             return new PKIPrincipal(user, null, roles);
         } catch (Exception e) {
             logger.error("Problem to verify user credentials: "+ e.getMessage(), e);
@@ -341,6 +332,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
 
     @Override
     public Principal authenticate(X509Certificate[] certChain) {
+        Connection connection = null;
         try {
             // sort cert chain from leaf to root
             certChain = Cert.sortCertificateChain(certChain, true);
@@ -351,12 +343,11 @@ public class PKIPostgreSQLRealm extends RealmCommon {
 
             logger.info("Authenticating user with certificate " + certID);
 
-            connect();
-
             // cert already validated during SSL handshake
 
+            connection = connect();
             logger.info("Searching for user with certificate " + certID);
-            User user = getUserByCertID(certID);
+            User user = getUserByCertID(connection, certID);
 
             if (user == null) {
                 logger.warn("Unable to authenticate user with certificate " + certID + ": User not found");
@@ -364,7 +355,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
             }
 
             logger.info("Searching for matching certificates in user " + user.getUserID());
-            List<X509Certificate> certs = getUserCerts(user.getUserID());
+            List<X509Certificate> certs = getUserCerts(connection, user.getUserID());
 
             if (certs == null || certs.isEmpty()) {
                 logger.warn("Unable to authenticate user " + user.getUserID() + ": User has no certificates");
@@ -388,11 +379,19 @@ public class PKIPostgreSQLRealm extends RealmCommon {
 
             logger.info("User " + user.getUserID() + " authenticated");
 
-            List<String> roles = getUserRoles(user.getUserID());
+            List<String> roles = getUserRoles(connection, user.getUserID());
             return new PKIPrincipal(user, null, roles);
         } catch(Exception e) {
             logger.error("Problem to verify the certificate", e);
             throw new RuntimeException(e);
+        } finally {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    logger.warn("Unable to release DB connection: " + e.getMessage());
+                }
+            }
         }
     }
 
@@ -401,12 +400,8 @@ public class PKIPostgreSQLRealm extends RealmCommon {
 
         logger.info("Shutting down PostgreSQL realm");
 
-        if (connection != null) {
-            try {
-                connection.close();
-            } catch(Exception e) {
-                throw new LifecycleException("Cannot close the DB connection: " + e.getMessage(), e);
-            }
+        if (connectionPool != null) {
+            connectionPool.close();
         }
     }
 }
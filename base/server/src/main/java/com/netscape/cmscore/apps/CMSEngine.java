@@ -107,6 +107,7 @@ import com.netscape.cmscore.usrgrp.Group;
 import com.netscape.cmscore.usrgrp.UGSubsystem;
 import com.netscape.cmscore.usrgrp.UGSubsystemConfig;
 import com.netscape.cmscore.util.Debug;
+import com.netscape.cmscore.util.StatsSubsystem;
 import com.netscape.cmsutil.crypto.CryptoUtil;
 import com.netscape.cmsutil.password.PasswordStore;
 import com.netscape.cmsutil.password.PasswordStoreConfig;
@@ -883,6 +884,11 @@ public class CMSEngine {
         loadSubsystems();
         initSubsystems();
 
+        if (dbSubsystem != null) {
+            // the DB pool is created before the stats subsystem is loaded
+            dbSubsystem.setStatsSubsystem((StatsSubsystem) getSubsystem(StatsSubsystem.ID));
+        }
+
         // The ports must be configured here to avoid problems
         // when installing a clone of an existing clone.
         // https://github.com/dogtagpki/pki/issues/3330
@@ -1346,6 +1352,7 @@ public class CMSEngine {
 
         LdapBoundConnFactory connFactory = new LdapBoundConnFactory(id);
         connFactory.setAuditor(auditor);
+        connFactory.setStatsSubsystem((StatsSubsystem) getSubsystem(StatsSubsystem.ID));
         connFactory.setSocketListener(clientSocketListener);
         connFactory.setApprovalCallback(approvalCallback);
         connFactory.init(socketConfig, ldapConfig, getPasswordStore());
@@ -1370,6 +1377,7 @@ public class CMSEngine {
                 connInfo,
                 authInfo);
         connFactory.setAuditor(auditor);
+        connFactory.setStatsSubsystem((StatsSubsystem) getSubsystem(StatsSubsystem.ID));
         connFactory.setSocketListener(clientSocketListener);
         connFactory.setApprovalCallback(approvalCallback);
         connFactory.init(socketConfig, getPasswordStore());
@@ -50,6 +50,13 @@ public class DatabaseConfig extends ConfigStore {
     public static final String REQUEST_BASEDN = "requestDN";
     public static final String REQUEST_RANGE_DN = "requestRangeDN";
 
+    public static final String REQUEST_EXT_DATA_FORMAT = "requestExtDataFormat";
+    public static final String REQUEST_EXT_DATA_INDEXED_KEYS = "requestExtDataIndexedKeys";
+
+    public static final String DEFAULT_REQUEST_EXT_DATA_INDEXED_KEYS = "cert_request,req_issued_cert";
+
+    public static final String REQUEST_WRITE_BEHIND = "requestWriteBehind";
+
     public static final String MIN_REPLICA_NUMBER = "beginReplicaNumber";
     public static final String MAX_REPLICA_NUMBER = "endReplicaNumber";
 
@@ -303,4 +310,34 @@ public class DatabaseConfig extends ConfigStore {
     public LDAPConfig getLDAPConfig() throws EBaseException {
         return getSubStore("ldap", LDAPConfig.class);
     }
+
+    /**
+     * Returns the format of the request extData: legacy (one LDAP
+     * attribute per key) or compact (single binary attribute).
+     */
+    public String getRequestExtDataFormat() throws EBaseException {
+        return getString(REQUEST_EXT_DATA_FORMAT, "legacy");
+    }
+
+    public void setRequestExtDataFormat(String requestExtDataFormat) {
+        putString(REQUEST_EXT_DATA_FORMAT, requestExtDataFormat);
+    }
+
+    /**
+     * Returns the comma-separated extData keys that are also stored as
+     * separate LDAP attributes in the compact format so they can still
+     * be searched.
+     */
+    public String getRequestExtDataIndexedKeys() throws EBaseException {
+        return getString(REQUEST_EXT_DATA_INDEXED_KEYS, DEFAULT_REQUEST_EXT_DATA_INDEXED_KEYS);
+    }
+
+    /**
+     * Returns true if request updates made during a request operation
+     * are written once at the end of the operation, and only with the
+     * attributes that have changed.
+     */
+    public boolean getRequestWriteBehind() throws EBaseException {
+        return getBoolean(REQUEST_WRITE_BEHIND, false);
+    }
 }
@@ -0,0 +1,86 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.connector;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks failed targets of a failover list.
+ *
+ * A target that could not be reached is skipped by all connections
+ * sharing this object until the retry interval has passed, so a down
+ * host does not cost every connection a connect timeout. If all targets
+ * have failed they are still tried in order.
+ */
+public class CircuitBreaker {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public static final int DEFAULT_RETRY_INTERVAL = 30; // seconds
+
+    private long retryInterval = DEFAULT_RETRY_INTERVAL * 1000L;
+
+    // target -> time when the target can be tried again
+    private Map<InetSocketAddress, Long> failedTargets = new ConcurrentHashMap<>();
+
+    public CircuitBreaker() {
+    }
+
+    public CircuitBreaker(int retryInterval) {
+        this.retryInterval = retryInterval * 1000L;
+    }
+
+    public boolean isOpen(InetSocketAddress target) {
+
+        Long retryTime = failedTargets.get(target);
+        if (retryTime == null) return false;
+
+        if (retryTime <= System.currentTimeMillis()) {
+            // let the next connection try the target again
+            failedTargets.remove(target, retryTime);
+            return false;
+        }
+
+        return true;
+    }
+
+    public void recordSuccess(InetSocketAddress target) {
+        if (failedTargets.remove(target) != null) {
+            logger.info("CircuitBreaker: " + target.getHostString() + ":" + target.getPort() + " is available again");
+        }
+    }
+
+    public void recordFailure(InetSocketAddress target) {
+        logger.info("CircuitBreaker: Skipping " + target.getHostString() + ":" + target.getPort()
+                + " for " + retryInterval + " ms");
+        failedTargets.put(target, System.currentTimeMillis() + retryInterval);
+    }
+
+    /**
+     * Returns the targets in the order they should be tried:
+     * available targets first, then failed targets.
+     */
+    public List<InetSocketAddress> order(List<InetSocketAddress> targets) {
+
+        List<InetSocketAddress> available = new ArrayList<>();
+        List<InetSocketAddress> failed = new ArrayList<>();
+
+        for (InetSocketAddress target : targets) {
+            if (isOpen(target)) {
+                failed.add(target);
+            } else {
+                available.add(target);
+            }
+        }
+
+        available.addAll(failed);
+        return available;
+    }
+}
@@ -17,6 +17,10 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.connector;
 
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.cmscore.apps.CMSEngine;
 import com.netscape.cmsutil.http.JssSSLSocketFactory;
@@ -24,6 +28,12 @@ import com.netscape.cmsutil.net.ISocketFactory;
 
 /**
  * Factory for getting HTTP Connections to a HTTPO server
+ *
+ * Idle connections are kept in a lock-free stack so the most recently
+ * used connection, which is the most likely to still be open, is reused
+ * first. The number of connections in use is limited by a semaphore.
+ * New connections are created outside of any lock so a slow or failed
+ * handshake does not block other threads.
  */
 public class HttpConnFactory {
 
@@ -33,14 +43,17 @@ public class HttpConnFactory {
     protected int mMinConns = 1;
     protected int mMaxConns = 30;
 
-    private int mNumConns = 0; // number of available conns in array
-    private int mTotal = 0; // total num conns
-    private HttpConnection mConns[];
+    private Deque<HttpConnection> mConns = new ConcurrentLinkedDeque<>(); // available conns
+    private Semaphore mPermits;
     private RemoteAuthority mDest;
     private String mNickname = "";
     private String mClientCiphers = null;
     private int mTimeout = 0;
 
+    private boolean mKeepAlive = true;
+    private int mIdleTimeout = 15; // seconds
+    private CircuitBreaker mCircuitBreaker = new CircuitBreaker();
+
     /**
      * Constructor for initializing from the config store.
      * must be followed by init(ConfigStore)
@@ -86,6 +99,45 @@ public class HttpConnFactory {
         this.engine = engine;
     }
 
+    public boolean getKeepAlive() {
+        return mKeepAlive;
+    }
+
+    public void setKeepAlive(boolean keepAlive) {
+        mKeepAlive = keepAlive;
+    }
+
+    public int getIdleTimeout() {
+        return mIdleTimeout;
+    }
+
+    public void setIdleTimeout(int idleTimeout) {
+        mIdleTimeout = idleTimeout;
+    }
+
+    /**
+     * Sets how long a failed target is skipped by new connections.
+     *
+     * @param retryInterval retry interval in seconds
+     */
+    public void setHostRetryInterval(int retryInterval) {
+        mCircuitBreaker = new CircuitBreaker(retryInterval);
+    }
+
+    /**
+     * Returns the number of idle connections.
+     */
+    public int getIdleCount() {
+        return mConns.size();
+    }
+
+    /**
+     * Returns the number of connections in use.
+     */
+    public int getActiveCount() {
+        return mPermits == null ? 0 : mMaxConns - mPermits.availablePermits();
+    }
+
     /**
      * initialize parameters obtained from either constructor or
      * config store
@@ -106,25 +158,21 @@ public class HttpConnFactory {
             throw new EBaseException("HttpConnFactory: Invalid minimum and maximum connections");
         }
 
-        logger.debug("before creating httpconn array");
+        logger.debug("HttpConnFactory: keep alive: " + mKeepAlive);
+        logger.debug("HttpConnFactory: idle timeout: " + mIdleTimeout);
 
-        mConns = new HttpConnection[mMaxConns];
-
-        // Create connection handle and make initial connection
-
-        logger.debug("before makeConnection");
+        mPermits = new Semaphore(mMaxConns, true);
 
         logger.debug(
                 "initializing HttpConnFactory with mininum " + mMinConns + " and maximum " + mMaxConns +
                         " connections to ");
 
-        // initalize minimum number of connection handles available.
-        //makeMinimum();
+        // connections are created on demand
 
         logger.debug("leaving HttpConnFactory init.");
     }
 
-    private HttpConnection createConnection() throws EBaseException {
+    protected HttpConnection createConnection() throws EBaseException {
 
         HttpConnection retConn = null;
 
@@ -142,6 +190,9 @@ public class HttpConnFactory {
             }
 
             retConn.setCMSEngine(engine);
+            retConn.setKeepAlive(mKeepAlive);
+            retConn.setIdleTimeout(mIdleTimeout);
+            retConn.setCircuitBreaker(mCircuitBreaker);
             retConn.init();
 
         } catch (Exception e) {
@@ -153,32 +204,6 @@ public class HttpConnFactory {
         return retConn;
     }
 
-    /**
-     * makes the minumum number of connections
-     */
-    private void makeMinimum() throws EBaseException {
-
-        logger.debug("In HttpConnFactory.makeMinimum.");
-        int increment;
-
-        if (mNumConns < mMinConns && mTotal <= mMaxConns) {
-
-            increment = Math.min(mMinConns - mNumConns, mMaxConns - mTotal);
-
-            if (increment == 0)
-                return;
-
-            logger.debug("increasing minimum connections by " + increment);
-            for (int i = increment - 1; i >= 0; i--) {
-                mConns[i] = createConnection();
-            }
-            mTotal += increment;
-            mNumConns += increment;
-            logger.debug("new total available http connections " + mTotal);
-            logger.debug("new number of http connections " + mNumConns);
-        }
-    }
-
     /**
      * gets a conenction from this factory.
      * All connections obtained from the factory must be returned by
@@ -225,37 +250,43 @@ public class HttpConnFactory {
      * }
      * </pre>
      */
-    public synchronized HttpConnection getConn(boolean waitForConn)
+    public HttpConnection getConn(boolean waitForConn)
             throws EBaseException {
         boolean waited = false;
 
         logger.debug("In HttpConnFactory.getConn");
-        if (mNumConns == 0)
-            makeMinimum();
-        if (mNumConns == 0) {
+        if (!mPermits.tryAcquire()) {
             if (!waitForConn)
                 return null;
             try {
                 logger.warn("HttpConnFactory: Ran out of HTTP connections");
                 waited = true;
                 logger.debug("HttpConn:about to wait for a new http connection");
-                while (mNumConns == 0)
-                    wait();
+                mPermits.acquire();
 
                 logger.debug("HttpConn:done waiting for new http connection");
             } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EBaseException("HttpConnFactory: Interrupted while waiting for HTTP connection", e);
             }
         }
-        mNumConns--;
-        HttpConnection conn = mConns[mNumConns];
 
-        mConns[mNumConns] = null;
+        HttpConnection conn = mConns.pollFirst();
+
+        if (conn == null) {
+            try {
+                conn = createConnection();
+            } catch (EBaseException e) {
+                mPermits.release();
+                throw e;
+            }
+        }
 
         if (waited) {
             logger.warn("HttpConn:had to wait for an available connection from pool");
             logger.warn("Http connections are available again in http connection pool");
         }
-        logger.debug("HttpgetConn: mNumConns now " + mNumConns);
+        logger.debug("HttpgetConn: active conns now " + getActiveCount());
 
         return conn;
     }
@@ -278,22 +309,26 @@ public class HttpConnFactory {
      * }
      * </pre>
      */
-    public synchronized void returnConn(HttpConnection conn) {
+    public void returnConn(HttpConnection conn) {
 
         logger.debug("In HttpConnFactory.returnConn");
         if (conn == null) {
             return;
         }
-        HttpConnection boundconn = conn;
-
-        for (int i = 0; i < mNumConns; i++) {
-            if (mConns[i] == conn) {
-                logger.debug("returnConn: previously returned connection. " + conn);
 
+        for (HttpConnection idleConn : mConns) {
+            if (idleConn == conn) {
+                // releasing the permit again would allow more than the
+                // maximum number of connections
+                logger.warn("returnConn: previously returned connection. " + conn);
+                return;
             }
         }
-        mConns[mNumConns++] = boundconn;
-        logger.debug("HttpreturnConn: mNumConns now " + mNumConns);
-        notify();
+
+        // make the connection available before releasing the permit
+        // so the next thread reuses it instead of creating a new one
+        mConns.offerFirst(conn);
+        mPermits.release();
+        logger.debug("HttpreturnConn: idle conns now " + mConns.size());
     }
 }
@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -36,6 +37,7 @@ import com.netscape.cmscore.apps.CMSEngine;
 import com.netscape.cmscore.logging.Auditor;
 import com.netscape.cmsutil.http.HttpClient;
 import com.netscape.cmsutil.http.HttpRequest;
+import com.netscape.cmsutil.http.HttpRequestNotSentException;
 import com.netscape.cmsutil.http.HttpResponse;
 import com.netscape.cmsutil.net.ISocketFactory;
 
@@ -61,6 +63,11 @@ public class HttpConnection {
     List<InetSocketAddress> targets;
     String localIP = "localhost";
 
+    boolean keepAlive;
+    long idleTimeout; // milliseconds
+    long lastUsed;
+    CircuitBreaker circuitBreaker;
+
     public HttpConnection(RemoteAuthority dest, ISocketFactory factory) {
         this(dest, factory, 0);
     }
@@ -82,6 +89,40 @@ public class HttpConnection {
         this.engine = engine;
     }
 
+    public boolean getKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Keeps the connection open between requests.
+     */
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public int getIdleTimeout() {
+        return (int) (idleTimeout / 1000);
+    }
+
+    /**
+     * Sets the time after which an idle connection is closed before
+     * the next request instead of being reused. It should be lower than
+     * the server's keep-alive timeout.
+     *
+     * @param idleTimeout idle timeout in seconds
+     */
+    public void setIdleTimeout(int idleTimeout) {
+        this.idleTimeout = idleTimeout * 1000L;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
     public void init() {
 
         logger.debug("HttpConnection: Creating HttpConnection with timeout=" + timeout);
@@ -94,6 +135,7 @@ public class HttpConnection {
 
         mReqEncoder = new HttpRequestEncoder();
         mHttpClient = new HttpClient(factory);
+        mHttpClient.setKeepAlive(keepAlive);
 
         targets = parseTarget(dest.getHost(), dest.getPort());
 
@@ -158,6 +200,11 @@ public class HttpConnection {
         Auditor auditor = engine.getAuditor();
         SignedAuditEvent auditEvent;
 
+        List<InetSocketAddress> targets = this.targets;
+        if (circuitBreaker != null) {
+            targets = circuitBreaker.order(targets);
+        }
+
         // try all targets
         for (InetSocketAddress target : targets) {
 
@@ -170,6 +217,12 @@ public class HttpConnection {
                 mHttpClient.connect(hostname, port, timeout * 1000);
 
                 logger.debug("HttpConnection: Connected to " + hostname + ":" + port);
+
+                if (circuitBreaker != null) {
+                    circuitBreaker.recordSuccess(target);
+                }
+
+                lastUsed = System.currentTimeMillis();
                 return;
 
             } catch (IOException e) {
@@ -183,6 +236,10 @@ public class HttpConnection {
                         "connect:" +e.toString());
                 auditor.log(auditEvent);
 
+                if (circuitBreaker != null) {
+                    circuitBreaker.recordFailure(target);
+                }
+
                 // try the next target immediately
             }
         }
@@ -286,6 +343,35 @@ public class HttpConnection {
         return resp;
     }
 
+    /**
+     * Closes a kept-alive connection that has been idle for too long
+     * or that the server has already closed.
+     *
+     * A request written to a connection the server is closing is not
+     * resent since the server might have processed it (see doSend()).
+     * The idle timeout is shorter than the server's keep-alive timeout
+     * and a connection closed by the server is detected here, so such a
+     * failure needs the server to close the connection at the moment
+     * the request is sent.
+     */
+    void closeIdleConnection() {
+
+        if (!mHttpClient.connected()) return;
+
+        if ((idleTimeout <= 0 || System.currentTimeMillis() - lastUsed < idleTimeout)
+                && !mHttpClient.isStale()) {
+            return;
+        }
+
+        logger.debug("HttpConnection: Closing idle connection to " + mHttpClient.getHost() + ":" + mHttpClient.getPort());
+
+        try {
+            mHttpClient.disconnect();
+        } catch (IOException e) {
+            logger.debug("HttpConnection: Unable to close idle connection: " + e.getMessage());
+        }
+    }
+
     private HttpResponse doSend(String content) throws EBaseException {
 
         HttpResponse resp = null;
@@ -303,11 +389,15 @@ public class HttpConnection {
             throw new EBaseException(CMS.getUserMessage("CMS_BASE_INVALID_ATTRIBUTE", "URI not set in HttpRequest"));
         }
 
+        // the content is written as UTF-8
+        int contentLength = content.getBytes(StandardCharsets.UTF_8).length;
         mHttpreq.setHeader("Content-Length",
-                Integer.toString(content.length()));
-        logger.debug("HttpConnection.doSend: with String content length: " + Integer.toString(content.length()));
+                Integer.toString(contentLength));
+        logger.debug("HttpConnection.doSend: with String content length: " + Integer.toString(contentLength));
         mHttpreq.setContent(content);
 
+        closeIdleConnection();
+
         try {
             if (!mHttpClient.connected()) {
                 connect();
@@ -328,7 +418,9 @@ public class HttpConnection {
             throw new EBaseException(CMS.getUserMessage("CMS_BASE_CONN_FAILED", "Couldn't reconnect " + e));
         }
 
-        // if remote closed connection want to reconnect and resend.
+        // If the remote closed the connection before the request was
+        // written, reconnect and resend. Once the request has been written
+        // the server might have processed it, so it is never resent.
         while (resp == null) {
             try {
                 logger.debug("HttpConnection.doSend: sending request");
@@ -345,6 +437,11 @@ public class HttpConnection {
                         "send:" +e.toString());
                 auditor.log(auditEvent);
 
+                if (!(e instanceof HttpRequestNotSentException)) {
+                    throw new EBaseException(
+                            CMS.getUserMessage("CMS_BASE_CONN_FAILED", "Unable to receive response: " + e), e);
+                }
+
                 if (reconnected) {
                     logger.error("HttpConnection.doSend: resend failed again.");
                     throw new EBaseException(
@@ -365,6 +462,8 @@ public class HttpConnection {
             }
         } //while
 
+        lastUsed = System.currentTimeMillis();
+
         // got reply; check status
         String statusStr = resp.getStatusCode();
 
@@ -92,9 +92,21 @@ public class HttpConnector extends Connector {
         int maxConns = config.getMaxHttpConns();
         logger.debug("HttpConnector: maxHttpConns: " + maxConns);
 
+        boolean keepAlive = config.getKeepAlive();
+        logger.debug("HttpConnector: keepAlive: " + keepAlive);
+
+        int idleTimeout = config.getIdleTimeout();
+        logger.debug("HttpConnector: idleTimeout: " + idleTimeout);
+
+        int hostRetryInterval = config.getHostRetryInterval();
+        logger.debug("HttpConnector: hostRetryInterval: " + hostRetryInterval);
+
         try {
             mConnFactory = new HttpConnFactory(minConns, maxConns, mDest, nickname, clientCiphers, mTimeout);
             mConnFactory.setCMSEngine(engine);
+            mConnFactory.setKeepAlive(keepAlive);
+            mConnFactory.setIdleTimeout(idleTimeout);
+            mConnFactory.setHostRetryInterval(hostRetryInterval);
             mConnFactory.init();
 
         } catch (EBaseException e) {
@@ -37,6 +37,7 @@ import com.netscape.cmscore.ldapconn.LdapAuthInfo;
 import com.netscape.cmscore.ldapconn.LdapBoundConnFactory;
 import com.netscape.cmscore.ldapconn.LdapConnInfo;
 import com.netscape.cmscore.ldapconn.PKISocketConfig;
+import com.netscape.cmscore.util.StatsSubsystem;
 import com.netscape.cmsutil.password.PasswordStore;
 
 import netscape.ldap.LDAPAttribute;
@@ -108,6 +109,17 @@ public class DBSubsystem {
         this.engineConfig = engineConfig;
     }
 
+    /**
+     * Sets the subsystem recording the connection pool statistics.
+     * The DBSubsystem is initialized before the other subsystems are
+     * loaded, so this is called once they have been initialized.
+     */
+    public void setStatsSubsystem(StatsSubsystem statsSubsystem) {
+        if (mLdapConnFactory != null) {
+            mLdapConnFactory.setStatsSubsystem(statsSubsystem);
+        }
+    }
+
     /**
      * Retrieves subsystem identifier.
      */
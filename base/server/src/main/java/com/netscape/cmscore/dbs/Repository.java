@@ -311,10 +311,13 @@ public abstract class Repository {
      * Retrieves the next serial number, and also increase the
      * serial number by one.
      *
+     * Random serial numbers do not depend on any repository state,
+     * so they are generated without locking the repository.
+     *
      * @return serial number
      * @exception EBaseException failed to retrieve next serial number
      */
-    public synchronized BigInteger getNextSerialNumber() throws
+    public BigInteger getNextSerialNumber() throws
             EBaseException {
 
         if (idGenerator == IDGenerator.RANDOM) {
@@ -330,6 +333,19 @@ public abstract class Repository {
             return id;
         }
 
+        return getNextSequentialSerialNumber();
+    }
+
+    /**
+     * Retrieves the next serial number in the current range and
+     * switches to the next range if necessary.
+     *
+     * @return serial number
+     * @exception EBaseException failed to retrieve next serial number
+     */
+    protected synchronized BigInteger getNextSequentialSerialNumber() throws
+            EBaseException {
+
         logger.debug("Repository: in getNextSerialNumber. ");
 
         initCache();
@@ -17,10 +17,24 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.ldapconn;
 
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.ldap.ELdapException;
 import com.netscape.certsrv.ldap.ELdapServerDownException;
 import com.netscape.certsrv.ldap.LdapConnFactory;
+import com.netscape.cmscore.util.StatsSubsystem;
 import com.netscape.cmsutil.password.PasswordStore;
 
 import netscape.ldap.LDAPConnection;
@@ -39,6 +53,14 @@ import netscape.ldap.LDAPv3;
  * the maximum limit of connections is exceeded, the factory
  * should provide proper synchronization to resolve contention issues.
  *
+ * Idle connections are kept in a concurrent deque and the number of
+ * borrowed connections is limited with a semaphore, so threads only
+ * block when the pool is saturated. New connections are created on
+ * the borrowing thread, so a slow bind does not stall other threads.
+ * Optionally a background task checks idle connections, reconnects
+ * the master connection, and keeps the minimum number of idle
+ * connections available.
+ *
  * XXX not sure how useful this is given that LDAPConnection itself can
  * be shared by multiple threads and cloned.
  */
@@ -46,13 +68,45 @@ public class LdapBoundConnFactory extends LdapConnFactory {
 
     public static final String PROP_LDAPCONNINFO = "ldapconn";
     public static final String PROP_LDAPAUTHINFO = "ldapauth";
+    public static final String PROP_MAX_IDLE_CONNS = "maxIdleConns";
+    public static final String PROP_ACQUIRE_TIMEOUT = "acquireTimeout";
+    public static final String PROP_HEALTH_CHECK_INTERVAL = "healthCheckInterval";
 
     LdapAuthInfo mAuthInfo;
     PasswordStore passwordStore;
 
     boolean doCloning = true;
-    LdapBoundConnection mMasterConn; // master connection object.
-    LdapBoundConnection[] mConns;
+    volatile LdapBoundConnection mMasterConn; // master connection object.
+
+    /**
+     * maximum number of idle connections, defaults to minConns
+     */
+    int mMaxIdleConns = -1;
+
+    /**
+     * time to wait for a connection in msec, 0 means wait forever
+     */
+    int mAcquireTimeout = 0;
+
+    /**
+     * interval of background health checks in seconds, 0 disables them
+     */
+    int mHealthCheckInterval = 0;
+
+    Deque<LdapBoundConnection> mIdleConns = new ConcurrentLinkedDeque<>();
+    AtomicInteger mIdleCount = new AtomicInteger();
+    Set<LdapBoundConnection> mBorrowedConns = ConcurrentHashMap.newKeySet();
+    Semaphore mPermits;
+
+    ScheduledExecutorService healthCheckService;
+
+    // pool statistics, reported when the stats are read
+    LongAdder mBorrows = new LongAdder();
+    LongAdder mWaits = new LongAdder();
+    LongAdder mWaitTime = new LongAdder();
+    LongAdder mTimeouts = new LongAdder();
+    LongAdder mCreated = new LongAdder();
+    LongAdder mDiscarded = new LongAdder();
 
     /**
      * Constructor for initializing from the config store.
@@ -177,6 +231,10 @@ public class LdapBoundConnFactory extends LdapConnFactory {
         doCloning = dbConfig.getBoolean("doCloning", true);
         logger.debug("LdapBoundConnFactory: doCloning: " + doCloning);
 
+        mMaxIdleConns = dbConfig.getInteger(PROP_MAX_IDLE_CONNS, mMaxIdleConns);
+        mAcquireTimeout = dbConfig.getInteger(PROP_ACQUIRE_TIMEOUT, mAcquireTimeout);
+        mHealthCheckInterval = dbConfig.getInteger(PROP_HEALTH_CHECK_INTERVAL, mHealthCheckInterval);
+
         init();
     }
 
@@ -198,6 +256,9 @@ public class LdapBoundConnFactory extends LdapConnFactory {
         if (mMaxResults < 0)
             throw new ELdapException("Invalid maximum number of results: " + mMaxResults);
 
+        if (mMaxIdleConns < 0)
+            mMaxIdleConns = mMinConns;
+
         if (mConnInfo == null)
             throw new IllegalArgumentException("Missing connection info");
 
@@ -206,12 +267,15 @@ public class LdapBoundConnFactory extends LdapConnFactory {
 
         logger.debug("LdapBoundConnFactory: mininum: " + mMinConns);
         logger.debug("LdapBoundConnFactory: maximum: " + mMaxConns);
+        logger.debug("LdapBoundConnFactory: maximum idle: " + mMaxIdleConns);
+        logger.debug("LdapBoundConnFactory: acquire timeout: " + mAcquireTimeout);
+        logger.debug("LdapBoundConnFactory: health check interval: " + mHealthCheckInterval);
         logger.debug("LdapBoundConnFactory: host: " + mConnInfo.getHost());
         logger.debug("LdapBoundConnFactory: port: " + mConnInfo.getPort());
         logger.debug("LdapBoundConnFactory: secure: " + mConnInfo.getSecure());
         logger.debug("LdapBoundConnFactory: authentication: " + mAuthInfo.getAuthType());
 
-        mConns = new LdapBoundConnection[mMaxConns];
+        mPermits = new Semaphore(mMaxConns, true);
 
         if (mMinConns > 0) {
             // Create connection handle and make initial connection
@@ -220,6 +284,10 @@ public class LdapBoundConnFactory extends LdapConnFactory {
             // initalize minimum number of connection handles available.
             makeMinimum();
         }
+
+        if (mHealthCheckInterval > 0) {
+            startHealthCheck();
+        }
     }
 
     /**
@@ -237,6 +305,31 @@ public class LdapBoundConnFactory extends LdapConnFactory {
        }
     }
 
+    /**
+     * Returns the master connection, reconnecting it if necessary.
+     * Only threads that find the master connection down wait for
+     * the reconnection.
+     */
+    private LdapBoundConnection getMasterConnection() throws ELdapException {
+
+        LdapBoundConnection masterConn = mMasterConn;
+        if (masterConn != null && masterConn.isConnected()) {
+            return masterConn;
+        }
+
+        synchronized (this) {
+            if (mMasterConn == null || !mMasterConn.isConnected()) {
+                try {
+                    makeConnection(true);
+                } catch (ELdapException e) {
+                    mMasterConn = null;
+                    throw new ELdapException("LdapBoundConnFactory: Unable to create master connection. " + e.getMessage(), e);
+                }
+            }
+            return mMasterConn;
+        }
+    }
+
     /**
      * makes subsequent connections if cloning is not used .
      *
@@ -285,38 +378,58 @@ public class LdapBoundConnFactory extends LdapConnFactory {
         return conn;
     }
 
+    /**
+     * Creates a connection, either by cloning the master connection
+     * or by connecting to the server.
+     */
+    private LdapBoundConnection createConnection() throws ELdapException {
+
+        LdapBoundConnection conn = null;
+
+        if (mMinConns > 0 && doCloning) {
+            LdapBoundConnection masterConn = getMasterConnection();
+            if (masterConn != null && masterConn.isConnected()) {
+                conn = (LdapBoundConnection) masterConn.clone();
+            }
+        }
+
+        if (conn == null) {
+            conn = makeNewConnection(true);
+        }
+
+        mCreated.increment();
+        return conn;
+    }
+
     /**
      * makes the minumum number of connections
      */
     private void makeMinimum() throws ELdapException {
         String method = "LdapBoundConnFactory.makeMinimum: ";
-        boolean cloning = false;
-        int realMin = Math.max(mMinConns, 1);
-        if (mMasterConn != null && mMasterConn.isConnected() && doCloning) {
-            logger.debug(method + "connections will be cloned from the master");
-            cloning = true;
-        } else {
-            logger.debug(method + "master conn not available.");
-        }
+        int realMin = Math.min(mMinConns, mMaxIdleConns);
 
-        int increment;
-        logger.debug(method + "begins: total connections: " + mTotal);
-        logger.debug(method + "begins: available connections: " + mNumConns);
+        logger.debug(method + "begins: total connections: " + totalConn());
+        logger.debug(method + "begins: available connections: " + freeConn());
 
-        if (mNumConns < realMin && mTotal <= mMaxConns) {
-            increment = Math.min(realMin - mNumConns, mMaxConns - mTotal);
-            logger.debug(method + "increasing minimum connections by " + increment);
+        while (mIdleCount.get() < realMin && totalConn() < mMaxConns) {
+            addIdleConnection(createConnection());
+        }
 
-            for (int i = increment - 1; i >= 0; i--) {
-                mConns[i] = cloning ? (LdapBoundConnection) mMasterConn.clone() : makeNewConnection(true);
-            }
+        logger.debug(method + "ends: total connections: " + totalConn());
+        logger.debug(method + "ends: number of connections: " + freeConn());
+    }
 
-            mTotal += increment;
-            mNumConns += increment;
+    private void addIdleConnection(LdapBoundConnection conn) {
+        mIdleCount.incrementAndGet();
+        mIdleConns.push(conn);
+    }
 
-            logger.debug(method + "ends: total connections: " + mTotal);
-            logger.debug(method + "ends: number of connections: " + mNumConns);
+    private LdapBoundConnection pollIdleConnection() {
+        LdapBoundConnection conn = mIdleConns.poll();
+        if (conn != null) {
+            mIdleCount.decrementAndGet();
         }
+        return conn;
     }
 
     /**
@@ -366,85 +479,82 @@ public class LdapBoundConnFactory extends LdapConnFactory {
      * }
      * </pre>
      */
-    public synchronized LdapBoundConnection getConn(boolean waitForConn)
+    public LdapBoundConnection getConn(boolean waitForConn)
             throws ELdapException {
-        LdapBoundConnection conn = null;
         String method = "LdapBoundConnFactory (" + id + ").getConn: ";
-        logger.debug(method + "initial values. Total: " + mTotal + ", pool: " + mNumConns);
+        logger.debug(method + "initial values. Total: " + totalConn() + ", pool: " + freeConn());
 
-        if (mMasterConn != null)
-            logger.debug(method + "master connection is connected: " + mMasterConn.isConnected());
-        else
-            logger.debug(method + "master connection is null");
-
-        if ((mMasterConn == null || !mMasterConn.isConnected()) && mMinConns > 0) {
-            try {
-                makeConnection(true);
-            } catch (ELdapException e) {
-                mMasterConn = null;
-                throw new ELdapException("LdapBoundConnFactory: Unable to create master connection. " + e.getMessage(), e);
-            }
-        }
-
-        if (mNumConns == 0) {
-            makeMinimum();
-        }
-
-
-        while (mNumConns == 0) {
+        if (!mPermits.tryAcquire()) {
+            mWaits.increment();
+            long startTime = System.currentTimeMillis();
             logger.warn("LdapBoundConnFactory: waiting connections for " + mConnInfo.getHost() + ":" + mConnInfo.getPort());
+
             if (!waitForConn) {
                 logger.warn("LdapBoundConnFactory: out of LDAP connections");
                 return null;
             }
+
+            boolean acquired;
             try {
-                wait();
+                if (mAcquireTimeout > 0) {
+                    acquired = mPermits.tryAcquire(mAcquireTimeout, TimeUnit.MILLISECONDS);
+                } else {
+                    mPermits.acquire();
+                    acquired = true;
+                }
             } catch (InterruptedException e) {
                 logger.warn("LdapBoundConnFactory: connection wait interrupted");
                 return null;
             }
-            if (mMinConns == 0) {
-                makeMinimum();
+
+            mWaitTime.add(System.currentTimeMillis() - startTime);
+
+            if (!acquired) {
+                mTimeouts.increment();
+                throw new ELdapException("Timed out waiting for LDAP connection to "
+                        + mConnInfo.getHost() + ":" + mConnInfo.getPort());
             }
         }
 
-        mNumConns--;
-        conn = mConns[mNumConns];
-        mConns[mNumConns] = null;
-        logger.debug("LdapBoundConnFactory: number of connections: " + mNumConns);
+        LdapBoundConnection conn;
+        try {
+            conn = pollIdleConnection();
 
+            while (conn != null && !conn.isConnected()) {
+                logger.debug("LdapBoundConnFactory: discarding disconnected connection");
+                conn = pollIdleConnection();
+            }
 
-        if (conn == null || !conn.isConnected()) {
-            logger.debug("LdapBoundConnFactory: reestablishing connection");
-            try {
-                if (mMinConns > 0 &&
-                        doCloning &&
-                        mMasterConn != null) {
-                    conn = (LdapBoundConnection) mMasterConn.clone();
-                } else {
-                    conn = makeNewConnection(true);
+            if (conn == null) {
+                logger.debug("LdapBoundConnFactory: creating connection");
+                try {
+                    conn = createConnection();
+                } catch (ELdapException e) {
+                    String message = "Unable to reestablish LDAP connection: " + e.getMessage();
+                    logger.error("LdapBoundConnFactory: " + message, e);
+                    throw new ELdapException(message, e);
                 }
-            } catch (ELdapException e) {
-                mTotal--;
-                String message = "Unable to reestablish LDAP connection: " + e.getMessage();
-                logger.error("LdapBoundConnFactory: " + message, e);
-                throw new ELdapException(message, e);
             }
-            logger.debug("LdapBoundConnFactory: connection reestablished");
-        }
-
 
+            try {
+                // Before returning the connection, set the SIZELIMIT option; this
+                // ensures that if the connection is recycled and the previous owner
+                // changed the SIZELIMIT option to a different value, the next owner
+                // always starts with the default.
+                conn.setOption(LDAPv3.SIZELIMIT, mMaxResults);
+            } catch (LDAPException e) {
+                throw new ELdapException("Unable to set LDAP size limit: " + e.getMessage(), e);
+            }
 
-        try {
-            // Before returning the connection, set the SIZELIMIT option; this
-            // ensures that if the connection is recycled and the previous owner
-            // changed the SIZELIMIT option to a different value, the next owner
-            // always starts with the default.
-            conn.setOption(LDAPv3.SIZELIMIT, mMaxResults);
-        } catch (LDAPException e) {
-            throw new ELdapException("Unable to set LDAP size limit: " + e.getMessage(), e);
+        } catch (ELdapException e) {
+            mPermits.release();
+            throw e;
         }
-        logger.debug(method + " final values. Total: " + mTotal + ", pool: " + mNumConns);
+
+        mBorrowedConns.add(conn);
+
+        mBorrows.increment();
+        logger.debug(method + " final values. Total: " + totalConn() + ", pool: " + freeConn());
         return conn;
     }
 
@@ -467,9 +577,9 @@ public class LdapBoundConnFactory extends LdapConnFactory {
      * </pre>
      */
     @Override
-    public synchronized void returnConn(LDAPConnection conn) {
+    public void returnConn(LDAPConnection conn) {
         String method = "LdapBoundConnFactory (" + id + ").returnConn: ";
-        logger.debug(method + "initial values. Total: " + mTotal + ", pool: " + mNumConns);
+        logger.debug(method + "initial values. Total: " + totalConn() + ", pool: " + freeConn());
 
         if (conn == null) {
             return;
@@ -494,30 +604,144 @@ public class LdapBoundConnFactory extends LdapConnFactory {
 
         }
 
-        for (int i = 0; i < mNumConns; i++) {
-            if (mConns[i] == conn) {
-                logger.warn("LdapBoundConnFactory: Connection already returned");
-                --mTotal;
-                notifyAll();
-                return;
-            }
+        if (!mBorrowedConns.remove(boundconn)) {
+            logger.warn("LdapBoundConnFactory: Connection already returned");
+            return;
         }
 
-        if (mNumConns < mMinConns) {
-            mConns[mNumConns++] = boundconn;
+        mPermits.release();
+
+        if (boundconn.isConnected() && mIdleCount.get() < mMaxIdleConns) {
+            addIdleConnection(boundconn);
         } else {
             try {
                 boundconn.disconnect();
             } catch(LDAPException e) {
                 logger.warn("LdapBoundConnFactory: Unable to disconnect: " + e.getMessage(), e);
             }
-            --mTotal;
         }
-        notifyAll();
-        logger.debug(method + " final values. Total: " + mTotal + ", pool: " + mNumConns);
+        logger.debug(method + " final values. Total: " + totalConn() + ", pool: " + freeConn());
 
     }
 
+    /**
+     * Returns the number of idle connections in this pool.
+     */
+    @Override
+    public int freeConn() {
+        return mIdleCount.get();
+    }
+
+    /**
+     * Returns the number of idle and borrowed connections.
+     */
+    @Override
+    public int totalConn() {
+        return mIdleCount.get() + mBorrowedConns.size();
+    }
+
+    private void startHealthCheck() {
+        healthCheckService = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "LdapBoundConnFactory-" + id);
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthCheckService.scheduleWithFixedDelay(
+                this::checkConnections,
+                mHealthCheckInterval,
+                mHealthCheckInterval,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Checks the idle connections with a root DSE read, drops broken
+     * and excess connections, reconnects the master connection, and
+     * restores the minimum number of idle connections.
+     */
+    public void checkConnections() {
+
+        logger.debug("LdapBoundConnFactory (" + id + "): checking connections");
+
+        int count = mIdleCount.get();
+        for (int i = 0; i < count; i++) {
+
+            LdapBoundConnection conn = pollIdleConnection();
+            if (conn == null) {
+                break;
+            }
+
+            boolean healthy = false;
+            if (conn.isConnected()) {
+                try {
+                    conn.read("", new String[] { "1.1" });
+                    healthy = true;
+                } catch (LDAPException e) {
+                    logger.warn("LdapBoundConnFactory: Idle connection failed health check: " + e.getMessage());
+                }
+            }
+
+            if (healthy && mIdleCount.get() < mMaxIdleConns) {
+                // put it back at the end so it is checked only once
+                mIdleCount.incrementAndGet();
+                mIdleConns.addLast(conn);
+                continue;
+            }
+
+            mDiscarded.increment();
+            try {
+                conn.disconnect();
+            } catch (LDAPException e) {
+                logger.debug("LdapBoundConnFactory: Unable to disconnect: " + e.getMessage());
+            }
+        }
+
+        try {
+            if (mMinConns > 0) {
+                getMasterConnection();
+                makeMinimum();
+            }
+        } catch (ELdapException e) {
+            logger.warn("LdapBoundConnFactory: Unable to restore connections: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void setStatsSubsystem(StatsSubsystem statsSubsystem) {
+
+        if (this.statsSubsystem != null) {
+            this.statsSubsystem.unregisterCounters(getStatsGroup());
+        }
+
+        super.setStatsSubsystem(statsSubsystem);
+
+        if (statsSubsystem != null) {
+            statsSubsystem.registerCounters(getStatsGroup(), this::getStats);
+        }
+    }
+
+    String getStatsGroup() {
+        return "ldap_pool (" + id + ")";
+    }
+
+    /**
+     * Returns the number of borrowed connections, borrows that had to
+     * wait for a connection, the total time waited in msec, timed out
+     * borrows, created and discarded connections, and the current number
+     * of idle and borrowed connections.
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("borrow", mBorrows.sum());
+        stats.put("wait", mWaits.sum());
+        stats.put("wait_time", mWaitTime.sum());
+        stats.put("timeout", mTimeouts.sum());
+        stats.put("created", mCreated.sum());
+        stats.put("discarded", mDiscarded.sum());
+        stats.put("idle", (long) mIdleCount.get());
+        stats.put("borrowed", (long) mBorrowedConns.size());
+        return stats;
+    }
+
     /**
      * used for disconnecting all connections and reset everything to 0
      * as if connections were never made. used just before a subsystem
@@ -528,14 +752,14 @@ public class LdapBoundConnFactory extends LdapConnFactory {
     public synchronized void reset()
             throws ELdapException {
         logger.debug("Destroying LdapBoundConnFactory(" + id + ")");
-        if (mNumConns == mTotal) {
-            for (int i = 0; i < mNumConns; i++) {
+        if (mBorrowedConns.isEmpty()) {
+            LdapBoundConnection conn;
+            while ((conn = pollIdleConnection()) != null) {
                 try {
-                    mConns[i].disconnect();
+                    conn.disconnect();
                 } catch (LDAPException e) {
                     logger.warn("LdapBoundConnFactory: Unable to disconnect: " + e.getMessage(), e);
                 }
-                mConns[i] = null;
             }
             if (mMasterConn != null) {
                 try {
@@ -547,9 +771,6 @@ public class LdapBoundConnFactory extends LdapConnFactory {
                 }
             }
             mMasterConn = null;
-            mTotal = 0;
-            mNumConns = 0;
-            mConns = new LdapBoundConnection[mMaxConns];
         } else {
             String message = "Unable to reset LDAP connection factory due to outstanding connections";
             logger.error("LdapBoundConnFactory: " + message);
@@ -565,11 +786,14 @@ public class LdapBoundConnFactory extends LdapConnFactory {
 
         logger.debug("Destroying LdapBoundConnFactory(" + id + ")");
 
-        for (int i = 0; i < mNumConns; i++) {
-            if (mConns[i] != null) {
-                mConns[i].close();
-                mConns[i] = null;
-            }
+        if (healthCheckService != null) {
+            healthCheckService.shutdownNow();
+            healthCheckService = null;
+        }
+
+        LdapBoundConnection conn;
+        while ((conn = pollIdleConnection()) != null) {
+            conn.close();
         }
 
         if (mMasterConn != null) {
@@ -578,9 +802,6 @@ public class LdapBoundConnFactory extends LdapConnFactory {
             mMasterConn = null;
         }
 
-        mTotal = 0;
-        mNumConns = 0;
-
         if (mAuthInfo != null) {
             mAuthInfo.reset();
         }
@@ -29,6 +29,10 @@ public class LoggerConfig extends ConfigStore {
     public static final String LAST_HASH_FILE_NAME = "lastHashFileName";
     public static final String BUFFER_SIZE = "bufferSize";
     public static final String FLUSH_INTERVAL = "flushInterval";
+    public static final String ASYNC = "async";
+    public static final String ASYNC_QUEUE_SIZE = "asyncQueueSize";
+    public static final String ASYNC_BATCH_SIZE = "asyncBatchSize";
+    public static final String ASYNC_FSYNC = "asyncFsync";
 
     /**
      * The default output stream buffer size in bytes
@@ -40,6 +44,17 @@ public class LoggerConfig extends ConfigStore {
      */
     public static final int DEFAULT_FLUSH_INTERVAL = 5;
 
+    /**
+     * The default number of events waiting for the async writer
+     */
+    public static final int DEFAULT_ASYNC_QUEUE_SIZE = 10000;
+
+    /**
+     * The default maximum number of events written by the async writer
+     * before the log is flushed
+     */
+    public static final int DEFAULT_ASYNC_BATCH_SIZE = 500;
+
     public LoggerConfig() {
     }
 
@@ -102,4 +117,29 @@ public class LoggerConfig extends ConfigStore {
     public int getFlushInterval() throws EBaseException {
         return getInteger(FLUSH_INTERVAL, DEFAULT_FLUSH_INTERVAL);
     }
+
+    /**
+     * Returns whether events are written by a background thread.
+     * Disabled by default. For signed audit logs each batch is signed
+     * and synced to disk by the writer thread.
+     */
+    public boolean getAsync() throws EBaseException {
+        return getBoolean(ASYNC, false);
+    }
+
+    public int getAsyncQueueSize() throws EBaseException {
+        return getInteger(ASYNC_QUEUE_SIZE, DEFAULT_ASYNC_QUEUE_SIZE);
+    }
+
+    public int getAsyncBatchSize() throws EBaseException {
+        return getInteger(ASYNC_BATCH_SIZE, DEFAULT_ASYNC_BATCH_SIZE);
+    }
+
+    /**
+     * Returns whether the async writer syncs the log file after each
+     * batch. Always enabled for signed audit logs.
+     */
+    public boolean getAsyncFsync() throws EBaseException {
+        return getBoolean(ASYNC_FSYNC, true);
+    }
 }
@@ -0,0 +1,191 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.request;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.dbs.EDBException;
+import com.netscape.certsrv.dbs.IDBObj;
+import com.netscape.cmscore.apps.CMS;
+
+import netscape.ldap.LDAPAttribute;
+import netscape.ldap.LDAPAttributeSet;
+
+/**
+ * Maps the extData Hashtable in RequestRecord to a single binary
+ * attribute encoded with ExtDataEncoder instead of one extdata-
+ * attribute per key.
+ *
+ * The configured indexed keys are also written as extdata- attributes
+ * so that searches on them keep working.
+ *
+ * Entries without the binary attribute are read with ExtAttrDynMapper.
+ * The names of their extdata- attributes are kept in the record so the
+ * next update of the request can remove them, which migrates the entry
+ * to the compact format.
+ */
+public class CompactExtAttrMapper extends ExtAttrDynMapper {
+
+    protected final static Vector<String> mCompactAttrs = new Vector<>();
+
+    static {
+        mCompactAttrs.add(Schema.LDAP_ATTR_EXT_ATTR);
+        mCompactAttrs.add(Schema.LDAP_ATTR_EXT_DATA_BLOB);
+    }
+
+    private Set<String> indexedKeys = new HashSet<>();
+
+    public CompactExtAttrMapper(Collection<String> indexedKeys) {
+        for (String key : indexedKeys) {
+            // extData keys are stored in lower case
+            this.indexedKeys.add(key.trim().toLowerCase());
+        }
+    }
+
+    @Override
+    public Enumeration<String> getSupportedLDAPAttributeNames() {
+        return mCompactAttrs.elements();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void mapObjectToLDAPAttributeSet(
+            IDBObj parent,
+            String name,
+            Object obj,
+            LDAPAttributeSet attrs)
+            throws EBaseException {
+
+        if (obj == null) {
+            throw new EBaseException(CMS.getUserMessage("CMS_DBS_SERIALIZE_FAILED", name));
+        }
+
+        if (RequestRecord.ATTR_LEGACY_EXT_DATA.equals(name)) {
+            // attributes without values remove the legacy attributes
+            for (String attrName : (Collection<String>) obj) {
+                logger.debug("CompactExtAttrMapper: Removing " + attrName);
+                attrs.add(new LDAPAttribute(attrName));
+            }
+            return;
+        }
+
+        Hashtable<String, Object> ht = (Hashtable<String, Object>) obj;
+        Hashtable<String, Object> data = new Hashtable<>();
+        Hashtable<String, Object> indexed = new Hashtable<>();
+
+        for (Map.Entry<String, Object> entry : ht.entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+
+            // same as ExtAttrDynMapper, empty values are not stored
+            if (value instanceof String) {
+                String stringValue = ((String) value).trim();
+                if ("".equals(stringValue)) continue;
+                value = stringValue;
+
+            } else if (value instanceof Hashtable) {
+                Hashtable<String, String> table = new Hashtable<>();
+                for (Map.Entry<String, String> e : ((Hashtable<String, String>) value).entrySet()) {
+                    String innerValue = e.getValue().trim();
+                    if ("".equals(innerValue)) continue;
+                    table.put(e.getKey(), innerValue);
+                }
+                if (table.isEmpty()) continue;
+                value = table;
+
+            } else {
+                continue;
+            }
+
+            data.put(key, value);
+
+            if (indexedKeys.contains(key.toLowerCase())) {
+                indexed.put(key, value);
+            }
+        }
+
+        try {
+            byte[] bytes = ExtDataEncoder.encode(data);
+            logger.debug("CompactExtAttrMapper: Mapping " + name + " to " + Schema.LDAP_ATTR_EXT_DATA_BLOB
+                    + " (" + bytes.length + " bytes)");
+            attrs.add(new LDAPAttribute(Schema.LDAP_ATTR_EXT_DATA_BLOB, bytes));
+
+        } catch (IOException e) {
+            throw new EDBException(CMS.getUserMessage("CMS_DBS_SERIALIZE_FAILED", name), e);
+        }
+
+        super.mapObjectToLDAPAttributeSet(parent, name, indexed, attrs);
+    }
+
+    @Override
+    public void mapLDAPAttributeSetToObject(
+            LDAPAttributeSet attrs,
+            String name,
+            IDBObj parent)
+            throws EBaseException {
+
+        LDAPAttribute attr = attrs.getAttribute(Schema.LDAP_ATTR_EXT_DATA_BLOB);
+
+        if (attr == null) {
+            // entry in legacy format, migrated on the next update
+            super.mapLDAPAttributeSetToObject(attrs, name, parent);
+
+            if (parent instanceof RequestRecord) {
+                ((RequestRecord) parent).mLegacyExtDataAttrs = getLegacyAttributes(attrs);
+            }
+            return;
+        }
+
+        try {
+            byte[] bytes = attr.getByteValues().nextElement();
+            parent.set(name, ExtDataEncoder.decode(bytes));
+
+        } catch (IOException e) {
+            if (parent instanceof RequestRecord) {
+                logger.error("CompactExtAttrMapper: Unable to decode extData in request "
+                        + ((RequestRecord) parent).getRequestId() + ": " + e.getMessage(), e);
+            }
+            throw new EDBException(CMS.getUserMessage("CMS_DBS_DESERIALIZE_FAILED", name), e);
+        }
+    }
+
+    /**
+     * Returns the extdata- attributes that will no longer be needed
+     * once the entry is stored in the compact format.
+     */
+    Set<String> getLegacyAttributes(LDAPAttributeSet attrs) {
+
+        Set<String> names = new LinkedHashSet<>();
+
+        Enumeration<LDAPAttribute> e = attrs.getAttributes();
+        while (e.hasMoreElements()) {
+            LDAPAttribute attr = e.nextElement();
+            String baseName = attr.getBaseName();
+
+            if (!baseName.toLowerCase().startsWith(extAttrPrefix)) {
+                continue;
+            }
+
+            String key = decodeKey(baseName.substring(extAttrPrefix.length()));
+            if (indexedKeys.contains(key.toLowerCase())) {
+                continue;
+            }
+
+            names.add(attr.getName());
+        }
+
+        return names.isEmpty() ? null : names;
+    }
+}
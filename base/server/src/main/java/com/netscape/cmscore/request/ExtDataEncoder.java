@@ -0,0 +1,180 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.request;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Hashtable;
+import java.util.Map;
+
+/**
+ * Encodes the extData Hashtable of a request into a compact binary form
+ * stored in a single LDAP attribute.
+ *
+ * The encoding starts with a version byte followed by the number of
+ * entries. Each entry consists of a type byte, the key, and either a
+ * string value or the number of entries of a nested table followed by
+ * its keys and values. Strings are stored as UTF-8 bytes prefixed with
+ * their length, and all lengths and counts are unsigned varints.
+ *
+ * Decoders must reject versions they do not know, so the format can be
+ * extended by increasing the version.
+ */
+public class ExtDataEncoder {
+
+    public static final int VERSION = 1;
+
+    public static final int TYPE_STRING = 1;
+    public static final int TYPE_HASHTABLE = 2;
+
+    /**
+     * Encodes extData whose values are Strings or Hashtables of Strings.
+     */
+    public static byte[] encode(Map<String, Object> data) throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+
+        out.write(VERSION);
+        writeVarInt(out, data.size());
+
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+
+            Object value = entry.getValue();
+
+            if (value instanceof String) {
+                out.write(TYPE_STRING);
+                writeString(out, entry.getKey());
+                writeString(out, (String) value);
+
+            } else if (value instanceof Hashtable) {
+                @SuppressWarnings("unchecked")
+                Map<String, String> table = (Map<String, String>) value;
+
+                out.write(TYPE_HASHTABLE);
+                writeString(out, entry.getKey());
+                writeVarInt(out, table.size());
+
+                for (Map.Entry<String, String> e : table.entrySet()) {
+                    writeString(out, e.getKey());
+                    writeString(out, e.getValue());
+                }
+
+            } else {
+                throw new IOException("Unsupported value for " + entry.getKey() + ": "
+                        + (value == null ? null : value.getClass().getName()));
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes extData encoded by encode().
+     */
+    public static Hashtable<String, Object> decode(byte[] data) throws IOException {
+
+        Reader in = new Reader(data);
+
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported extData encoding version: " + version);
+        }
+
+        int size = in.readVarInt();
+        Hashtable<String, Object> ht = new Hashtable<>(size * 4 / 3 + 1);
+
+        for (int i = 0; i < size; i++) {
+
+            int type = in.readByte();
+            String key = in.readString();
+
+            if (type == TYPE_STRING) {
+                ht.put(key, in.readString());
+
+            } else if (type == TYPE_HASHTABLE) {
+                int tableSize = in.readVarInt();
+                Hashtable<String, String> table = new Hashtable<>(tableSize * 4 / 3 + 1);
+
+                for (int j = 0; j < tableSize; j++) {
+                    String k = in.readString();
+                    table.put(k, in.readString());
+                }
+
+                ht.put(key, table);
+
+            } else {
+                throw new IOException("Unsupported extData entry type for " + key + ": " + type);
+            }
+        }
+
+        if (in.remaining() > 0) {
+            throw new IOException("Unexpected data after extData entries: " + in.remaining() + " bytes");
+        }
+
+        return ht;
+    }
+
+    static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    static class Reader {
+
+        byte[] data;
+        int pos;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        int remaining() {
+            return data.length - pos;
+        }
+
+        int readByte() throws IOException {
+            if (pos >= data.length) {
+                throw new IOException("Truncated extData encoding");
+            }
+            return data[pos++] & 0xff;
+        }
+
+        int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    if (value < 0) {
+                        throw new IOException("Invalid length in extData encoding");
+                    }
+                    return value;
+                }
+            }
+            throw new IOException("Invalid varint in extData encoding");
+        }
+
+        String readString() throws IOException {
+            int length = readVarInt();
+            if (length > remaining()) {
+                throw new IOException("Truncated extData encoding");
+            }
+            String value = new String(data, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+    }
+}
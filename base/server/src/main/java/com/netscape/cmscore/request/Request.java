@@ -374,6 +374,13 @@ public class Request {
     Date mCreationTime = new Date();
     Date mModificationTime = new Date();
 
+    // extdata- attributes to remove on the next update, see CompactExtAttrMapper
+    Set<String> mLegacyExtDataAttrs;
+
+    // values last read from or written to the database, used to write
+    // only the changed attributes on the next update with write behind
+    RequestRecord mStoredRecord;
+
     public Request(RequestId id) {
         mRequestId = id;
         setRequestStatus(RequestStatus.BEGIN);
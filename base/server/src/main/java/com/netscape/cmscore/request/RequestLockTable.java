@@ -0,0 +1,188 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.request;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.request.RequestId;
+import com.netscape.cmscore.util.StatsSubsystem;
+
+/**
+ * Table of per-request locks.
+ *
+ * Each locked request has its own reentrant lock, so operations on
+ * different requests never wait for each other. An entry exists only
+ * while the request is locked or waited for, so the table stays as
+ * small as the number of requests in progress.
+ *
+ * An uncontended lock is acquired without waiting. A contended lock is
+ * waited for up to the lock timeout, and the number of contended locks,
+ * timeouts, and the time spent waiting are counted and recorded in the
+ * stats subsystem.
+ */
+public class RequestLockTable {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RequestLockTable.class);
+
+    public static final String STATS_ID = "request_lock";
+
+    public static final long DEFAULT_TIMEOUT = 30 * 1000;
+
+    private ConcurrentHashMap<RequestId, LockEntry> locks = new ConcurrentHashMap<>();
+
+    private long timeout = DEFAULT_TIMEOUT;
+
+    private LongAdder lockCount = new LongAdder();
+    private LongAdder contendedCount = new LongAdder();
+    private LongAdder timeoutCount = new LongAdder();
+    private LongAdder waitTime = new LongAdder();
+
+    private StatsSubsystem statsSubsystem;
+
+    /**
+     * Returns the lock timeout in msec.
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    public StatsSubsystem getStatsSubsystem() {
+        return statsSubsystem;
+    }
+
+    public void setStatsSubsystem(StatsSubsystem statsSubsystem) {
+        this.statsSubsystem = statsSubsystem;
+    }
+
+    /**
+     * Locks a request. The lock is reentrant, each call must be
+     * followed by a call to unlock() in the same thread.
+     *
+     * @exception EBaseException the lock could not be acquired
+     *            within the lock timeout
+     */
+    public void lock(RequestId id) throws EBaseException {
+
+        LockEntry entry = locks.compute(id, (key, value) -> {
+            if (value == null) {
+                value = new LockEntry();
+            }
+            value.users++;
+            return value;
+        });
+
+        lockCount.increment();
+
+        if (entry.lock.tryLock()) {
+            return;
+        }
+
+        contendedCount.increment();
+        logger.debug("RequestLockTable: Waiting for request " + id);
+
+        long start = System.currentTimeMillis();
+        boolean locked = false;
+
+        try {
+            locked = entry.lock.tryLock(timeout, TimeUnit.MILLISECONDS);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+        } finally {
+            long time = System.currentTimeMillis() - start;
+            waitTime.add(time);
+            recordEvent(locked ? "contended" : "timeout", time);
+        }
+
+        if (!locked) {
+            release(id);
+            timeoutCount.increment();
+            throw new EBaseException("Unable to lock request " + id + " within " + timeout + " ms");
+        }
+    }
+
+    /**
+     * Unlocks a request locked by the current thread.
+     */
+    public void unlock(RequestId id) {
+
+        LockEntry entry = locks.get(id);
+
+        if (entry == null || !entry.lock.isHeldByCurrentThread()) {
+            logger.warn("RequestLockTable: Request " + id + " is not locked by this thread");
+            return;
+        }
+
+        entry.lock.unlock();
+        release(id);
+    }
+
+    private void release(RequestId id) {
+        locks.computeIfPresent(id, (key, value) -> --value.users == 0 ? null : value);
+    }
+
+    /**
+     * Returns true if the request is locked by any thread.
+     */
+    public boolean isLocked(RequestId id) {
+        LockEntry entry = locks.get(id);
+        return entry != null && entry.lock.isLocked();
+    }
+
+    /**
+     * Returns true if the request is locked by the current thread.
+     */
+    public boolean isHeldByCurrentThread(RequestId id) {
+        LockEntry entry = locks.get(id);
+        return entry != null && entry.lock.isHeldByCurrentThread();
+    }
+
+    public int size() {
+        return locks.size();
+    }
+
+    public long getLockCount() {
+        return lockCount.sum();
+    }
+
+    public long getContendedCount() {
+        return contendedCount.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    /**
+     * Returns the total time spent waiting for contended locks in msec.
+     */
+    public long getWaitTime() {
+        return waitTime.sum();
+    }
+
+    private void recordEvent(String id, long timeTaken) {
+        if (statsSubsystem != null) {
+            statsSubsystem.recordEvent(STATS_ID, id, timeTaken);
+        }
+    }
+
+    static class LockEntry {
+
+        ReentrantLock lock = new ReentrantLock();
+
+        // threads holding or waiting for the lock, guarded by the map
+        int users;
+    }
+}
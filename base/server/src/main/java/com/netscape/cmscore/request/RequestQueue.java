@@ -51,7 +51,10 @@ import com.netscape.cmscore.dbs.DBSubsystem;
  * setting fields in the request object. These functions are
  * provided for saving and restoring the state in the database.
  *
- * This class also implements the locking operations.
+ * This class also implements the locking operations. Operations that
+ * change the state of a request lock the request in a RequestLockTable,
+ * so concurrent operations on the same request are serialized while
+ * operations on different requests run in parallel.
  *
  * @author thayes
  * @version $Revision$ $Date$
@@ -65,7 +68,7 @@ public class RequestQueue {
      */
     public final static String REQUEST_VERSION = "1.0.0";
 
-    // RequestIDTable mTable = new RequestIDTable();
+    RequestLockTable mLockTable = new RequestLockTable();
 
     IPolicy mPolicy;
     IService mService;
@@ -128,6 +131,15 @@ public class RequestQueue {
         mRequestScheduler = scheduler;
     }
 
+    /**
+     * Gets the table of request locks.
+     *
+     * @return request lock table
+     */
+    public RequestLockTable getLockTable() {
+        return mLockTable;
+    }
+
     /**
      * Clones a request object. A new request id is assigned
      * and all attributes of the request is copied to cloned request,
@@ -204,7 +216,7 @@ public class RequestQueue {
                 }
             } else if (rs == RequestStatus.PENDING) {
                 if (mPendingNotify != null)
-                    mPendingNotify.notify(r);
+                    notifyListeners(mPendingNotify, r);
 
                 complete = true;
             } else if (rs == RequestStatus.APPROVED) {
@@ -225,23 +237,33 @@ public class RequestQueue {
                 complete = true;
             } else if (rs == RequestStatus.CANCELED) {
                 if (mNotify != null)
-                    mNotify.notify(r);
+                    notifyListeners(mNotify, r);
 
                 complete = true;
             } else if (rs == RequestStatus.REJECTED) {
                 if (mNotify != null)
-                    mNotify.notify(r);
+                    notifyListeners(mNotify, r);
 
                 complete = true;
             } else if (rs == RequestStatus.COMPLETE) {
                 if (mNotify != null)
-                    mNotify.notify(r);
+                    notifyListeners(mNotify, r);
 
                 complete = true;
             }
         }
     }
 
+    /**
+     * Notifies the listeners about a request. Deferred updates of the
+     * request are written first since listeners might read the request
+     * from the database.
+     */
+    protected void notifyListeners(RequestNotifier notifier, Request r) throws EBaseException {
+        requestRepository.flushRequest(r);
+        notifier.notify(r);
+    }
+
     /**
      * Puts a new request into the PENDING state. This call is
      * only valid for requests with status BEGIN. An error is
@@ -267,10 +289,17 @@ public class RequestQueue {
         // request PENDING does NOT invoke the PENDING notifiers.
         // To change this, just call stateEngine at the completion
         // of this routine.
-        request.setRequestStatus(RequestStatus.PENDING);
+        mLockTable.lock(request.getRequestId());
 
-        requestRepository.updateRequest(request);
-        stateEngine(request);
+        try {
+            request.setRequestStatus(RequestStatus.PENDING);
+
+            requestRepository.updateRequest(request);
+            stateEngine(request);
+
+        } finally {
+            mLockTable.unlock(request.getRequestId());
+        }
     }
 
     /**
@@ -305,10 +334,17 @@ public class RequestQueue {
      */
     public void cancelRequest(Request request) throws EBaseException {
 
-        request.setRequestStatus(RequestStatus.CANCELED);
+        mLockTable.lock(request.getRequestId());
 
-        requestRepository.updateRequest(request);
-        stateEngine(request);
+        try {
+            request.setRequestStatus(RequestStatus.CANCELED);
+
+            requestRepository.updateRequest(request);
+            stateEngine(request);
+
+        } finally {
+            mLockTable.unlock(request.getRequestId());
+        }
     }
 
     /**
@@ -330,10 +366,25 @@ public class RequestQueue {
             throw new EBaseException("Invalid request status: " + rs);
         }
 
-        request.setRequestStatus(RequestStatus.REJECTED);
-        requestRepository.updateRequest(request);
+        // a caller that already holds the lock has read the request
+        // under the lock, so its status is current
+        boolean locked = mLockTable.isHeldByCurrentThread(request.getRequestId());
+
+        mLockTable.lock(request.getRequestId());
+
+        try {
+            if (!locked) {
+                checkPending(request);
+            }
+
+            request.setRequestStatus(RequestStatus.REJECTED);
+            requestRepository.updateRequest(request);
 
-        stateEngine(request); // does nothing
+            stateEngine(request); // does nothing
+
+        } finally {
+            mLockTable.unlock(request.getRequestId());
+        }
     }
 
     /**
@@ -362,6 +413,35 @@ public class RequestQueue {
             throw new EBaseException("Invalid request status: " + rs);
         }
 
+        // a caller that already holds the lock has read the request
+        // under the lock, so its status is current
+        boolean locked = mLockTable.isHeldByCurrentThread(request.getRequestId());
+
+        mLockTable.lock(request.getRequestId());
+
+        try {
+            if (!locked) {
+                checkPending(request);
+            }
+
+            requestRepository.beginUpdates();
+            Throwable failure = null;
+            try {
+                approve(request);
+            } catch (Throwable e) {
+                failure = e;
+                throw e;
+            } finally {
+                requestRepository.commitUpdates(failure);
+            }
+
+        } finally {
+            mLockTable.unlock(request.getRequestId());
+        }
+    }
+
+    private void approve(Request request) throws EBaseException {
+
         Vector<String> list = request.getExtDataInStringVector(AgentApprovals.class.getName());
         AgentApprovals aas = AgentApprovals.fromStringVector(list);
 
@@ -401,12 +481,38 @@ public class RequestQueue {
      */
     public void markAsServiced(Request request) throws EBaseException {
 
-        request.setRequestStatus(RequestStatus.COMPLETE);
+        mLockTable.lock(request.getRequestId());
 
-        requestRepository.updateRequest(request);
+        try {
+            request.setRequestStatus(RequestStatus.COMPLETE);
+
+            requestRepository.updateRequest(request);
+
+            if (mNotify != null) {
+                notifyListeners(mNotify, request);
+            }
+
+        } finally {
+            mLockTable.unlock(request.getRequestId());
+        }
+    }
+
+    /**
+     * Verifies that a pending request has not been processed by another
+     * agent since it was read. Must be called with the request locked.
+     *
+     * The request object was read before the lock was taken, so only the
+     * stored status is authoritative. This costs one lookup by DN per
+     * agent approval or rejection, which are not on the enrollment path.
+     * Callers that read the request while holding the lock skip it.
+     */
+    protected void checkPending(Request request) throws EBaseException {
+
+        Request current = requestRepository.readRequest(request.getRequestId());
 
-        if (mNotify != null) {
-            mNotify.notify(request);
+        if (current != null && current.getRequestStatus() != RequestStatus.PENDING) {
+            throw new EBaseException("Request " + request.getRequestId()
+                    + " has already been processed: " + current.getRequestStatus());
         }
     }
 
@@ -532,7 +638,23 @@ public class RequestQueue {
                 throw new EBaseException("Invalid Status");
             }
 
-            stateEngine(r);
+            mLockTable.lock(r.getRequestId());
+
+            try {
+                requestRepository.beginUpdates();
+                Throwable failure = null;
+                try {
+                    stateEngine(r);
+                } catch (Throwable e) {
+                    failure = e;
+                    throw e;
+                } finally {
+                    requestRepository.commitUpdates(failure);
+                }
+
+            } finally {
+                mLockTable.unlock(r.getRequestId());
+            }
 
         } finally {
             if (scheduler != null) {
@@ -565,36 +687,6 @@ public class RequestQueue {
      * @param request request
      */
     public final void releaseRequest(Request request) {
-        // mTable.unlock(request.getRequestId());
-    }
-}
-
-//
-// Table of RequestId values that are currently in use by some thread.
-// The fact that the request is in this table constitutes a lock
-// on the value.
-//
-/*
-class RequestIDTable {
-
-    // instance variables
-    Hashtable mHashtable = new Hashtable();
-
-    public synchronized void lock(RequestId id) {
-        while (true) {
-            if (mHashtable.put(id, id) == null)
-                break;
-
-            try {
-                wait();
-            } catch (InterruptedException e) {
-            };
-        }
-    }
-
-    public synchronized void unlock(RequestId id) {
-        mHashtable.remove(id);
-        notifyAll();
+        // requests are locked only for the duration of each operation
     }
 }
-*/
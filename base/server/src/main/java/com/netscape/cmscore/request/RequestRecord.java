@@ -17,9 +17,12 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.request;
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.Vector;
 
@@ -32,6 +35,7 @@ import com.netscape.certsrv.dbs.Modification;
 import com.netscape.certsrv.dbs.ModificationSet;
 import com.netscape.certsrv.request.RequestId;
 import com.netscape.certsrv.request.RequestStatus;
+import com.netscape.cmscore.apps.DatabaseConfig;
 import com.netscape.cmscore.dbs.DBRecord;
 import com.netscape.cmscore.dbs.DBRegistry;
 import com.netscape.cmscore.dbs.DBSubsystem;
@@ -60,6 +64,10 @@ public class RequestRecord extends DBRecord {
     // and the RequestRecord.
     public final static String ATTR_EXT_DATA = "requestExtData";
 
+    // Placeholder for extdata- attributes to be removed when a request
+    // read from a legacy entry is stored in the compact format.
+    public final static String ATTR_LEGACY_EXT_DATA = "requestLegacyExtData";
+
     public final static String ATTR_REALM = "realm";
 
     RequestId mRequestId;
@@ -72,6 +80,9 @@ public class RequestRecord extends DBRecord {
     Hashtable<String, Object> mExtData;
     String realm;
 
+    // extdata- attributes of a legacy entry, set by CompactExtAttrMapper
+    Set<String> mLegacyExtDataAttrs;
+
     /**
      * Gets the request ID.
      *
@@ -236,6 +247,7 @@ public class RequestRecord extends DBRecord {
         r.setCreationTime(mCreateTime);
         r.setRealm(realm);
         storeExtDataIntoRequest(r);
+        r.mLegacyExtDataAttrs = mLegacyExtDataAttrs;
 
         for (int i = 0; i < mRequestA.length; i++) {
             mRequestA[i].read(r, this);
@@ -254,6 +266,11 @@ public class RequestRecord extends DBRecord {
         mods.add(ATTR_MODIFY_TIME, Modification.MOD_REPLACE, r.getModificationTime());
         mods.add(ATTR_EXT_DATA, Modification.MOD_REPLACE, loadExtDataFromRequest(r, excludedLdapAttrs));
 
+        if (r.mLegacyExtDataAttrs != null) {
+            // migrate the entry to the compact format
+            mods.add(ATTR_LEGACY_EXT_DATA, Modification.MOD_DELETE, r.mLegacyExtDataAttrs);
+        }
+
         // TODO(alee) - realm cannot be changed once set.  Can the code be refactored to eliminate
         // the next few lines?
         if (r.getRealm() != null) {
@@ -265,6 +282,85 @@ public class RequestRecord extends DBRecord {
         }
     }
 
+    /**
+     * Adds modifications for the attributes of the current record that
+     * differ from the stored record. The modify time is always replaced.
+     *
+     * If fullExtData is false only the changed extData keys are replaced,
+     * and keys removed from the request are left in the entry like in
+     * mod(). Otherwise the whole extData is replaced if any key has been
+     * changed or removed.
+     */
+    static void mod(
+            ModificationSet mods,
+            Request r,
+            RequestRecord current,
+            RequestRecord stored,
+            boolean fullExtData) throws EBaseException {
+
+        if (!Objects.equals(current.mRequestState, stored.mRequestState)) {
+            mods.add(ATTR_REQUEST_STATE, Modification.MOD_REPLACE, current.mRequestState);
+        }
+
+        if (!Objects.equals(current.mSourceId, stored.mSourceId)) {
+            mods.add(ATTR_SOURCE_ID, Modification.MOD_REPLACE, current.mSourceId);
+        }
+
+        if (!Objects.equals(current.mOwner, stored.mOwner)) {
+            mods.add(ATTR_REQUEST_OWNER, Modification.MOD_REPLACE, current.mOwner);
+        }
+
+        mods.add(ATTR_MODIFY_TIME, Modification.MOD_REPLACE, current.mModifyTime);
+
+        Hashtable<String, Object> storedExtData = stored.mExtData;
+        if (!(storedExtData instanceof ExtDataHashtable)) {
+            // keys read from the database might not be in lower case
+            storedExtData = new ExtDataHashtable<>(storedExtData);
+        }
+
+        Hashtable<String, Object> changes = new Hashtable<>();
+        for (Map.Entry<String, Object> entry : current.mExtData.entrySet()) {
+            if (!entry.getValue().equals(storedExtData.get(entry.getKey()))) {
+                changes.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        boolean removed = false;
+        if (fullExtData) {
+            for (String key : storedExtData.keySet()) {
+                if (!current.mExtData.containsKey(key)) {
+                    removed = true;
+                    break;
+                }
+            }
+        }
+
+        if (!changes.isEmpty() || removed) {
+            logger.debug("RequestRecord: Changed extData keys in request " + current.mRequestId
+                    + ": " + changes.keySet());
+            mods.add(ATTR_EXT_DATA, Modification.MOD_REPLACE, fullExtData ? current.mExtData : changes);
+        }
+
+        if (r.mLegacyExtDataAttrs != null) {
+            // migrate the entry to the compact format
+            if (changes.isEmpty() && !removed) {
+                mods.add(ATTR_EXT_DATA, Modification.MOD_REPLACE, current.mExtData);
+            }
+            mods.add(ATTR_LEGACY_EXT_DATA, Modification.MOD_DELETE, r.mLegacyExtDataAttrs);
+        }
+
+        if (current.realm != null && !current.realm.equals(stored.realm)) {
+            mods.add(ATTR_REALM, Modification.MOD_REPLACE, current.realm);
+        }
+
+        for (int i = 0; i < mRequestA.length; i++) {
+            RequestAttr ra = mRequestA[i];
+            if (!Objects.equals(ra.get(current), ra.get(stored))) {
+                ra.mod(mods, r);
+            }
+        }
+    }
+
     static void register(DBSubsystem dbSubsystem)
             throws EDBException {
         DBRegistry reg = dbSubsystem.getRegistry();
@@ -278,16 +374,62 @@ public class RequestRecord extends DBRecord {
         reg.registerAttribute(ATTR_SOURCE_ID, new StringMapper(Schema.LDAP_ATTR_SOURCE_ID));
         reg.registerAttribute(ATTR_REQUEST_OWNER, new StringMapper(Schema.LDAP_ATTR_REQUEST_OWNER));
         reg.registerAttribute(ATTR_REALM, new StringMapper(Schema.LDAP_ATTR_REALM));
-        ExtAttrDynMapper extAttrMapper = new ExtAttrDynMapper();
+        ExtAttrDynMapper extAttrMapper = createExtAttrMapper(dbSubsystem);
         reg.registerAttribute(ATTR_EXT_DATA, extAttrMapper);
         reg.registerDynamicMapper(extAttrMapper);
 
+        if (extAttrMapper instanceof CompactExtAttrMapper) {
+            reg.registerAttribute(ATTR_LEGACY_EXT_DATA, extAttrMapper);
+        }
+
         for (int i = 0; i < mRequestA.length; i++) {
             RequestAttr ra = mRequestA[i];
             reg.registerAttribute(ra.mAttrName, ra.mMapper);
         }
     }
 
+    static ExtAttrDynMapper createExtAttrMapper(DBSubsystem dbSubsystem) throws EDBException {
+
+        DatabaseConfig dbConfig = dbSubsystem.getDBConfigStore();
+        if (dbConfig == null) {
+            return new ExtAttrDynMapper();
+        }
+
+        try {
+            String format = dbConfig.getRequestExtDataFormat();
+            logger.info("RequestRecord: extData format: " + format);
+
+            if ("legacy".equals(format)) {
+                return new ExtAttrDynMapper();
+            }
+
+            if (!"compact".equals(format)) {
+                throw new EDBException("Unsupported request extData format: " + format);
+            }
+
+            String indexedKeys = dbConfig.getRequestExtDataIndexedKeys();
+            logger.info("RequestRecord: extData indexed keys: " + indexedKeys);
+
+            return new CompactExtAttrMapper(
+                    indexedKeys.isEmpty() ? Set.of() : Arrays.asList(indexedKeys.split(",")));
+
+        } catch (EDBException e) {
+            throw e;
+
+        } catch (EBaseException e) {
+            throw new EDBException("Unable to configure request extData format: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns true if extData is stored in the compact format, i.e.
+     * createExtAttrMapper() returns a CompactExtAttrMapper.
+     */
+    static boolean isCompactExtData(DBSubsystem dbSubsystem) throws EBaseException {
+        DatabaseConfig dbConfig = dbSubsystem.getDBConfigStore();
+        return dbConfig != null && "compact".equals(dbConfig.getRequestExtDataFormat());
+    }
+
     protected static final String mOC[] =
         { Schema.LDAP_OC_TOP, Schema.LDAP_OC_REQUEST, Schema.LDAP_OC_EXTENSIBLE };
 
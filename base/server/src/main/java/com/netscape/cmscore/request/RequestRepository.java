@@ -23,6 +23,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 import com.netscape.certsrv.base.EBaseException;
@@ -62,6 +64,12 @@ public class RequestRepository extends Repository {
 
     protected String filter;
 
+    protected boolean compactExtData;
+    protected boolean writeBehind;
+
+    // requests updated in the current operation of each thread
+    private ThreadLocal<PendingUpdates> pendingUpdates = new ThreadLocal<>();
+
     /**
      * Create a request repository that uses the LDAP database
      * <p>
@@ -104,6 +112,11 @@ public class RequestRepository extends Repository {
             initLegacyGenerator();
         }
 
+        compactExtData = RequestRecord.isCompactExtData(dbSubsystem);
+
+        writeBehind = dbConfig.getRequestWriteBehind();
+        logger.debug("RequestRepository: - write behind: " + writeBehind);
+
         // Let RequestRecord class register its
         // database mapping and object mapping values
         RequestRecord.register(dbSubsystem);
@@ -163,6 +176,8 @@ public class RequestRepository extends Repository {
 
         this.repositoryConfig = repositoryConfig;
 
+        compactExtData = RequestRecord.isCompactExtData(dbSubsystem);
+
         // Let RequestRecord class register its
         // database mapping and object mapping values
         RequestRecord.register(dbSubsystem);
@@ -215,6 +230,10 @@ public class RequestRepository extends Repository {
             String dn = "cn=" + requestRecord.mRequestId + "," + mBaseDN;
             dbs.add(dn, requestRecord);
 
+            if (writeBehind) {
+                request.mStoredRecord = requestRecord;
+            }
+
         } catch (EBaseException e) {
             logger.error("RequestRepository: " + e.getMessage(), e);
             throw e;
@@ -226,6 +245,15 @@ public class RequestRepository extends Repository {
 
     public Request readRequest(RequestId id) throws EBaseException {
 
+        // make updates deferred by this thread visible
+        PendingUpdates updates = pendingUpdates.get();
+        if (updates != null) {
+            Request request = updates.requests.remove(id);
+            if (request != null) {
+                modifyRequest(request);
+            }
+        }
+
         String name = "cn=" + id + "," + mBaseDN;
 
         DBSSession dbs = dbSubsystem.createSession();
@@ -241,7 +269,13 @@ public class RequestRepository extends Repository {
             dbs.close();
         }
 
-        return record.toRequest();
+        Request request = record.toRequest();
+
+        if (writeBehind) {
+            request.mStoredRecord = record;
+        }
+
+        return request;
     }
 
     public String getUserIdentity() {
@@ -280,7 +314,20 @@ public class RequestRepository extends Repository {
 
         String dbStatus = request.getExtDataInString("dbStatus");
         if (dbStatus.equals("UPDATED")) {
-            modifyRequest(request);
+
+            PendingUpdates updates = pendingUpdates.get();
+            if (updates == null) {
+                modifyRequest(request);
+                return;
+            }
+
+            Request pending = updates.requests.put(request.getRequestId(), request);
+            if (pending != null && pending != request) {
+                // another copy of the same request, keep its changes
+                modifyRequest(pending);
+            }
+
+            logger.debug("RequestRepository: Deferring update of request " + request.getRequestId());
             return;
         }
 
@@ -288,12 +335,132 @@ public class RequestRepository extends Repository {
         addRequest(request);
     }
 
+    /**
+     * Starts deferring updates of existing requests made by the current
+     * thread. The requests are written by the matching commitUpdates()
+     * call, so all changes made to a request during an operation are
+     * written in a single modify. New requests are still added right away.
+     *
+     * Calls can be nested, the updates are written when the outermost
+     * operation commits. Does nothing unless write behind is enabled.
+     */
+    public void beginUpdates() {
+
+        if (!writeBehind) {
+            return;
+        }
+
+        PendingUpdates updates = pendingUpdates.get();
+        if (updates == null) {
+            updates = new PendingUpdates();
+            pendingUpdates.set(updates);
+        }
+
+        updates.depth++;
+    }
+
+    /**
+     * Writes the updates deferred since the outermost beginUpdates()
+     * call. Must be called in a finally block before the result of the
+     * operation is returned to the client.
+     *
+     * @exception EBaseException failed to write at least one request
+     */
+    public void commitUpdates() throws EBaseException {
+
+        PendingUpdates updates = pendingUpdates.get();
+        if (updates == null || --updates.depth > 0) {
+            return;
+        }
+
+        pendingUpdates.remove();
+
+        EBaseException exception = null;
+
+        for (Request request : updates.requests.values()) {
+            try {
+                modifyRequest(request);
+
+            } catch (EBaseException e) {
+                // write the remaining requests anyway
+                if (exception == null) {
+                    exception = e;
+                }
+            }
+        }
+
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * Same as commitUpdates(), for use in a finally block of an operation
+     * that may have failed. If the operation failed, a failure to write
+     * the updates is added to the operation's exception as a suppressed
+     * exception instead of replacing it.
+     *
+     * @param failure The exception thrown by the operation, or null
+     * @exception EBaseException failed to write at least one request
+     *            after the operation succeeded
+     */
+    public void commitUpdates(Throwable failure) throws EBaseException {
+
+        try {
+            commitUpdates();
+
+        } catch (EBaseException e) {
+            if (failure == null) {
+                throw e;
+            }
+
+            logger.warn("RequestRepository: Unable to write deferred updates: " + e.getMessage(), e);
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Writes the request now if its update has been deferred by the
+     * current thread, e.g. before the request is passed to listeners
+     * that might read it from the database.
+     */
+    public void flushRequest(Request request) throws EBaseException {
+
+        PendingUpdates updates = pendingUpdates.get();
+        if (updates == null) {
+            return;
+        }
+
+        Request pending = updates.requests.remove(request.getRequestId());
+        if (pending != null) {
+            modifyRequest(pending);
+        }
+    }
+
+    /**
+     * Writes the request attributes into the database. If write behind is
+     * enabled and the request has been read from or written to the database
+     * before, only the attributes changed since then are written.
+     */
     public void modifyRequest(Request request) throws EBaseException {
 
         Set<String> excludedLdapAttrs = dbSubsystem.getExcludedLdapAttr();
 
+        // values being written, kept to compare with on the next update
+        RequestRecord requestRecord = null;
+
         ModificationSet mods = new ModificationSet();
-        RequestRecord.mod(mods, request, excludedLdapAttrs);
+
+        if (writeBehind) {
+            requestRecord = new RequestRecord();
+            requestRecord.add(request, excludedLdapAttrs);
+        }
+
+        if (requestRecord == null || request.mStoredRecord == null) {
+            RequestRecord.mod(mods, request, excludedLdapAttrs);
+        } else {
+            RequestRecord.mod(mods, request, requestRecord, request.mStoredRecord, compactExtData);
+        }
 
         // mods.add(IRequestRecord.ATTR_REQUEST_STATE,
         // Modification.MOD_REPLACE, r.getRequestStatus());
@@ -314,7 +481,33 @@ public class RequestRepository extends Repository {
 
         try {
             String dn = "cn=" + request.getRequestId() + "," + mBaseDN;
-            dbs.modify(dn, mods);
+
+            try {
+                dbs.modify(dn, mods);
+
+            } catch (EBaseException e) {
+
+                if (request.mLegacyExtDataAttrs == null) {
+                    throw e;
+                }
+
+                // the legacy attributes might have been removed already,
+                // e.g. by another clone, so store the request without
+                // removing them
+                logger.warn("RequestRepository: Unable to migrate request " + request.getRequestId()
+                        + " to compact format: " + e.getMessage());
+
+                request.mLegacyExtDataAttrs = null;
+
+                mods = new ModificationSet();
+                RequestRecord.mod(mods, request, excludedLdapAttrs);
+                dbs.modify(dn, mods);
+            }
+
+            request.mLegacyExtDataAttrs = null;
+            if (writeBehind) {
+                request.mStoredRecord = requestRecord;
+            }
 
         } catch (EBaseException e) {
             logger.error("RequestRepository: " + e.getMessage(), e);
@@ -633,4 +826,12 @@ public class RequestRepository extends Repository {
         RequestRecord record = records.iterator().next();
         return record.getRequestId();
     }
+
+    static class PendingUpdates {
+
+        // nested beginUpdates() calls
+        int depth;
+
+        Map<RequestId, Request> requests = new LinkedHashMap<>();
+    }
 }
@@ -19,7 +19,9 @@ package com.netscape.cmscore.util;
 
 import java.util.Date;
 import java.util.Hashtable;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.Subsystem;
@@ -41,6 +43,20 @@ public class StatsSubsystem extends Subsystem {
     private StatsEvent mAllTrans = new StatsEvent(null);
     private Date mStartTime = new Date();
     private Hashtable<String, Vector<StatsMilestone>> mHashtable = new Hashtable<>();
+    private Map<String, StatsCounters> mCounters = new ConcurrentHashMap<>();
+
+    /**
+     * Counters and gauges kept by a component itself, e.g. in LongAdder
+     * fields, so that frequent operations do not go through this subsystem.
+     * They are read when the statistics are displayed.
+     */
+    public interface StatsCounters {
+
+        /**
+         * Returns the current value of each counter or gauge by name.
+         */
+        Map<String, Long> getCounters();
+    }
 
     /**
      * Constructs a certificate server.
@@ -151,6 +167,90 @@ public class StatsSubsystem extends Subsystem {
         }
     }
 
+    /**
+     * Records an operation which is not tied to the timing milestones
+     * of the calling thread, e.g. cache hits or work done by background
+     * threads. The operation is registered as a sub event of the given
+     * top-level group.
+     *
+     * @param group name of the top-level event
+     * @param id name of the sub event
+     * @param timeTaken time taken by the operation in msec
+     */
+    public void recordEvent(String group, String id, long timeTaken) {
+
+        StatsEvent st;
+        synchronized (mAllTrans) {
+            StatsEvent groupST = mAllTrans.getSubEvent(group);
+            if (groupST == null) {
+                groupST = new StatsEvent(mAllTrans);
+                groupST.setName(group);
+                mAllTrans.addSubEvent(groupST);
+            }
+            st = groupST.getSubEvent(id);
+            if (st == null) {
+                st = new StatsEvent(groupST);
+                st.setName(id);
+                groupST.addSubEvent(st);
+            }
+        }
+
+        synchronized (st) {
+            st.incNoOfOperations(1);
+            st.incTimeTaken(timeTaken);
+        }
+    }
+
+    /**
+     * Registers counters that are reported as sub events of the given
+     * top-level group, with each value shown as the number of operations.
+     * The values are not affected by resetCounters().
+     *
+     * @param group name of the top-level event
+     * @param counters counters to report
+     */
+    public void registerCounters(String group, StatsCounters counters) {
+        mCounters.put(group, counters);
+    }
+
+    public void unregisterCounters(String group) {
+        mCounters.remove(group);
+        synchronized (mAllTrans) {
+            mAllTrans.removeSubEvent(group);
+        }
+    }
+
+    /**
+     * Copies the registered counters into the stats events.
+     */
+    private void updateCounters() {
+
+        for (Map.Entry<String, StatsCounters> entry : mCounters.entrySet()) {
+
+            String group = entry.getKey();
+            Map<String, Long> values = entry.getValue().getCounters();
+
+            synchronized (mAllTrans) {
+                StatsEvent groupST = mAllTrans.getSubEvent(group);
+                if (groupST == null) {
+                    groupST = new StatsEvent(mAllTrans);
+                    groupST.setName(group);
+                    mAllTrans.addSubEvent(groupST);
+                }
+
+                for (Map.Entry<String, Long> value : values.entrySet()) {
+                    StatsEvent st = groupST.getSubEvent(value.getKey());
+                    if (st == null) {
+                        st = new StatsEvent(groupST);
+                        st.setName(value.getKey());
+                        groupST.addSubEvent(st);
+                    }
+                    st.incNoOfOperations(value.getValue() - st.getNoOfOperations());
+                }
+            }
+        }
+    }
+
     /**
      * Resets counters.
      */
@@ -163,6 +263,7 @@ public class StatsSubsystem extends Subsystem {
      * Resets all internal counters.
      */
     public StatsEvent getMainStatsEvent() {
+        updateCounters();
         return mAllTrans;
     }
 
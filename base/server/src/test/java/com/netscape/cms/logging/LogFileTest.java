@@ -0,0 +1,265 @@
+package com.netscape.cms.logging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.netscape.certsrv.logging.LogEvent;
+import com.netscape.certsrv.logging.LogSource;
+import com.netscape.certsrv.logging.SignedAuditEvent;
+import com.netscape.cmscore.apps.CMSEngine;
+
+public class LogFileTest {
+
+    @TempDir
+    File dir;
+
+    File file;
+    LogFileStub logFile;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+
+        CMSEngine engine = new CMSEngine("CA") {
+            @Override
+            public int getPID() {
+                return 0;
+            }
+        };
+
+        file = new File(dir, "test.log");
+
+        logFile = new LogFileStub();
+        logFile.setCMSEngine(engine);
+        logFile.init(file.getAbsolutePath(), 512, 0);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        logFile.releaseFlush.countDown();
+        logFile.stopAsyncWriter();
+        logFile.close();
+    }
+
+    @Test
+    public void testOrder() throws Exception {
+
+        int threads = 4;
+        int count = 250;
+
+        // small queue and batches so callers have to wait for the writer
+        logFile.startAsyncWriter(16, 8, false);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            String prefix = "t" + t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < count; i++) {
+                    logFile.doLog(createEvent(prefix + ":" + i));
+                }
+                return null;
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        executor.shutdown();
+        logFile.stopAsyncWriter();
+
+        List<String> messages = readMessages();
+        assertEquals(threads * count, messages.size());
+
+        // the events of each thread are written in the order they were logged
+        Map<String, Integer> next = new HashMap<>();
+        for (String message : messages) {
+            String[] parts = message.split(":");
+            int expected = next.getOrDefault(parts[0], 0);
+            assertEquals(expected, Integer.parseInt(parts[1]), "Unexpected event: " + message);
+            next.put(parts[0], expected + 1);
+        }
+
+        assertEquals(threads, next.size());
+    }
+
+    @Test
+    public void testBatchFlush() throws Exception {
+
+        logFile.blockFlush = true;
+        logFile.startAsyncWriter(100, 100, false);
+
+        // the writer waits in the flush after the first event
+        logFile.doLog(createEvent("0"));
+        assertTrue(logFile.flushEntered.await(10, TimeUnit.SECONDS));
+
+        for (int i = 1; i <= 20; i++) {
+            logFile.doLog(createEvent(Integer.toString(i)));
+        }
+
+        logFile.releaseFlush.countDown();
+
+        // the queued events are written in a single batch, so the
+        // log is flushed (and signed if enabled) only once for them
+        waitFor(() -> logFile.flushes.get() >= 2);
+        assertEquals(2, logFile.flushes.get());
+
+        List<String> messages = readMessages();
+        assertEquals(21, messages.size());
+        for (int i = 0; i <= 20; i++) {
+            assertEquals(Integer.toString(i), messages.get(i));
+        }
+    }
+
+    @Test
+    public void testStopDrainsQueue() throws Exception {
+
+        logFile.blockFlush = true;
+        logFile.startAsyncWriter(100, 100, false);
+
+        logFile.doLog(createEvent("0"));
+        assertTrue(logFile.flushEntered.await(10, TimeUnit.SECONDS));
+
+        for (int i = 1; i <= 20; i++) {
+            logFile.doLog(createEvent(Integer.toString(i)));
+        }
+
+        // stop the writer while the events are still queued
+        Thread stopThread = new Thread(logFile::stopAsyncWriter);
+        stopThread.start();
+        waitFor(() -> stopThread.getState() == Thread.State.BLOCKED);
+
+        logFile.releaseFlush.countDown();
+        stopThread.join(10000);
+
+        List<String> messages = readMessages();
+        assertEquals(21, messages.size());
+        for (int i = 0; i <= 20; i++) {
+            assertEquals(Integer.toString(i), messages.get(i));
+        }
+
+        // events logged after the writer has stopped are written directly
+        logFile.doLog(createEvent("21"));
+        logFile.flush();
+
+        messages = readMessages();
+        assertEquals(22, messages.size());
+        assertEquals("21", messages.get(21));
+    }
+
+    @Test
+    public void testWriterFailure() throws Exception {
+
+        logFile.failFlush = true;
+
+        // without the fallback the caller would block once the queue is full
+        logFile.startAsyncWriter(1, 1, false);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            for (int i = 0; i < 10; i++) {
+                logFile.doLog(createEvent(Integer.toString(i)));
+            }
+        });
+
+        logFile.stopAsyncWriter();
+        logFile.flush();
+
+        List<String> messages = readMessages();
+        assertEquals(10, messages.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.toString(i), messages.get(i));
+        }
+    }
+
+    LogEvent createEvent(String message) {
+        LogEvent event = new SignedAuditEvent("{0}", message);
+        event.setSource(LogSource.SIGNED_AUDIT);
+        return event;
+    }
+
+    /**
+     * Returns the messages in the log file without the prefix.
+     */
+    List<String> readMessages() throws Exception {
+        List<String> messages = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath())) {
+            messages.add(line.substring(line.lastIndexOf("] ") + 2));
+        }
+        return messages;
+    }
+
+    void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < end, "Timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Log file that counts completed flushes, and can block the first flush
+     * or fail it with an Error.
+     */
+    static class LogFileStub extends LogFile {
+
+        volatile boolean blockFlush;
+        volatile boolean failFlush;
+
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger flushes = new AtomicInteger();
+        CountDownLatch flushEntered = new CountDownLatch(1);
+        CountDownLatch releaseFlush = new CountDownLatch(1);
+
+        @Override
+        public synchronized void flush() {
+
+            int n = calls.incrementAndGet();
+
+            if (n == 1 && blockFlush) {
+                flushEntered.countDown();
+
+                // stopAsyncWriter() interrupts the writer, keep waiting
+                boolean done = false;
+                while (!done) {
+                    try {
+                        done = releaseFlush.await(10, TimeUnit.SECONDS);
+                        if (!done) {
+                            throw new IllegalStateException("Flush not released");
+                        }
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+            }
+
+            if (n == 1 && failFlush) {
+                throw new Error("Test failure");
+            }
+
+            super.flush();
+            flushes.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.netscape.cmscore.connector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class CircuitBreakerTest {
+
+    static InetSocketAddress host1 = InetSocketAddress.createUnresolved("host1.example.com", 8443);
+    static InetSocketAddress host2 = InetSocketAddress.createUnresolved("host2.example.com", 8443);
+    static InetSocketAddress host3 = InetSocketAddress.createUnresolved("host3.example.com", 8443);
+
+    @Test
+    public void testOrderWithoutFailures() {
+
+        CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+        assertEquals(List.of(host1, host2, host3), circuitBreaker.order(List.of(host1, host2, host3)));
+    }
+
+    @Test
+    public void testOrderSkipsFailedTargets() {
+
+        CircuitBreaker circuitBreaker = new CircuitBreaker();
+        circuitBreaker.recordFailure(host1);
+
+        assertTrue(circuitBreaker.isOpen(host1));
+        assertFalse(circuitBreaker.isOpen(host2));
+
+        // failed targets are tried last, in their original order
+        assertEquals(List.of(host2, host3, host1), circuitBreaker.order(List.of(host1, host2, host3)));
+
+        circuitBreaker.recordFailure(host3);
+        assertEquals(List.of(host2, host1, host3), circuitBreaker.order(List.of(host1, host2, host3)));
+    }
+
+    @Test
+    public void testOrderAllTargetsFailed() {
+
+        CircuitBreaker circuitBreaker = new CircuitBreaker();
+        circuitBreaker.recordFailure(host1);
+        circuitBreaker.recordFailure(host2);
+
+        // all targets are still tried
+        assertEquals(List.of(host1, host2), circuitBreaker.order(List.of(host1, host2)));
+    }
+
+    @Test
+    public void testRecordSuccess() {
+
+        CircuitBreaker circuitBreaker = new CircuitBreaker();
+        circuitBreaker.recordFailure(host1);
+        circuitBreaker.recordSuccess(host1);
+
+        assertFalse(circuitBreaker.isOpen(host1));
+        assertEquals(List.of(host1, host2), circuitBreaker.order(List.of(host1, host2)));
+    }
+
+    @Test
+    public void testRetryInterval() {
+
+        // failed targets can be retried immediately
+        CircuitBreaker circuitBreaker = new CircuitBreaker(0);
+        circuitBreaker.recordFailure(host1);
+
+        assertFalse(circuitBreaker.isOpen(host1));
+        assertEquals(List.of(host1, host2), circuitBreaker.order(List.of(host1, host2)));
+    }
+}
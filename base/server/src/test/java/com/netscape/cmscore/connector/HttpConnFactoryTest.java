@@ -0,0 +1,155 @@
+package com.netscape.cmscore.connector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.netscape.certsrv.base.EBaseException;
+
+public class HttpConnFactoryTest {
+
+    /**
+     * Factory that creates unconnected connections.
+     */
+    static class HttpConnFactoryStub extends HttpConnFactory {
+
+        AtomicInteger created = new AtomicInteger();
+        boolean fail;
+
+        HttpConnFactoryStub(int minConns, int maxConns) {
+            super(minConns, maxConns, null, "", null, 0);
+        }
+
+        @Override
+        protected HttpConnection createConnection() throws EBaseException {
+            if (fail) {
+                throw new EBaseException("Unable to create HTTP connection");
+            }
+            created.incrementAndGet();
+            return new HttpConnection(null, null);
+        }
+    }
+
+    HttpConnFactoryStub factory;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        factory = new HttpConnFactoryStub(1, 2);
+        factory.init();
+    }
+
+    @Test
+    public void testReuseConnection() throws Exception {
+
+        HttpConnection conn1 = factory.getConn();
+        assertEquals(1, factory.getActiveCount());
+
+        factory.returnConn(conn1);
+        assertEquals(0, factory.getActiveCount());
+        assertEquals(1, factory.getIdleCount());
+
+        // the idle connection is reused instead of creating a new one
+        HttpConnection conn2 = factory.getConn();
+        assertSame(conn1, conn2);
+        assertEquals(1, factory.created.get());
+
+        factory.returnConn(conn2);
+    }
+
+    @Test
+    public void testMaxConns() throws Exception {
+
+        HttpConnection conn1 = factory.getConn();
+        HttpConnection conn2 = factory.getConn();
+        assertNotSame(conn1, conn2);
+        assertEquals(2, factory.getActiveCount());
+
+        // no more connections without waiting
+        assertNull(factory.getConn(false));
+
+        factory.returnConn(conn1);
+        assertSame(conn1, factory.getConn(false));
+    }
+
+    @Test
+    public void testWaitForConn() throws Exception {
+
+        HttpConnection conn1 = factory.getConn();
+        factory.getConn();
+
+        CountDownLatch waiting = new CountDownLatch(1);
+        AtomicReference<HttpConnection> result = new AtomicReference<>();
+
+        Thread thread = new Thread(() -> {
+            try {
+                waiting.countDown();
+                result.set(factory.getConn());
+            } catch (EBaseException e) {
+                // result stays null
+            }
+        });
+        thread.start();
+
+        waiting.await();
+        factory.returnConn(conn1);
+        thread.join(5000);
+
+        assertSame(conn1, result.get());
+    }
+
+    @Test
+    public void testReturnConnTwice() throws Exception {
+
+        HttpConnection conn1 = factory.getConn();
+        HttpConnection conn2 = factory.getConn();
+
+        factory.returnConn(conn1);
+        factory.returnConn(conn1);
+
+        // the second return does not release another permit
+        assertEquals(1, factory.getActiveCount());
+        assertEquals(1, factory.getIdleCount());
+
+        assertSame(conn1, factory.getConn(false));
+        assertNull(factory.getConn(false));
+
+        factory.returnConn(conn2);
+    }
+
+    @Test
+    public void testReturnNull() throws Exception {
+
+        factory.returnConn(null);
+
+        assertEquals(0, factory.getActiveCount());
+        assertEquals(0, factory.getIdleCount());
+    }
+
+    @Test
+    public void testCreateConnectionFailure() throws Exception {
+
+        factory.fail = true;
+
+        assertThrows(EBaseException.class, () -> factory.getConn());
+        assertThrows(EBaseException.class, () -> factory.getConn());
+        assertThrows(EBaseException.class, () -> factory.getConn());
+
+        // the permits of failed connections are released
+        assertEquals(0, factory.getActiveCount());
+
+        factory.fail = false;
+        assertNotNull(factory.getConn(false));
+        assertNotNull(factory.getConn(false));
+        assertNull(factory.getConn(false));
+    }
+}
@@ -0,0 +1,191 @@
+package com.netscape.cmscore.request;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.netscape.certsrv.request.RequestId;
+import com.netscape.cmscore.dbs.RequestRecordDefaultStub;
+
+import netscape.ldap.LDAPAttribute;
+import netscape.ldap.LDAPAttributeSet;
+
+public class CompactExtAttrMapperTest {
+
+    static CompactExtAttrMapper mapper;
+
+    @BeforeAll
+    public static void setUp() {
+        mapper = new CompactExtAttrMapper(Arrays.asList("cert_request", " Req_Issued_Cert "));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+
+        Hashtable<String, String> table = new Hashtable<>();
+        table.put("uid", "admin");
+        table.put("key;with=chars", " value ");
+        table.put("empty", " ");
+
+        Hashtable<String, Object> extData = new Hashtable<>();
+        extData.put("profileid", " caServerCert ");
+        extData.put("empty", "");
+        extData.put("auth_token", table);
+        extData.put("emptytable", new Hashtable<String, String>());
+        extData.put("cert_request", "MIIC");
+
+        LDAPAttributeSet attrs = new LDAPAttributeSet();
+        mapper.mapObjectToLDAPAttributeSet(null, RequestRecord.ATTR_EXT_DATA, extData, attrs);
+
+        // the blob and the indexed key
+        assertEquals(2, attrs.size());
+        assertNotNull(attrs.getAttribute(Schema.LDAP_ATTR_EXT_DATA_BLOB));
+
+        RequestRecordStub record = new RequestRecordStub();
+        mapper.mapLDAPAttributeSetToObject(attrs, RequestRecord.ATTR_EXT_DATA, record);
+
+        // empty values are dropped and values are trimmed as in ExtAttrDynMapper
+        Hashtable<String, String> expectedTable = new Hashtable<>();
+        expectedTable.put("uid", "admin");
+        expectedTable.put("key;with=chars", "value");
+
+        Hashtable<String, Object> expected = new Hashtable<>();
+        expected.put("profileid", "caServerCert");
+        expected.put("auth_token", expectedTable);
+        expected.put("cert_request", "MIIC");
+
+        assertEquals(expected, record.extData);
+
+        // entries with the blob are not migrated
+        assertNull(record.mLegacyExtDataAttrs);
+    }
+
+    @Test
+    public void testIndexedKeys() throws Exception {
+
+        Hashtable<String, String> table = new Hashtable<>();
+        table.put("a", "1");
+
+        Hashtable<String, Object> extData = new Hashtable<>();
+        extData.put("cert_request", "MIIC");
+        extData.put("req_issued_cert", table);
+        extData.put("profileid", "caServerCert");
+
+        LDAPAttributeSet attrs = new LDAPAttributeSet();
+        mapper.mapObjectToLDAPAttributeSet(null, RequestRecord.ATTR_EXT_DATA, extData, attrs);
+
+        assertEquals(3, attrs.size());
+        assertNotNull(attrs.getAttribute(Schema.LDAP_ATTR_EXT_DATA_BLOB));
+
+        LDAPAttribute certRequest = findAttribute(attrs, ExtAttrDynMapper.extAttrPrefix + "cert_request");
+        assertNotNull(certRequest);
+        assertEquals("MIIC", certRequest.getStringValueArray()[0]);
+
+        LDAPAttribute issuedCert = findAttribute(attrs, ExtAttrDynMapper.extAttrPrefix + "req_issued_cert;a");
+        assertNotNull(issuedCert);
+        assertEquals("1", issuedCert.getStringValueArray()[0]);
+
+        // other keys are only stored in the blob
+        assertNull(findAttribute(attrs, ExtAttrDynMapper.extAttrPrefix + "profileid"));
+    }
+
+    @Test
+    public void testLegacyEntry() throws Exception {
+
+        LDAPAttributeSet attrs = new LDAPAttributeSet();
+        attrs.add(new LDAPAttribute(ExtAttrDynMapper.extAttrPrefix + "profileid", "caServerCert"));
+        attrs.add(new LDAPAttribute(ExtAttrDynMapper.extAttrPrefix + "auth_token;uid", "admin"));
+        attrs.add(new LDAPAttribute(ExtAttrDynMapper.extAttrPrefix + "cert_request", "MIIC"));
+        attrs.add(new LDAPAttribute("requestState", "complete"));
+
+        RequestRecordStub record = new RequestRecordStub();
+        mapper.mapLDAPAttributeSetToObject(attrs, RequestRecord.ATTR_EXT_DATA, record);
+
+        // legacy attributes are read with ExtAttrDynMapper
+        assertEquals("caServerCert", record.extData.get("profileid"));
+        assertEquals("MIIC", record.extData.get("cert_request"));
+        assertEquals("admin", ((Hashtable<?, ?>) record.extData.get("auth_token")).get("uid"));
+
+        // all but the indexed attributes are removed on the next update
+        Set<String> expected = new LinkedHashSet<>();
+        expected.add(ExtAttrDynMapper.extAttrPrefix + "profileid");
+        expected.add(ExtAttrDynMapper.extAttrPrefix + "auth_token;uid");
+        assertEquals(expected, record.mLegacyExtDataAttrs);
+    }
+
+    @Test
+    public void testLegacyEntryWithIndexedKeysOnly() throws Exception {
+
+        LDAPAttributeSet attrs = new LDAPAttributeSet();
+        attrs.add(new LDAPAttribute(ExtAttrDynMapper.extAttrPrefix + "cert_request", "MIIC"));
+
+        RequestRecordStub record = new RequestRecordStub();
+        mapper.mapLDAPAttributeSetToObject(attrs, RequestRecord.ATTR_EXT_DATA, record);
+
+        assertEquals("MIIC", record.extData.get("cert_request"));
+        assertNull(record.mLegacyExtDataAttrs);
+    }
+
+    @Test
+    public void testRemoveLegacyAttributes() throws Exception {
+
+        Set<String> legacyAttrs = new LinkedHashSet<>();
+        legacyAttrs.add(ExtAttrDynMapper.extAttrPrefix + "profileid");
+        legacyAttrs.add(ExtAttrDynMapper.extAttrPrefix + "auth_token;uid");
+
+        LDAPAttributeSet attrs = new LDAPAttributeSet();
+        mapper.mapObjectToLDAPAttributeSet(null, RequestRecord.ATTR_LEGACY_EXT_DATA, legacyAttrs, attrs);
+
+        assertEquals(2, attrs.size());
+
+        Enumeration<LDAPAttribute> e = attrs.getAttributes();
+        while (e.hasMoreElements()) {
+            LDAPAttribute attr = e.nextElement();
+            assertTrue(legacyAttrs.contains(attr.getName()));
+
+            // attributes without values delete the whole attribute
+            assertEquals(0, attr.size());
+        }
+    }
+
+    /**
+     * Finds an attribute by its full name including subtypes.
+     */
+    static LDAPAttribute findAttribute(LDAPAttributeSet attrs, String name) {
+        Enumeration<LDAPAttribute> e = attrs.getAttributes();
+        while (e.hasMoreElements()) {
+            LDAPAttribute attr = e.nextElement();
+            if (attr.getName().equalsIgnoreCase(name)) {
+                return attr;
+            }
+        }
+        return null;
+    }
+
+    static class RequestRecordStub extends RequestRecordDefaultStub {
+
+        Hashtable<?, ?> extData;
+
+        @Override
+        public void set(String name, Object o) {
+            if (RequestRecord.ATTR_EXT_DATA.equals(name)) {
+                extData = (Hashtable<?, ?>) o;
+            }
+        }
+
+        @Override
+        public RequestId getRequestId() {
+            return new RequestId("1");
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.netscape.cmscore.request;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Hashtable;
+
+import org.junit.jupiter.api.Test;
+
+public class ExtDataEncoderTest {
+
+    @Test
+    public void testEncodeDecode() throws Exception {
+        Hashtable<String, Object> data = new Hashtable<>();
+        data.put("profileid", "caServerCert");
+        data.put("empty", "");
+        data.put("unicode", "\u00e9\u4e2d\ud83d\ude00");
+        data.put("long", "x".repeat(100000));
+
+        Hashtable<String, String> table = new Hashtable<>();
+        table.put("uid", "admin");
+        table.put("key;with=chars", "value");
+        data.put("auth_token", table);
+
+        data.put("emptytable", new Hashtable<String, String>());
+
+        byte[] bytes = ExtDataEncoder.encode(data);
+        assertEquals(ExtDataEncoder.VERSION, bytes[0]);
+
+        Hashtable<String, Object> decoded = ExtDataEncoder.decode(bytes);
+        assertEquals(data, decoded);
+    }
+
+    @Test
+    public void testUnsupportedVersion() throws Exception {
+        byte[] bytes = ExtDataEncoder.encode(new Hashtable<>());
+        bytes[0] = (byte) (ExtDataEncoder.VERSION + 1);
+
+        assertThrows(IOException.class, () -> ExtDataEncoder.decode(bytes));
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        Hashtable<String, Object> data = new Hashtable<>();
+        data.put("foo", "bar");
+
+        byte[] bytes = ExtDataEncoder.encode(data);
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 1);
+
+        assertThrows(IOException.class, () -> ExtDataEncoder.decode(truncated));
+    }
+}
@@ -0,0 +1,202 @@
+package com.netscape.cmscore.request;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.request.RequestId;
+
+public class RequestLockTableTest {
+
+    RequestLockTable lockTable;
+
+    @BeforeEach
+    public void setUp() {
+        lockTable = new RequestLockTable();
+    }
+
+    @Test
+    public void testReentrant() throws Exception {
+        RequestId id = new RequestId("1");
+
+        lockTable.lock(id);
+        lockTable.lock(id);
+
+        assertTrue(lockTable.isHeldByCurrentThread(id));
+        assertEquals(1, lockTable.size());
+        assertEquals(0, lockTable.getContendedCount());
+
+        lockTable.unlock(id);
+        assertTrue(lockTable.isLocked(id));
+        assertEquals(1, lockTable.size());
+
+        lockTable.unlock(id);
+        assertFalse(lockTable.isLocked(id));
+        assertEquals(0, lockTable.size());
+    }
+
+    @Test
+    public void testEntriesRemovedAfterUnlock() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            lockTable.lock(new RequestId(Integer.toString(i)));
+        }
+        assertEquals(10, lockTable.size());
+
+        for (int i = 0; i < 10; i++) {
+            lockTable.unlock(new RequestId(Integer.toString(i)));
+        }
+        assertEquals(0, lockTable.size());
+    }
+
+    @Test
+    public void testUnlockNotLocked() {
+        RequestId id = new RequestId("1");
+
+        lockTable.unlock(id);
+
+        assertFalse(lockTable.isLocked(id));
+        assertEquals(0, lockTable.size());
+    }
+
+    @Test
+    public void testSerializedUpdates() throws Exception {
+        RequestId id = new RequestId("1");
+
+        int threads = 8;
+        int iterations = 200;
+
+        AtomicInteger holders = new AtomicInteger();
+        AtomicInteger maxHolders = new AtomicInteger();
+        int[] counter = new int[1];
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < iterations; i++) {
+                    lockTable.lock(id);
+                    try {
+                        maxHolders.accumulateAndGet(holders.incrementAndGet(), Math::max);
+
+                        // read, yield, and write back to expose lost updates
+                        int value = counter[0];
+                        Thread.yield();
+                        counter[0] = value + 1;
+
+                        holders.decrementAndGet();
+                    } finally {
+                        lockTable.unlock(id);
+                    }
+                }
+                return null;
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        executor.shutdown();
+
+        assertEquals(1, maxHolders.get());
+        assertEquals(threads * iterations, counter[0]);
+        assertEquals(threads * iterations, lockTable.getLockCount());
+        assertEquals(0, lockTable.size());
+    }
+
+    @Test
+    public void testOtherRequestNotBlocked() throws Exception {
+        RequestId id1 = new RequestId("1");
+        RequestId id2 = new RequestId("2");
+
+        Holder holder = new Holder(id1);
+        holder.start();
+        holder.locked.await(10, TimeUnit.SECONDS);
+
+        try {
+            assertTrue(lockTable.isLocked(id1));
+            assertFalse(lockTable.isHeldByCurrentThread(id1));
+
+            lockTable.lock(id2);
+            lockTable.unlock(id2);
+
+            assertEquals(0, lockTable.getContendedCount());
+
+        } finally {
+            holder.release.countDown();
+            holder.join(10000);
+        }
+
+        assertEquals(0, lockTable.size());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        RequestId id = new RequestId("1");
+        lockTable.setTimeout(100);
+
+        Holder holder = new Holder(id);
+        holder.start();
+        holder.locked.await(10, TimeUnit.SECONDS);
+
+        try {
+            assertThrows(EBaseException.class, () -> lockTable.lock(id));
+
+            assertFalse(lockTable.isHeldByCurrentThread(id));
+            assertEquals(1, lockTable.getContendedCount());
+            assertEquals(1, lockTable.getTimeoutCount());
+
+        } finally {
+            holder.release.countDown();
+            holder.join(10000);
+        }
+
+        // the entry of the request that timed out is removed as well
+        assertEquals(0, lockTable.size());
+    }
+
+    /**
+     * Thread that holds the lock of a request until it is released.
+     */
+    class Holder extends Thread {
+
+        RequestId id;
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Holder(RequestId id) {
+            this.id = id;
+        }
+
+        @Override
+        public void run() {
+            try {
+                lockTable.lock(id);
+                try {
+                    locked.countDown();
+                    release.await();
+                } finally {
+                    lockTable.unlock(id);
+                }
+
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package com.netscape.cmscore.request;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -100,6 +103,109 @@ public class RequestRecordTest {
         assertEquals(mods.addExtDataObject, request.mExtData);
     }
 
+    @Test
+    public void testModChangedAttributes() throws EBaseException {
+        Request request = new Request(new RequestId("1"));
+        request.setRequestOwner("owner");
+        request.setSourceId("source");
+        request.setExtData("foo", "bar");
+        request.setExtData("color", "red");
+
+        RequestRecord stored = new RequestRecord();
+        stored.add(request);
+
+        request.setRequestOwner("agent");
+        request.setExtData("color", "blue");
+
+        RequestRecord current = new RequestRecord();
+        current.add(request);
+
+        RecordingModificationSet mods = new RecordingModificationSet();
+        RequestRecord.mod(mods, request, current, stored, false);
+
+        // unchanged attributes are not written
+        assertEquals("agent", mods.values.get(RequestRecord.ATTR_REQUEST_OWNER));
+        assertTrue(mods.values.containsKey(RequestRecord.ATTR_MODIFY_TIME));
+        assertFalse(mods.values.containsKey(RequestRecord.ATTR_REQUEST_STATE));
+        assertFalse(mods.values.containsKey(RequestRecord.ATTR_SOURCE_ID));
+
+        // only the changed extData keys are written
+        Hashtable<String, Object> expected = new Hashtable<>();
+        expected.put("color", "blue");
+        assertEquals(expected, mods.values.get(RequestRecord.ATTR_EXT_DATA));
+    }
+
+    @Test
+    public void testModUnchangedExtData() throws EBaseException {
+        Request request = new Request(new RequestId("1"));
+        request.setExtData("foo", "bar");
+
+        RequestRecord stored = new RequestRecord();
+        stored.add(request);
+
+        RequestRecord current = new RequestRecord();
+        current.add(request);
+
+        RecordingModificationSet mods = new RecordingModificationSet();
+        RequestRecord.mod(mods, request, current, stored, false);
+
+        assertTrue(mods.values.containsKey(RequestRecord.ATTR_MODIFY_TIME));
+        assertFalse(mods.values.containsKey(RequestRecord.ATTR_EXT_DATA));
+    }
+
+    @Test
+    public void testModInPlaceExtDataChange() throws EBaseException {
+        Request request = new Request(new RequestId("1"));
+        Hashtable<String, String> table = new Hashtable<>();
+        table.put("red", "rum");
+        request.setExtData("hashkey", table);
+
+        RequestRecord stored = new RequestRecord();
+        stored.add(request);
+
+        // changes the table stored in the request
+        request.setExtData("hashkey", "blue", "gin");
+
+        RequestRecord current = new RequestRecord();
+        current.add(request);
+
+        RecordingModificationSet mods = new RecordingModificationSet();
+        RequestRecord.mod(mods, request, current, stored, false);
+
+        Hashtable<?, ?> extData = (Hashtable<?, ?>) mods.values.get(RequestRecord.ATTR_EXT_DATA);
+        assertEquals(1, extData.size());
+
+        Hashtable<String, String> expected = new Hashtable<>();
+        expected.put("red", "rum");
+        expected.put("blue", "gin");
+        assertEquals(expected, extData.get("hashkey"));
+    }
+
+    @Test
+    public void testModRemovedExtDataKey() throws EBaseException {
+        Request request = new Request(new RequestId("1"));
+        request.setExtData("foo", "bar");
+        request.setExtData("color", "red");
+
+        RequestRecord stored = new RequestRecord();
+        stored.add(request);
+
+        request.deleteExtData("color");
+
+        RequestRecord current = new RequestRecord();
+        current.add(request);
+
+        // removed keys are left in the entry with the legacy format
+        RecordingModificationSet mods = new RecordingModificationSet();
+        RequestRecord.mod(mods, request, current, stored, false);
+        assertFalse(mods.values.containsKey(RequestRecord.ATTR_EXT_DATA));
+
+        // the compact format replaces the whole extData
+        mods = new RecordingModificationSet();
+        RequestRecord.mod(mods, request, current, stored, true);
+        assertEquals(current.mExtData, mods.values.get(RequestRecord.ATTR_EXT_DATA));
+    }
+
     @Test
     public void testRegister() throws EDBException {
         DBSubsystemStub db = new DBSubsystemStub();
@@ -130,6 +236,15 @@ public class RequestRecordTest {
         }
     }
 
+    static class RecordingModificationSet extends ModificationSet {
+        Map<String, Object> values = new LinkedHashMap<>();
+
+        @Override
+        public void add(String name, int op, Object value) {
+            values.put(name, value);
+        }
+    }
+
     class DBSubsystemStub extends DBSubsystem {
         DBRegistryStub registry = new DBRegistryStub();
 
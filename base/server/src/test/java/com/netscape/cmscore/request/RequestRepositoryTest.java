@@ -0,0 +1,154 @@
+package com.netscape.cmscore.request;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.request.RequestId;
+
+public class RequestRepositoryTest {
+
+    RequestRepositoryStub repository;
+
+    @BeforeEach
+    public void setUp() {
+        repository = new RequestRepositoryStub();
+    }
+
+    @Test
+    public void testDeferredUpdates() throws Exception {
+        Request request = createRequest("1");
+
+        repository.beginUpdates();
+        repository.updateRequest(request);
+        repository.updateRequest(request);
+
+        assertTrue(repository.modified.isEmpty());
+
+        // all updates of the request are written at once
+        repository.commitUpdates();
+        assertEquals(List.of(request), repository.modified);
+    }
+
+    @Test
+    public void testNestedUpdates() throws Exception {
+        Request request = createRequest("1");
+
+        repository.beginUpdates();
+        repository.beginUpdates();
+        repository.updateRequest(request);
+
+        repository.commitUpdates();
+        assertTrue(repository.modified.isEmpty());
+
+        repository.commitUpdates();
+        assertEquals(List.of(request), repository.modified);
+    }
+
+    @Test
+    public void testWriteBehindDisabled() throws Exception {
+        repository.writeBehind = false;
+        Request request = createRequest("1");
+
+        repository.beginUpdates();
+        repository.updateRequest(request);
+        assertEquals(List.of(request), repository.modified);
+
+        repository.commitUpdates();
+        assertEquals(1, repository.modified.size());
+    }
+
+    @Test
+    public void testOtherCopy() throws Exception {
+        Request request1 = createRequest("1");
+        Request request2 = createRequest("1");
+
+        repository.beginUpdates();
+        repository.updateRequest(request1);
+
+        // the changes of the first copy are written before it is replaced
+        repository.updateRequest(request2);
+        assertEquals(List.of(request1), repository.modified);
+
+        repository.commitUpdates();
+        assertEquals(List.of(request1, request2), repository.modified);
+    }
+
+    @Test
+    public void testFlushRequest() throws Exception {
+        Request request = createRequest("1");
+
+        repository.beginUpdates();
+        repository.updateRequest(request);
+
+        repository.flushRequest(request);
+        assertEquals(List.of(request), repository.modified);
+
+        repository.commitUpdates();
+        assertEquals(1, repository.modified.size());
+    }
+
+    @Test
+    public void testCommitFailure() throws Exception {
+        repository.beginUpdates();
+        repository.updateRequest(createRequest("1"));
+
+        repository.failure = new EBaseException("Commit failed");
+
+        EBaseException e = assertThrows(EBaseException.class, () -> repository.commitUpdates(null));
+        assertSame(repository.failure, e);
+    }
+
+    @Test
+    public void testCommitFailureAfterOperationFailure() throws Exception {
+        repository.beginUpdates();
+        repository.updateRequest(createRequest("1"));
+
+        repository.failure = new EBaseException("Commit failed");
+        EBaseException failure = new EBaseException("Operation failed");
+
+        // the operation's exception is kept
+        repository.commitUpdates(failure);
+
+        assertEquals(1, failure.getSuppressed().length);
+        assertSame(repository.failure, failure.getSuppressed()[0]);
+    }
+
+    Request createRequest(String id) {
+        Request request = new Request(new RequestId(id));
+        request.setExtData("dbStatus", "UPDATED");
+        return request;
+    }
+
+    static class RequestRepositoryStub extends RequestRepository {
+
+        List<Request> modified = new ArrayList<>();
+        EBaseException failure;
+
+        RequestRepositoryStub() {
+            super(null, null, null);
+            writeBehind = true;
+        }
+
+        @Override
+        public String getUserIdentity() {
+            return null;
+        }
+
+        @Override
+        public void modifyRequest(Request request) throws EBaseException {
+            if (failure != null) {
+                throw failure;
+            }
+            modified.add(request);
+        }
+    }
+}
@@ -28,6 +28,8 @@ public class TKSEngine extends CMSEngine {
 
     static TKSEngine instance;
 
+    protected TKSKeyCache keyCache = new TKSKeyCache();
+
     public TKSEngine() {
         super("TKS");
         instance = this;
@@ -47,6 +49,20 @@ public class TKSEngine extends CMSEngine {
         return (TKSEngineConfig) mConfig;
     }
 
+    public TKSKeyCache getKeyCache() {
+        return keyCache;
+    }
+
+    public void initKeyCache() throws Exception {
+        keyCache.init(getConfig());
+    }
+
+    @Override
+    public void init() throws Exception {
+        initKeyCache();
+        super.init();
+    }
+
     @Override
     public void initSubsystem(Subsystem subsystem, ConfigStore subsystemConfig) throws Exception {
 
@@ -0,0 +1,164 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.server.tks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.jss.crypto.CryptoToken;
+import org.mozilla.jss.crypto.SymmetricKey;
+import org.mozilla.jss.crypto.TokenException;
+
+import com.netscape.certsrv.base.EBaseException;
+
+/**
+ * Cache of symmetric key handles used by the TKS.
+ *
+ * Finding a shared secret or a master key by name requires listing
+ * all symmetric keys on the token. The cache keeps the resolved handles
+ * by token and key name so the token is only listed when a key is not
+ * in the cache. A listing resolves all keys on the token at once.
+ *
+ * The cache also keeps the shared secret name resolved for each TPS
+ * user since it depends on the TPS connector configuration.
+ *
+ * The cache is invalidated when the TPS connectors or shared secrets
+ * are changed through the TKS. Keys added, replaced, or removed outside
+ * of the TKS (e.g. master key rotation with tkstool) are picked up
+ * after the cache TTL.
+ */
+public class TKSKeyCache {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(TKSKeyCache.class);
+
+    public static final int DEFAULT_TTL = 300; // seconds
+
+    private boolean enabled = true;
+    private long ttl = DEFAULT_TTL * 1000L;
+
+    // token name -> key name -> key
+    private Map<String, Map<String, SymmetricKey>> keys = new ConcurrentHashMap<>();
+
+    // TPS user ID -> shared secret name
+    private Map<String, String> sharedSecretNames = new ConcurrentHashMap<>();
+
+    private volatile long expirationTime;
+
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+
+    public void init(TKSEngineConfig config) throws EBaseException {
+
+        logger.info("Initializing TKS key cache");
+
+        enabled = config.getBoolean("tks.keyCache.enabled", true);
+        logger.info("- enabled: " + enabled);
+
+        ttl = config.getInteger("tks.keyCache.ttl", DEFAULT_TTL) * 1000L;
+        logger.info("- TTL: " + ttl + " ms");
+
+        expirationTime = System.currentTimeMillis() + ttl;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Clears all cached key handles and shared secret names.
+     */
+    public synchronized void invalidate() {
+        logger.debug("TKSKeyCache: Invalidating cache");
+        keys.clear();
+        sharedSecretNames.clear();
+        expirationTime = System.currentTimeMillis() + ttl;
+    }
+
+    void checkExpiration() {
+        if (System.currentTimeMillis() >= expirationTime) {
+            invalidate();
+        }
+    }
+
+    /**
+     * Returns a symmetric key on the token by name, or null if
+     * the token does not have the key.
+     */
+    public SymmetricKey getSymmetricKey(CryptoToken token, String name) throws TokenException {
+
+        if (!enabled) {
+            return findSymmetricKeys(token).get(name);
+        }
+
+        checkExpiration();
+
+        String tokenName = token.getName();
+        Map<String, SymmetricKey> tokenKeys = keys.get(tokenName);
+
+        if (tokenKeys != null) {
+            SymmetricKey key = tokenKeys.get(name);
+            if (key != null) {
+                hits.incrementAndGet();
+                return key;
+            }
+        }
+
+        misses.incrementAndGet();
+        logger.debug("TKSKeyCache: Loading symmetric keys from token " + tokenName);
+
+        // missing keys are not cached so a key created later will be found
+        tokenKeys = findSymmetricKeys(token);
+        keys.put(tokenName, tokenKeys);
+
+        return tokenKeys.get(name);
+    }
+
+    Map<String, SymmetricKey> findSymmetricKeys(CryptoToken token) throws TokenException {
+
+        Map<String, SymmetricKey> result = new HashMap<>();
+
+        for (SymmetricKey key : token.getCryptoStore().getSymmetricKeys()) {
+            if (key == null) continue;
+
+            String nickname = key.getNickName();
+            if (nickname == null) continue;
+
+            // keep the first key if there are multiple keys with the same name
+            result.putIfAbsent(nickname, key);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the shared secret name cached for a TPS user, or null
+     * if it is not cached.
+     */
+    public String getSharedSecretName(String userID) {
+
+        if (!enabled) return null;
+
+        checkExpiration();
+        return sharedSecretNames.get(userID == null ? "" : userID);
+    }
+
+    public void putSharedSecretName(String userID, String name) {
+
+        if (!enabled) return;
+
+        sharedSecretNames.put(userID == null ? "" : userID, name);
+    }
+}
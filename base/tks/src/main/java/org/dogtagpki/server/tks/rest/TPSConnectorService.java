@@ -159,6 +159,7 @@ public class TPSConnectorService extends PKIService implements TPSConnectorResou
 
             addToConnectorList(newID);
             cs.commit(true);
+            engine.getKeyCache().invalidate();
 
             return createCreatedResponse(newData, uri);
 
@@ -198,6 +199,7 @@ public class TPSConnectorService extends PKIService implements TPSConnectorResou
 
             saveClientData(curData);
             cs.commit(true);
+            engine.getKeyCache().invalidate();
 
             return createOKResponse(curData);
 
@@ -242,6 +244,7 @@ public class TPSConnectorService extends PKIService implements TPSConnectorResou
             cs.removeTPSConnectorConfig(id);
             removeFromConnectorList(id);
             cs.commit(true);
+            engine.getKeyCache().invalidate();
 
             return createNoContentResponse();
 
@@ -307,6 +310,7 @@ public class TPSConnectorService extends PKIService implements TPSConnectorResou
             TPSConnectorConfig tpsConfig = cs.getTPSConnectorConfig(id);
             tpsConfig.setNickname(nickname);
             cs.commit(true);
+            engine.getKeyCache().invalidate();
 
             //Create aes session sym key to wrap the shared secret.
             SymmetricKey tempKey = CryptoUtil.createAESSessionKeyOnInternal(AES_SESS_KEYSIZE);
@@ -381,6 +385,7 @@ public class TPSConnectorService extends PKIService implements TPSConnectorResou
 
             CryptoUtil.deleteSharedSecret(nickname);
             CryptoUtil.createSharedSecret(nickname);
+            engine.getKeyCache().invalidate();
 
 	    //Create aes session sym key to wrap the shared secret.
             SymmetricKey tempKey = CryptoUtil.createAESSessionKeyOnInternal(AES_SESS_KEYSIZE);
@@ -435,6 +440,7 @@ public class TPSConnectorService extends PKIService implements TPSConnectorResou
 
             tpsConfig.setNickname("");
             cs.commit(true);
+            engine.getKeyCache().invalidate();
 
             return createNoContentResponse();
 
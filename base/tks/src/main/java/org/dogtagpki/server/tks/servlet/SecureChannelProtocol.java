@@ -1165,6 +1165,18 @@ public class SecureChannelProtocol {
         SymmetricKey[] keys;
 
         logger.debug(method + "Searching for sym key: " + name);
+
+        TKSEngine engine = TKSEngine.getInstance();
+        if (engine != null) {
+            try {
+                SymmetricKey key = engine.getKeyCache().getSymmetricKey(token, name);
+                logger.debug(method + (key == null ? " Sym Key not found." : "Found key: " + name));
+                return key;
+            } catch (TokenException e) {
+                throw new EBaseException(method + "Can't get the list of symmetric keys!");
+            }
+        }
+
         try {
             keys = token.getCryptoStore().getSymmetricKeys();
         } catch (TokenException e) {
@@ -39,6 +39,7 @@ import org.dogtagpki.server.authorization.AuthzToken;
 import org.dogtagpki.server.connector.IRemoteRequest;
 import org.dogtagpki.server.tks.TKSEngine;
 import org.dogtagpki.server.tks.TKSEngineConfig;
+import org.dogtagpki.server.tks.TKSKeyCache;
 import org.dogtagpki.server.tks.TPSConnectorConfig;
 import org.mozilla.jss.CryptoManager;
 import org.mozilla.jss.NotInitializedException;
@@ -1574,6 +1575,19 @@ public class TokenServlet extends CMSServlet {
     //
     // On legacy systems, this method just returns what was previously returned.
     private String getSharedSecretName(TKSEngineConfig cs) throws EBaseException {
+
+        TKSKeyCache keyCache = TKSEngine.getInstance().getKeyCache();
+        String sharedSecretName = keyCache.getSharedSecretName(mCurrentUID);
+
+        if (sharedSecretName == null) {
+            sharedSecretName = findSharedSecretName(cs);
+            keyCache.putSharedSecretName(mCurrentUID, sharedSecretName);
+        }
+
+        return sharedSecretName;
+    }
+
+    private String findSharedSecretName(TKSEngineConfig cs) throws EBaseException {
         boolean useNewNames = cs.getBoolean("tks.useNewSharedSecretNames", false);
 
         if (useNewNames) {
@@ -3096,36 +3110,22 @@ public class TokenServlet extends CMSServlet {
 
         logger.debug("TokenServlet.getSharedSecretTransportKey: calculated key name: " + sharedSecretName);
 
-        String symmKeys = null;
-        boolean keyPresent = false;
+        // We know for now that shared secret is on this token
+        SymmetricKey sharedSecret = null;
         try {
-            symmKeys = SessionKey.ListSymmetricKeys(CryptoUtil.INTERNAL_TOKEN_NAME);
-            logger.debug("TokenServlet.getSharedSecretTransportKey: symmKeys List: " + symmKeys);
+            CryptoToken token = CryptoUtil.getKeyStorageToken(CryptoUtil.INTERNAL_TOKEN_NAME);
+            sharedSecret = engine.getKeyCache().getSymmetricKey(token, sharedSecretName);
         } catch (Exception e) {
-            // TODO Auto-generated catch block
             logger.warn("TokenServlet: " + e.getMessage(), e);
         }
 
-        for (String keyName : symmKeys.split(",")) {
-            if (sharedSecretName.equals(keyName)) {
-                logger.debug("TokenServlet.getSharedSecret: shared secret key found!");
-                keyPresent = true;
-                break;
-            }
-
-        }
-
-        if (!keyPresent) {
+        if (sharedSecret == null) {
             throw new EBaseException("TokenServlet.getSharedSecret: Can't find shared secret!");
         }
 
-        // We know for now that shared secret is on this token
-        String tokenName = CryptoUtil.INTERNAL_TOKEN_FULL_NAME;
-        PK11SymKey sharedSecret = SessionKey.GetSymKeyByName(tokenName, sharedSecretName);
-
-        logger.debug("TokenServlet.getSharedSecret: SymKey returns: " + sharedSecret);
+        logger.debug("TokenServlet.getSharedSecret: shared secret key found!");
 
-        return sharedSecret;
+        return (PK11SymKey) sharedSecret;
 
     }
 
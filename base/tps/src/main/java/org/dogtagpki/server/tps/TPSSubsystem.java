@@ -17,10 +17,20 @@
 // --- END COPYRIGHT BLOCK ---
 package org.dogtagpki.server.tps;
 
+import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.StringUtils;
 import org.dogtagpki.server.tps.authentication.AuthenticationManager;
@@ -31,6 +41,7 @@ import org.dogtagpki.server.tps.config.ConnectorDatabase;
 import org.dogtagpki.server.tps.config.ProfileDatabase;
 import org.dogtagpki.server.tps.config.ProfileMappingDatabase;
 import org.dogtagpki.server.tps.dbs.ActivityDatabase;
+import org.dogtagpki.server.tps.dbs.ActivityWriter;
 import org.dogtagpki.server.tps.dbs.TPSCertDatabase;
 import org.dogtagpki.server.tps.dbs.TPSCertRecord;
 import org.dogtagpki.server.tps.dbs.TokenDatabase;
@@ -47,10 +58,12 @@ import com.netscape.certsrv.authority.IAuthority;
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.Subsystem;
 import com.netscape.certsrv.tps.token.TokenStatus;
+import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.base.ConfigStorage;
 import com.netscape.cmscore.base.ConfigStore;
 import com.netscape.cmscore.base.FileConfigStorage;
 import com.netscape.cmscore.dbs.DBSubsystem;
+import com.netscape.cmscore.util.StatsSubsystem;
 import com.netscape.cmsutil.crypto.CryptoUtil;
 
 /**
@@ -62,6 +75,8 @@ public class TPSSubsystem extends Subsystem implements IAuthority {
 
     public final static String ID = "tps";
 
+    public final static int DEFAULT_REMOTE_REQUEST_THREADS = 10;
+
     public String id;
     public String nickname;
     public Subsystem owner;
@@ -79,6 +94,9 @@ public class TPSSubsystem extends Subsystem implements IAuthority {
     public AuthenticationManager authManager;
     public MappingResolverManager mappingResolverManager;
 
+    // executor for CA, KRA, and TKS requests that can run concurrently
+    public ExecutorService remoteRequestExecutor;
+
     public TokenDB tdb;
 
     public Map<TokenStatus, Collection<TokenStatus>> uiTransitions;
@@ -116,6 +134,9 @@ public class TPSSubsystem extends Subsystem implements IAuthority {
 
         String tokenDatabaseDN = tdbConfig.getString("baseDN");
         tokenDatabase = new TokenDatabase(dbSubsystem, tokenDatabaseDN);
+        tokenDatabase.setActiveTokenCache(
+                tdbConfig.getInteger("activeTokenCache.size", TokenDatabase.DEFAULT_ACTIVE_TOKEN_CACHE_SIZE),
+                tdbConfig.getInteger("activeTokenCache.ttl", TokenDatabase.DEFAULT_ACTIVE_TOKEN_CACHE_TTL));
 
         configDatabase = new ConfigDatabase();
 
@@ -306,11 +327,106 @@ public class TPSSubsystem extends Subsystem implements IAuthority {
         authManager.initAuthInstances();
         mappingResolverManager = new MappingResolverManager();
         mappingResolverManager.initMappingResolverInstances();
+        initRemoteRequestExecutor();
+        initActivityWriter();
         logger.debug("TPSSubsystem: startup() ends.");
     }
 
+    public void initActivityWriter() throws EBaseException {
+
+        TPSEngineConfig cs = ((TPSEngine) engine).getConfig();
+        TokenDBConfig tdbConfig = cs.getTokenDBConfig();
+
+        int queueSize = tdbConfig.getInteger("activityQueue.size", ActivityWriter.DEFAULT_QUEUE_SIZE);
+        logger.debug("TPSSubsystem: activity queue size: " + queueSize);
+
+        if (queueSize <= 0) {
+            // activities will be written synchronously
+            return;
+        }
+
+        String journal = tdbConfig.getString(
+                "activityJournal",
+                CMS.getInstanceDir() + "/logs/tps/activity.journal");
+
+        ActivityWriter writer = new ActivityWriter(activityDatabase, Paths.get(journal));
+        writer.setQueueSize(queueSize);
+        writer.setBatchSize(tdbConfig.getInteger("activityQueue.batchSize", ActivityWriter.DEFAULT_BATCH_SIZE));
+        writer.setRetryInterval(tdbConfig.getInteger("activityQueue.retryInterval", ActivityWriter.DEFAULT_RETRY_INTERVAL));
+        writer.setStatsSubsystem((StatsSubsystem) engine.getSubsystem(StatsSubsystem.ID));
+
+        try {
+            writer.start();
+        } catch (Exception e) {
+            throw new EBaseException("Unable to start activity writer: " + e.getMessage(), e);
+        }
+
+        activityDatabase.setWriter(writer);
+    }
+
+    public void initRemoteRequestExecutor() throws EBaseException {
+
+        int threads = config.getInteger("remoteRequests.threads", DEFAULT_REMOTE_REQUEST_THREADS);
+        logger.debug("TPSSubsystem: remote request threads: " + threads);
+
+        if (threads <= 0) {
+            // remote requests will run in the calling thread
+            return;
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+
+        // Requests are handed to an idle thread or, if all threads are
+        // busy, run by the session thread itself as they would without
+        // the executor. The pool only adds concurrency, it never makes a
+        // session wait for another session's requests.
+        remoteRequestExecutor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                60L,
+                TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "TPSRemoteRequest-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, executor) -> runnable.run());
+    }
+
+    /**
+     * Submits a request to a CA, KRA, or TKS that does not depend on
+     * the token so it can run while the caller continues with other
+     * requests. If the executor is disabled, saturated, or has been shut
+     * down the request runs in the calling thread.
+     */
+    public <T> Future<T> submitRemoteRequest(Callable<T> request) {
+
+        if (remoteRequestExecutor != null) {
+            try {
+                return remoteRequestExecutor.submit(request);
+            } catch (RejectedExecutionException e) {
+                logger.warn("TPSSubsystem: Unable to submit remote request: " + e.getMessage());
+            }
+        }
+
+        FutureTask<T> task = new FutureTask<>(request);
+        task.run();
+        return task;
+    }
+
     @Override
     public void shutdown() {
+        if (remoteRequestExecutor != null) {
+            remoteRequestExecutor.shutdownNow();
+            remoteRequestExecutor = null;
+        }
+
+        ActivityWriter writer = activityDatabase.getWriter();
+        if (writer != null) {
+            writer.shutdown();
+            activityDatabase.setWriter(null);
+        }
     }
 
     @Override
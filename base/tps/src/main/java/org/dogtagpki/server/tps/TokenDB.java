@@ -25,6 +25,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.dogtagpki.server.tps.cms.CARemoteRequestHandler;
 import org.dogtagpki.server.tps.cms.CARevokeCertResponse;
@@ -165,15 +166,8 @@ public class TokenDB {
         if (userid == null)
             throw new Exception("TokenDB.tdbhasActiveToken: uerid null");
 
-        ArrayList<TokenRecord> tokens =
-                tdbFindTokenRecordsByUID(userid);
-        boolean foundActive = false;
-        for (TokenRecord tokenRecord:tokens) {
-            if (tokenRecord.getTokenStatus().equals(TokenStatus.ACTIVE)) {
-                foundActive = true;
-            }
-        }
-        if (!foundActive) {
+        Set<String> tokenIDs = tps.tokenDatabase.getActiveTokenIDs(userid);
+        if (tokenIDs.isEmpty()) {
             throw new Exception("TokenDB.tdbhasActiveToken: active token not found");
         }
     }
@@ -183,15 +177,11 @@ public class TokenDB {
          if (userid == null || cuid == null)
              throw new Exception("TokenDB.tdbhasOtherActiveToken: uerid null, or cuid is null");
 
-         ArrayList<TokenRecord> tokens =
-                 tdbFindTokenRecordsByUID(userid);
+         Set<String> tokenIDs = tps.tokenDatabase.getActiveTokenIDs(userid);
          boolean foundActive = false;
-         for (TokenRecord tokenRecord:tokens) {
-             if (tokenRecord.getTokenStatus().equals(TokenStatus.ACTIVE)) {
-
-                 if(!tokenRecord.getId().equalsIgnoreCase(cuid))
-                    foundActive = true;
-             }
+         for (String tokenID : tokenIDs) {
+             if (!tokenID.equalsIgnoreCase(cuid))
+                 foundActive = true;
          }
          if (!foundActive) {
              throw new Exception("TokenDB.tdbhasActiveToken: active token not found");
@@ -89,6 +89,13 @@ public class ConnectionManager
      *   tps.connector.ca1.port=<port number; unused if for failover case>
      *   tps.connector.ca1.nickName=subsystemCert cert-pki-tomcat TPS
      *   tps.connector.ca1.timeout=30
+     *   # optional: reuse connections for up to idleTimeout seconds
+     *   #   (keepAlive is enabled by default; idleTimeout must be shorter
+     *   #   than the server's keep-alive timeout), and skip an unreachable
+     *   #   failover host for hostRetryInterval seconds
+     *   tps.connector.ca1.keepAlive=true
+     *   tps.connector.ca1.idleTimeout=15
+     *   tps.connector.ca1.hostRetryInterval=30
      *   # In the example below,
      *   #   "enrollment", "getcert", "renewal", "revoke", and "unrevoke"
      *   #   are what's being referred to as "op" in the multi-uri support code
@@ -19,12 +19,15 @@
 package org.dogtagpki.server.tps.dbs;
 
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.dogtagpki.tps.main.Util;
 
 import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.dbs.DBVirtualList;
 import com.netscape.cmscore.dbs.DBSubsystem;
 import com.netscape.cmscore.dbs.LDAPDatabase;
 import com.netscape.cmsutil.ldap.LDAPUtil;
@@ -37,6 +40,8 @@ import com.netscape.cmsutil.ldap.LDAPUtil;
  */
 public class ActivityDatabase extends LDAPDatabase<ActivityRecord> {
 
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ActivityDatabase.class);
+
     public final static String OP_ADD = "add"; // add a token
     public final static String OP_DELETE = "delete"; // delete a token
     //public final static String OP_MODIFY_AUDIT_SIGNING = "modify_audit_signing";
@@ -54,10 +59,44 @@ public class ActivityDatabase extends LDAPDatabase<ActivityRecord> {
 
     public final static String OP_KEY_CHANGEOVER = "key_changeover";
 
+    // maximum time to wait for queued activities before a search
+    public final static long FLUSH_TIMEOUT = 5000; // milliseconds
+
+    // distinguishes activities logged by a thread within the same millisecond
+    private static AtomicLong sequence = new AtomicLong();
+
+    protected ActivityWriter writer;
+
     public ActivityDatabase(DBSubsystem dbSubsystem, String baseDN) throws EBaseException {
         super("Activity", dbSubsystem, baseDN, ActivityRecord.class);
     }
 
+    public ActivityWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * Sets the writer for logged activities. Without a writer, or if
+     * the writer has aborted, activities are written to LDAP synchronously.
+     */
+    public void setWriter(ActivityWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Waits for the queued activities to be written so searches
+     * return all activities logged so far.
+     */
+    public void flush() throws InterruptedException {
+
+        if (writer == null || writer.isAborted()) return;
+
+        if (!writer.flush(FLUSH_TIMEOUT)) {
+            logger.warn("ActivityDatabase: Activities have not been written yet, "
+                    + writer.getQueueDepth() + " queued");
+        }
+    }
+
     public ActivityRecord log(
             String ip, String tokenID, String operation, String result,
             String message, String userID, String tokenType) throws Exception {
@@ -66,7 +105,7 @@ public class ActivityDatabase extends LDAPDatabase<ActivityRecord> {
         String timeString = Util.getTimeStampString(true);
         long threadID = Thread.currentThread().getId();
         String threadIDS = String.format("%x", threadID);
-        String id = timeString + "." + threadIDS;
+        String id = timeString + "." + threadIDS + "." + sequence.incrementAndGet();
 
         ActivityRecord activityRecord = new ActivityRecord();
         activityRecord.setId(id);
@@ -79,7 +118,11 @@ public class ActivityDatabase extends LDAPDatabase<ActivityRecord> {
         activityRecord.setType(tokenType);
         activityRecord.setDate(c.getTime());
 
-        super.addRecord(id, activityRecord);
+        if (writer == null || writer.isAborted()) {
+            super.addRecord(id, activityRecord);
+        } else {
+            writer.write(activityRecord);
+        }
 
         return activityRecord;
     }
@@ -91,6 +134,25 @@ public class ActivityDatabase extends LDAPDatabase<ActivityRecord> {
         super.addRecord(id, activityRecord);
     }
 
+    @Override
+    public ActivityRecord getRecord(String id) throws Exception {
+        flush();
+        return super.getRecord(id);
+    }
+
+    @Override
+    public Collection<ActivityRecord> findRecords(String keyword, Map<String, String> attributes) throws Exception {
+        flush();
+        return super.findRecords(keyword, attributes);
+    }
+
+    @Override
+    public DBVirtualList<ActivityRecord> findRecords(String keyword, Map<String, String> attributes,
+            String[] sortKeys, int pageSize) throws Exception {
+        flush();
+        return super.findRecords(keyword, attributes, sortKeys, pageSize);
+    }
+
     @Override
     public String createDN(String id) {
         return "cn=" + id + "," + baseDN;
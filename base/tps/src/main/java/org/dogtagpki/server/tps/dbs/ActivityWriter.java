@@ -0,0 +1,798 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.server.tps.dbs;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.netscape.certsrv.dbs.EDBException;
+import com.netscape.certsrv.dbs.EDBNotAvailException;
+import com.netscape.cmscore.dbs.DBSSession;
+import com.netscape.cmscore.util.StatsSubsystem;
+
+import netscape.ldap.LDAPException;
+
+/**
+ * Writes token activities to LDAP in the background.
+ *
+ * Activities are queued and written by a single thread in batches that
+ * share one LDAP connection, so a token operation does not wait for LDAP.
+ *
+ * If the queue is full because LDAP is slow or unavailable, new activities
+ * are appended to a journal file instead. The journal is replayed once the
+ * queue has been written, and at the next startup if the server stopped
+ * before that. While the journal is in use all new activities go to the
+ * journal, so activities are always written in the order they were logged.
+ *
+ * Readers call flush() to wait for the activities logged so far.
+ *
+ * If the writer thread fails unexpectedly the activities that have not been
+ * written are moved to the journal and the thread starts over. If it cannot
+ * continue at all, activities are written to LDAP directly by ActivityDatabase.
+ *
+ * The activity counters, the batch write times, and the current and maximum
+ * queue depth are reported in the statistics under "activity_writer".
+ */
+public class ActivityWriter implements Runnable {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ActivityWriter.class);
+
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final int DEFAULT_RETRY_INTERVAL = 5; // seconds
+    public static final int DEFAULT_SHUTDOWN_TIMEOUT = 10; // seconds
+
+    public static final String STATS_ID = "activity_writer";
+
+    private ActivityDatabase database;
+    private Path journal;
+    private Path replayJournal;
+
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long retryInterval = DEFAULT_RETRY_INTERVAL * 1000L;
+    private long shutdownTimeout = DEFAULT_SHUTDOWN_TIMEOUT * 1000L;
+
+    private BlockingQueue<Entry> queue;
+    private Thread thread;
+    private volatile boolean running;
+
+    private ObjectMapper mapper = new ObjectMapper();
+
+    // guards the sequence number, the journal, and the journaling flag
+    private Object journalLock = new Object();
+    private long submitted;
+    private boolean journaling;
+    private long journalSeq;
+    private BufferedWriter journalWriter;
+
+    // sequence number of the last activity that has been written
+    private Object completedLock = new Object();
+    private long completed;
+
+    private volatile int maxQueueDepth;
+    private LongAdder written = new LongAdder();
+    private LongAdder journaled = new LongAdder();
+    private LongAdder failed = new LongAdder();
+    private LongAdder retries = new LongAdder();
+    private LongAdder restarts = new LongAdder();
+    private LongAdder batches = new LongAdder();
+    private LongAdder writeTime = new LongAdder();
+
+    // set if the writer thread stopped because of an unexpected error
+    private volatile boolean aborted;
+
+    private StatsSubsystem statsSubsystem;
+
+    public ActivityWriter(ActivityDatabase database, Path journal) {
+        this.database = database;
+        this.journal = journal;
+        this.replayJournal = journal.resolveSibling(journal.getFileName() + ".replay");
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setRetryInterval(int retryInterval) {
+        this.retryInterval = retryInterval * 1000L;
+    }
+
+    public void setShutdownTimeout(int shutdownTimeout) {
+        this.shutdownTimeout = shutdownTimeout * 1000L;
+    }
+
+    public StatsSubsystem getStatsSubsystem() {
+        return statsSubsystem;
+    }
+
+    public void setStatsSubsystem(StatsSubsystem statsSubsystem) {
+
+        if (this.statsSubsystem != null) {
+            this.statsSubsystem.unregisterCounters(STATS_ID);
+        }
+
+        this.statsSubsystem = statsSubsystem;
+
+        if (statsSubsystem != null) {
+            statsSubsystem.registerCounters(STATS_ID, this::getStats);
+        }
+    }
+
+    /**
+     * Returns the number of activities waiting in the queue.
+     */
+    public int getQueueDepth() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * Returns true if new activities are being written to the journal
+     * because the queue was full.
+     */
+    public boolean isJournaling() {
+        synchronized (journalLock) {
+            return journaling;
+        }
+    }
+
+    public long getWritten() {
+        return written.sum();
+    }
+
+    public long getJournaled() {
+        return journaled.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getRestarts() {
+        return restarts.sum();
+    }
+
+    /**
+     * Returns the number of written, journaled, failed, retried, and
+     * restarted activities, the number of batches written and their
+     * total write time in msec, and the current and maximum queue depth.
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("written", written.sum());
+        stats.put("journaled", journaled.sum());
+        stats.put("failed", failed.sum());
+        stats.put("retry", retries.sum());
+        stats.put("restart", restarts.sum());
+        stats.put("batch", batches.sum());
+        stats.put("write_time", writeTime.sum());
+        stats.put("queue_depth", (long) getQueueDepth());
+        stats.put("max_queue_depth", (long) maxQueueDepth);
+        return stats;
+    }
+
+    /**
+     * Returns true if the writer thread stopped because of an unexpected
+     * error. New activities should then be written to LDAP directly.
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    public void start() throws IOException {
+
+        logger.info("ActivityWriter: Starting activity writer");
+        logger.info("ActivityWriter: - queue size: " + queueSize);
+        logger.info("ActivityWriter: - batch size: " + batchSize);
+        logger.info("ActivityWriter: - journal: " + journal);
+
+        Files.createDirectories(journal.getParent());
+
+        queue = new ArrayBlockingQueue<>(queueSize);
+
+        // activities journaled before the last shutdown are written first
+        journaling = Files.exists(journal) && Files.size(journal) > 0;
+
+        running = true;
+
+        thread = new Thread(this, "ActivityWriter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues an activity to be written.
+     *
+     * @exception IOException the queue is full and the journal cannot be written
+     */
+    public void write(ActivityRecord record) throws IOException {
+
+        synchronized (journalLock) {
+
+            long seq = ++submitted;
+
+            if (!journaling && running && queue.offer(new Entry(seq, record))) {
+                int depth = queue.size();
+                if (depth > maxQueueDepth) maxQueueDepth = depth;
+                return;
+            }
+
+            if (!journaling) {
+                logger.warn("ActivityWriter: Activity queue is full, writing activities to " + journal);
+                journaling = true;
+            }
+
+            appendJournal(record);
+            journalSeq = seq;
+            journaled.increment();
+        }
+    }
+
+    /**
+     * Waits until all activities queued before this call have been written.
+     *
+     * @return false if the activities have not been written within the timeout
+     */
+    public boolean flush(long timeout) throws InterruptedException {
+
+        long target;
+        synchronized (journalLock) {
+            target = submitted;
+        }
+
+        long deadline = System.currentTimeMillis() + timeout;
+
+        synchronized (completedLock) {
+            while (completed < target) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return false;
+                completedLock.wait(remaining);
+            }
+        }
+
+        return true;
+    }
+
+    void markCompleted(long seq) {
+        synchronized (completedLock) {
+            if (seq <= completed) return;
+            completed = seq;
+            completedLock.notifyAll();
+        }
+    }
+
+    @Override
+    public void run() {
+
+        // activities taken from the queue that have not been written
+        List<Entry> batch = new ArrayList<>(batchSize);
+
+        try {
+            // finish a replay interrupted by the last shutdown
+            try {
+                replay(replayJournal);
+            } catch (IOException e) {
+                logger.error("ActivityWriter: Unable to replay " + replayJournal + ": " + e.getMessage(), e);
+            }
+
+            while (true) {
+                try {
+                    writeQueue(batch);
+                    break;
+
+                } catch (InterruptedException e) {
+                    throw e;
+
+                } catch (Exception e) {
+                    // keep the writer running, the activities that have not
+                    // been written are replayed from the journal
+                    logger.error("ActivityWriter: Activity writer failed, restarting in "
+                            + retryInterval + " ms: " + e.getMessage(), e);
+                    restarts.increment();
+
+                    spill(batch);
+                    Thread.sleep(retryInterval);
+                }
+            }
+
+        } catch (InterruptedException e) {
+            logger.warn("ActivityWriter: Activity writer interrupted");
+
+            // clear the interrupt so the journal can be written
+            Thread.interrupted();
+
+            // keep the activities that have not been written for the next startup
+            spill(batch);
+
+        } catch (Throwable t) {
+            logger.error("ActivityWriter: Activity writer stopped, writing activities directly to LDAP: "
+                    + t.getMessage(), t);
+
+            // new activities are written synchronously by ActivityDatabase,
+            // the queued activities are kept for the next startup
+            aborted = true;
+            running = false;
+            spill(batch);
+
+            // readers do not wait for activities that will not be written
+            synchronized (journalLock) {
+                markCompleted(submitted);
+            }
+        }
+
+        synchronized (journalLock) {
+            closeJournal();
+        }
+    }
+
+    /**
+     * Writes the queued activities in batches, then the journal, until
+     * the writer is stopped. The activities that have not been written
+     * when this method fails are left in the batch.
+     */
+    void writeQueue(List<Entry> batch) throws Exception {
+
+        while (true) {
+
+            Entry entry = queue.poll();
+
+            if (entry == null) {
+                // the queue has been written, continue with the journal
+                try {
+                    if (replayJournal()) continue;
+                } catch (IOException e) {
+                    logger.error("ActivityWriter: Unable to replay " + journal + ": " + e.getMessage(), e);
+                    Thread.sleep(retryInterval);
+                    continue;
+                }
+
+                if (!running) return;
+
+                entry = queue.poll(1, TimeUnit.SECONDS);
+                if (entry == null) continue;
+            }
+
+            batch.add(entry);
+            queue.drainTo(batch, batchSize - 1);
+
+            List<ActivityRecord> records = new ArrayList<>(batch.size());
+            for (Entry e : batch) {
+                records.add(e.record);
+            }
+
+            int processed = writeBatch(records, false);
+            long seq = batch.get(batch.size() - 1).seq;
+
+            if (processed < batch.size()) {
+                batch.subList(0, processed).clear();
+                throw new InterruptedException();
+            }
+
+            batch.clear();
+            markCompleted(seq);
+        }
+    }
+
+    /**
+     * Writes the activities using a single LDAP connection. If LDAP is
+     * not available the remaining activities are retried until they are
+     * written or the thread is interrupted.
+     *
+     * An activity that already exists is only skipped if it may have been
+     * written before: while replaying the journal, or if it was being
+     * written when the connection failed. Otherwise it is a different
+     * activity with the same ID and it is counted as failed.
+     *
+     * @param replaying true if the activities are read from the journal
+     * @return number of activities processed
+     */
+    int writeBatch(List<ActivityRecord> records, boolean replaying) {
+
+        int i = 0;
+
+        // activity being written when the connection failed
+        int resumed = -1;
+
+        while (i < records.size()) {
+
+            long startTime = System.currentTimeMillis();
+
+            try (DBSSession session = database.dbSubsystem.createSession()) {
+
+                for (; i < records.size(); i++) {
+                    ActivityRecord record = records.get(i);
+                    String dn = database.createDN(record.getId());
+
+                    try {
+                        session.add(dn, record);
+                        written.increment();
+
+                    } catch (EDBException e) {
+
+                        if (isRetryable(e)) throw e;
+
+                        if (getResultCode(e) == LDAPException.ENTRY_ALREADY_EXISTS
+                                && (replaying || i == resumed)) {
+                            logger.debug("ActivityWriter: Activity already written: " + dn);
+                            continue;
+                        }
+
+                        logger.warn("ActivityWriter: Unable to write activity " + dn + ": " + e.getMessage(), e);
+                        failed.increment();
+                    }
+                }
+
+                batches.increment();
+                writeTime.add(System.currentTimeMillis() - startTime);
+
+            } catch (Exception e) {
+
+                if (i >= records.size()) {
+                    // unable to close the session after writing all activities
+                    break;
+                }
+
+                resumed = i;
+                retries.increment();
+                logger.warn("ActivityWriter: Unable to write activities, retrying in "
+                        + retryInterval + " ms: " + e.getMessage());
+
+                try {
+                    Thread.sleep(retryInterval);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return i;
+                }
+            }
+        }
+
+        return i;
+    }
+
+    boolean isRetryable(EDBException e) {
+
+        if (e instanceof EDBNotAvailException) return true;
+
+        switch (getResultCode(e)) {
+        case LDAPException.SERVER_DOWN:
+        case LDAPException.CONNECT_ERROR:
+        case LDAPException.UNAVAILABLE:
+        case LDAPException.BUSY:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    int getResultCode(EDBException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof LDAPException) {
+            return ((LDAPException) cause).getLDAPResultCode();
+        }
+        return -1;
+    }
+
+    /**
+     * Replays the journal if new activities have been written to it.
+     *
+     * @return true if the journal was replayed
+     */
+    boolean replayJournal() throws InterruptedException, IOException {
+
+        long seq;
+
+        synchronized (journalLock) {
+
+            if (!journaling) return false;
+
+            closeJournal();
+
+            if (Files.exists(journal)) {
+                Files.move(journal, replayJournal, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            // new activities can go to the queue again
+            journaling = false;
+            seq = journalSeq;
+        }
+
+        replay(replayJournal);
+        markCompleted(seq);
+
+        return true;
+    }
+
+    void replay(Path path) throws InterruptedException, IOException {
+
+        if (!Files.exists(path)) return;
+
+        logger.info("ActivityWriter: Replaying activities from " + path);
+
+        long count = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+
+            List<ActivityRecord> records = new ArrayList<>(batchSize);
+            String line;
+
+            while (true) {
+
+                line = reader.readLine();
+
+                if (line != null && !line.isEmpty()) {
+                    try {
+                        records.add(fromJSON(line));
+                    } catch (IOException e) {
+                        // incomplete line written during a crash
+                        logger.warn("ActivityWriter: Invalid activity in " + path + ": " + line);
+                        failed.increment();
+                    }
+                }
+
+                if (records.size() >= batchSize || line == null && !records.isEmpty()) {
+                    if (writeBatch(records, true) < records.size()) {
+                        // the journal will be replayed again at the next startup
+                        throw new InterruptedException();
+                    }
+                    count += records.size();
+                    records.clear();
+                }
+
+                if (line == null) break;
+            }
+        }
+
+        Files.delete(path);
+        logger.info("ActivityWriter: Replayed " + count + " activities");
+    }
+
+    void appendJournal(ActivityRecord record) throws IOException {
+
+        if (journalWriter == null) {
+            journalWriter = Files.newBufferedWriter(
+                    journal,
+                    StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        }
+
+        journalWriter.write(toJSON(record));
+        journalWriter.newLine();
+        journalWriter.flush();
+    }
+
+    void closeJournal() {
+
+        if (journalWriter == null) return;
+
+        try {
+            journalWriter.close();
+        } catch (IOException e) {
+            logger.warn("ActivityWriter: Unable to close " + journal + ": " + e.getMessage(), e);
+        }
+
+        journalWriter = null;
+    }
+
+    /**
+     * Puts the activities in the batch and in the queue in front of the
+     * journal since they were logged before the activities in the journal.
+     */
+    void spill(List<Entry> batch) {
+
+        synchronized (journalLock) {
+
+            // new activities cannot be queued until the journal is replayed
+            List<ActivityRecord> records = new ArrayList<>();
+            long seq = 0;
+
+            for (Entry entry : batch) {
+                records.add(entry.record);
+                seq = entry.seq;
+            }
+            for (Entry entry : queue) {
+                records.add(entry.record);
+                seq = entry.seq;
+            }
+
+            batch.clear();
+            queue.clear();
+
+            if (records.isEmpty()) return;
+
+            spillRecords(records);
+
+            // the spilled activities are completed when the journal is replayed
+            if (seq > journalSeq) journalSeq = seq;
+        }
+    }
+
+    /**
+     * Puts activities that have not been written in front of the journal
+     * since they were logged before the activities in the journal.
+     */
+    void spillRecords(List<ActivityRecord> records) {
+
+        if (records.isEmpty()) return;
+
+        logger.warn("ActivityWriter: Writing " + records.size() + " activities to " + journal);
+
+        synchronized (journalLock) {
+
+            closeJournal();
+
+            Path tmpJournal = journal.resolveSibling(journal.getFileName() + ".tmp");
+
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(tmpJournal, StandardCharsets.UTF_8)) {
+
+                    for (ActivityRecord record : records) {
+                        writer.write(toJSON(record));
+                        writer.newLine();
+                    }
+
+                    if (Files.exists(journal)) {
+                        try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+                            String line;
+                            while ((line = reader.readLine()) != null) {
+                                writer.write(line);
+                                writer.newLine();
+                            }
+                        }
+                    }
+                }
+
+                Files.move(tmpJournal, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                journaled.add(records.size());
+
+            } catch (IOException e) {
+                logger.error("ActivityWriter: Unable to write activities to " + journal + ": " + e.getMessage(), e);
+                failed.add(records.size());
+            }
+
+            journaling = true;
+        }
+    }
+
+    String toJSON(ActivityRecord record) throws IOException {
+
+        ObjectNode node = mapper.createObjectNode();
+        node.put("id", record.getId());
+        node.put("tokenID", record.getTokenID());
+        node.put("userID", record.getUserID());
+        node.put("ip", record.getIP());
+        node.put("operation", record.getOperation());
+        node.put("result", record.getResult());
+        node.put("message", record.getMessage());
+        node.put("extensions", record.getExtensions());
+        node.put("type", record.getType());
+        if (record.getDate() != null) {
+            node.put("date", record.getDate().getTime());
+        }
+
+        return mapper.writeValueAsString(node);
+    }
+
+    ActivityRecord fromJSON(String json) throws IOException {
+
+        JsonNode tree = mapper.readTree(json);
+        if (!(tree instanceof ObjectNode)) {
+            throw new IOException("Invalid activity");
+        }
+
+        ObjectNode node = (ObjectNode) tree;
+
+        ActivityRecord record = new ActivityRecord();
+        record.setId(getText(node, "id"));
+        record.setTokenID(getText(node, "tokenID"));
+        record.setUserID(getText(node, "userID"));
+        record.setIP(getText(node, "ip"));
+        record.setOperation(getText(node, "operation"));
+        record.setResult(getText(node, "result"));
+        record.setMessage(getText(node, "message"));
+        record.setExtensions(getText(node, "extensions"));
+        record.setType(getText(node, "type"));
+        if (node.hasNonNull("date")) {
+            record.setDate(new Date(node.get("date").asLong()));
+        }
+
+        if (record.getId() == null) {
+            throw new IOException("Missing activity ID");
+        }
+
+        return record;
+    }
+
+    String getText(ObjectNode node, String name) {
+        return node.hasNonNull(name) ? node.get(name).asText() : null;
+    }
+
+    public void shutdown() {
+
+        if (statsSubsystem != null) {
+            statsSubsystem.unregisterCounters(STATS_ID);
+            statsSubsystem = null;
+        }
+
+        if (thread == null) return;
+
+        logger.info("ActivityWriter: Stopping activity writer");
+
+        // new activities will go to the journal
+        running = false;
+
+        try {
+            thread.join(shutdownTimeout);
+
+            if (thread.isAlive()) {
+                logger.warn("ActivityWriter: Unable to write " + getQueueDepth() + " activities to LDAP");
+                thread.interrupt();
+                thread.join();
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        thread = null;
+
+        logger.info("ActivityWriter: written: " + getWritten()
+                + ", journaled: " + getJournaled()
+                + ", failed: " + getFailed()
+                + ", retries: " + getRetries()
+                + ", restarts: " + getRestarts()
+                + ", max queue depth: " + getMaxQueueDepth());
+    }
+
+    static class Entry {
+
+        long seq;
+        ActivityRecord record;
+
+        Entry(long seq, ActivityRecord record) {
+            this.seq = seq;
+            this.record = record;
+        }
+    }
+}
@@ -19,27 +19,218 @@
 package org.dogtagpki.server.tps.dbs;
 
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.tps.token.TokenStatus;
 import com.netscape.cmscore.dbs.DBSubsystem;
 import com.netscape.cmscore.dbs.LDAPDatabase;
 import com.netscape.cmsutil.ldap.LDAPUtil;
 
 /**
+ * The token database keeps an index of the active tokens of recently
+ * checked users so enrollment policy checks do not need an LDAP search
+ * for every operation. The index is updated when tokens are added,
+ * updated, or removed through this class. Changes made by other TPS
+ * servers are picked up when the cached entry expires.
+ *
+ * User IDs are matched case-insensitively like the LDAP uid attribute,
+ * so the index is keyed by the lowercase user ID.
+ *
  * @author Endi S. Dewata
  */
 public class TokenDatabase extends LDAPDatabase<TokenRecord> {
 
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(TokenDatabase.class);
+
+    public static final int DEFAULT_ACTIVE_TOKEN_CACHE_SIZE = 1000;
+    public static final int DEFAULT_ACTIVE_TOKEN_CACHE_TTL = 10; // seconds
+
+    private int activeTokenCacheSize = DEFAULT_ACTIVE_TOKEN_CACHE_SIZE;
+    private long activeTokenCacheTTL = DEFAULT_ACTIVE_TOKEN_CACHE_TTL * 1000L;
+
+    // lowercase user ID -> active tokens, guarded by this
+    private LinkedHashMap<String, ActiveTokens> activeTokens = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ActiveTokens> eldest) {
+            if (size() <= activeTokenCacheSize) return false;
+            removeOwners(eldest.getValue());
+            return true;
+        }
+    };
+
+    // token ID -> lowercase user ID of the tokens in the index, guarded by this
+    private Map<String, String> activeTokenOwners = new HashMap<>();
+
+    // searches in progress, guarded by this
+    private Set<ActiveTokenSearch> searches = new HashSet<>();
+
     public TokenDatabase(DBSubsystem dbSubsystem, String baseDN) throws EBaseException {
         super("Token", dbSubsystem, baseDN, TokenRecord.class);
     }
 
+    /**
+     * Configures the active token index.
+     *
+     * @param size maximum number of users in the index, 0 to disable
+     * @param ttl time in seconds before a user's tokens are searched again
+     */
+    public synchronized void setActiveTokenCache(int size, int ttl) {
+        activeTokenCacheSize = size;
+        activeTokenCacheTTL = ttl * 1000L;
+        activeTokens.clear();
+        activeTokenOwners.clear();
+
+        for (ActiveTokenSearch search : searches) {
+            search.stale = true;
+        }
+    }
+
+    public boolean isActiveTokenCacheEnabled() {
+        return activeTokenCacheSize > 0 && activeTokenCacheTTL > 0;
+    }
+
+    /**
+     * Returns the key of a user in the active token index.
+     */
+    String getActiveTokenKey(String userID) {
+        return userID == null ? null : userID.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the IDs of the active tokens owned by a user.
+     */
+    public Set<String> getActiveTokenIDs(String userID) throws Exception {
+
+        if (!isActiveTokenCacheEnabled()) {
+            return findActiveTokenIDs(userID);
+        }
+
+        String key = getActiveTokenKey(userID);
+        ActiveTokenSearch search = new ActiveTokenSearch(key);
+
+        synchronized (this) {
+            ActiveTokens entry = activeTokens.get(key);
+
+            if (entry != null && entry.expirationTime > System.currentTimeMillis()) {
+                return new HashSet<>(entry.tokenIDs);
+            }
+
+            if (entry != null) {
+                activeTokens.remove(key);
+                removeOwners(entry);
+            }
+
+            searches.add(search);
+        }
+
+        Set<String> tokenIDs;
+
+        try {
+            tokenIDs = findActiveTokenIDs(userID);
+
+        } catch (Exception e) {
+            synchronized (this) {
+                searches.remove(search);
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            searches.remove(search);
+
+            // don't cache the search results if one of the user's tokens
+            // was changed during the search since the search may not have
+            // seen the change
+            if (!search.isStale(tokenIDs)) {
+                ActiveTokens entry = new ActiveTokens(key, System.currentTimeMillis() + activeTokenCacheTTL);
+                for (String tokenID : tokenIDs) {
+                    addOwner(entry, tokenID);
+                }
+                activeTokens.put(key, entry);
+            }
+        }
+
+        return tokenIDs;
+    }
+
+    public Set<String> findActiveTokenIDs(String userID) throws Exception {
+
+        logger.debug("TokenDatabase: Searching active tokens for " + userID);
+
+        // search for tokens with (userID=<UID>) filter which will be
+        // translated into indexed (tokenUserID=<UID>) LDAP filter
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("userID", userID);
+
+        Set<String> tokenIDs = new HashSet<>();
+        for (TokenRecord tokenRecord : findRecords(null, attributes)) {
+            if (isActive(tokenRecord)) {
+                tokenIDs.add(tokenRecord.getId());
+            }
+        }
+
+        return tokenIDs;
+    }
+
+    boolean isActive(TokenRecord tokenRecord) {
+        return tokenRecord.getStatus() != null && TokenStatus.ACTIVE.equals(tokenRecord.getTokenStatus());
+    }
+
+    /**
+     * Updates the index after a token has been changed in LDAP.
+     */
+    synchronized void updateActiveToken(String tokenID, String userID, boolean active) {
+
+        String key = getActiveTokenKey(userID);
+
+        for (ActiveTokenSearch search : searches) {
+            search.update(tokenID, key);
+        }
+
+        // remove the token from its previous owner
+        String owner = activeTokenOwners.remove(tokenID);
+        if (owner != null) {
+            ActiveTokens entry = activeTokens.get(owner);
+            if (entry != null) entry.tokenIDs.remove(tokenID);
+        }
+
+        if (!active || key == null) return;
+
+        // add the token to the new owner if the owner is in the index
+        ActiveTokens entry = activeTokens.get(key);
+        if (entry != null) addOwner(entry, tokenID);
+    }
+
+    void addOwner(ActiveTokens entry, String tokenID) {
+
+        String owner = activeTokenOwners.put(tokenID, entry.userID);
+
+        if (owner != null && !owner.equals(entry.userID)) {
+            ActiveTokens ownerEntry = activeTokens.get(owner);
+            if (ownerEntry != null) ownerEntry.tokenIDs.remove(tokenID);
+        }
+
+        entry.tokenIDs.add(tokenID);
+    }
+
+    void removeOwners(ActiveTokens entry) {
+        for (String tokenID : entry.tokenIDs) {
+            activeTokenOwners.remove(tokenID, entry.userID);
+        }
+    }
+
     @Override
     public void addRecord(String id, TokenRecord tokenRecord) throws Exception {
         tokenRecord.setCreateTimestamp(new Date());
 
         super.addRecord(id, tokenRecord);
+        updateActiveToken(id, tokenRecord.getUserID(), isActive(tokenRecord));
     }
 
     @Override
@@ -47,6 +238,13 @@ public class TokenDatabase extends LDAPDatabase<TokenRecord> {
         tokenRecord.setModifyTimestamp(new Date());
 
         super.updateRecord(id, tokenRecord);
+        updateActiveToken(id, tokenRecord.getUserID(), isActive(tokenRecord));
+    }
+
+    @Override
+    public void removeRecord(String id) throws Exception {
+        super.removeRecord(id);
+        updateActiveToken(id, null, false);
     }
 
     @Override
@@ -73,4 +271,55 @@ public class TokenDatabase extends LDAPDatabase<TokenRecord> {
 
         return sb.toString();
     }
+
+    /**
+     * Records the tokens changed while a user's tokens are searched.
+     */
+    static class ActiveTokenSearch {
+
+        String userID;
+
+        // tokens changed during the search
+        Set<String> tokenIDs = new HashSet<>();
+
+        // true if a token was assigned to the user during the search
+        boolean stale;
+
+        ActiveTokenSearch(String userID) {
+            this.userID = userID;
+        }
+
+        void update(String tokenID, String owner) {
+            if (userID.equals(owner)) {
+                stale = true;
+            } else {
+                tokenIDs.add(tokenID);
+            }
+        }
+
+        /**
+         * Returns true if the results might not reflect a change made
+         * during the search. Changes to other users' tokens do not
+         * affect the results unless the token was found in the search.
+         */
+        boolean isStale(Set<String> results) {
+            if (stale) return true;
+            for (String tokenID : tokenIDs) {
+                if (results.contains(tokenID)) return true;
+            }
+            return false;
+        }
+    }
+
+    static class ActiveTokens {
+
+        String userID;
+        Set<String> tokenIDs = new HashSet<>();
+        long expirationTime;
+
+        ActiveTokens(String userID, long expirationTime) {
+            this.userID = userID;
+            this.expirationTime = expirationTime;
+        }
+    }
 }
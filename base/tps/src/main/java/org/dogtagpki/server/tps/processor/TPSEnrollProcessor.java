@@ -10,9 +10,14 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.zip.DataFormatException;
 
 import org.dogtagpki.server.tps.TPSEngine;
@@ -72,6 +77,12 @@ public class TPSEnrollProcessor extends TPSProcessor {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(TPSEnrollProcessor.class);
 
+    // key type -> pending server-side key generation request
+    private Map<String, Future<KRAServerSideKeyGenResponse>> serverSideKeyGenRequests = new HashMap<>();
+
+    // key types whose key generation has been sent to the KRA
+    private Set<String> startedServerSideKeyGens = ConcurrentHashMap.newKeySet();
+
     public TPSEnrollProcessor(TPSSession session) {
         super(session);
     }
@@ -1909,7 +1920,6 @@ public class TPSEnrollProcessor extends TPSProcessor {
 
         TPSEngine engine = TPSEngine.getInstance();
         TPSSubsystem tps = (TPSSubsystem) engine.getSubsystem(TPSSubsystem.ID);
-        TPSEngineConfig configStore = engine.getConfig();
 
         logger.debug(method + ": entering:");
 
@@ -1960,144 +1970,228 @@ public class TPSEnrollProcessor extends TPSProcessor {
         int actualCertIndex = 0;
         boolean legalScheme = false;
 
-        //Go through again and do the recoveries/enrollments
+        Collection<TPSCertRecord> certs = tps.tdb.tdbGetCertRecordsByCUID(toBeRecovered.getId());
 
-        certsInfo.setNumCertsToEnroll(totalNumCerts);
-        for (int i = 0; i < num; i++) {
+        // key type index -> pending certificate and key recovery
+        Map<Integer, Future<CertEnrollInfo>> recoveryRequests = new HashMap<>();
 
-            keyTypeValue = getRecoveryKeyTypeValue(reason, i);
-            scheme = getRecoveryScheme(reason, keyTypeValue);
+        try {
 
-            if (scheme.equals(TPSEngine.RECOVERY_SCHEME_GENERATE_NEW_KEY_AND_RECOVER_LAST)) {
-                logger.debug(method + ": scheme GenerateNewKeyAndRecoverLast found.");
-                isGenerateAndRecover = true;
+            //Go through again and do the recoveries/enrollments
 
-            } else {
-                isGenerateAndRecover = false;
-            }
+            certsInfo.setNumCertsToEnroll(totalNumCerts);
+            for (int i = 0; i < num; i++) {
 
-            if (scheme.equals(TPSEngine.RECOVERY_GENERATE_NEW_KEY) || isGenerateAndRecover) {
-                legalScheme = true;
-                CertEnrollInfo cEnrollInfo = new CertEnrollInfo();
-                generateCertificate(certsInfo, channel, aInfo, keyTypeValue, TPSEngine.ENROLL_MODES.MODE_ENROLL,
-                        actualCertIndex, cEnrollInfo);
+                // request this key type (unless requested in the previous
+                // iteration) and the next one, which is recovered by the
+                // CA and KRA while this one is written to the token
+                requestRecovery(toBeRecovered, certs, reason, i, channel, recoveryRequests);
+                if (i + 1 < num) {
+                    requestRecovery(toBeRecovered, certs, reason, i + 1, channel, recoveryRequests);
+                }
 
-                actualCertIndex = cEnrollInfo.getCertIdIndex();
-                logger.debug(method + ": scheme GenerateNewKey found, or isGenerateAndRecove is true: actualCertIndex, after enrollment: "
-                                + actualCertIndex);
+                keyTypeValue = getRecoveryKeyTypeValue(reason, i);
+                scheme = getRecoveryScheme(reason, keyTypeValue);
 
-            }
+                if (scheme.equals(TPSEngine.RECOVERY_SCHEME_GENERATE_NEW_KEY_AND_RECOVER_LAST)) {
+                    logger.debug(method + ": scheme GenerateNewKeyAndRecoverLast found.");
+                    isGenerateAndRecover = true;
 
-            if (scheme.equals(TPSEngine.RECOVERY_RECOVER_LAST) || isGenerateAndRecover) {
-                legalScheme = true;
-                logger.debug(method + ": scheme RecoverLast found, or isGenerateAndRecove is true");
-                if (isGenerateAndRecover) {
-                    logger.debug(method + ": isGenerateAndRecover is true.");
-                    actualCertIndex++;
+                } else {
+                    isGenerateAndRecover = false;
                 }
 
-                Collection<TPSCertRecord> certs = tps.tdb.tdbGetCertRecordsByCUID(toBeRecovered.getId());
-
-                String serialToRecover = null;
-                TPSCertRecord certToRecover = null;
-                for (TPSCertRecord rec : certs) {
-
-                    //Just take the end of the list most recent cert of given type.
-                    logger.debug(method +": Looking for keyType record: " + keyTypeValue
-                            + " curSererial: " + rec.getSerialNumber());
+                if (scheme.equals(TPSEngine.RECOVERY_GENERATE_NEW_KEY) || isGenerateAndRecover) {
+                    legalScheme = true;
+                    CertEnrollInfo cEnrollInfo = new CertEnrollInfo();
+                    generateCertificate(certsInfo, channel, aInfo, keyTypeValue, TPSEngine.ENROLL_MODES.MODE_ENROLL,
+                            actualCertIndex, cEnrollInfo);
 
-                    if (rec.getKeyType().equals(keyTypeValue)) {
-                        serialToRecover = rec.getSerialNumber();
-                        certToRecover = rec;
-                        logger.debug("TPSCertRecord: serial number: " + serialToRecover);
-                    }
+                    actualCertIndex = cEnrollInfo.getCertIdIndex();
+                    logger.debug(method + ": scheme GenerateNewKey found, or isGenerateAndRecove is true: actualCertIndex, after enrollment: "
+                                    + actualCertIndex);
 
                 }
-                String b64cert = null;
-                if (serialToRecover != null) {
-                    // get recovery conn id
-                    String caConnId;
-                    String config = "op.enroll." + certToRecover.getType() + ".keyGen." + certToRecover.getKeyType()
-                            + ".ca.conn";
-                    try {
-                        caConnId = configStore.getString(config);
-                    } catch (Exception e) {
-                        logMsg = "cannot find config:" + config + ": " + e.getMessage();
-                        logger.error(method + ":" + logMsg, e);
-                        throw new TPSException(
-                                method + ":" + logMsg,
-                                TPSStatus.STATUS_ERROR_MISCONFIGURATION);
-                    }
-                    logger.debug(method +": Selecting cert to recover: " + serialToRecover);
 
-                    CARetrieveCertResponse certResponse = TPSEngine.getInstance().recoverCertificate(certToRecover,
-                            serialToRecover, keyTypeValue, caConnId);
+                if (scheme.equals(TPSEngine.RECOVERY_RECOVER_LAST) || isGenerateAndRecover) {
+                    legalScheme = true;
+                    logger.debug(method + ": scheme RecoverLast found, or isGenerateAndRecove is true");
+                    if (isGenerateAndRecover) {
+                        logger.debug(method + ": isGenerateAndRecover is true.");
+                        actualCertIndex++;
+                    }
 
-                    b64cert = certResponse.getCertB64();
-                    //logger.debug(method +": recoverd cert blob: " + b64cert);
-                    logger.debug(method +": cert blob recovered");
+                    TPSCertRecord certToRecover = findCertToRecover(certs, keyTypeValue);
 
-                    TPSBuffer drmDesKey = getDRMDesKeyByProtocol(channel);
-                    TPSBuffer drmAesKey = getDRMAesKeyByProtocol(channel);
-                    KRARecoverKeyResponse keyResponse = TPSEngine.getInstance().recoverKey(toBeRecovered.getId(),
-                            toBeRecovered.getUserID(),
-                            drmDesKey,drmAesKey,
-                            b64cert, getDRMConnectorID(certToRecover.getKeyType()));
+                    if (certToRecover != null) {
+                        String serialToRecover = certToRecover.getSerialNumber();
+                        String caConnId = getRecoveryCAConnectorID(certToRecover);
 
-                    CertEnrollInfo cEnrollInfo = new CertEnrollInfo();
+                        // wait for the certificate and key requested earlier
+                        CertEnrollInfo cEnrollInfo = getRemoteResponse(recoveryRequests.remove(i),
+                                TPSStatus.STATUS_ERROR_RECOVERY_FAILED);
 
-                    cEnrollInfo.setTokenToBeRecovered(toBeRecovered);
-                    cEnrollInfo.setRecoveredCertData(certResponse);
-                    cEnrollInfo.setRecoveredKeyData(keyResponse);
+                        generateCertificate(certsInfo, channel, aInfo, keyTypeValue, TPSEngine.ENROLL_MODES.MODE_RECOVERY,
+                                actualCertIndex, cEnrollInfo);
 
-                    generateCertificate(certsInfo, channel, aInfo, keyTypeValue, TPSEngine.ENROLL_MODES.MODE_RECOVERY,
-                            actualCertIndex, cEnrollInfo);
+                        // unrevoke cert if needed
+                        if (certToRecover.getStatus().equalsIgnoreCase(TokenCertStatus.ONHOLD.toString())) {
+                            logMsg = "unrevoking cert...";
+                            logger.debug(method + ":" + logMsg);
 
-                    // unrevoke cert if needed
-                    if (certToRecover.getStatus().equalsIgnoreCase(TokenCertStatus.ONHOLD.toString())) {
-                        logMsg = "unrevoking cert...";
-                        logger.debug(method + ":" + logMsg);
-
-                        CARemoteRequestHandler caRH = null;
-                        try {
-                            caRH = new CARemoteRequestHandler(caConnId);
-
-                            CARevokeCertResponse response = caRH.revokeCertificate(false /*unrevoke*/,
-                                    serialToRecover,
-                                    certToRecover.getCertificate(),
-                                    null);
-                            logger.debug(method + ": response status =" + response.getStatus());
-                            auditRevoke(certToRecover.getTokenID(), false /*off-hold*/, -1 /*na*/,
-                                    String.valueOf(response.getStatus()), serialToRecover, caConnId, null);
-                            // successful unrevoke should mark the cert "active"
-                            logger.debug(method + ": unrevoke successful. Setting cert status to active for actualCertIndex:"
-                                            + actualCertIndex);
-                            certsInfo.setCertStatus(actualCertIndex, TokenCertStatus.ACTIVE);
-                        } catch (EBaseException e) {
-                            logMsg = "failed getting CARemoteRequestHandler: " + e.getMessage();
-                            logger.error(method + ":" + logMsg, e);
-                            auditRevoke(certToRecover.getTokenID(), false/*off-hold*/, -1 /*na*/, "failure",
-                                    serialToRecover, caConnId, logMsg);
-                            throw new TPSException(method + ":" + logMsg, TPSStatus.STATUS_ERROR_RECOVERY_FAILED);
+                            CARemoteRequestHandler caRH = null;
+                            try {
+                                caRH = new CARemoteRequestHandler(caConnId);
+
+                                CARevokeCertResponse response = caRH.revokeCertificate(false /*unrevoke*/,
+                                        serialToRecover,
+                                        certToRecover.getCertificate(),
+                                        null);
+                                logger.debug(method + ": response status =" + response.getStatus());
+                                auditRevoke(certToRecover.getTokenID(), false /*off-hold*/, -1 /*na*/,
+                                        String.valueOf(response.getStatus()), serialToRecover, caConnId, null);
+                                // successful unrevoke should mark the cert "active"
+                                logger.debug(method + ": unrevoke successful. Setting cert status to active for actualCertIndex:"
+                                                + actualCertIndex);
+                                certsInfo.setCertStatus(actualCertIndex, TokenCertStatus.ACTIVE);
+                            } catch (EBaseException e) {
+                                logMsg = "failed getting CARemoteRequestHandler: " + e.getMessage();
+                                logger.error(method + ":" + logMsg, e);
+                                auditRevoke(certToRecover.getTokenID(), false/*off-hold*/, -1 /*na*/, "failure",
+                                        serialToRecover, caConnId, logMsg);
+                                throw new TPSException(method + ":" + logMsg, TPSStatus.STATUS_ERROR_RECOVERY_FAILED);
+                            }
                         }
+                    } else {
+
                     }
-                } else {
 
                 }
 
-            }
+                if (!legalScheme) {
+                    throw new TPSException(method +": Invalid recovery configuration!",
+                            TPSStatus.STATUS_ERROR_RECOVERY_FAILED);
+                }
+                actualCertIndex++;
 
-            if (!legalScheme) {
-                throw new TPSException(method +": Invalid recovery configuration!",
-                        TPSStatus.STATUS_ERROR_RECOVERY_FAILED);
             }
-            actualCertIndex++;
 
+        } finally {
+            for (Future<CertEnrollInfo> request : recoveryRequests.values()) {
+                request.cancel(false);
+            }
         }
 
         return status;
     }
 
+    /*
+     * Sends the certificate and key recovery request for the key type with
+     * the given index to the CA and KRA unless it has already been sent.
+     * processRecovery() requests at most one key type ahead of the one
+     * being written to the token, so if the recovery fails part way at most
+     * one key is recovered without being used. The key recovery still
+     * waits for its certificate.
+     */
+    private void requestRecovery(TokenRecord toBeRecovered, Collection<TPSCertRecord> certs, String reason,
+            int i, SecureChannel channel, Map<Integer, Future<CertEnrollInfo>> recoveryRequests)
+            throws TPSException {
+
+        String method = "TPSEnrollProcessor.requestRecovery";
+
+        if (recoveryRequests.containsKey(i)) {
+            return;
+        }
+
+        String keyTypeValue = getRecoveryKeyTypeValue(reason, i);
+        String scheme = getRecoveryScheme(reason, keyTypeValue);
+
+        if (!scheme.equals(TPSEngine.RECOVERY_RECOVER_LAST)
+                && !scheme.equals(TPSEngine.RECOVERY_SCHEME_GENERATE_NEW_KEY_AND_RECOVER_LAST)) {
+            return;
+        }
+
+        TPSCertRecord certToRecover = findCertToRecover(certs, keyTypeValue);
+        if (certToRecover == null) {
+            return;
+        }
+
+        TPSEngine engine = TPSEngine.getInstance();
+        TPSSubsystem tps = (TPSSubsystem) engine.getSubsystem(TPSSubsystem.ID);
+
+        TPSBuffer drmDesKey = getDRMDesKeyByProtocol(channel);
+        TPSBuffer drmAesKey = getDRMAesKeyByProtocol(channel);
+
+        String serialToRecover = certToRecover.getSerialNumber();
+        String caConnId = getRecoveryCAConnectorID(certToRecover);
+        String kraConnId = getDRMConnectorID(certToRecover.getKeyType());
+
+        logger.debug(method + ": requesting recovery of cert " + serialToRecover);
+
+        recoveryRequests.put(i, tps.submitRemoteRequest(() -> {
+
+            CARetrieveCertResponse certResponse = engine.recoverCertificate(certToRecover,
+                    serialToRecover, keyTypeValue, caConnId);
+
+            String b64cert = certResponse.getCertB64();
+            //logger.debug(method +": recoverd cert blob: " + b64cert);
+            logger.debug(method +": cert blob recovered");
+
+            KRARecoverKeyResponse keyResponse = engine.recoverKey(toBeRecovered.getId(),
+                    toBeRecovered.getUserID(),
+                    drmDesKey, drmAesKey,
+                    b64cert, kraConnId);
+
+            CertEnrollInfo cEnrollInfo = new CertEnrollInfo();
+
+            cEnrollInfo.setTokenToBeRecovered(toBeRecovered);
+            cEnrollInfo.setRecoveredCertData(certResponse);
+            cEnrollInfo.setRecoveredKeyData(keyResponse);
+
+            return cEnrollInfo;
+        }));
+    }
+
+    private TPSCertRecord findCertToRecover(Collection<TPSCertRecord> certs, String keyTypeValue) {
+
+        String method = "TPSEnrollProcessor.findCertToRecover";
+        TPSCertRecord certToRecover = null;
+
+        for (TPSCertRecord rec : certs) {
+
+            //Just take the end of the list most recent cert of given type.
+            logger.debug(method +": Looking for keyType record: " + keyTypeValue
+                    + " curSererial: " + rec.getSerialNumber());
+
+            if (rec.getKeyType().equals(keyTypeValue)) {
+                certToRecover = rec;
+                logger.debug("TPSCertRecord: serial number: " + rec.getSerialNumber());
+            }
+        }
+
+        return certToRecover;
+    }
+
+    private String getRecoveryCAConnectorID(TPSCertRecord certToRecover) throws TPSException {
+
+        String method = "TPSEnrollProcessor.getRecoveryCAConnectorID";
+
+        TPSEngine engine = TPSEngine.getInstance();
+        TPSEngineConfig configStore = engine.getConfig();
+
+        String config = "op.enroll." + certToRecover.getType() + ".keyGen." + certToRecover.getKeyType()
+                + ".ca.conn";
+        try {
+            return configStore.getString(config);
+        } catch (Exception e) {
+            String logMsg = "cannot find config:" + config + ": " + e.getMessage();
+            logger.error(method + ":" + logMsg, e);
+            throw new TPSException(
+                    method + ":" + logMsg,
+                    TPSStatus.STATUS_ERROR_MISCONFIGURATION);
+        }
+    }
+
     //Stub to generate a certificate, more to come
     private boolean generateCertificates(EnrolledCertsInfo certsInfo, SecureChannel channel, AppletInfo aInfo)
             throws TPSException, IOException {
@@ -2122,16 +2216,28 @@ public class TPSEnrollProcessor extends TPSProcessor {
 
         logger.debug("TPSEnrollProcess.generateCertificates: Number of certs to enroll: " + keyTypeNum);
 
-        for (int i = 0; i < keyTypeNum; i++) {
-            String keyType = getConfiguredKeyType(i);
-            certsInfo.setCurrentCertIndex(i);
-            try {
-                generateCertificate(certsInfo, channel, aInfo, keyType, TPSEngine.ENROLL_MODES.MODE_ENROLL, -1, null);
-            } catch (TPSException e) {
-                logger.warn("TPSEnrollProcess.generateCertificates: exception:" + e.getMessage(), e);
-                noFailedCerts = false;
-                break; //need to clean up half-done token later
+        try {
+            for (int i = 0; i < keyTypeNum; i++) {
+                String keyType = getConfiguredKeyType(i);
+                certsInfo.setCurrentCertIndex(i);
+
+                // the next key is generated by the KRA while
+                // this certificate is written to the token
+                if (i + 1 < keyTypeNum) {
+                    requestServerSideKeyGen(i + 1, channel, aInfo);
+                }
+
+                try {
+                    generateCertificate(certsInfo, channel, aInfo, keyType, TPSEngine.ENROLL_MODES.MODE_ENROLL, -1, null);
+                } catch (TPSException e) {
+                    logger.warn("TPSEnrollProcess.generateCertificates: exception:" + e.getMessage(), e);
+                    noFailedCerts = false;
+                    break; //need to clean up half-done token later
+                }
             }
+
+        } finally {
+            cancelServerSideKeyGens();
         }
 
         /*
@@ -2148,6 +2254,119 @@ public class TPSEnrollProcessor extends TPSProcessor {
         return noFailedCerts;
     }
 
+    /*
+     * Sends the server-side key generation request for the key type with the
+     * given index to the KRA, so it runs while the previous certificate is
+     * written to the token. The request only depends on the secure channel
+     * session keys, which are already known. The response is picked up by
+     * enrollOneCertificate(), so the APDUs sent to the token stay in the same
+     * order. Only one key type is requested ahead, so if the enrollment fails
+     * part way at most one key is generated without being used.
+     */
+    private void requestServerSideKeyGen(int index, SecureChannel channel, AppletInfo aInfo)
+            throws TPSException {
+
+        String method = "TPSEnrollProcessor.requestServerSideKeyGen";
+
+        String keyType = getConfiguredKeyType(index);
+        if (serverSideKeyGenRequests.containsKey(keyType)) {
+            // duplicate key type, generate the key when it is enrolled
+            return;
+        }
+
+        CertEnrollInfo cInfo = new CertEnrollInfo();
+        cInfo.setKeyType(keyType);
+        cInfo.setKeyTypePrefix(TPSEngine.OP_ENROLL_PREFIX + "." + getSelectedTokenType() + ".keyGen." + keyType);
+
+        if (!checkForServerSideKeyGen(cInfo)) {
+            return;
+        }
+
+        TPSEngine engine = TPSEngine.getInstance();
+        TPSEngineConfig configStore = engine.getConfig();
+        TPSSubsystem tps = (TPSSubsystem) engine.getSubsystem(TPSSubsystem.ID);
+
+        String cuid = aInfo.getCUIDhexStringPlain();
+        String keyGenUserid = userid;
+        TPSBuffer drmDesKey = getDRMDesKeyByProtocol(channel);
+        TPSBuffer drmAesKey = getDRMAesKeyByProtocol(channel);
+
+        boolean archive = checkForServerKeyArchival(cInfo);
+        String kraConnId = getDRMConnectorID(keyType);
+
+        int keySize;
+        int algorithm;
+        try {
+            keySize = configStore.getInteger(cInfo.getKeyTypePrefix() + ".keySize", 1024);
+            algorithm = configStore.getInteger(cInfo.getKeyTypePrefix() + ".alg", 2);
+        } catch (EBaseException e) {
+            throw new TPSException(
+                    method + ": Internal error finding config value: " + e,
+                    TPSStatus.STATUS_ERROR_MAC_ENROLL_PDU);
+        }
+
+        boolean isECC = engine.isAlgorithmECC(algorithm);
+
+        logger.debug(method + ": requesting server-side key generation for " + keyType);
+        serverSideKeyGenRequests.put(keyType, tps.submitRemoteRequest(() -> {
+            startedServerSideKeyGens.add(keyType);
+            return engine.serverSideKeyGen(
+                    keySize, cuid, keyGenUserid, kraConnId, drmDesKey, drmAesKey, archive, isECC);
+        }));
+    }
+
+    /*
+     * Cancels the key generation that has not been used when the
+     * enrollment ends. A request that has not been sent yet is dropped,
+     * but a request already sent to the KRA cannot be withdrawn: the KRA
+     * completes it and, if archival is enabled, archives a key that is
+     * never written to the token. Like the keys of a token that fails
+     * halfway through enrollment, such a key stays in the KRA under the
+     * token's CUID, so it is logged here for the administrator.
+     */
+    private void cancelServerSideKeyGens() {
+
+        String method = "TPSEnrollProcessor.cancelServerSideKeyGens";
+
+        for (Map.Entry<String, Future<KRAServerSideKeyGenResponse>> entry : serverSideKeyGenRequests.entrySet()) {
+
+            String keyType = entry.getKey();
+            Future<KRAServerSideKeyGenResponse> request = entry.getValue();
+
+            // requests already sent to the KRA are allowed to complete
+            request.cancel(false);
+
+            if (startedServerSideKeyGens.contains(keyType)) {
+                logger.warn(method + ": Key for " + keyType
+                        + " was generated by the KRA but not written to the token");
+            }
+        }
+
+        serverSideKeyGenRequests.clear();
+        startedServerSideKeyGens.clear();
+    }
+
+    private <T> T getRemoteResponse(Future<T> request, TPSStatus status) throws TPSException {
+
+        String method = "TPSEnrollProcessor.getRemoteResponse";
+
+        try {
+            return request.get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TPSException(method + ": Interrupted while waiting for response", status);
+
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TPSException) {
+                throw (TPSException) cause;
+            }
+            logger.error(method + ": " + cause.getMessage(), cause);
+            throw new TPSException(method + ": " + cause, status);
+        }
+    }
+
     private String buildTokenLabel(EnrolledCertsInfo certsInfo, AppletInfo ainfo) throws TPSException {
         String label = null;
 
@@ -2491,13 +2710,21 @@ public class TPSEnrollProcessor extends TPSProcessor {
             String publicKeyStr = null;
             //Do this for JUST server side keygen
             if (isRecovery == false) {
-                TPSBuffer drmDesKey = getDRMDesKeyByProtocol(channel);
-                TPSBuffer drmAesKey = getDRMAesKeyByProtocol(channel);
+                Future<KRAServerSideKeyGenResponse> request = serverSideKeyGenRequests.remove(cEnrollInfo.getKeyType());
+
+                if (request != null) {
+                    logger.debug(method +": using key generated by earlier request");
+                    ssKeyGenResponse = getRemoteResponse(request, TPSStatus.STATUS_ERROR_MAC_ENROLL_PDU);
 
-                ssKeyGenResponse = TPSEngine.getInstance()
-                        .serverSideKeyGen(cEnrollInfo.getKeySize(),
-                                aInfo.getCUIDhexStringPlain(), userid, kraConnId, drmDesKey, drmAesKey,
-                                archive, isECC);
+                } else {
+                    TPSBuffer drmDesKey = getDRMDesKeyByProtocol(channel);
+                    TPSBuffer drmAesKey = getDRMAesKeyByProtocol(channel);
+
+                    ssKeyGenResponse = TPSEngine.getInstance()
+                            .serverSideKeyGen(cEnrollInfo.getKeySize(),
+                                    aInfo.getCUIDhexStringPlain(), userid, kraConnId, drmDesKey, drmAesKey,
+                                    archive, isECC);
+                }
 
                 publicKeyStr = ssKeyGenResponse.getPublicKey();
                 //logger.debug(method +": public key string from server: " + publicKeyStr);
@@ -0,0 +1,344 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.server.tps.dbs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.dbs.EDBException;
+import com.netscape.certsrv.dbs.EDBNotAvailException;
+import com.netscape.certsrv.dbs.IDBObj;
+import com.netscape.cmscore.dbs.DBRegistry;
+import com.netscape.cmscore.dbs.DBSSession;
+import com.netscape.cmscore.dbs.DBSubsystem;
+
+import netscape.ldap.LDAPException;
+
+public class ActivityWriterTest {
+
+    @TempDir
+    Path tmpDir;
+
+    Path journal;
+    SessionStub session;
+    ActivityDatabase database;
+    ActivityWriter writer;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+
+        journal = tmpDir.resolve("activity.journal");
+        session = new SessionStub();
+
+        database = new ActivityDatabase(new DBSubsystemStub(session), "ou=Activities");
+
+        writer = new ActivityWriter(database, journal);
+        writer.setRetryInterval(1);
+        writer.setShutdownTimeout(1);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        session.release();
+        writer.shutdown();
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+
+        writer.start();
+
+        writer.write(createRecord("1"));
+        writer.write(createRecord("2"));
+        writer.write(createRecord("3"));
+
+        assertTrue(writer.flush(5000));
+        assertEquals(Arrays.asList("1", "2", "3"), session.added);
+        assertEquals(3, writer.getWritten());
+        assertEquals(0, writer.getJournaled());
+        assertFalse(Files.exists(journal));
+    }
+
+    @Test
+    public void testJournal() throws Exception {
+
+        writer.setQueueSize(1);
+        writer.setBatchSize(1);
+        writer.start();
+
+        // the writer thread waits in the database with the first activity
+        session.block();
+        writer.write(createRecord("1"));
+        assertTrue(session.entered.await(5, TimeUnit.SECONDS));
+
+        // the second activity fills the queue, the rest go to the journal
+        writer.write(createRecord("2"));
+        writer.write(createRecord("3"));
+        writer.write(createRecord("4"));
+
+        assertTrue(writer.isJournaling());
+        assertEquals(2, writer.getJournaled());
+        assertEquals(Arrays.asList("3", "4"), readJournal(journal));
+
+        Map<String, Long> stats = writer.getStats();
+        assertEquals(2, stats.get("journaled").longValue());
+        assertEquals(1, stats.get("queue_depth").longValue());
+        assertEquals(1, stats.get("max_queue_depth").longValue());
+
+        session.release();
+
+        assertTrue(writer.flush(5000));
+        assertEquals(Arrays.asList("1", "2", "3", "4"), session.added);
+        assertFalse(writer.isJournaling());
+
+        stats = writer.getStats();
+        assertEquals(4, stats.get("written").longValue());
+        assertEquals(0, stats.get("queue_depth").longValue());
+    }
+
+    @Test
+    public void testReplayOrder() throws Exception {
+
+        writeJournal(journal, "1", "2");
+
+        writer.start();
+        writer.write(createRecord("3"));
+
+        // activities journaled before the startup are written first
+        assertTrue(writer.flush(5000));
+        assertEquals(Arrays.asList("1", "2", "3"), session.added);
+        assertFalse(Files.exists(journal));
+    }
+
+    @Test
+    public void testShutdownSpill() throws Exception {
+
+        session.unavailable = true;
+
+        writer.start();
+
+        writer.write(createRecord("1"));
+        writer.write(createRecord("2"));
+        writer.write(createRecord("3"));
+
+        writer.shutdown();
+
+        assertTrue(session.added.isEmpty());
+        assertTrue(writer.getRetries() > 0);
+        assertEquals(Arrays.asList("1", "2", "3"), readJournal(journal));
+
+        // activities logged after the shutdown go after the spilled activities
+        writer.write(createRecord("4"));
+        assertEquals(Arrays.asList("1", "2", "3", "4"), readJournal(journal));
+    }
+
+    @Test
+    public void testDuplicateActivity() throws Exception {
+
+        session.existing.add("1");
+
+        writer.start();
+        writer.write(createRecord("1"));
+        writer.write(createRecord("2"));
+
+        // a new activity with an existing ID is not silently dropped
+        assertTrue(writer.flush(5000));
+        assertEquals(Arrays.asList("2"), session.added);
+        assertEquals(1, writer.getFailed());
+    }
+
+    @Test
+    public void testReplayWrittenActivity() throws Exception {
+
+        session.existing.add("1");
+        writeJournal(journal, "1", "2");
+
+        writer.start();
+        writer.shutdown();
+
+        // the activity was written before the journal was replayed
+        assertEquals(Arrays.asList("2"), session.added);
+        assertEquals(0, writer.getFailed());
+        assertFalse(Files.exists(journal));
+    }
+
+    @Test
+    public void testRestart() throws Exception {
+
+        writer = new FailingWriter(new IllegalStateException("Test failure"));
+        writer.setRetryInterval(1);
+        writer.start();
+
+        writer.write(createRecord("1"));
+        writer.write(createRecord("2"));
+
+        // the writer starts over and replays the failed batch from the journal
+        assertTrue(writer.flush(5000));
+        assertEquals(Arrays.asList("1", "2"), session.added);
+        assertEquals(1, writer.getRestarts());
+        assertFalse(writer.isAborted());
+        assertFalse(Files.exists(journal));
+    }
+
+    @Test
+    public void testAbort() throws Exception {
+
+        writer = new FailingWriter(new LinkageError("Test failure"));
+        writer.start();
+
+        writer.write(createRecord("1"));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!writer.isAborted() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // the activity is kept for the next startup and readers do not wait for it
+        assertTrue(writer.isAborted());
+        assertTrue(writer.flush(0));
+        assertTrue(session.added.isEmpty());
+        assertEquals(Arrays.asList("1"), readJournal(journal));
+    }
+
+    ActivityRecord createRecord(String id) {
+        ActivityRecord record = new ActivityRecord();
+        record.setId(id);
+        record.setTokenID("token" + id);
+        record.setOperation(ActivityDatabase.OP_FORMAT);
+        return record;
+    }
+
+    void writeJournal(Path path, String... ids) throws Exception {
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (String id : ids) {
+                out.write(writer.toJSON(createRecord(id)));
+                out.newLine();
+            }
+        }
+    }
+
+    List<String> readJournal(Path path) throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            ids.add(writer.fromJSON(line).getId());
+        }
+        return ids;
+    }
+
+    static class DBSubsystemStub extends DBSubsystem {
+
+        DBRegistry registry = new DBRegistry();
+        SessionStub session;
+
+        DBSubsystemStub(SessionStub session) {
+            this.session = session;
+        }
+
+        @Override
+        public DBRegistry getRegistry() {
+            return registry;
+        }
+
+        @Override
+        public DBSSession createSession() throws EDBException {
+            return session;
+        }
+    }
+
+    static class SessionStub extends DBSSession {
+
+        List<String> added = new CopyOnWriteArrayList<>();
+        Set<String> existing = Collections.synchronizedSet(new HashSet<>());
+        volatile boolean unavailable;
+
+        CountDownLatch entered = new CountDownLatch(1);
+        volatile CountDownLatch blocked = new CountDownLatch(0);
+
+        void block() {
+            blocked = new CountDownLatch(1);
+        }
+
+        void release() {
+            blocked.countDown();
+        }
+
+        @Override
+        public void add(String name, IDBObj obj) throws EBaseException {
+
+            entered.countDown();
+
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EDBNotAvailException("Interrupted");
+            }
+
+            if (unavailable) {
+                throw new EDBNotAvailException("Server down");
+            }
+
+            String id = ((ActivityRecord) obj).getId();
+
+            if (existing.contains(id)) {
+                throw new EDBException("Entry exists", new LDAPException("Entry exists", LDAPException.ENTRY_ALREADY_EXISTS));
+            }
+
+            existing.add(id);
+            added.add(id);
+        }
+    }
+
+    /**
+     * Fails the first batch taken from the queue.
+     */
+    class FailingWriter extends ActivityWriter {
+
+        Throwable error;
+
+        FailingWriter(Throwable error) {
+            super(database, journal);
+            this.error = error;
+            setShutdownTimeout(1);
+        }
+
+        @Override
+        int writeBatch(List<ActivityRecord> records, boolean replaying) {
+
+            Throwable t = error;
+
+            if (t != null && !replaying) {
+                error = null;
+                if (t instanceof Error) throw (Error) t;
+                throw (RuntimeException) t;
+            }
+
+            return super.writeBatch(records, replaying);
+        }
+    }
+}
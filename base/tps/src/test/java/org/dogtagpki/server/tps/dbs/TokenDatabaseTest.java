@@ -0,0 +1,218 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.server.tps.dbs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.netscape.cmscore.dbs.DBRegistry;
+import com.netscape.cmscore.dbs.DBSubsystem;
+
+public class TokenDatabaseTest {
+
+    TokenDatabaseStub database;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        database = new TokenDatabaseStub();
+        database.setActiveTokenCache(10, 60);
+    }
+
+    @Test
+    public void testCachedTokens() throws Exception {
+
+        database.setToken("token1", "user1", true);
+        database.setToken("token2", "user1", false);
+
+        assertEquals(Set.of("token1"), database.getActiveTokenIDs("user1"));
+        assertEquals(Set.of("token1"), database.getActiveTokenIDs("user1"));
+        assertEquals(1, database.getSearches("user1"));
+    }
+
+    @Test
+    public void testOwnerChange() throws Exception {
+
+        database.setToken("token1", "user1", true);
+
+        assertEquals(Set.of("token1"), database.getActiveTokenIDs("user1"));
+        assertEquals(Set.of(), database.getActiveTokenIDs("user2"));
+
+        database.changeToken("token1", "user2", true);
+
+        assertEquals(Set.of(), database.getActiveTokenIDs("user1"));
+        assertEquals(Set.of("token1"), database.getActiveTokenIDs("user2"));
+        assertEquals(1, database.getSearches("user1"));
+        assertEquals(1, database.getSearches("user2"));
+    }
+
+    @Test
+    public void testStatusChange() throws Exception {
+
+        database.setToken("token1", "user1", true);
+
+        assertEquals(Set.of("token1"), database.getActiveTokenIDs("user1"));
+
+        database.changeToken("token1", "user1", false);
+        assertEquals(Set.of(), database.getActiveTokenIDs("user1"));
+
+        database.changeToken("token1", "user1", true);
+        assertEquals(Set.of("token1"), database.getActiveTokenIDs("user1"));
+
+        assertEquals(1, database.getSearches("user1"));
+    }
+
+    @Test
+    public void testRemoveToken() throws Exception {
+
+        database.setToken("token1", "user1", true);
+
+        assertEquals(Set.of("token1"), database.getActiveTokenIDs("user1"));
+
+        database.changeToken("token1", null, false);
+
+        assertEquals(Set.of(), database.getActiveTokenIDs("user1"));
+        assertEquals(1, database.getSearches("user1"));
+    }
+
+    @Test
+    public void testUserTokenChangedDuringSearch() throws Exception {
+
+        database.setToken("token1", "user1", true);
+
+        // the token is disabled after the search has read it
+        database.duringSearch = () -> database.changeToken("token1", "user1", false);
+
+        assertEquals(Set.of("token1"), database.getActiveTokenIDs("user1"));
+        database.duringSearch = null;
+
+        // the stale results are not cached
+        assertEquals(Set.of(), database.getActiveTokenIDs("user1"));
+        assertEquals(2, database.getSearches("user1"));
+    }
+
+    @Test
+    public void testTokenAssignedDuringSearch() throws Exception {
+
+        // a new token is assigned to the user after the search
+        database.duringSearch = () -> database.changeToken("token1", "user1", true);
+
+        assertEquals(Set.of(), database.getActiveTokenIDs("user1"));
+        database.duringSearch = null;
+
+        assertEquals(Set.of("token1"), database.getActiveTokenIDs("user1"));
+        assertEquals(2, database.getSearches("user1"));
+    }
+
+    @Test
+    public void testOtherTokenChangedDuringSearch() throws Exception {
+
+        database.setToken("token1", "user1", true);
+        database.setToken("token2", "user2", true);
+
+        // changes to another user's token do not affect the results
+        database.duringSearch = () -> database.changeToken("token2", "user2", false);
+
+        assertEquals(Set.of("token1"), database.getActiveTokenIDs("user1"));
+        database.duringSearch = null;
+
+        assertEquals(Set.of("token1"), database.getActiveTokenIDs("user1"));
+        assertEquals(1, database.getSearches("user1"));
+    }
+
+    @Test
+    public void testUserIDCase() throws Exception {
+
+        database.setToken("token1", "alice", true);
+
+        assertEquals(Set.of("token1"), database.getActiveTokenIDs("alice"));
+
+        // the token is updated with a differently cased user ID
+        database.changeToken("token1", "Alice", false);
+        assertEquals(Set.of(), database.getActiveTokenIDs("alice"));
+
+        database.changeToken("token2", "Alice", true);
+        assertEquals(Set.of("token2"), database.getActiveTokenIDs("alice"));
+        assertEquals(Set.of("token2"), database.getActiveTokenIDs("ALICE"));
+
+        assertEquals(1, database.getSearches("alice"));
+        assertEquals(0, database.getSearches("ALICE"));
+    }
+
+    static class TokenDatabaseStub extends TokenDatabase {
+
+        // token ID -> owner and status stored in LDAP
+        Map<String, String> owners = new HashMap<>();
+        Set<String> active = new HashSet<>();
+
+        Map<String, Integer> searches = new HashMap<>();
+        Runnable duringSearch;
+
+        TokenDatabaseStub() throws Exception {
+            super(new DBSubsystemStub(), "ou=Tokens");
+        }
+
+        void setToken(String tokenID, String userID, boolean status) {
+
+            if (userID == null) {
+                owners.remove(tokenID);
+            } else {
+                owners.put(tokenID, userID);
+            }
+
+            if (status) {
+                active.add(tokenID);
+            } else {
+                active.remove(tokenID);
+            }
+        }
+
+        void changeToken(String tokenID, String userID, boolean status) {
+            setToken(tokenID, userID, status);
+            updateActiveToken(tokenID, userID, status);
+        }
+
+        int getSearches(String userID) {
+            return searches.getOrDefault(userID, 0);
+        }
+
+        @Override
+        public Set<String> findActiveTokenIDs(String userID) {
+
+            searches.merge(userID, 1, Integer::sum);
+
+            Set<String> tokenIDs = new HashSet<>();
+            for (Map.Entry<String, String> entry : owners.entrySet()) {
+                // uid values are matched case-insensitively in LDAP
+                if (entry.getValue().equalsIgnoreCase(userID) && active.contains(entry.getKey())) {
+                    tokenIDs.add(entry.getKey());
+                }
+            }
+
+            if (duringSearch != null) {
+                duringSearch.run();
+            }
+
+            return tokenIDs;
+        }
+    }
+
+    static class DBSubsystemStub extends DBSubsystem {
+
+        DBRegistry registry = new DBRegistry();
+
+        @Override
+        public DBRegistry getRegistry() {
+            return registry;
+        }
+    }
+}